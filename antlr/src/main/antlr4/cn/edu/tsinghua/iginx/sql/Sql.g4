@@ -275,6 +275,7 @@ timeValue
    | dateExpression
    | INT
    | MINUS? INF
+   | PARAMETER
    ;
 
 path
@@ -409,6 +410,7 @@ constant
    | booleanClause
    | NaN
    | NULL
+   | PARAMETER
    ;
 
 booleanClause
@@ -935,6 +937,10 @@ UNDERLINE
    : '_'
    ;
 
+PARAMETER
+   : '?'
+   ;
+
 NaN
    : 'NaN'
    ;
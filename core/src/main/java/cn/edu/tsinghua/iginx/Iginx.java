@@ -20,6 +20,7 @@ package cn.edu.tsinghua.iginx;
 
 import cn.edu.tsinghua.iginx.conf.Config;
 import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowSpillFile;
 import cn.edu.tsinghua.iginx.monitor.MonitorManager;
 import cn.edu.tsinghua.iginx.mqtt.MQTTService;
 import cn.edu.tsinghua.iginx.rest.RestServer;
@@ -28,6 +29,8 @@ import org.apache.thrift.TProcessor;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.server.TServer;
 import org.apache.thrift.server.TThreadPoolServer;
+import org.apache.thrift.server.TThreadedSelectorServer;
+import org.apache.thrift.transport.TNonblockingServerSocket;
 import org.apache.thrift.transport.TServerSocket;
 import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
@@ -40,6 +43,7 @@ public class Iginx {
     private static final Config config = ConfigDescriptor.getInstance().getConfig();
 
     public static void main(String[] args) throws Exception {
+        RowSpillFile.cleanStaleFiles(config.getSpillDirectory());
         if (config.isEnableRestService()) {
             new Thread(new RestServer()).start();
         }
@@ -54,18 +58,47 @@ public class Iginx {
     }
 
     private void startServer() throws TTransportException {
+        TServer server;
+        switch (config.getThriftServerType()) {
+            case "threadedSelector":
+                server = createThreadedSelectorServer();
+                break;
+            case "threadPool":
+                server = createThreadPoolServer();
+                break;
+            default:
+                logger.info("use threadPool thrift server as default");
+                server = createThreadPoolServer();
+                break;
+        }
+        logger.info("iginx starts successfully!");
+        System.out.print("\n\nIGinX is now in service......\n\n");
+        server.serve();
+    }
+
+    private TServer createThreadPoolServer() throws TTransportException {
         TProcessor processor = new IService.Processor<IService.Iface>(IginxWorker.getInstance());
-        TServerSocket serverTransport =
-                new TServerSocket(ConfigDescriptor.getInstance().getConfig().getPort());
+        TServerSocket serverTransport = new TServerSocket(config.getPort());
         TThreadPoolServer.Args args =
                 new TThreadPoolServer.Args(serverTransport)
                         .processor(processor)
                         .minWorkerThreads(config.getMinThriftWorkerThreadNum())
                         .maxWorkerThreads(config.getMaxThriftWrokerThreadNum());
         args.protocolFactory(new TBinaryProtocol.Factory());
-        TServer server = new TThreadPoolServer(args);
-        logger.info("iginx starts successfully!");
-        System.out.print("\n\nIGinX is now in service......\n\n");
-        server.serve();
+        return new TThreadPoolServer(args);
+    }
+
+    /** 非阻塞服务端：selector 线程负责连接上的读写，读完整的请求交给固定大小的工作线程池执行 */
+    private TServer createThreadedSelectorServer() throws TTransportException {
+        TProcessor processor = new IService.Processor<IService.Iface>(IginxWorker.getInstance());
+        TNonblockingServerSocket serverTransport = new TNonblockingServerSocket(config.getPort());
+        TThreadedSelectorServer.Args args =
+                new TThreadedSelectorServer.Args(serverTransport)
+                        .processor(processor)
+                        .selectorThreads(config.getThriftSelectorThreadNum())
+                        .workerThreads(config.getThriftSelectorWorkerThreadNum());
+        args.protocolFactory(new TBinaryProtocol.Factory());
+        args.maxReadBufferBytes = config.getThriftMaxReadBufferBytes();
+        return new TThreadedSelectorServer(args);
     }
 }
@@ -27,14 +27,19 @@ import cn.edu.tsinghua.iginx.conf.Config;
 import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
 import cn.edu.tsinghua.iginx.conf.Constants;
 import cn.edu.tsinghua.iginx.engine.ContextBuilder;
+import cn.edu.tsinghua.iginx.engine.PreparedStatementManager;
+import cn.edu.tsinghua.iginx.engine.PreparedStatementManager.PreparedSql;
 import cn.edu.tsinghua.iginx.engine.StatementExecutor;
 import cn.edu.tsinghua.iginx.engine.physical.PhysicalEngineImpl;
 import cn.edu.tsinghua.iginx.engine.physical.storage.StorageManager;
 import cn.edu.tsinghua.iginx.engine.shared.RequestContext;
+import cn.edu.tsinghua.iginx.engine.shared.Result;
+import cn.edu.tsinghua.iginx.exceptions.SQLParserException;
 import cn.edu.tsinghua.iginx.exceptions.StatusCode;
 import cn.edu.tsinghua.iginx.metadata.DefaultMetaManager;
 import cn.edu.tsinghua.iginx.metadata.IMetaManager;
 import cn.edu.tsinghua.iginx.metadata.entity.*;
+import cn.edu.tsinghua.iginx.resource.QueryCursor;
 import cn.edu.tsinghua.iginx.resource.QueryResourceManager;
 import cn.edu.tsinghua.iginx.thrift.*;
 import cn.edu.tsinghua.iginx.transform.exec.TransformJobManager;
@@ -46,6 +51,7 @@ import java.nio.file.Files;
 import java.util.*;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,6 +74,9 @@ public class IginxWorker implements IService.Iface {
 
     private final StatementExecutor executor = StatementExecutor.getInstance();
 
+    private final PreparedStatementManager preparedStatementManager =
+            PreparedStatementManager.getInstance();
+
     private static final Config config = ConfigDescriptor.getInstance().getConfig();
 
     public static IginxWorker getInstance() {
@@ -86,12 +95,21 @@ public class IginxWorker implements IService.Iface {
         long sessionId = sessionManager.openSession(username);
         OpenSessionResp resp = new OpenSessionResp(RpcUtils.SUCCESS);
         resp.setSessionId(sessionId);
+        if (req.isColumnarResult()) {
+            CompressionType compressionType =
+                    req.isSetCompressionType() ? req.getCompressionType() : CompressionType.NONE;
+            sessionManager.enableColumnarResult(sessionId, compressionType);
+            resp.setColumnarResult(true);
+            resp.setCompressionType(compressionType);
+        }
         return resp;
     }
 
     @Override
     public Status closeSession(CloseSessionReq req) {
         sessionManager.closeSession(req.getSessionId());
+        queryManager.releaseSessionQueries(req.getSessionId());
+        preparedStatementManager.closeSessionStatements(req.getSessionId());
         return RpcUtils.SUCCESS;
     }
 
@@ -423,6 +441,7 @@ public class IginxWorker implements IService.Iface {
     public ExecuteSqlResp executeSql(ExecuteSqlReq req) {
         StatementExecutor executor = StatementExecutor.getInstance();
         RequestContext ctx = contextBuilder.build(req);
+        ctx.setColumnarCompression(sessionManager.getColumnarCompression(req.getSessionId()));
         executor.execute(ctx);
         return ctx.getResult().getExecuteSqlResp();
     }
@@ -587,17 +606,48 @@ public class IginxWorker implements IService.Iface {
         StatementExecutor executor = StatementExecutor.getInstance();
         RequestContext ctx = contextBuilder.build(req);
         executor.execute(ctx);
-        queryManager.registerQuery(ctx.getId(), ctx);
-        return ctx.getResult().getExecuteStatementResp(req.getFetchSize());
+        Result result = ctx.getResult();
+        CompressionType compressionType = sessionManager.getColumnarCompression(req.getSessionId());
+        if (result.getStatus() != RpcUtils.SUCCESS || result.getResultStream() == null) {
+            return result.getExecuteStatementResp(req.getFetchSize(), compressionType);
+        }
+
+        Status status = queryManager.registerQuery(ctx.getId(), req.getSessionId(), ctx);
+        if (status != RpcUtils.SUCCESS) {
+            result.setStatus(status);
+            return result.getExecuteStatementResp(req.getFetchSize(), compressionType);
+        }
+        QueryCursor cursor = queryManager.acquireQuery(ctx.getId());
+        if (cursor == null) {
+            result.setStatus(queryManager.getMissingQueryStatus(ctx.getId()));
+            return result.getExecuteStatementResp(req.getFetchSize(), compressionType);
+        }
+        try {
+            return result.getExecuteStatementResp(
+                    queryManager.adaptFetchSize(cursor, req.getFetchSize()), compressionType);
+        } finally {
+            queryManager.releaseCursor(cursor);
+        }
     }
 
     @Override
     public FetchResultsResp fetchResults(FetchResultsReq req) {
-        RequestContext context = queryManager.getQuery(req.queryId);
-        if (context == null) {
-            return new FetchResultsResp(RpcUtils.SUCCESS, false);
+        QueryCursor cursor = queryManager.acquireQuery(req.queryId);
+        if (cursor == null) {
+            return new FetchResultsResp(queryManager.getMissingQueryStatus(req.queryId), false);
+        }
+        try {
+            if (cursor.getSessionId() != req.getSessionId()) {
+                return new FetchResultsResp(RpcUtils.ACCESS_DENY, false);
+            }
+            return cursor.getContext()
+                    .getResult()
+                    .fetch(
+                            queryManager.adaptFetchSize(cursor, req.getFetchSize()),
+                            sessionManager.getColumnarCompression(req.getSessionId()));
+        } finally {
+            queryManager.releaseCursor(cursor);
         }
-        return context.getResult().fetch(req.getFetchSize());
     }
 
     @Override
@@ -606,6 +656,56 @@ public class IginxWorker implements IService.Iface {
         return RpcUtils.SUCCESS;
     }
 
+    @Override
+    public PrepareStatementResp prepareStatement(PrepareStatementReq req) {
+        if (!sessionManager.checkSession(req.getSessionId(), AuthType.Read)) {
+            return new PrepareStatementResp(RpcUtils.ACCESS_DENY);
+        }
+        PreparedSql statement;
+        try {
+            statement = preparedStatementManager.prepare(req.getSessionId(), req.getStatement());
+        } catch (SQLParserException | ParseCancellationException e) {
+            return new PrepareStatementResp(
+                    RpcUtils.status(StatusCode.STATEMENT_PARSE_ERROR, e.getMessage()));
+        }
+        if (statement == null) {
+            return new PrepareStatementResp(
+                    RpcUtils.status(
+                            StatusCode.STATEMENT_EXECUTION_ERROR,
+                            String.format(
+                                    "too many prepared statements in session %d, the limit is %d",
+                                    req.getSessionId(),
+                                    config.getMaxPreparedStatementsPerSession())));
+        }
+        PrepareStatementResp resp = new PrepareStatementResp(RpcUtils.SUCCESS);
+        resp.setStatementId(statement.getId());
+        resp.setParameterCount(statement.getParameterCount());
+        return resp;
+    }
+
+    @Override
+    public ExecuteSqlResp executePreparedStatement(ExecutePreparedStatementReq req) {
+        PreparedSql statement =
+                preparedStatementManager.getStatement(req.getSessionId(), req.getStatementId());
+        if (statement == null) {
+            return new ExecuteSqlResp(
+                    RpcUtils.status(
+                            StatusCode.STATEMENT_EXECUTION_ERROR,
+                            "prepared statement " + req.getStatementId() + " does not exist"),
+                    SqlType.Unknown);
+        }
+        RequestContext ctx = contextBuilder.build(req, statement);
+        ctx.setColumnarCompression(sessionManager.getColumnarCompression(req.getSessionId()));
+        executor.execute(ctx);
+        return ctx.getResult().getExecuteSqlResp();
+    }
+
+    @Override
+    public Status closePreparedStatement(ClosePreparedStatementReq req) {
+        preparedStatementManager.close(req.getSessionId(), req.getStatementId());
+        return RpcUtils.SUCCESS;
+    }
+
     @Override
     public CommitTransformJobResp commitTransformJob(CommitTransformJobReq req) {
         TransformJobManager manager = TransformJobManager.getInstance();
@@ -20,7 +20,9 @@ package cn.edu.tsinghua.iginx.auth;
 
 import cn.edu.tsinghua.iginx.metadata.entity.UserMeta;
 import cn.edu.tsinghua.iginx.thrift.AuthType;
+import cn.edu.tsinghua.iginx.thrift.CompressionType;
 import cn.edu.tsinghua.iginx.utils.SnowFlakeUtils;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -29,6 +31,8 @@ public class SessionManager {
     private static SessionManager instance;
     private final UserManager userManager;
     private final Set<Long> sessionIds = ConcurrentHashMap.newKeySet();
+    // 协商使用按列编码返回查询结果的会话及其压缩方式
+    private final Map<Long, CompressionType> columnarSessions = new ConcurrentHashMap<>();
 
     private SessionManager(UserManager userManager) {
         this.userManager = userManager;
@@ -71,5 +75,15 @@ public class SessionManager {
 
     public void closeSession(long sessionId) {
         sessionIds.remove(sessionId);
+        columnarSessions.remove(sessionId);
+    }
+
+    public void enableColumnarResult(long sessionId, CompressionType compressionType) {
+        columnarSessions.put(sessionId, compressionType);
+    }
+
+    /** 返回会话的结果压缩方式，会话使用按行编码时返回 null */
+    public CompressionType getColumnarCompression(long sessionId) {
+        return columnarSessions.get(sessionId);
     }
 }
@@ -119,6 +119,12 @@ public class Config {
 
     private String queryOptimizer = "";
 
+    private boolean enablePlanCache = true;
+
+    private int planCacheSize = 1024;
+
+    private int maxPreparedStatementsPerSession = 256;
+
     private String constraintChecker = "naive";
 
     private String physicalOptimizer = "naive";
@@ -147,6 +153,44 @@ public class Config {
 
     private boolean useStreamExecutor = true;
 
+    private boolean enableBatchExecution = true;
+
+    private int executionBatchSize = 4096;
+
+    private long sortMemoryBudget = 64 * 1024 * 1024;
+
+    private long joinMemoryBudget = 64 * 1024 * 1024;
+
+    private long groupByMemoryBudget = 64 * 1024 * 1024;
+
+    private String spillDirectory = "";
+
+    private boolean enableMultiwayMerge = true;
+
+    private boolean enablePipelinedExecution = false;
+
+    private int prefetchBatchSize = 1024;
+
+    private int prefetchQueueSize = 4;
+
+    private int prefetchThreadPoolSize = 16;
+
+    private boolean enableSharedScan = true;
+
+    private long sharedScanBufferSize = 8388608L;
+
+    private boolean enableHotFragmentCache = false;
+
+    private long hotFragmentCacheSize = 268435456L;
+
+    private long hotFragmentCacheBlockSize = 60000000000L;
+
+    private boolean enableHotFragmentCacheOffHeap = false;
+
+    private boolean enableLastValueCache = false;
+
+    private int lastValueCacheSize = 1000000;
+
     private boolean enableMemoryControl = true;
 
     private String systemResourceMetrics = "default";
@@ -157,10 +201,36 @@ public class Config {
 
     private double systemCpuThreshold = 0.9;
 
+    private int maxOpenCursors = 1000;
+
+    private int maxOpenCursorsPerSession = 64;
+
+    private long cursorIdleTimeout = 300000;
+
+    private long cursorFetchMemoryBudget = 16777216;
+
+    private long cursorMemoryBudget = 536870912;
+
+    private long queryMemoryLimit = 1073741824L;
+
+    private long globalQueryMemoryLimit = 4294967296L;
+
+    private boolean enableAdmissionControl = true;
+
+    private int maxConcurrentQueries = 64;
+
+    private int admissionQueueSize = 1024;
+
+    private long admissionQueueTimeout = 30000L;
+
     private boolean enableMetaCacheControl = false;
 
     private long fragmentCacheThreshold = 1024 * 128;
 
+    private boolean enableTimeSeriesCatalog = true;
+
+    private long timeSeriesCatalogReconcileInterval = 60000;
+
     private int batchSize = 50;
 
     private String pythonCMD = "python3";
@@ -181,6 +251,14 @@ public class Config {
 
     private int maxThriftWrokerThreadNum = 2147483647;
 
+    private String thriftServerType = "threadPool";
+
+    private int thriftSelectorThreadNum = 4;
+
+    private int thriftSelectorWorkerThreadNum = 64;
+
+    private long thriftMaxReadBufferBytes = 1073741824;
+
     //////////////
 
     public static final String tagNameAnnotation = TagKVUtils.tagNameAnnotation;
@@ -550,6 +628,30 @@ public class Config {
         this.queryOptimizer = queryOptimizer;
     }
 
+    public boolean isEnablePlanCache() {
+        return enablePlanCache;
+    }
+
+    public void setEnablePlanCache(boolean enablePlanCache) {
+        this.enablePlanCache = enablePlanCache;
+    }
+
+    public int getPlanCacheSize() {
+        return planCacheSize;
+    }
+
+    public void setPlanCacheSize(int planCacheSize) {
+        this.planCacheSize = planCacheSize;
+    }
+
+    public int getMaxPreparedStatementsPerSession() {
+        return maxPreparedStatementsPerSession;
+    }
+
+    public void setMaxPreparedStatementsPerSession(int maxPreparedStatementsPerSession) {
+        this.maxPreparedStatementsPerSession = maxPreparedStatementsPerSession;
+    }
+
     public String getConstraintChecker() {
         return constraintChecker;
     }
@@ -662,6 +764,158 @@ public class Config {
         this.useStreamExecutor = useStreamExecutor;
     }
 
+    public boolean isEnableBatchExecution() {
+        return enableBatchExecution;
+    }
+
+    public void setEnableBatchExecution(boolean enableBatchExecution) {
+        this.enableBatchExecution = enableBatchExecution;
+    }
+
+    public int getExecutionBatchSize() {
+        return executionBatchSize;
+    }
+
+    public void setExecutionBatchSize(int executionBatchSize) {
+        this.executionBatchSize = executionBatchSize;
+    }
+
+    public long getSortMemoryBudget() {
+        return sortMemoryBudget;
+    }
+
+    public void setSortMemoryBudget(long sortMemoryBudget) {
+        this.sortMemoryBudget = sortMemoryBudget;
+    }
+
+    public long getJoinMemoryBudget() {
+        return joinMemoryBudget;
+    }
+
+    public void setJoinMemoryBudget(long joinMemoryBudget) {
+        this.joinMemoryBudget = joinMemoryBudget;
+    }
+
+    public long getGroupByMemoryBudget() {
+        return groupByMemoryBudget;
+    }
+
+    public void setGroupByMemoryBudget(long groupByMemoryBudget) {
+        this.groupByMemoryBudget = groupByMemoryBudget;
+    }
+
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public boolean isEnableMultiwayMerge() {
+        return enableMultiwayMerge;
+    }
+
+    public void setEnableMultiwayMerge(boolean enableMultiwayMerge) {
+        this.enableMultiwayMerge = enableMultiwayMerge;
+    }
+
+    public boolean isEnablePipelinedExecution() {
+        return enablePipelinedExecution;
+    }
+
+    public void setEnablePipelinedExecution(boolean enablePipelinedExecution) {
+        this.enablePipelinedExecution = enablePipelinedExecution;
+    }
+
+    public int getPrefetchBatchSize() {
+        return prefetchBatchSize;
+    }
+
+    public void setPrefetchBatchSize(int prefetchBatchSize) {
+        this.prefetchBatchSize = prefetchBatchSize;
+    }
+
+    public int getPrefetchQueueSize() {
+        return prefetchQueueSize;
+    }
+
+    public void setPrefetchQueueSize(int prefetchQueueSize) {
+        this.prefetchQueueSize = prefetchQueueSize;
+    }
+
+    public int getPrefetchThreadPoolSize() {
+        return prefetchThreadPoolSize;
+    }
+
+    public void setPrefetchThreadPoolSize(int prefetchThreadPoolSize) {
+        this.prefetchThreadPoolSize = prefetchThreadPoolSize;
+    }
+
+    public boolean isEnableSharedScan() {
+        return enableSharedScan;
+    }
+
+    public void setEnableSharedScan(boolean enableSharedScan) {
+        this.enableSharedScan = enableSharedScan;
+    }
+
+    public long getSharedScanBufferSize() {
+        return sharedScanBufferSize;
+    }
+
+    public void setSharedScanBufferSize(long sharedScanBufferSize) {
+        this.sharedScanBufferSize = sharedScanBufferSize;
+    }
+
+    public boolean isEnableHotFragmentCache() {
+        return enableHotFragmentCache;
+    }
+
+    public void setEnableHotFragmentCache(boolean enableHotFragmentCache) {
+        this.enableHotFragmentCache = enableHotFragmentCache;
+    }
+
+    public long getHotFragmentCacheSize() {
+        return hotFragmentCacheSize;
+    }
+
+    public void setHotFragmentCacheSize(long hotFragmentCacheSize) {
+        this.hotFragmentCacheSize = hotFragmentCacheSize;
+    }
+
+    public long getHotFragmentCacheBlockSize() {
+        return hotFragmentCacheBlockSize;
+    }
+
+    public void setHotFragmentCacheBlockSize(long hotFragmentCacheBlockSize) {
+        this.hotFragmentCacheBlockSize = hotFragmentCacheBlockSize;
+    }
+
+    public boolean isEnableHotFragmentCacheOffHeap() {
+        return enableHotFragmentCacheOffHeap;
+    }
+
+    public void setEnableHotFragmentCacheOffHeap(boolean enableHotFragmentCacheOffHeap) {
+        this.enableHotFragmentCacheOffHeap = enableHotFragmentCacheOffHeap;
+    }
+
+    public boolean isEnableLastValueCache() {
+        return enableLastValueCache;
+    }
+
+    public void setEnableLastValueCache(boolean enableLastValueCache) {
+        this.enableLastValueCache = enableLastValueCache;
+    }
+
+    public int getLastValueCacheSize() {
+        return lastValueCacheSize;
+    }
+
+    public void setLastValueCacheSize(int lastValueCacheSize) {
+        this.lastValueCacheSize = lastValueCacheSize;
+    }
+
     public boolean isEnableMemoryControl() {
         return enableMemoryControl;
     }
@@ -702,6 +956,94 @@ public class Config {
         this.systemCpuThreshold = systemCpuThreshold;
     }
 
+    public int getMaxOpenCursors() {
+        return maxOpenCursors;
+    }
+
+    public void setMaxOpenCursors(int maxOpenCursors) {
+        this.maxOpenCursors = maxOpenCursors;
+    }
+
+    public int getMaxOpenCursorsPerSession() {
+        return maxOpenCursorsPerSession;
+    }
+
+    public void setMaxOpenCursorsPerSession(int maxOpenCursorsPerSession) {
+        this.maxOpenCursorsPerSession = maxOpenCursorsPerSession;
+    }
+
+    public long getCursorIdleTimeout() {
+        return cursorIdleTimeout;
+    }
+
+    public void setCursorIdleTimeout(long cursorIdleTimeout) {
+        this.cursorIdleTimeout = cursorIdleTimeout;
+    }
+
+    public long getCursorFetchMemoryBudget() {
+        return cursorFetchMemoryBudget;
+    }
+
+    public void setCursorFetchMemoryBudget(long cursorFetchMemoryBudget) {
+        this.cursorFetchMemoryBudget = cursorFetchMemoryBudget;
+    }
+
+    public long getCursorMemoryBudget() {
+        return cursorMemoryBudget;
+    }
+
+    public void setCursorMemoryBudget(long cursorMemoryBudget) {
+        this.cursorMemoryBudget = cursorMemoryBudget;
+    }
+
+    public long getQueryMemoryLimit() {
+        return queryMemoryLimit;
+    }
+
+    public void setQueryMemoryLimit(long queryMemoryLimit) {
+        this.queryMemoryLimit = queryMemoryLimit;
+    }
+
+    public long getGlobalQueryMemoryLimit() {
+        return globalQueryMemoryLimit;
+    }
+
+    public void setGlobalQueryMemoryLimit(long globalQueryMemoryLimit) {
+        this.globalQueryMemoryLimit = globalQueryMemoryLimit;
+    }
+
+    public boolean isEnableAdmissionControl() {
+        return enableAdmissionControl;
+    }
+
+    public void setEnableAdmissionControl(boolean enableAdmissionControl) {
+        this.enableAdmissionControl = enableAdmissionControl;
+    }
+
+    public int getMaxConcurrentQueries() {
+        return maxConcurrentQueries;
+    }
+
+    public void setMaxConcurrentQueries(int maxConcurrentQueries) {
+        this.maxConcurrentQueries = maxConcurrentQueries;
+    }
+
+    public int getAdmissionQueueSize() {
+        return admissionQueueSize;
+    }
+
+    public void setAdmissionQueueSize(int admissionQueueSize) {
+        this.admissionQueueSize = admissionQueueSize;
+    }
+
+    public long getAdmissionQueueTimeout() {
+        return admissionQueueTimeout;
+    }
+
+    public void setAdmissionQueueTimeout(long admissionQueueTimeout) {
+        this.admissionQueueTimeout = admissionQueueTimeout;
+    }
+
     public boolean isEnableMetaCacheControl() {
         return enableMetaCacheControl;
     }
@@ -718,6 +1060,22 @@ public class Config {
         this.fragmentCacheThreshold = fragmentCacheThreshold;
     }
 
+    public boolean isEnableTimeSeriesCatalog() {
+        return enableTimeSeriesCatalog;
+    }
+
+    public void setEnableTimeSeriesCatalog(boolean enableTimeSeriesCatalog) {
+        this.enableTimeSeriesCatalog = enableTimeSeriesCatalog;
+    }
+
+    public long getTimeSeriesCatalogReconcileInterval() {
+        return timeSeriesCatalogReconcileInterval;
+    }
+
+    public void setTimeSeriesCatalogReconcileInterval(long timeSeriesCatalogReconcileInterval) {
+        this.timeSeriesCatalogReconcileInterval = timeSeriesCatalogReconcileInterval;
+    }
+
     public int getBatchSize() {
         return batchSize;
     }
@@ -798,6 +1156,38 @@ public class Config {
         this.maxThriftWrokerThreadNum = maxThriftWrokerThreadNum;
     }
 
+    public String getThriftServerType() {
+        return thriftServerType;
+    }
+
+    public void setThriftServerType(String thriftServerType) {
+        this.thriftServerType = thriftServerType;
+    }
+
+    public int getThriftSelectorThreadNum() {
+        return thriftSelectorThreadNum;
+    }
+
+    public void setThriftSelectorThreadNum(int thriftSelectorThreadNum) {
+        this.thriftSelectorThreadNum = thriftSelectorThreadNum;
+    }
+
+    public int getThriftSelectorWorkerThreadNum() {
+        return thriftSelectorWorkerThreadNum;
+    }
+
+    public void setThriftSelectorWorkerThreadNum(int thriftSelectorWorkerThreadNum) {
+        this.thriftSelectorWorkerThreadNum = thriftSelectorWorkerThreadNum;
+    }
+
+    public long getThriftMaxReadBufferBytes() {
+        return thriftMaxReadBufferBytes;
+    }
+
+    public void setThriftMaxReadBufferBytes(long thriftMaxReadBufferBytes) {
+        this.thriftMaxReadBufferBytes = thriftMaxReadBufferBytes;
+    }
+
     public boolean isLocalParquetStorage() {
         return isLocalParquetStorage;
     }
@@ -153,6 +153,13 @@ public class ConfigDescriptor {
                     Integer.parseInt(properties.getProperty("instancesNumPerClient", "0")));
 
             config.setQueryOptimizer(properties.getProperty("queryOptimizer", ""));
+            config.setEnablePlanCache(
+                    Boolean.parseBoolean(properties.getProperty("enablePlanCache", "true")));
+            config.setPlanCacheSize(
+                    Integer.parseInt(properties.getProperty("planCacheSize", "1024")));
+            config.setMaxPreparedStatementsPerSession(
+                    Integer.parseInt(
+                            properties.getProperty("maxPreparedStatementsPerSession", "256")));
             config.setConstraintChecker(properties.getProperty("constraintChecker", "naive"));
 
             config.setPhysicalOptimizer(properties.getProperty("physicalOptimizer", "naive"));
@@ -184,6 +191,47 @@ public class ConfigDescriptor {
                     Boolean.parseBoolean(properties.getProperty("enablePushDown", "true")));
             config.setUseStreamExecutor(
                     Boolean.parseBoolean(properties.getProperty("useStreamExecutor", "true")));
+            config.setEnableBatchExecution(
+                    Boolean.parseBoolean(properties.getProperty("enableBatchExecution", "true")));
+            config.setExecutionBatchSize(
+                    Integer.parseInt(properties.getProperty("executionBatchSize", "4096")));
+            config.setSortMemoryBudget(
+                    Long.parseLong(properties.getProperty("sortMemoryBudget", "67108864")));
+            config.setJoinMemoryBudget(
+                    Long.parseLong(properties.getProperty("joinMemoryBudget", "67108864")));
+            config.setGroupByMemoryBudget(
+                    Long.parseLong(properties.getProperty("groupByMemoryBudget", "67108864")));
+            config.setSpillDirectory(properties.getProperty("spillDirectory", ""));
+            config.setEnableMultiwayMerge(
+                    Boolean.parseBoolean(properties.getProperty("enableMultiwayMerge", "true")));
+            config.setEnablePipelinedExecution(
+                    Boolean.parseBoolean(
+                            properties.getProperty("enablePipelinedExecution", "false")));
+            config.setPrefetchBatchSize(
+                    Integer.parseInt(properties.getProperty("prefetchBatchSize", "1024")));
+            config.setPrefetchQueueSize(
+                    Integer.parseInt(properties.getProperty("prefetchQueueSize", "4")));
+            config.setPrefetchThreadPoolSize(
+                    Integer.parseInt(properties.getProperty("prefetchThreadPoolSize", "16")));
+            config.setEnableSharedScan(
+                    Boolean.parseBoolean(properties.getProperty("enableSharedScan", "true")));
+            config.setSharedScanBufferSize(
+                    Long.parseLong(properties.getProperty("sharedScanBufferSize", "8388608")));
+            config.setEnableHotFragmentCache(
+                    Boolean.parseBoolean(
+                            properties.getProperty("enableHotFragmentCache", "false")));
+            config.setHotFragmentCacheSize(
+                    Long.parseLong(properties.getProperty("hotFragmentCacheSize", "268435456")));
+            config.setHotFragmentCacheBlockSize(
+                    Long.parseLong(
+                            properties.getProperty("hotFragmentCacheBlockSize", "60000000000")));
+            config.setEnableHotFragmentCacheOffHeap(
+                    Boolean.parseBoolean(
+                            properties.getProperty("enableHotFragmentCacheOffHeap", "false")));
+            config.setEnableLastValueCache(
+                    Boolean.parseBoolean(properties.getProperty("enableLastValueCache", "false")));
+            config.setLastValueCacheSize(
+                    Integer.parseInt(properties.getProperty("lastValueCacheSize", "1000000")));
 
             config.setEnableMemoryControl(
                     Boolean.parseBoolean(properties.getProperty("enable_memory_control", "true")));
@@ -195,12 +243,40 @@ public class ConfigDescriptor {
                     Double.parseDouble(properties.getProperty("system_memory_threshold", "0.9")));
             config.setSystemCpuThreshold(
                     Double.parseDouble(properties.getProperty("system_cpu_threshold", "0.9")));
+            config.setMaxOpenCursors(
+                    Integer.parseInt(properties.getProperty("maxOpenCursors", "1000")));
+            config.setMaxOpenCursorsPerSession(
+                    Integer.parseInt(properties.getProperty("maxOpenCursorsPerSession", "64")));
+            config.setCursorIdleTimeout(
+                    Long.parseLong(properties.getProperty("cursorIdleTimeout", "300000")));
+            config.setCursorFetchMemoryBudget(
+                    Long.parseLong(properties.getProperty("cursorFetchMemoryBudget", "16777216")));
+            config.setCursorMemoryBudget(
+                    Long.parseLong(properties.getProperty("cursorMemoryBudget", "536870912")));
+            config.setQueryMemoryLimit(
+                    Long.parseLong(properties.getProperty("queryMemoryLimit", "1073741824")));
+            config.setGlobalQueryMemoryLimit(
+                    Long.parseLong(properties.getProperty("globalQueryMemoryLimit", "4294967296")));
+            config.setEnableAdmissionControl(
+                    Boolean.parseBoolean(properties.getProperty("enableAdmissionControl", "true")));
+            config.setMaxConcurrentQueries(
+                    Integer.parseInt(properties.getProperty("maxConcurrentQueries", "64")));
+            config.setAdmissionQueueSize(
+                    Integer.parseInt(properties.getProperty("admissionQueueSize", "1024")));
+            config.setAdmissionQueueTimeout(
+                    Long.parseLong(properties.getProperty("admissionQueueTimeout", "30000")));
 
             config.setEnableMetaCacheControl(
                     Boolean.parseBoolean(
                             properties.getProperty("enable_meta_cache_control", "false")));
             config.setFragmentCacheThreshold(
                     Long.parseLong(properties.getProperty("fragment_cache_threshold", "131072")));
+            config.setEnableTimeSeriesCatalog(
+                    Boolean.parseBoolean(
+                            properties.getProperty("enableTimeSeriesCatalog", "true")));
+            config.setTimeSeriesCatalogReconcileInterval(
+                    Long.parseLong(
+                            properties.getProperty("timeSeriesCatalogReconcileInterval", "60000")));
             config.setBatchSize(Integer.parseInt(properties.getProperty("batchSize", "50")));
             config.setPythonCMD(properties.getProperty("pythonCMD", "python3"));
             config.setTransformTaskThreadPoolSize(
@@ -222,6 +298,15 @@ public class ConfigDescriptor {
             config.setMaxThriftWrokerThreadNum(
                     Integer.parseInt(
                             properties.getProperty("maxThriftWorkerThreadNum", "2147483647")));
+            config.setThriftServerType(properties.getProperty("thriftServerType", "threadPool"));
+            config.setThriftSelectorThreadNum(
+                    Integer.parseInt(properties.getProperty("thriftSelectorThreadNum", "4")));
+            config.setThriftSelectorWorkerThreadNum(
+                    Integer.parseInt(
+                            properties.getProperty("thriftSelectorWorkerThreadNum", "64")));
+            config.setThriftMaxReadBufferBytes(
+                    Long.parseLong(
+                            properties.getProperty("thriftMaxReadBufferBytes", "1073741824")));
         } catch (IOException e) {
             logger.error("Fail to load properties: ", e);
         }
@@ -273,6 +358,12 @@ public class ConfigDescriptor {
         config.setMqttMaxMessageSize(
                 EnvUtils.loadEnv("mqtt_max_message_size", config.getMqttMaxMessageSize()));
         config.setQueryOptimizer(EnvUtils.loadEnv("queryOptimizer", config.getQueryOptimizer()));
+        config.setEnablePlanCache(EnvUtils.loadEnv("enablePlanCache", config.isEnablePlanCache()));
+        config.setPlanCacheSize(EnvUtils.loadEnv("planCacheSize", config.getPlanCacheSize()));
+        config.setMaxPreparedStatementsPerSession(
+                EnvUtils.loadEnv(
+                        "maxPreparedStatementsPerSession",
+                        config.getMaxPreparedStatementsPerSession()));
         config.setConstraintChecker(
                 EnvUtils.loadEnv("constraintChecker", config.getConstraintChecker()));
         config.setPhysicalOptimizer(
@@ -303,6 +394,45 @@ public class ConfigDescriptor {
         config.setEnablePushDown(EnvUtils.loadEnv("enablePushDown", config.isEnablePushDown()));
         config.setUseStreamExecutor(
                 EnvUtils.loadEnv("useStreamExecutor", config.isUseStreamExecutor()));
+        config.setEnableBatchExecution(
+                EnvUtils.loadEnv("enableBatchExecution", config.isEnableBatchExecution()));
+        config.setExecutionBatchSize(
+                EnvUtils.loadEnv("executionBatchSize", config.getExecutionBatchSize()));
+        config.setSortMemoryBudget(
+                EnvUtils.loadEnv("sortMemoryBudget", config.getSortMemoryBudget()));
+        config.setJoinMemoryBudget(
+                EnvUtils.loadEnv("joinMemoryBudget", config.getJoinMemoryBudget()));
+        config.setGroupByMemoryBudget(
+                EnvUtils.loadEnv("groupByMemoryBudget", config.getGroupByMemoryBudget()));
+        config.setSpillDirectory(EnvUtils.loadEnv("spillDirectory", config.getSpillDirectory()));
+        config.setEnableMultiwayMerge(
+                EnvUtils.loadEnv("enableMultiwayMerge", config.isEnableMultiwayMerge()));
+        config.setEnablePipelinedExecution(
+                EnvUtils.loadEnv("enablePipelinedExecution", config.isEnablePipelinedExecution()));
+        config.setPrefetchBatchSize(
+                EnvUtils.loadEnv("prefetchBatchSize", config.getPrefetchBatchSize()));
+        config.setPrefetchQueueSize(
+                EnvUtils.loadEnv("prefetchQueueSize", config.getPrefetchQueueSize()));
+        config.setPrefetchThreadPoolSize(
+                EnvUtils.loadEnv("prefetchThreadPoolSize", config.getPrefetchThreadPoolSize()));
+        config.setEnableSharedScan(
+                EnvUtils.loadEnv("enableSharedScan", config.isEnableSharedScan()));
+        config.setSharedScanBufferSize(
+                EnvUtils.loadEnv("sharedScanBufferSize", config.getSharedScanBufferSize()));
+        config.setEnableHotFragmentCache(
+                EnvUtils.loadEnv("enableHotFragmentCache", config.isEnableHotFragmentCache()));
+        config.setHotFragmentCacheSize(
+                EnvUtils.loadEnv("hotFragmentCacheSize", config.getHotFragmentCacheSize()));
+        config.setHotFragmentCacheBlockSize(
+                EnvUtils.loadEnv(
+                        "hotFragmentCacheBlockSize", config.getHotFragmentCacheBlockSize()));
+        config.setEnableHotFragmentCacheOffHeap(
+                EnvUtils.loadEnv(
+                        "enableHotFragmentCacheOffHeap", config.isEnableHotFragmentCacheOffHeap()));
+        config.setEnableLastValueCache(
+                EnvUtils.loadEnv("enableLastValueCache", config.isEnableLastValueCache()));
+        config.setLastValueCacheSize(
+                EnvUtils.loadEnv("lastValueCacheSize", config.getLastValueCacheSize()));
         config.setEnableMemoryControl(
                 EnvUtils.loadEnv("enable_memory_control", config.isEnableMemoryControl()));
         config.setSystemResourceMetrics(
@@ -313,10 +443,37 @@ public class ConfigDescriptor {
                 EnvUtils.loadEnv("system_memory_threshold", config.getSystemMemoryThreshold()));
         config.setSystemCpuThreshold(
                 EnvUtils.loadEnv("system_cpu_threshold", config.getSystemCpuThreshold()));
+        config.setMaxOpenCursors(EnvUtils.loadEnv("maxOpenCursors", config.getMaxOpenCursors()));
+        config.setMaxOpenCursorsPerSession(
+                EnvUtils.loadEnv("maxOpenCursorsPerSession", config.getMaxOpenCursorsPerSession()));
+        config.setCursorIdleTimeout(
+                EnvUtils.loadEnv("cursorIdleTimeout", config.getCursorIdleTimeout()));
+        config.setCursorFetchMemoryBudget(
+                EnvUtils.loadEnv("cursorFetchMemoryBudget", config.getCursorFetchMemoryBudget()));
+        config.setCursorMemoryBudget(
+                EnvUtils.loadEnv("cursorMemoryBudget", config.getCursorMemoryBudget()));
+        config.setQueryMemoryLimit(
+                EnvUtils.loadEnv("queryMemoryLimit", config.getQueryMemoryLimit()));
+        config.setGlobalQueryMemoryLimit(
+                EnvUtils.loadEnv("globalQueryMemoryLimit", config.getGlobalQueryMemoryLimit()));
+        config.setEnableAdmissionControl(
+                EnvUtils.loadEnv("enableAdmissionControl", config.isEnableAdmissionControl()));
+        config.setMaxConcurrentQueries(
+                EnvUtils.loadEnv("maxConcurrentQueries", config.getMaxConcurrentQueries()));
+        config.setAdmissionQueueSize(
+                EnvUtils.loadEnv("admissionQueueSize", config.getAdmissionQueueSize()));
+        config.setAdmissionQueueTimeout(
+                EnvUtils.loadEnv("admissionQueueTimeout", config.getAdmissionQueueTimeout()));
         config.setEnableMetaCacheControl(
                 EnvUtils.loadEnv("enable_meta_cache_control", config.isEnableMetaCacheControl()));
         config.setFragmentCacheThreshold(
                 EnvUtils.loadEnv("fragment_cache_threshold", config.getFragmentCacheThreshold()));
+        config.setEnableTimeSeriesCatalog(
+                EnvUtils.loadEnv("enableTimeSeriesCatalog", config.isEnableTimeSeriesCatalog()));
+        config.setTimeSeriesCatalogReconcileInterval(
+                EnvUtils.loadEnv(
+                        "timeSeriesCatalogReconcileInterval",
+                        config.getTimeSeriesCatalogReconcileInterval()));
         config.setBatchSize(EnvUtils.loadEnv("batchSize", config.getBatchSize()));
         config.setPythonCMD(EnvUtils.loadEnv("pythonCMD", config.getPythonCMD()));
         config.setTransformTaskThreadPoolSize(
@@ -333,6 +490,16 @@ public class ConfigDescriptor {
                 EnvUtils.loadEnv("expectedStorageUnitNum", config.getExpectedStorageUnitNum()));
         config.setLocalParquetStorage(
                 EnvUtils.loadEnv("isLocalParquetStorage", config.isLocalParquetStorage()));
+        config.setThriftServerType(
+                EnvUtils.loadEnv("thriftServerType", config.getThriftServerType()));
+        config.setThriftSelectorThreadNum(
+                EnvUtils.loadEnv("thriftSelectorThreadNum", config.getThriftSelectorThreadNum()));
+        config.setThriftSelectorWorkerThreadNum(
+                EnvUtils.loadEnv(
+                        "thriftSelectorWorkerThreadNum",
+                        config.getThriftSelectorWorkerThreadNum()));
+        config.setThriftMaxReadBufferBytes(
+                EnvUtils.loadEnv("thriftMaxReadBufferBytes", config.getThriftMaxReadBufferBytes()));
     }
 
     private void loadUDFListFromFile() {
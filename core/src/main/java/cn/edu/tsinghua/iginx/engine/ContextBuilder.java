@@ -2,6 +2,7 @@ package cn.edu.tsinghua.iginx.engine;
 
 import cn.edu.tsinghua.iginx.conf.Config;
 import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.PreparedStatementManager.PreparedSql;
 import cn.edu.tsinghua.iginx.engine.shared.RequestContext;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.RawDataType;
 import cn.edu.tsinghua.iginx.engine.shared.operator.tag.AndTagFilter;
@@ -15,6 +16,7 @@ import cn.edu.tsinghua.iginx.utils.ByteUtils;
 import cn.edu.tsinghua.iginx.utils.TimeUtils;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -205,6 +207,28 @@ public class ContextBuilder {
         return new RequestContext(req.getSessionId(), req.getStatement());
     }
 
+    public RequestContext build(ExecutePreparedStatementReq req, PreparedSql preparedSql) {
+        List<DataType> types = req.getDataTypeList();
+        Bitmap bitmap = new Bitmap(types.size(), req.getBitmap());
+        Object[] nonNullValues =
+                (Object[])
+                        ByteUtils.getRowValuesByDataType(
+                                Collections.singletonList(req.bufferForValues()),
+                                types,
+                                Collections.singletonList(req.bufferForBitmap()))[0];
+        List<Object> parameters = new ArrayList<>();
+        int index = 0;
+        for (int i = 0; i < types.size(); i++) {
+            parameters.add(bitmap.get(i) ? nonNullValues[index++] : null);
+        }
+
+        RequestContext ctx = new RequestContext(req.getSessionId(), preparedSql.getSql());
+        ctx.setPreparedSql(preparedSql);
+        ctx.setParameters(parameters);
+        ctx.setParameterTypes(types);
+        return ctx;
+    }
+
     public RequestContext build(ExecuteStatementReq req) {
         return new RequestContext(req.getSessionId(), req.getStatement(), true);
     }
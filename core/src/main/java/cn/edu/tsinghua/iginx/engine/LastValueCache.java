@@ -0,0 +1,429 @@
+package cn.edu.tsinghua.iginx.engine;
+
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.FilterPushDownUtils;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.BitmapView;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Last;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.ValueUtils;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
+import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
+import cn.edu.tsinghua.iginx.sql.expression.BaseExpression;
+import cn.edu.tsinghua.iginx.sql.statement.SelectStatement;
+import cn.edu.tsinghua.iginx.sql.statement.frompart.FromPart;
+import cn.edu.tsinghua.iginx.sql.statement.frompart.FromPartType;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.StringUtils;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * 最新值缓存：按序列名缓存其所有标签组合的最新数据点，只包含 LAST 的查询直接由缓存返回与 Last 函数相同格式的结果。序列在首次查询时从存储中加载，之后由写入更新，
+ * 删除使匹配的序列失效，序列数超过上限时淘汰最久未访问的序列
+ */
+public class LastValueCache {
+
+    private static final Config config = ConfigDescriptor.getInstance().getConfig();
+
+    private static final Header HEADER =
+            new Header(
+                    Field.KEY,
+                    Arrays.asList(
+                            new Field("path", DataType.BINARY),
+                            new Field("value", DataType.BINARY)));
+
+    private static class LastValueCacheHolder {
+
+        private static final LastValueCache instance =
+                new LastValueCache(config.isEnableLastValueCache(), config.getLastValueCacheSize());
+    }
+
+    private final boolean enabled;
+
+    private final int capacity;
+
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong loadedCount = new AtomicLong();
+
+    LastValueCache(boolean enabled, int capacity) {
+        this.enabled = enabled && capacity > 0;
+        this.capacity = capacity;
+        this.entries =
+                new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                        return size() > capacity;
+                    }
+                };
+    }
+
+    public static LastValueCache getInstance() {
+        return LastValueCacheHolder.instance;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /** 只包含对确定序列的 LAST、且过滤条件只限定 key 范围的简单查询可以由缓存返回 */
+    public boolean isAnswerable(SelectStatement statement) {
+        if (!enabled
+                || statement.getQueryType() != SelectStatement.QueryType.LastFirstQuery
+                || statement.getBaseExpressionMap().size() != 1
+                || !statement.getBaseExpressionMap().containsKey(Last.LAST)
+                || statement.getPathSet().size() > capacity) {
+            return false;
+        }
+        if (statement.hasJoinParts()
+                || statement.getFromParts().size() > 1
+                || !statement.getLayers().isEmpty()
+                || !statement.getSelectSubQueryParts().isEmpty()
+                || !statement.getWhereSubQueryParts().isEmpty()
+                || !statement.getHavingSubQueryParts().isEmpty()) {
+            return false;
+        }
+        for (FromPart fromPart : statement.getFromParts()) {
+            if (fromPart.getType() != FromPartType.PathFromPart) {
+                return false;
+            }
+        }
+        if (statement.getTagFilter() != null
+                || !statement.getAliasMap().isEmpty()
+                || !statement.getOrderByPaths().isEmpty()
+                || statement.getLimit() != Integer.MAX_VALUE
+                || statement.getOffset() != 0
+                || statement.isNeedLogicalExplain()
+                || statement.isNeedPhysicalExplain()) {
+            return false;
+        }
+        Filter filter = statement.getFilter();
+        if (filter != null && !FilterPushDownUtils.isKeyRangeFilter(filter)) {
+            return false;
+        }
+        for (String path : statement.getPathSet()) {
+            if (path.contains("*")) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 返回尚未加载的序列 */
+    public synchronized List<String> getMissingPaths(Collection<String> paths) {
+        List<String> missingPaths = new ArrayList<>();
+        for (String path : paths) {
+            Entry entry = entries.get(path);
+            if (entry == null || !entry.loaded) {
+                missingPaths.add(path);
+            }
+        }
+        return missingPaths;
+    }
+
+    /** 登记待加载的序列，加载期间到达的写入同样会更新这些序列 */
+    public synchronized Loader beginLoad(List<String> paths) {
+        List<Entry> loading = new ArrayList<>();
+        for (String path : paths) {
+            Entry entry = entries.get(path);
+            if (entry == null) {
+                entry = new Entry(path);
+                entries.put(path, entry);
+            }
+            loading.add(entry);
+        }
+        return new Loader(loading);
+    }
+
+    /** 由缓存构造查询结果，有序列未加载或最新点不在查询范围内而无法判断时返回 null */
+    public synchronized RowStream answer(SelectStatement statement) {
+        TimeInterval range =
+                statement.getFilter() == null
+                        ? new TimeInterval(0, Long.MAX_VALUE)
+                        : FilterPushDownUtils.getKeyInterval(statement.getFilter());
+        TreeMap<String, Entry> queried = new TreeMap<>();
+        for (String path : statement.getPathSet()) {
+            Entry entry = entries.get(path);
+            if (entry == null || !entry.loaded) {
+                return null;
+            }
+            queried.put(path, entry);
+        }
+        List<Row> rows = new ArrayList<>();
+        for (BaseExpression expression : statement.getBaseExpressionMap().get(Last.LAST)) {
+            String path = expression.getPathName();
+            List<Point> points = new ArrayList<>();
+            // 与 Last 函数一致，结果包含以该路径为前缀的所有被查询的序列
+            for (Entry entry : queried.tailMap(path, true).values()) {
+                if (!entry.path.startsWith(path)) {
+                    break;
+                }
+                for (Point point : entry.points.values()) {
+                    if (point.key >= range.getEndTime()) {
+                        return null;
+                    }
+                    if (point.key >= range.getStartTime()) {
+                        points.add(point);
+                    }
+                }
+            }
+            points.sort(
+                    Comparator.comparingLong((Point point) -> point.key)
+                            .thenComparing(point -> point.fullName));
+            for (Point point : points) {
+                rows.add(
+                        new Row(
+                                HEADER,
+                                point.key,
+                                new Object[] {
+                                    point.fullName.getBytes(StandardCharsets.UTF_8), point.value
+                                }));
+            }
+        }
+        hitCount.incrementAndGet();
+        return new Table(HEADER, rows);
+    }
+
+    /** 写入成功后调用，用写入数据中每条序列的最后一个点更新已缓存的序列 */
+    public void update(DataView data) {
+        if (!enabled) {
+            return;
+        }
+        int pathNum = data.getPathNum();
+        boolean[] cached = new boolean[pathNum];
+        boolean anyCached = false;
+        synchronized (this) {
+            for (int i = 0; i < pathNum; i++) {
+                cached[i] = entries.containsKey(data.getPath(i));
+                anyCached |= cached[i];
+            }
+        }
+        if (!anyCached) {
+            return;
+        }
+        int[] lastIndices = new int[pathNum];
+        Object[] lastValues = new Object[pathNum];
+        Arrays.fill(lastIndices, -1);
+        if (data.isColumnData()) {
+            for (int i = 0; i < pathNum; i++) {
+                if (!cached[i]) {
+                    continue;
+                }
+                BitmapView bitmap = data.getBitmapView(i);
+                int offset = 0;
+                for (int j = 0; j < data.getTimeSize(); j++) {
+                    if (!bitmap.get(j)) {
+                        continue;
+                    }
+                    if (lastIndices[i] < 0 || data.getKey(j) >= data.getKey(lastIndices[i])) {
+                        lastIndices[i] = j;
+                        lastValues[i] = data.getValue(i, offset);
+                    }
+                    offset++;
+                }
+            }
+        } else {
+            for (int j = 0; j < data.getTimeSize(); j++) {
+                BitmapView bitmap = data.getBitmapView(j);
+                int offset = 0;
+                for (int i = 0; i < pathNum; i++) {
+                    if (!bitmap.get(i)) {
+                        continue;
+                    }
+                    if (cached[i]
+                            && (lastIndices[i] < 0
+                                    || data.getKey(j) >= data.getKey(lastIndices[i]))) {
+                        lastIndices[i] = j;
+                        lastValues[i] = data.getValue(j, offset);
+                    }
+                    offset++;
+                }
+            }
+        }
+        synchronized (this) {
+            for (int i = 0; i < pathNum; i++) {
+                if (lastIndices[i] < 0) {
+                    continue;
+                }
+                Entry entry = entries.get(data.getPath(i));
+                if (entry == null) {
+                    continue;
+                }
+                DataType type = data.getDataType(i);
+                entry.merge(
+                        new Point(
+                                Field.toFullName(data.getPath(i), data.getTags(i)),
+                                data.getKey(lastIndices[i]),
+                                ValueUtils.toString(lastValues[i], type)
+                                        .getBytes(StandardCharsets.UTF_8)),
+                        true);
+            }
+        }
+    }
+
+    /** 写入失败时数据可能部分生效，使写入的序列失效 */
+    public synchronized void invalidate(DataView data) {
+        for (int i = 0; i < data.getPathNum(); i++) {
+            entries.remove(data.getPath(i));
+        }
+    }
+
+    /** 删除数据或序列后调用，使匹配的序列失效 */
+    public synchronized void invalidate(List<String> patterns) {
+        if (patterns == null || patterns.contains("*")) {
+            entries.clear();
+            return;
+        }
+        List<Pattern> compiled = new ArrayList<>();
+        for (String pattern : patterns) {
+            compiled.add(Pattern.compile(StringUtils.reformatPath(pattern)));
+        }
+        entries.keySet()
+                .removeIf(
+                        path -> {
+                            for (Pattern pattern : compiled) {
+                                if (pattern.matcher(path).matches()) {
+                                    return true;
+                                }
+                            }
+                            return false;
+                        });
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /** 由缓存返回的查询数 */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /** 从存储中加载的序列数 */
+    public long getLoadedCount() {
+        return loadedCount.get();
+    }
+
+    private static String getPathName(String fullName) {
+        int index = fullName.indexOf('{');
+        return index < 0 ? fullName : fullName.substring(0, index);
+    }
+
+    /** 一次加载：读取待加载序列在全部时间范围上的 LAST 结果并合并到缓存 */
+    public class Loader {
+
+        private final List<Entry> loading;
+
+        private Loader(List<Entry> loading) {
+            this.loading = loading;
+        }
+
+        /** 合并 LAST 查询的结果，期间已失效或被淘汰的序列被忽略 */
+        public void complete(RowStream stream) throws PhysicalException {
+            Map<String, List<Point>> points = new HashMap<>();
+            try {
+                Header header = stream.getHeader();
+                int pathIndex = header.indexOf("path");
+                int valueIndex = header.indexOf("value");
+                while (stream.hasNext()) {
+                    Row row = stream.next();
+                    String fullName =
+                            new String((byte[]) row.getValue(pathIndex), StandardCharsets.UTF_8);
+                    points.computeIfAbsent(getPathName(fullName), k -> new ArrayList<>())
+                            .add(
+                                    new Point(
+                                            fullName,
+                                            row.getKey(),
+                                            (byte[]) row.getValue(valueIndex)));
+                }
+            } finally {
+                stream.close();
+            }
+            synchronized (LastValueCache.this) {
+                for (Entry entry : loading) {
+                    if (entries.get(entry.path) != entry) {
+                        continue;
+                    }
+                    for (Point point : points.getOrDefault(entry.path, new ArrayList<>())) {
+                        entry.merge(point, false);
+                    }
+                    entry.loaded = true;
+                    loadedCount.incrementAndGet();
+                }
+            }
+        }
+
+        /** 加载失败时移除尚未加载完成的序列 */
+        public void abort() {
+            synchronized (LastValueCache.this) {
+                for (Entry entry : loading) {
+                    if (!entry.loaded) {
+                        entries.remove(entry.path, entry);
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final String path;
+
+        // 序列名相同、标签不同的各条序列的最新点，键为带标签的完整路径
+        private final Map<String, Point> points = new HashMap<>();
+
+        private boolean loaded = false;
+
+        Entry(String path) {
+            this.path = path;
+        }
+
+        /** 合并一个数据点，replaceEqual 表示 key 相同时是否覆盖，写入覆盖而加载的旧结果不覆盖 */
+        void merge(Point point, boolean replaceEqual) {
+            Point current = points.get(point.fullName);
+            if (current == null
+                    || point.key > current.key
+                    || (replaceEqual && point.key == current.key)) {
+                points.put(point.fullName, point);
+            }
+        }
+    }
+
+    private static class Point {
+
+        private final String fullName;
+
+        private final long key;
+
+        private final byte[] value;
+
+        Point(String fullName, long key, byte[] value) {
+            this.fullName = fullName;
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package cn.edu.tsinghua.iginx.engine;
+
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.logical.generator.LogicalGenerator;
+import cn.edu.tsinghua.iginx.engine.shared.RequestContext;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.metadata.DefaultMetaManager;
+import cn.edu.tsinghua.iginx.sql.statement.Statement;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SQL 语法树与查询逻辑计划的 LRU 缓存，键为规范化后的 SQL。语法树只被访问不被修改，可以在请求间共享；逻辑计划记录生成时的元数据版本，分片或 schemaMapping
+ * 变化后失效，每次取出的都是副本，含有 now() 的语句不缓存逻辑计划
+ */
+public class PlanCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PlanCache.class);
+
+    private static final Config config = ConfigDescriptor.getInstance().getConfig();
+
+    // 超过该长度的 SQL 不缓存，避免大批量写入语句占满缓存
+    private static final int MAX_CACHED_SQL_LENGTH = 8192;
+
+    private static class PlanCacheHolder {
+
+        private static final PlanCache instance =
+                new PlanCache(
+                        config.isEnablePlanCache(),
+                        config.getPlanCacheSize(),
+                        () -> DefaultMetaManager.getInstance().getMetaVersion());
+    }
+
+    private final boolean enabled;
+
+    private final LongSupplier metaVersionSupplier;
+
+    private final Map<String, ParseTree> parseTrees;
+
+    private final Map<String, CachedPlan> plans;
+
+    private final AtomicLong parseTreeHits = new AtomicLong();
+
+    private final AtomicLong parseTreeMisses = new AtomicLong();
+
+    private final AtomicLong planHits = new AtomicLong();
+
+    private final AtomicLong planMisses = new AtomicLong();
+
+    PlanCache(boolean enabled, int capacity, LongSupplier metaVersionSupplier) {
+        this.enabled = enabled && capacity > 0;
+        this.metaVersionSupplier = metaVersionSupplier;
+        this.parseTrees = createLruMap(capacity);
+        this.plans = createLruMap(capacity);
+    }
+
+    public static PlanCache getInstance() {
+        return PlanCacheHolder.instance;
+    }
+
+    private static <V> Map<String, V> createLruMap(int capacity) {
+        return Collections.synchronizedMap(
+                new LinkedHashMap<String, V>(16, 0.75f, true) {
+                    @Override
+                    protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                        return size() > capacity;
+                    }
+                });
+    }
+
+    /** 合并引号外的连续空白并去掉末尾的分号，引号内的内容与大小写保持不变 */
+    public static String normalize(String sql) {
+        StringBuilder builder = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                builder.append(c);
+                if (c == '\\' && i + 1 < sql.length()) {
+                    builder.append(sql.charAt(++i));
+                } else if (c == quote) {
+                    quote = 0;
+                }
+                continue;
+            }
+            if (Character.isWhitespace(c)) {
+                pendingSpace = builder.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                builder.append(' ');
+                pendingSpace = false;
+            }
+            if (c == '\'' || c == '"' || c == '`') {
+                quote = c;
+            }
+            builder.append(c);
+        }
+        int length = builder.length();
+        while (length > 0
+                && (builder.charAt(length - 1) == ';' || builder.charAt(length - 1) == ' ')) {
+            length--;
+        }
+        builder.setLength(length);
+        return builder.toString();
+    }
+
+    private boolean isCacheable(String sql) {
+        return enabled && sql != null && sql.length() <= MAX_CACHED_SQL_LENGTH;
+    }
+
+    /** 含有 now() 的语句每次执行时取值不同，预编译语句的计划依赖绑定的参数，二者的逻辑计划都不能按 SQL 复用 */
+    private boolean isPlanCacheable(RequestContext ctx) {
+        Statement statement = ctx.getStatement();
+        return isCacheable(ctx.getSql())
+                && ctx.getPreparedSql() == null
+                && (statement == null || !statement.isTimeDependent());
+    }
+
+    /** 返回缓存的语法树，未命中时返回 null */
+    public ParseTree getParseTree(String sql) {
+        if (!isCacheable(sql)) {
+            return null;
+        }
+        ParseTree tree = parseTrees.get(normalize(sql));
+        (tree == null ? parseTreeMisses : parseTreeHits).incrementAndGet();
+        return tree;
+    }
+
+    public void putParseTree(String sql, ParseTree tree) {
+        if (isCacheable(sql)) {
+            parseTrees.put(normalize(sql), tree);
+        }
+    }
+
+    private static String planKey(String sql, LogicalGenerator generator) {
+        return generator.getClass().getName() + '\n' + normalize(sql);
+    }
+
+    /** 当前的元数据版本，生成逻辑计划前读取并在 putPlan 时传入 */
+    public long getMetaVersion() {
+        return metaVersionSupplier.getAsLong();
+    }
+
+    /** 返回缓存的逻辑计划的副本，未命中或元数据已变化时返回 null */
+    public Operator getPlan(RequestContext ctx, LogicalGenerator generator) {
+        if (!isPlanCacheable(ctx)) {
+            return null;
+        }
+        String key = planKey(ctx.getSql(), generator);
+        CachedPlan plan = plans.get(key);
+        if (plan != null && plan.metaVersion != getMetaVersion()) {
+            plans.remove(key);
+            plan = null;
+        }
+        if (plan == null) {
+            planMisses.incrementAndGet();
+            return null;
+        }
+        planHits.incrementAndGet();
+        return plan.root.copy();
+    }
+
+    /** 缓存逻辑计划的副本，metaVersion 为生成计划前读取的元数据版本 */
+    public void putPlan(
+            RequestContext ctx, LogicalGenerator generator, Operator root, long metaVersion) {
+        if (!isPlanCacheable(ctx) || root == null || metaVersion != getMetaVersion()) {
+            return;
+        }
+        Operator copy;
+        try {
+            copy = root.copy();
+        } catch (RuntimeException e) {
+            logger.debug(
+                    "logical plan of [{}] can not be copied, skip caching it", ctx.getSql(), e);
+            return;
+        }
+        if (copy != null) {
+            plans.put(planKey(ctx.getSql(), generator), new CachedPlan(copy, metaVersion));
+        }
+    }
+
+    public void clear() {
+        parseTrees.clear();
+        plans.clear();
+    }
+
+    public long getParseTreeHits() {
+        return parseTreeHits.get();
+    }
+
+    public long getParseTreeMisses() {
+        return parseTreeMisses.get();
+    }
+
+    public long getPlanHits() {
+        return planHits.get();
+    }
+
+    public long getPlanMisses() {
+        return planMisses.get();
+    }
+
+    private static class CachedPlan {
+
+        private final Operator root;
+
+        private final long metaVersion;
+
+        CachedPlan(Operator root, long metaVersion) {
+            this.root = root;
+            this.metaVersion = metaVersion;
+        }
+    }
+}
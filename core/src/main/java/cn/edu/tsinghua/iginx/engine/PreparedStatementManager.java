@@ -0,0 +1,119 @@
+package cn.edu.tsinghua.iginx.engine;
+
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.sql.IginXSqlVisitor;
+import cn.edu.tsinghua.iginx.sql.statement.Statement;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+/** 服务端预编译语句。语句模板以 ? 作为参数占位符，预编译时解析一次，执行时将带类型的参数按位置绑定到语法树上生成语句，不再拼接与重新解析 SQL */
+public class PreparedStatementManager {
+
+    private static final Config config = ConfigDescriptor.getInstance().getConfig();
+
+    private static final PreparedStatementManager instance = new PreparedStatementManager();
+
+    private final AtomicLong idGenerator = new AtomicLong();
+
+    private final Map<Long, PreparedSql> statements = new ConcurrentHashMap<>();
+
+    private final Map<Long, Set<Long>> sessionStatements = new ConcurrentHashMap<>();
+
+    private PreparedStatementManager() {}
+
+    public static PreparedStatementManager getInstance() {
+        return instance;
+    }
+
+    /** 解析并注册一个预编译语句，会话打开的语句数达到上限时返回 null，语法错误时抛出 SQLParserException */
+    public PreparedSql prepare(long sessionId, String sql) {
+        ParseTree tree = StatementBuilder.getInstance().parse(sql);
+        Set<Long> ids =
+                sessionStatements.computeIfAbsent(sessionId, k -> ConcurrentHashMap.newKeySet());
+        synchronized (ids) {
+            if (ids.size() >= config.getMaxPreparedStatementsPerSession()) {
+                return null;
+            }
+            PreparedSql statement =
+                    new PreparedSql(idGenerator.incrementAndGet(), sessionId, sql, tree);
+            statements.put(statement.getId(), statement);
+            ids.add(statement.getId());
+            return statement;
+        }
+    }
+
+    /** 返回会话的预编译语句，不存在或属于其他会话时返回 null */
+    public PreparedSql getStatement(long sessionId, long statementId) {
+        PreparedSql statement = statements.get(statementId);
+        if (statement == null || statement.sessionId != sessionId) {
+            return null;
+        }
+        return statement;
+    }
+
+    public void close(long sessionId, long statementId) {
+        if (getStatement(sessionId, statementId) == null) {
+            return;
+        }
+        statements.remove(statementId);
+        Set<Long> ids = sessionStatements.get(sessionId);
+        if (ids != null) {
+            ids.remove(statementId);
+        }
+    }
+
+    public void closeSessionStatements(long sessionId) {
+        Set<Long> ids = sessionStatements.remove(sessionId);
+        if (ids != null) {
+            ids.forEach(statements::remove);
+        }
+    }
+
+    public int getStatementCount() {
+        return statements.size();
+    }
+
+    public static class PreparedSql {
+
+        private final long id;
+
+        private final long sessionId;
+
+        private final String sql;
+
+        private final ParseTree tree;
+
+        private final int parameterCount;
+
+        PreparedSql(long id, long sessionId, String sql, ParseTree tree) {
+            this.id = id;
+            this.sessionId = sessionId;
+            this.sql = sql;
+            this.tree = tree;
+            this.parameterCount = IginXSqlVisitor.getParameterCount(tree);
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public int getParameterCount() {
+            return parameterCount;
+        }
+
+        /** 将参数按位置绑定到语法树上生成语句，参数个数或类型不符时抛出 SQLParserException */
+        public Statement bind(List<Object> parameters, List<DataType> types) {
+            return new IginXSqlVisitor(parameters, types).visit(tree);
+        }
+    }
+}
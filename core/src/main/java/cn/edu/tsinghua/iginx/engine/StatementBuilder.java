@@ -43,6 +43,8 @@ public class StatementBuilder {
 
     private static final StatementBuilder instance = new StatementBuilder();
 
+    private static final PlanCache planCache = PlanCache.getInstance();
+
     private StatementBuilder() {}
 
     public static StatementBuilder getInstance() {
@@ -50,7 +52,29 @@ public class StatementBuilder {
     }
 
     public void buildFromSQL(RequestContext ctx) {
-        String sql = ctx.getSql();
+        Statement statement;
+        if (ctx.getPreparedSql() != null) {
+            statement = ctx.getPreparedSql().bind(ctx.getParameters(), ctx.getParameterTypes());
+        } else {
+            String sql = ctx.getSql();
+            ParseTree tree = planCache.getParseTree(sql);
+            boolean cached = tree != null;
+            if (!cached) {
+                tree = parse(sql);
+            }
+
+            IginXSqlVisitor visitor = new IginXSqlVisitor();
+            statement = visitor.visit(tree);
+            // 写入语句携带数据，不缓存其语法树
+            if (!cached && statement.getType() != StatementType.INSERT) {
+                planCache.putParseTree(sql, tree);
+            }
+        }
+        ctx.setStatement(statement);
+        ctx.setSqlType(typeMap.get(statement.getType()));
+    }
+
+    public ParseTree parse(String sql) {
         SqlLexer lexer = new SqlLexer(CharStreams.fromString(sql));
         lexer.removeErrorListeners();
         lexer.addErrorListener(SQLParseError.INSTANCE);
@@ -60,10 +84,6 @@ public class StatementBuilder {
         parser.removeErrorListeners();
         parser.addErrorListener(SQLParseError.INSTANCE);
 
-        IginXSqlVisitor visitor = new IginXSqlVisitor();
-        ParseTree tree = parser.sqlStatement();
-        Statement statement = visitor.visit(tree);
-        ctx.setStatement(statement);
-        ctx.setSqlType(typeMap.get(statement.getType()));
+        return parser.sqlStatement();
     }
 }
@@ -45,6 +45,9 @@ import cn.edu.tsinghua.iginx.engine.shared.source.SourceType;
 import cn.edu.tsinghua.iginx.exceptions.ExecutionException;
 import cn.edu.tsinghua.iginx.exceptions.SQLParserException;
 import cn.edu.tsinghua.iginx.exceptions.StatusCode;
+import cn.edu.tsinghua.iginx.resource.AdmissionController;
+import cn.edu.tsinghua.iginx.resource.MemoryBroker;
+import cn.edu.tsinghua.iginx.resource.QueryMemoryContext;
 import cn.edu.tsinghua.iginx.resource.ResourceManager;
 import cn.edu.tsinghua.iginx.sql.statement.DataStatement;
 import cn.edu.tsinghua.iginx.sql.statement.DeleteStatement;
@@ -61,6 +64,7 @@ import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.thrift.Status;
 import cn.edu.tsinghua.iginx.utils.Bitmap;
 import cn.edu.tsinghua.iginx.utils.ByteUtils;
+import cn.edu.tsinghua.iginx.utils.ColumnarDataSetUtils;
 import cn.edu.tsinghua.iginx.utils.DataTypeUtils;
 import cn.edu.tsinghua.iginx.utils.RpcUtils;
 import java.lang.reflect.InvocationTargetException;
@@ -83,6 +87,10 @@ public class StatementExecutor {
 
     private static final StatementBuilder builder = StatementBuilder.getInstance();
 
+    private static final PlanCache planCache = PlanCache.getInstance();
+
+    private static final LastValueCache lastValueCache = LastValueCache.getInstance();
+
     private static final PhysicalEngine engine = PhysicalEngineImpl.getInstance();
 
     private static final ConstraintChecker checker =
@@ -91,6 +99,11 @@ public class StatementExecutor {
 
     private static final ResourceManager resourceManager = ResourceManager.getInstance();
 
+    private static final AdmissionController admissionController =
+            AdmissionController.getInstance();
+
+    private static final MemoryBroker memoryBroker = MemoryBroker.getInstance();
+
     private static final Map<StatementType, List<LogicalGenerator>> generatorMap = new HashMap<>();
 
     private static final List<LogicalGenerator> queryGeneratorList = new ArrayList<>();
@@ -229,17 +242,57 @@ public class StatementExecutor {
     }
 
     public void execute(RequestContext ctx) {
-        if (config.isEnableMemoryControl() && resourceManager.reject(ctx)) {
-            ctx.setResult(new Result(RpcUtils.SERVICE_UNAVAILABLE));
+        if (!config.isEnableAdmissionControl()) {
+            if (config.isEnableMemoryControl() && resourceManager.reject(ctx)) {
+                ctx.setResult(new Result(RpcUtils.SERVICE_UNAVAILABLE));
+                return;
+            }
+            executeWithMemoryContext(ctx);
             return;
         }
-        before(ctx, preExecuteProcessors);
-        if (ctx.isFromSQL()) {
-            executeSQL(ctx);
-        } else {
-            executeStatement(ctx);
+        Status status;
+        try {
+            status = admissionController.acquire(ctx);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            status =
+                    RpcUtils.status(
+                            StatusCode.SERVICE_UNAVAILABLE, "interrupted in admission queue");
+        }
+        if (status != RpcUtils.SUCCESS) {
+            ctx.setResult(new Result(status));
+            return;
+        }
+        try {
+            executeWithMemoryContext(ctx);
+        } finally {
+            admissionController.release();
+        }
+    }
+
+    /** 为请求创建内存账户并绑定到当前线程，流式查询的账户在游标关闭时释放，其余请求在执行结束后释放 */
+    private void executeWithMemoryContext(RequestContext ctx) {
+        QueryMemoryContext memoryContext = memoryBroker.open(ctx.getId());
+        ctx.setMemoryContext(memoryContext);
+        QueryMemoryContext previous = MemoryBroker.bind(memoryContext);
+        try {
+            before(ctx, preExecuteProcessors);
+            if (ctx.isFromSQL()) {
+                executeSQL(ctx);
+            } else {
+                executeStatement(ctx);
+            }
+            after(ctx, postExecuteProcessors);
+        } finally {
+            MemoryBroker.bind(previous);
+            Result result = ctx.getResult();
+            if (result == null
+                    || result.getStatus() != RpcUtils.SUCCESS
+                    || result.getResultStream() == null
+                    || !ctx.isUseStream()) {
+                memoryContext.close();
+            }
         }
-        after(ctx, postExecuteProcessors);
     }
 
     public void executeSQL(RequestContext ctx) {
@@ -270,6 +323,11 @@ public class StatementExecutor {
                 StatementType type = statement.getType();
                 switch (type) {
                     case SELECT:
+                        if (processLastQuery(ctx)) {
+                            return;
+                        }
+                        process(ctx);
+                        return;
                     case DELETE:
                     case INSERT:
                     case SHOW_TIME_SERIES:
@@ -311,7 +369,7 @@ public class StatementExecutor {
         List<LogicalGenerator> generatorList = generatorMap.get(type);
         for (LogicalGenerator generator : generatorList) {
             before(ctx, preLogicalProcessors);
-            Operator root = generator.generate(ctx);
+            Operator root = generate(ctx, generator);
             after(ctx, postLogicalProcessors);
             if (constraintManager.check(root) && checker.check(root)) {
                 if (type == StatementType.SELECT) {
@@ -341,6 +399,61 @@ public class StatementExecutor {
         throw new ExecutionException("Execute Error: can not construct a legal logical tree.");
     }
 
+    /** 只包含 LAST 的查询尝试由最新值缓存返回，未缓存的序列先通过一次全范围的 LAST 查询加载，无法由缓存返回时返回 false */
+    private boolean processLastQuery(RequestContext ctx)
+            throws ExecutionException, PhysicalException {
+        SelectStatement statement = (SelectStatement) ctx.getStatement();
+        if (!lastValueCache.isAnswerable(statement)) {
+            return false;
+        }
+        List<String> missingPaths = lastValueCache.getMissingPaths(statement.getPathSet());
+        if (!missingPaths.isEmpty()) {
+            LastValueCache.Loader loader = lastValueCache.beginLoad(missingPaths);
+            try {
+                loader.complete(executeLastQuery(ctx, missingPaths));
+            } catch (ExecutionException | PhysicalException | RuntimeException e) {
+                loader.abort();
+                throw e;
+            }
+        }
+        RowStream stream = lastValueCache.answer(statement);
+        if (stream == null) {
+            return false;
+        }
+        setResult(ctx, stream);
+        return true;
+    }
+
+    private RowStream executeLastQuery(RequestContext ctx, List<String> paths)
+            throws ExecutionException, PhysicalException {
+        SelectStatement statement =
+                new SelectStatement(paths, 0, Long.MAX_VALUE, AggregateType.LAST);
+        RequestContext loadContext = new RequestContext(ctx.getSessionId(), statement);
+        loadContext.setMemoryContext(ctx.getMemoryContext());
+        for (LogicalGenerator generator : queryGeneratorList) {
+            Operator root = generator.generate(loadContext);
+            if (constraintManager.check(root) && checker.check(root)) {
+                return engine.execute(loadContext, root);
+            }
+        }
+        throw new ExecutionException("Execute Error: can not construct a legal logical tree.");
+    }
+
+    /** 由 SQL 发起的查询优先使用缓存的逻辑计划，未命中时生成并缓存 */
+    private Operator generate(RequestContext ctx, LogicalGenerator generator) {
+        if (!ctx.isFromSQL() || ctx.getStatement().getType() != StatementType.SELECT) {
+            return generator.generate(ctx);
+        }
+        Operator root = planCache.getPlan(ctx, generator);
+        if (root != null) {
+            return root;
+        }
+        long metaVersion = planCache.getMetaVersion();
+        root = generator.generate(ctx);
+        planCache.putPlan(ctx, generator, root, metaVersion);
+        return root;
+    }
+
     private void processExplainLogicalStatement(RequestContext ctx, Operator root)
             throws PhysicalException, ExecutionException {
         List<Field> fields =
@@ -597,6 +710,11 @@ public class StatementExecutor {
                             }
                         });
 
+        if (ctx.getColumnarCompression() != null) {
+            setColumnarResult(ctx, stream, paths, tagsList, types);
+            return;
+        }
+
         List<Long> timestampList = new ArrayList<>();
         List<ByteBuffer> valuesList = new ArrayList<>();
         List<ByteBuffer> bitmapList = new ArrayList<>();
@@ -641,6 +759,41 @@ public class StatementExecutor {
         stream.close();
     }
 
+    private void setColumnarResult(
+            RequestContext ctx,
+            RowStream stream,
+            List<String> paths,
+            List<Map<String, String>> tagsList,
+            List<DataType> types)
+            throws PhysicalException {
+        boolean hasKey = stream.getHeader().hasKey();
+        List<Object[]> rows = new ArrayList<>();
+        List<Long> keys = new ArrayList<>();
+        while (stream.hasNext()) {
+            Row row = stream.next();
+            rows.add(row.getValues());
+            keys.add(row.getKey());
+        }
+        stream.close();
+
+        if (rows.isEmpty()) { // empty result
+            setEmptyQueryResp(ctx);
+            return;
+        }
+
+        long[] keyArray = null;
+        if (hasKey) {
+            keyArray = keys.stream().mapToLong(Long::longValue).toArray();
+        }
+        Result result = new Result(RpcUtils.SUCCESS);
+        result.setColumnarDataSet(
+                ColumnarDataSetUtils.encode(rows, keyArray, types, ctx.getColumnarCompression()));
+        result.setPaths(paths);
+        result.setTagsList(tagsList);
+        result.setDataTypes(types);
+        ctx.setResult(result);
+    }
+
     private void setShowTSRowStreamResult(RequestContext ctx, RowStream stream)
             throws PhysicalException {
         if (ctx.isUseStream()) {
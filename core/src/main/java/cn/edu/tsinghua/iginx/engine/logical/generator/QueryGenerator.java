@@ -573,7 +573,7 @@ public class QueryGenerator extends AbstractGenerator {
             }
 
             List<String> joinColumns = joinCondition.getJoinColumns();
-            if (joinColumns != null && joinColumns.size() == 1) {
+            if (joinColumns != null && !joinColumns.isEmpty()) {
                 joinAlgType = JoinAlgType.HashJoin;
             }
 
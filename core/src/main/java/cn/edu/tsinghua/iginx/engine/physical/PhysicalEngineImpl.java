@@ -48,6 +48,8 @@ import cn.edu.tsinghua.iginx.engine.shared.source.OperatorSource;
 import cn.edu.tsinghua.iginx.metadata.entity.FragmentMeta;
 import cn.edu.tsinghua.iginx.metadata.entity.StorageUnitMeta;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
+import cn.edu.tsinghua.iginx.resource.MemoryBroker;
+import cn.edu.tsinghua.iginx.resource.QueryMemoryContext;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Bitmap;
 import cn.edu.tsinghua.iginx.utils.ByteUtils;
@@ -192,8 +194,11 @@ public class PhysicalEngineImpl implements PhysicalEngine {
         }
         PhysicalTask task = optimizer.optimize(root);
         ctx.setPhysicalTree(task);
+        // 子查询等内部构造的请求没有单独的内存账户，使用发起它的查询的账户
+        QueryMemoryContext memoryContext =
+                ctx.getMemoryContext() != null ? ctx.getMemoryContext() : MemoryBroker.current();
         List<StoragePhysicalTask> storageTasks = new ArrayList<>();
-        getStorageTasks(storageTasks, task);
+        getStorageTasks(storageTasks, task, memoryContext);
         storageTaskExecutor.commit(storageTasks);
         TaskExecuteResult result = task.getResult();
         if (result.getException() != null) {
@@ -235,23 +240,26 @@ public class PhysicalEngineImpl implements PhysicalEngine {
         }
     }
 
-    private void getStorageTasks(List<StoragePhysicalTask> tasks, PhysicalTask root) {
+    /** 收集任务树中的存储任务，同时为每个任务设置所属查询的内存账户 */
+    private void getStorageTasks(
+            List<StoragePhysicalTask> tasks, PhysicalTask root, QueryMemoryContext memoryContext) {
         if (root == null) {
             return;
         }
+        root.setMemoryContext(memoryContext);
         if (root.getType() == TaskType.Storage) {
             tasks.add((StoragePhysicalTask) root);
         } else if (root.getType() == TaskType.BinaryMemory) {
             BinaryMemoryPhysicalTask task = (BinaryMemoryPhysicalTask) root;
-            getStorageTasks(tasks, task.getParentTaskA());
-            getStorageTasks(tasks, task.getParentTaskB());
+            getStorageTasks(tasks, task.getParentTaskA(), memoryContext);
+            getStorageTasks(tasks, task.getParentTaskB(), memoryContext);
         } else if (root.getType() == TaskType.UnaryMemory) {
             UnaryMemoryPhysicalTask task = (UnaryMemoryPhysicalTask) root;
-            getStorageTasks(tasks, task.getParentTask());
+            getStorageTasks(tasks, task.getParentTask(), memoryContext);
         } else if (root.getType() == TaskType.MultipleMemory) {
             MultipleMemoryPhysicalTask task = (MultipleMemoryPhysicalTask) root;
             for (PhysicalTask parentTask : task.getParentTasks()) {
-                getStorageTasks(tasks, parentTask);
+                getStorageTasks(tasks, parentTask, memoryContext);
             }
         }
     }
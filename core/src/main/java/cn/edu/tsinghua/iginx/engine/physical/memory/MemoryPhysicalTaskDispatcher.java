@@ -24,6 +24,8 @@ import cn.edu.tsinghua.iginx.engine.physical.memory.queue.MemoryPhysicalTaskQueu
 import cn.edu.tsinghua.iginx.engine.physical.memory.queue.MemoryPhysicalTaskQueueImpl;
 import cn.edu.tsinghua.iginx.engine.physical.task.MemoryPhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
+import cn.edu.tsinghua.iginx.resource.MemoryBroker;
+import cn.edu.tsinghua.iginx.resource.QueryMemoryContext;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.slf4j.Logger;
@@ -70,6 +72,9 @@ public class MemoryPhysicalTaskDispatcher {
                                         while (currentTask != null) {
                                             TaskExecuteResult result;
                                             long startTime = System.currentTimeMillis();
+                                            QueryMemoryContext previous =
+                                                    MemoryBroker.bind(
+                                                            currentTask.getMemoryContext());
                                             try {
                                                 result = currentTask.execute();
                                             } catch (Exception e) {
@@ -77,6 +82,8 @@ public class MemoryPhysicalTaskDispatcher {
                                                 result =
                                                         new TaskExecuteResult(
                                                                 new PhysicalException(e));
+                                            } finally {
+                                                MemoryBroker.bind(previous);
                                             }
                                             long span = System.currentTimeMillis() - startTime;
                                             currentTask.setSpan(span);
@@ -21,7 +21,9 @@ package cn.edu.tsinghua.iginx.engine.physical.memory.execute;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.operator.BinaryOperator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.MultipleOperator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.UnaryOperator;
+import java.util.List;
 
 public interface OperatorMemoryExecutor {
 
@@ -30,4 +32,15 @@ public interface OperatorMemoryExecutor {
 
     RowStream executeBinaryOperator(BinaryOperator operator, RowStream streamA, RowStream streamB)
             throws PhysicalException;
+
+    RowStream executeMultipleOperator(MultipleOperator operator, List<RowStream> streams)
+            throws PhysicalException;
+
+    default RowStream executeUnaryOperators(List<UnaryOperator> operators, RowStream stream)
+            throws PhysicalException {
+        for (UnaryOperator operator : operators) {
+            stream = executeUnaryOperator(operator, stream);
+        }
+        return stream;
+    }
 }
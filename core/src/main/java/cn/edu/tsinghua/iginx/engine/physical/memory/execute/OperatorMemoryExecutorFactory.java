@@ -18,6 +18,7 @@
  */
 package cn.edu.tsinghua.iginx.engine.physical.memory.execute;
 
+import cn.edu.tsinghua.iginx.conf.Config;
 import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.naive.NaiveOperatorMemoryExecutor;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream.StreamOperatorMemoryExecutor;
@@ -30,7 +31,9 @@ public class OperatorMemoryExecutorFactory {
     private OperatorMemoryExecutorFactory() {}
 
     public OperatorMemoryExecutor getMemoryExecutor() {
-        if (ConfigDescriptor.getInstance().getConfig().isUseStreamExecutor()) {
+        Config config = ConfigDescriptor.getInstance().getConfig();
+        // 流水线执行时算子之间不物化完整的中间结果
+        if (config.isUseStreamExecutor() || config.isEnablePipelinedExecution()) {
             return StreamOperatorMemoryExecutor.getInstance();
         }
         return NaiveOperatorMemoryExecutor.getInstance();
@@ -0,0 +1,140 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.batch;
+
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.exception.InvalidOperatorParameterException;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.OperatorMemoryExecutor;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream.StreamOperatorMemoryExecutor;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.BatchStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.BatchToRowStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowToBatchStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.operator.BinaryOperator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
+import cn.edu.tsinghua.iginx.engine.shared.operator.MultipleOperator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Select;
+import cn.edu.tsinghua.iginx.engine.shared.operator.UnaryOperator;
+import java.util.List;
+
+/** 以列式批为单位执行算子，不支持批处理的算子交由 StreamOperatorMemoryExecutor 执行 */
+public class BatchOperatorMemoryExecutor implements OperatorMemoryExecutor {
+
+    private final int batchSize;
+
+    private BatchOperatorMemoryExecutor() {
+        this.batchSize = ConfigDescriptor.getInstance().getConfig().getExecutionBatchSize();
+    }
+
+    public static BatchOperatorMemoryExecutor getInstance() {
+        return BatchOperatorMemoryExecutorHolder.INSTANCE;
+    }
+
+    public static boolean supportBatch(UnaryOperator operator) {
+        switch (operator.getType()) {
+            case Project:
+            case Select:
+            case Downsample:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static boolean supportBatch(List<UnaryOperator> operators) {
+        for (UnaryOperator operator : operators) {
+            if (!supportBatch(operator)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public RowStream executeUnaryOperator(UnaryOperator operator, RowStream stream)
+            throws PhysicalException {
+        if (!supportBatch(operator)) {
+            return StreamOperatorMemoryExecutor.getInstance()
+                    .executeUnaryOperator(operator, stream);
+        }
+        BatchStream batchStream = toBatchStream(stream);
+        switch (operator.getType()) {
+            case Project:
+                batchStream = executeProject((Project) operator, batchStream);
+                break;
+            case Select:
+                batchStream = executeSelect((Select) operator, batchStream);
+                break;
+            case Downsample:
+                batchStream = executeDownsample((Downsample) operator, batchStream);
+                break;
+        }
+        return new BatchToRowStreamWrapper(batchStream);
+    }
+
+    @Override
+    public RowStream executeBinaryOperator(
+            BinaryOperator operator, RowStream streamA, RowStream streamB)
+            throws PhysicalException {
+        return StreamOperatorMemoryExecutor.getInstance()
+                .executeBinaryOperator(operator, streamA, streamB);
+    }
+
+    @Override
+    public RowStream executeMultipleOperator(MultipleOperator operator, List<RowStream> streams)
+            throws PhysicalException {
+        return StreamOperatorMemoryExecutor.getInstance()
+                .executeMultipleOperator(operator, streams);
+    }
+
+    private BatchStream toBatchStream(RowStream stream) {
+        // 相邻的批处理算子之间直接传递列式批，避免重复的行列转换
+        if (stream instanceof BatchToRowStreamWrapper) {
+            return ((BatchToRowStreamWrapper) stream).getBatchStream();
+        }
+        return new RowToBatchStreamWrapper(stream, batchSize);
+    }
+
+    private BatchStream executeProject(Project project, BatchStream stream) {
+        return new ProjectBatchStream(project, stream);
+    }
+
+    private BatchStream executeSelect(Select select, BatchStream stream) {
+        return new SelectBatchStream(select, stream);
+    }
+
+    private BatchStream executeDownsample(Downsample downsample, BatchStream stream)
+            throws PhysicalException {
+        if (!stream.getHeader().hasKey()) {
+            throw new InvalidOperatorParameterException(
+                    "downsample operator is not support for row stream without timestamps.");
+        }
+        return new DownsampleBatchStream(downsample, stream, batchSize);
+    }
+
+    private static class BatchOperatorMemoryExecutorHolder {
+
+        private static final BatchOperatorMemoryExecutor INSTANCE =
+                new BatchOperatorMemoryExecutor();
+
+        private BatchOperatorMemoryExecutorHolder() {}
+    }
+}
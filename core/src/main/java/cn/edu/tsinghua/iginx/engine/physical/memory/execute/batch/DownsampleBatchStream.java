@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.batch;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalTaskExecuteFailureException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.SlidingWindowAggregator;
+import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.BatchStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
+import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
+import java.util.Map;
+
+public class DownsampleBatchStream extends UnaryBatchStream {
+
+    private final Downsample downsample;
+
+    private final SetMappingFunction function;
+
+    private final Map<String, Value> params;
+
+    private final int batchSize;
+
+    private Header header;
+
+    private RowBatch nextBatch;
+
+    private boolean hasInitialized = false;
+
+    private RowBatch current;
+
+    private int position;
+
+    private SlidingWindowAggregator aggregator;
+
+    private boolean finished = false;
+
+    public DownsampleBatchStream(Downsample downsample, BatchStream stream, int batchSize) {
+        super(stream);
+        this.downsample = downsample;
+        this.function = (SetMappingFunction) downsample.getFunctionCall().getFunction();
+        this.params = downsample.getFunctionCall().getParams();
+        this.batchSize = batchSize;
+    }
+
+    private void initialize() throws PhysicalException {
+        if (hasInitialized) {
+            return;
+        }
+        hasInitialized = true;
+        if (hasMoreInput()) {
+            Accumulator accumulator;
+            try {
+                accumulator = function.createAccumulator(current.getHeader(), params);
+            } catch (Exception e) {
+                throw new PhysicalTaskExecuteFailureException(
+                        "encounter error when execute set mapping function "
+                                + function.getIdentifier()
+                                + ".",
+                        e);
+            }
+            if (accumulator != null) {
+                aggregator = new SlidingWindowAggregator(accumulator, downsample);
+            }
+        }
+        nextBatch = loadNext();
+    }
+
+    @Override
+    public Header getHeader() throws PhysicalException {
+        if (!hasInitialized) {
+            initialize();
+        }
+        if (header == null) {
+            header = Header.EMPTY_HEADER;
+        }
+        return header;
+    }
+
+    private boolean hasMoreInput() throws PhysicalException {
+        while (current == null || position >= current.getSize()) {
+            if (!stream.hasNext()) {
+                return false;
+            }
+            current = stream.next();
+            position = 0;
+        }
+        return true;
+    }
+
+    private RowBatch loadNext() throws PhysicalException {
+        if (aggregator != null) {
+            return loadNextWindows();
+        }
+        long bias = downsample.getTimeRange().getActualBeginTime();
+        long precision = downsample.getPrecision();
+        RowBatch result = null;
+        while ((result == null || result.getSize() < batchSize) && hasMoreInput()) {
+            long firstKey = current.getKey(position);
+            long timestamp = firstKey - (firstKey - bias) % precision;
+            // 同一个窗口的数据可能跨越多个批
+            RowBatch window = new RowBatch(current.getHeader(), current.getSize() - position);
+            while (hasMoreInput()) {
+                int end = position;
+                while (end < current.getSize() && current.getKey(end) < timestamp + precision) {
+                    end++;
+                }
+                window.appendRange(current, position, end);
+                boolean closed = end < current.getSize();
+                position = end;
+                if (closed) {
+                    break;
+                }
+            }
+            Row row;
+            try {
+                row = function.transform(window, params);
+            } catch (Exception e) {
+                throw new PhysicalTaskExecuteFailureException(
+                        "encounter error when execute set mapping function "
+                                + function.getIdentifier()
+                                + ".",
+                        e);
+            }
+            if (row == null) {
+                continue;
+            }
+            if (result == null) {
+                if (header == null) {
+                    header = new Header(Field.KEY, row.getHeader().getFields());
+                }
+                result = new RowBatch(header, batchSize);
+            }
+            result.appendRow(timestamp, row.getValues());
+        }
+        return result;
+    }
+
+    /** 增量计算：批中属于同一窗格的连续行按列累加，窗口覆盖的窗格全部结束后输出 */
+    private RowBatch loadNextWindows() throws PhysicalException {
+        RowBatch result = null;
+        while (result == null || result.getSize() < batchSize) {
+            if (aggregator.hasNext()) {
+                Row row = aggregator.next();
+                if (result == null) {
+                    if (header == null) {
+                        header = aggregator.getHeader();
+                    }
+                    result = new RowBatch(header, batchSize);
+                }
+                result.appendRow(row.getKey(), row.getValues());
+            } else if (hasMoreInput()) {
+                long paneEnd = aggregator.getPaneEnd(current.getKey(position));
+                int end = position + 1;
+                while (end < current.getSize() && current.getKey(end) < paneEnd) {
+                    end++;
+                }
+                aggregator.accumulate(current, position, end);
+                position = end;
+            } else if (!finished) {
+                aggregator.finish();
+                finished = true;
+            } else {
+                break;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        if (!hasInitialized) {
+            initialize();
+        }
+        if (nextBatch == null) {
+            nextBatch = loadNext();
+        }
+        return nextBatch != null;
+    }
+
+    @Override
+    public RowBatch next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new IllegalStateException("batch stream doesn't have more data!");
+        }
+        RowBatch batch = nextBatch;
+        nextBatch = null;
+        return batch;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.batch;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.BatchStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.ColumnVector;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
+import cn.edu.tsinghua.iginx.utils.StringUtils;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.regex.Pattern;
+
+public class ProjectBatchStream extends UnaryBatchStream {
+
+    private final Project project;
+
+    private Header header;
+
+    private int[] indices;
+
+    private RowBatch nextBatch = null;
+
+    public ProjectBatchStream(Project project, BatchStream stream) {
+        super(stream);
+        this.project = project;
+    }
+
+    @Override
+    public Header getHeader() throws PhysicalException {
+        if (header == null) {
+            List<String> patterns = project.getPatterns();
+            Header header = stream.getHeader();
+            List<Field> targetFields = new ArrayList<>();
+            List<Integer> targetIndices = new ArrayList<>();
+
+            List<Pattern> compiledPatterns = new ArrayList<>();
+            for (String pattern : patterns) {
+                compiledPatterns.add(
+                        StringUtils.isPattern(pattern)
+                                ? Pattern.compile(StringUtils.reformatPath(pattern))
+                                : null);
+            }
+            for (int i = 0; i < header.getFieldSize(); i++) {
+                Field field = header.getField(i);
+                for (int j = 0; j < patterns.size(); j++) {
+                    Pattern pattern = compiledPatterns.get(j);
+                    if (pattern == null
+                            ? patterns.get(j).equals(field.getFullName())
+                            : pattern.matcher(field.getFullName()).matches()) {
+                        targetFields.add(field);
+                        targetIndices.add(i);
+                    }
+                }
+            }
+            this.indices = targetIndices.stream().mapToInt(Integer::intValue).toArray();
+            this.header = new Header(header.getKey(), targetFields);
+        }
+        return header;
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        if (nextBatch == null) {
+            nextBatch = calculateNext();
+        }
+        return nextBatch != null;
+    }
+
+    private RowBatch calculateNext() throws PhysicalException {
+        Header header = getHeader();
+        while (stream.hasNext()) {
+            RowBatch batch = stream.next().project(header, indices);
+            // 所有投影列均为空的行需要被过滤掉
+            BitSet allNull = new BitSet(batch.getSize());
+            allNull.set(0, batch.getSize());
+            for (int i = 0; i < batch.getColumnSize() && !allNull.isEmpty(); i++) {
+                ColumnVector column = batch.getColumn(i);
+                allNull.and(column.getNulls());
+            }
+            if (allNull.isEmpty()) {
+                return batch;
+            }
+            allNull.flip(0, batch.getSize());
+            if (!allNull.isEmpty()) {
+                return batch.select(allNull);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public RowBatch next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new IllegalStateException("batch stream doesn't have more data!");
+        }
+        RowBatch batch = nextBatch;
+        nextBatch = null;
+        return batch;
+    }
+}
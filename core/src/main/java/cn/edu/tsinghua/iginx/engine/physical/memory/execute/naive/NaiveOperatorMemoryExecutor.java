@@ -28,14 +28,20 @@ import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalTaskExecuteFailur
 import cn.edu.tsinghua.iginx.engine.physical.exception.UnexpectedOperatorException;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.OperatorMemoryExecutor;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream.GroupByLazyStream;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream.MultiwayMergeLazyStream;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream.PrefetchRowStream;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.FilterUtils;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.PartialAggregateUtils;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowUtils;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.SlidingWindowAggregator;
 import cn.edu.tsinghua.iginx.engine.shared.Constants;
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
 import cn.edu.tsinghua.iginx.engine.shared.function.MappingFunction;
 import cn.edu.tsinghua.iginx.engine.shared.function.RowMappingFunction;
 import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
@@ -50,7 +56,10 @@ import cn.edu.tsinghua.iginx.engine.shared.operator.Join;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Limit;
 import cn.edu.tsinghua.iginx.engine.shared.operator.MappingTransform;
 import cn.edu.tsinghua.iginx.engine.shared.operator.MarkJoin;
+import cn.edu.tsinghua.iginx.engine.shared.operator.MultipleOperator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.MultiwayMerge;
 import cn.edu.tsinghua.iginx.engine.shared.operator.OuterJoin;
+import cn.edu.tsinghua.iginx.engine.shared.operator.PartialAggregateMerge;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Rename;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Reorder;
@@ -65,6 +74,7 @@ import cn.edu.tsinghua.iginx.engine.shared.operator.Union;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.FilterType;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.PathFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
 import cn.edu.tsinghua.iginx.engine.shared.operator.type.OuterJoinType;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Bitmap;
@@ -160,6 +170,18 @@ public class NaiveOperatorMemoryExecutor implements OperatorMemoryExecutor {
         }
     }
 
+    @Override
+    public RowStream executeMultipleOperator(MultipleOperator operator, List<RowStream> streams)
+            throws PhysicalException {
+        if (operator.getType() == OperatorType.MultiwayMerge) {
+            return executeMultiwayMerge((MultiwayMerge) operator, streams);
+        }
+        if (operator.getType() == OperatorType.PartialAggregateMerge) {
+            return PartialAggregateUtils.merge((PartialAggregateMerge) operator, streams);
+        }
+        throw new UnexpectedOperatorException("unknown multiple operator: " + operator.getType());
+    }
+
     private Table transformToTable(RowStream stream) throws PhysicalException {
         if (stream instanceof Table) {
             return (Table) stream;
@@ -248,6 +270,25 @@ public class NaiveOperatorMemoryExecutor implements OperatorMemoryExecutor {
                     "downsample operator is not support for row stream without timestamps.");
         }
         List<Row> rows = table.getRows();
+        if (rows.isEmpty()) {
+            return Table.EMPTY_TABLE;
+        }
+        SetMappingFunction function =
+                (SetMappingFunction) downsample.getFunctionCall().getFunction();
+        Map<String, Value> params = downsample.getFunctionCall().getParams();
+        Accumulator accumulator;
+        try {
+            accumulator = function.createAccumulator(header, params);
+        } catch (Exception e) {
+            throw new PhysicalTaskExecuteFailureException(
+                    "encounter error when execute set mapping function "
+                            + function.getIdentifier()
+                            + ".",
+                    e);
+        }
+        if (accumulator != null) {
+            return executeIncrementalDownsample(downsample, accumulator, rows);
+        }
         long bias = downsample.getTimeRange().getActualBeginTime();
         long endTime = downsample.getTimeRange().getActualEndTime();
         long precision = downsample.getPrecision();
@@ -255,9 +296,6 @@ public class NaiveOperatorMemoryExecutor implements OperatorMemoryExecutor {
         // startTime + (n - 1) * slideDistance + precision - 1 >= endTime
         int n = (int) (Math.ceil((double) (endTime - bias - precision + 1) / slideDistance) + 1);
         TreeMap<Long, List<Row>> groups = new TreeMap<>();
-        SetMappingFunction function =
-                (SetMappingFunction) downsample.getFunctionCall().getFunction();
-        Map<String, Value> params = downsample.getFunctionCall().getParams();
         if (precision == slideDistance) {
             for (Row row : rows) {
                 long timestamp = row.getKey() - (row.getKey() - bias) % precision;
@@ -308,6 +346,34 @@ public class NaiveOperatorMemoryExecutor implements OperatorMemoryExecutor {
         return new Table(newHeader, transformedRows);
     }
 
+    private RowStream executeIncrementalDownsample(
+            Downsample downsample, Accumulator accumulator, List<Row> rows)
+            throws PhysicalException {
+        for (int i = 1; i < rows.size(); i++) {
+            if (rows.get(i - 1).getKey() > rows.get(i).getKey()) {
+                rows = new ArrayList<>(rows);
+                rows.sort(Comparator.comparingLong(Row::getKey));
+                break;
+            }
+        }
+        SlidingWindowAggregator aggregator = new SlidingWindowAggregator(accumulator, downsample);
+        List<Row> transformedRows = new ArrayList<>();
+        for (Row row : rows) {
+            aggregator.accumulate(row);
+            while (aggregator.hasNext()) {
+                transformedRows.add(aggregator.next());
+            }
+        }
+        aggregator.finish();
+        while (aggregator.hasNext()) {
+            transformedRows.add(aggregator.next());
+        }
+        if (transformedRows.isEmpty()) {
+            return Table.EMPTY_TABLE;
+        }
+        return new Table(aggregator.getHeader(), transformedRows);
+    }
+
     private RowStream executeRowTransform(RowTransform rowTransform, Table table)
             throws PhysicalException {
         List<Pair<RowMappingFunction, Map<String, Value>>> list = new ArrayList<>();
@@ -492,7 +558,11 @@ public class NaiveOperatorMemoryExecutor implements OperatorMemoryExecutor {
     }
 
     private RowStream executeGroupBy(GroupBy groupBy, RowStream stream) throws PhysicalException {
-        List<Row> rows = RowUtils.cacheGroupByResult(groupBy, stream);
+        RowStream groupByStream = new GroupByLazyStream(groupBy, stream);
+        List<Row> rows = new ArrayList<>();
+        while (groupByStream.hasNext()) {
+            rows.add(groupByStream.next());
+        }
         if (rows.isEmpty()) {
             return Table.EMPTY_TABLE;
         }
@@ -2271,16 +2341,26 @@ public class NaiveOperatorMemoryExecutor implements OperatorMemoryExecutor {
         }
     }
 
+    private RowStream executeMultiwayMerge(MultiwayMerge merge, List<RowStream> streams)
+            throws PhysicalException {
+        // 各个输入在后台并行预取，归并结果直接写入输出行
+        RowStream stream = new MultiwayMergeLazyStream(merge, PrefetchRowStream.prefetch(streams));
+        return transformToTable(stream);
+    }
+
     private RowStream executeUnion(Union union, Table tableA, Table tableB)
             throws PhysicalException {
         // 检查时间是否一致
         Header headerA = tableA.getHeader();
         Header headerB = tableB.getHeader();
-        if (headerA.hasKey() ^ headerB.hasKey()) {
+        // 降采样等算子在没有数据时会返回空表头，此时以另一侧的表头为准
+        boolean isEmptyA = !headerA.hasKey() && headerA.getFieldSize() == 0;
+        boolean isEmptyB = !headerB.hasKey() && headerB.getFieldSize() == 0;
+        if (!isEmptyA && !isEmptyB && (headerA.hasKey() ^ headerB.hasKey())) {
             throw new InvalidOperatorParameterException(
                     "row stream to be union must have same fields");
         }
-        boolean hasTimestamp = headerA.hasKey();
+        boolean hasTimestamp = isEmptyA ? headerB.hasKey() : headerA.hasKey();
         Set<Field> targetFieldSet = new HashSet<>();
         targetFieldSet.addAll(headerA.getFields());
         targetFieldSet.addAll(headerB.getFields());
@@ -21,12 +21,14 @@ package cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalTaskExecuteFailureException;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.SlidingWindowAggregator;
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
 import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
 import java.util.ArrayList;
@@ -49,6 +51,10 @@ public class DownsampleLazyStream extends UnaryLazyStream {
 
     private Header header;
 
+    private SlidingWindowAggregator aggregator;
+
+    private boolean finished = false;
+
     public DownsampleLazyStream(Downsample downsample, RowStream stream) {
         super(stream);
         this.wrapper = new RowStreamWrapper(stream);
@@ -61,6 +67,21 @@ public class DownsampleLazyStream extends UnaryLazyStream {
         if (hasInitialized) {
             return;
         }
+        if (wrapper.hasNext()) {
+            Accumulator accumulator;
+            try {
+                accumulator = function.createAccumulator(wrapper.getHeader(), params);
+            } catch (Exception e) {
+                throw new PhysicalTaskExecuteFailureException(
+                        "encounter error when execute set mapping function "
+                                + function.getIdentifier()
+                                + ".",
+                        e);
+            }
+            if (accumulator != null) {
+                aggregator = new SlidingWindowAggregator(accumulator, downsample);
+            }
+        }
         nextTarget = loadNext();
         if (nextTarget != null) {
             header = nextTarget.getHeader();
@@ -83,6 +104,9 @@ public class DownsampleLazyStream extends UnaryLazyStream {
         if (nextTarget != null) {
             return nextTarget;
         }
+        if (aggregator != null) {
+            return loadNextWindow();
+        }
         Row row = null;
         long timestamp = 0;
         long bias = downsample.getTimeRange().getActualBeginTime();
@@ -116,6 +140,21 @@ public class DownsampleLazyStream extends UnaryLazyStream {
                         row.getValues());
     }
 
+    /** 增量计算：逐行累加到所在窗格，窗口覆盖的窗格全部结束后输出 */
+    private Row loadNextWindow() throws PhysicalException {
+        while (!aggregator.hasNext()) {
+            if (wrapper.hasNext()) {
+                aggregator.accumulate(wrapper.next());
+            } else if (!finished) {
+                aggregator.finish();
+                finished = true;
+            } else {
+                return null;
+            }
+        }
+        return aggregator.next();
+    }
+
     @Override
     public boolean hasNext() throws PhysicalException {
         if (!hasInitialized) {
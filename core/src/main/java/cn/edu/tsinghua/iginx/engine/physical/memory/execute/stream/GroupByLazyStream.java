@@ -1,30 +1,83 @@
 package cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream;
 
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalTaskExecuteFailureException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.GroupByHashTable;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowSpillFile;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowUtils;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
+import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
 import cn.edu.tsinghua.iginx.engine.shared.operator.GroupBy;
+import cn.edu.tsinghua.iginx.resource.MemoryBroker;
+import cn.edu.tsinghua.iginx.resource.MemoryReservation;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Deque;
+import java.util.List;
 
+/** 单遍哈希分组聚合：逐行更新各分组的累加器状态，分组表超过 memoryBudget 或查询的内存预留被拒绝后新出现的分组按哈希分区溢写到磁盘，再逐个分区聚合 */
 public class GroupByLazyStream extends UnaryLazyStream {
 
+    private static final Config config = ConfigDescriptor.getInstance().getConfig();
+
+    private static final int PARTITION_BITS = 4;
+
+    private static final int PARTITION_COUNT = 1 << PARTITION_BITS;
+
+    private static final int MAX_SPILL_DEPTH = Long.SIZE / PARTITION_BITS;
+
     private final GroupBy groupBy;
 
+    private final long memoryBudget;
+
+    private final String spillDirectory;
+
     private Deque<Row> cache;
 
     private Header header;
 
+    private Header inputHeader;
+
+    private int[] groupIndices;
+
+    private List<Accumulator> accumulators;
+
+    private GroupByHashTable table;
+
+    private List<Integer> order;
+
+    private int position;
+
+    private RowSpillFile[] spillFiles;
+
+    private final Deque<SpilledPartition> partitions = new ArrayDeque<>();
+
+    private final MemoryReservation reservation;
+
     public GroupByLazyStream(GroupBy groupBy, RowStream stream) {
+        this(groupBy, stream, config.getGroupByMemoryBudget(), config.getSpillDirectory());
+    }
+
+    public GroupByLazyStream(
+            GroupBy groupBy, RowStream stream, long memoryBudget, String spillDirectory) {
         super(stream);
         this.groupBy = groupBy;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.reservation = MemoryBroker.newReservation("group by table");
     }
 
     @Override
     public Header getHeader() throws PhysicalException {
         if (header == null) {
-            cacheResult();
+            aggregate();
         }
         return header;
     }
@@ -32,9 +85,24 @@ public class GroupByLazyStream extends UnaryLazyStream {
     @Override
     public boolean hasNext() throws PhysicalException {
         if (header == null) {
-            cacheResult();
+            aggregate();
+        }
+        if (cache != null) {
+            return !cache.isEmpty();
         }
-        return cache.isEmpty();
+        while (order == null || position >= order.size()) {
+            if (partitions.isEmpty()) {
+                return false;
+            }
+            SpilledPartition partition = partitions.pollFirst();
+            table = new GroupByHashTable(inputHeader, groupIndices, accumulators);
+            while (partition.file.hasNext()) {
+                consume(partition.file.next(), partition.depth);
+            }
+            partition.file.close();
+            finishTable(partition.depth);
+        }
+        return true;
     }
 
     @Override
@@ -42,15 +110,132 @@ public class GroupByLazyStream extends UnaryLazyStream {
         if (!hasNext()) {
             throw new IllegalStateException("row stream doesn't have more data!");
         }
-        return cache.pollFirst();
+        if (cache != null) {
+            return cache.pollFirst();
+        }
+        return new Row(header, table.getResult(order.get(position++)));
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        for (SpilledPartition partition : partitions) {
+            partition.file.close();
+        }
+        partitions.clear();
+        table = null;
+        reservation.close();
+        super.close();
     }
 
-    private void cacheResult() throws PhysicalException {
-        this.cache = RowUtils.cacheGroupByResult(groupBy, stream);
-        if (cache.isEmpty()) {
+    private void aggregate() throws PhysicalException {
+        if (!stream.hasNext()) {
             header = Header.EMPTY_HEADER;
-        } else {
-            header = cache.peekFirst().getHeader();
+            order = new ArrayList<>();
+            return;
+        }
+        inputHeader = stream.getHeader();
+        List<String> cols = groupBy.getGroupByCols();
+        List<Field> fields = new ArrayList<>();
+        groupIndices = new int[cols.size()];
+        for (int i = 0; i < cols.size(); i++) {
+            int index = inputHeader.indexOf(cols.get(i));
+            if (index == -1) {
+                throw new PhysicalTaskExecuteFailureException(
+                        String.format("Group by col [%s] not exist.", cols.get(i)));
+            }
+            groupIndices[i] = index;
+            fields.add(inputHeader.getField(index));
+        }
+
+        accumulators = new ArrayList<>();
+        for (FunctionCall functionCall : groupBy.getFunctionCallList()) {
+            SetMappingFunction function = (SetMappingFunction) functionCall.getFunction();
+            Accumulator accumulator;
+            try {
+                accumulator = function.createAccumulator(inputHeader, functionCall.getParams());
+            } catch (Exception e) {
+                throw new PhysicalTaskExecuteFailureException(
+                        "encounter error when execute set mapping function "
+                                + function.getIdentifier()
+                                + ".",
+                        e);
+            }
+            if (accumulator == null) {
+                // 存在不支持增量计算的函数，退回到物化分组后整体计算
+                cache = RowUtils.cacheGroupByResult(groupBy, stream);
+                header = cache.isEmpty() ? Header.EMPTY_HEADER : cache.peekFirst().getHeader();
+                return;
+            }
+            accumulators.add(accumulator);
+            fields.addAll(accumulator.getHeader().getFields());
+        }
+        header = new Header(fields);
+
+        table = new GroupByHashTable(inputHeader, groupIndices, accumulators);
+        while (stream.hasNext()) {
+            consume(stream.next(), 0);
+        }
+        finishTable(0);
+    }
+
+    private void consume(Row row, int depth) throws PhysicalException {
+        int group = table.find(row);
+        if (group == -1) {
+            long size = table.getEstimatedSize();
+            if ((size > memoryBudget || !reservation.tryResize(size)) && depth < MAX_SPILL_DEPTH) {
+                spill(row, depth);
+                return;
+            }
+            // 已达到最大溢写深度时只能继续在内存中聚合，超出预算时取消查询
+            reservation.resize(size);
+            group = table.add(row);
+        }
+        try {
+            table.accumulate(group, row);
+        } catch (RuntimeException e) {
+            throw new PhysicalTaskExecuteFailureException(
+                    "encounter error when execute set mapping function.", e);
+        }
+    }
+
+    private void spill(Row row, int depth) throws PhysicalException {
+        if (spillFiles == null) {
+            spillFiles = new RowSpillFile[PARTITION_COUNT];
+            for (int i = 0; i < PARTITION_COUNT; i++) {
+                spillFiles[i] = new RowSpillFile(inputHeader, spillDirectory);
+            }
+        }
+        int shift = Long.SIZE - PARTITION_BITS * (depth + 1);
+        int index = (int) (table.hash(row) >>> shift) & (PARTITION_COUNT - 1);
+        spillFiles[index].write(row);
+    }
+
+    /** 当前分组表已经读完全部输入，准备输出其中的分组，并登记本轮溢写的分区 */
+    private void finishTable(int depth) throws PhysicalException {
+        order = table.getOutputOrder();
+        position = 0;
+        if (spillFiles == null) {
+            return;
+        }
+        for (int i = PARTITION_COUNT - 1; i >= 0; i--) {
+            if (spillFiles[i].getRowCount() == 0) {
+                spillFiles[i].close();
+            } else {
+                partitions.addFirst(new SpilledPartition(spillFiles[i], depth + 1));
+            }
+        }
+        spillFiles = null;
+    }
+
+    private static class SpilledPartition {
+
+        private final RowSpillFile file;
+
+        private final int depth;
+
+        SpilledPartition(RowSpillFile file, int depth) {
+            this.file = file;
+            this.depth = depth;
         }
     }
 }
@@ -4,53 +4,30 @@ import cn.edu.tsinghua.iginx.engine.physical.exception.InvalidOperatorParameterE
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.FilterUtils;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowUtils;
-import cn.edu.tsinghua.iginx.engine.shared.data.Value;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
-import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.ValueUtils;
 import cn.edu.tsinghua.iginx.engine.shared.operator.InnerJoin;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.FilterType;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.PathFilter;
-import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 
-public class HashInnerJoinLazyStream extends BinaryLazyStream {
+public class HashInnerJoinLazyStream extends HashJoinLazyStream {
 
     private final InnerJoin innerJoin;
 
-    private final HashMap<Integer, List<Row>> streamBHashMap;
-
-    private final Deque<Row> cache;
-
-    private Header header;
-
-    private int index;
-
-    private boolean hasInitialized = false;
-
-    private String joinColumnA;
-
-    private String joinColumnB;
-
-    private boolean needTypeCast = false;
+    private int[] indexOfJoinColumnsInTable;
 
     public HashInnerJoinLazyStream(InnerJoin innerJoin, RowStream streamA, RowStream streamB) {
         super(streamA, streamB);
         this.innerJoin = innerJoin;
-        this.streamBHashMap = new HashMap<>();
-        this.cache = new LinkedList<>();
     }
 
-    private void initialize() throws PhysicalException {
+    @Override
+    protected Pair<int[], int[]> initializeJoin() throws PhysicalException {
         Filter filter = innerJoin.getFilter();
 
         Header headerA = streamA.getHeader();
@@ -67,6 +44,8 @@ public class HashInnerJoinLazyStream extends BinaryLazyStream {
                     "using(or natural) and on operator cannot be used at the same time");
         }
 
+        int[] indicesA;
+        int[] indicesB;
         if (filter != null) {
             if (!filter.getType().equals(FilterType.Path)) {
                 throw new InvalidOperatorParameterException(
@@ -78,131 +57,58 @@ public class HashInnerJoinLazyStream extends BinaryLazyStream {
                         "hash join only support equal path filter yet.");
             }
             if (headerA.indexOf(p.k) != -1 && headerB.indexOf(p.v) != -1) {
-                this.joinColumnA = p.k.replaceFirst(innerJoin.getPrefixA() + '.', "");
-                this.joinColumnB = p.v.replaceFirst(innerJoin.getPrefixB() + ".", "");
+                indicesA = new int[] {headerA.indexOf(p.k)};
+                indicesB = new int[] {headerB.indexOf(p.v)};
             } else if (headerA.indexOf(p.v) != -1 && headerB.indexOf(p.k) != -1) {
-                this.joinColumnA = p.v.replaceFirst(innerJoin.getPrefixA() + '.', "");
-                this.joinColumnB = p.k.replaceFirst(innerJoin.getPrefixB() + ".", "");
+                indicesA = new int[] {headerA.indexOf(p.v)};
+                indicesB = new int[] {headerB.indexOf(p.k)};
             } else {
                 throw new InvalidOperatorParameterException("invalid hash join path filter input.");
             }
-        } else {
-            if (joinColumns.size() != 1) {
-                throw new InvalidOperatorParameterException(
-                        "hash join only support the number of join column is one yet.");
-            }
-            if (headerA.indexOf(innerJoin.getPrefixA() + '.' + joinColumns.get(0)) != -1
-                    && headerB.indexOf(innerJoin.getPrefixB() + '.' + joinColumns.get(0)) != -1) {
-                this.joinColumnA = this.joinColumnB = joinColumns.get(0);
-            } else {
-                throw new InvalidOperatorParameterException("invalid hash join column input.");
-            }
-        }
-        this.index = headerB.indexOf(innerJoin.getPrefixB() + '.' + joinColumnB);
-
-        int indexA = headerA.indexOf(innerJoin.getPrefixA() + '.' + joinColumnA);
-        DataType dataTypeA = headerA.getField(indexA).getType();
-        DataType dataTypeB = headerB.getField(index).getType();
-        if (ValueUtils.isNumericType(dataTypeA) && ValueUtils.isNumericType(dataTypeB)) {
-            this.needTypeCast = true;
-        }
-
-        while (streamB.hasNext()) {
-            Row rowB = streamB.next();
-            Value value = rowB.getAsValue(innerJoin.getPrefixB() + '.' + joinColumnB);
-            if (value == null) {
-                continue;
-            }
-            if (needTypeCast) {
-                value = ValueUtils.transformToDouble(value);
-            }
-            int hash;
-            if (value.getDataType() == DataType.BINARY) {
-                hash = Arrays.hashCode(value.getBinaryV());
-            } else {
-                hash = value.getValue().hashCode();
-            }
-            List<Row> rows = streamBHashMap.getOrDefault(hash, new ArrayList<>());
-            rows.add(rowB);
-            streamBHashMap.putIfAbsent(hash, rows);
-        }
-
-        if (filter != null) { // Join condition: on
             this.header =
                     RowUtils.constructNewHead(
                             headerA, headerB, innerJoin.getPrefixA(), innerJoin.getPrefixB());
-        } else { // Join condition: natural or using
-            this.header =
+        } else {
+            indicesA = new int[joinColumns.size()];
+            indicesB = new int[joinColumns.size()];
+            for (int i = 0; i < joinColumns.size(); i++) {
+                indicesA[i] = headerA.indexOf(innerJoin.getPrefixA() + '.' + joinColumns.get(i));
+                indicesB[i] = headerB.indexOf(innerJoin.getPrefixB() + '.' + joinColumns.get(i));
+                if (indicesA[i] == -1 || indicesB[i] == -1) {
+                    throw new InvalidOperatorParameterException("invalid hash join column input.");
+                }
+            }
+            Pair<int[], Header> pair =
                     RowUtils.constructNewHead(
-                                    headerA,
-                                    headerB,
-                                    innerJoin.getPrefixA(),
-                                    innerJoin.getPrefixB(),
-                                    Collections.singletonList(joinColumnB),
-                                    true)
-                            .getV();
+                            headerA,
+                            headerB,
+                            innerJoin.getPrefixA(),
+                            innerJoin.getPrefixB(),
+                            joinColumns,
+                            true);
+            this.indexOfJoinColumnsInTable = pair.getK();
+            this.header = pair.getV();
         }
-
-        this.hasInitialized = true;
+        return new Pair<>(indicesA, indicesB);
     }
 
     @Override
-    public Header getHeader() throws PhysicalException {
-        if (!hasInitialized) {
-            initialize();
-        }
-        return header;
+    protected boolean canBuildOnA() {
+        return true;
     }
 
     @Override
-    public boolean hasNext() throws PhysicalException {
-        if (!hasInitialized) {
-            initialize();
-        }
-        while (cache.isEmpty() && streamA.hasNext()) {
-            tryMatch();
-        }
-        return !cache.isEmpty();
-    }
-
-    private void tryMatch() throws PhysicalException {
-        Row rowA = streamA.next();
-
-        Value value = rowA.getAsValue(innerJoin.getPrefixA() + '.' + joinColumnA);
-        if (value == null) {
-            return;
-        }
-        if (needTypeCast) {
-            value = ValueUtils.transformToDouble(value);
-        }
-        int hash;
-        if (value.getDataType() == DataType.BINARY) {
-            hash = Arrays.hashCode(value.getBinaryV());
-        } else {
-            hash = value.getValue().hashCode();
-        }
-
-        if (streamBHashMap.containsKey(hash)) {
-            List<Row> rowsB = streamBHashMap.get(hash);
-            for (Row rowB : rowsB) {
-                if (innerJoin.getFilter() != null) {
-                    Row row = RowUtils.constructNewRow(header, rowA, rowB);
-                    if (FilterUtils.validate(innerJoin.getFilter(), row)) {
-                        cache.addLast(row);
-                    }
-                } else {
-                    Row row = RowUtils.constructNewRow(header, rowA, rowB, new int[] {index}, true);
-                    cache.addLast(row);
-                }
+    protected boolean tryJoin(Row rowA, Row rowB) throws PhysicalException {
+        if (innerJoin.getFilter() != null) {
+            Row row = RowUtils.constructNewRow(header, rowA, rowB);
+            if (!FilterUtils.validate(innerJoin.getFilter(), row)) {
+                return false;
             }
+            cache.addLast(row);
+        } else {
+            cache.addLast(
+                    RowUtils.constructNewRow(header, rowA, rowB, indexOfJoinColumnsInTable, true));
         }
-    }
-
-    @Override
-    public Row next() throws PhysicalException {
-        if (!hasNext()) {
-            throw new IllegalStateException("row stream doesn't have more data!");
-        }
-        return cache.pollFirst();
+        return true;
     }
 }
@@ -0,0 +1,362 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream;
+
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.JoinHashTable;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowSpillFile;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.resource.MemoryBroker;
+import cn.edu.tsinghua.iginx.resource.MemoryReservation;
+import cn.edu.tsinghua.iginx.utils.Pair;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedList;
+import java.util.List;
+
+/** 哈希连接的公共流程：允许时选择较小的输入作为构建侧；构建侧超出内存预算或查询的内存预留被拒绝时，按连接键的哈希值将两侧分区溢写到磁盘，再逐个分区在内存中连接 */
+public abstract class HashJoinLazyStream extends BinaryLazyStream {
+
+    private static final Config config = ConfigDescriptor.getInstance().getConfig();
+
+    private static final int PARTITION_COUNT = 16;
+
+    protected final Deque<Row> cache;
+
+    protected Header header;
+
+    private final long memoryBudget;
+
+    private final String spillDirectory;
+
+    private boolean hasInitialized = false;
+
+    private boolean buildOnA = false;
+
+    private int[] joinIndicesA;
+
+    private int[] joinIndicesB;
+
+    private JoinHashTable.KeyKind[] keyKinds;
+
+    private JoinHashTable table;
+
+    private List<Row> nullKeyBuildRows;
+
+    private boolean unmatchedBuildRowsEmitted = false;
+
+    private final Deque<Row> probePrefix;
+
+    private RowSpillFile[] buildPartitions;
+
+    private RowSpillFile[] probePartitions;
+
+    private int partition = -1;
+
+    private final MemoryReservation reservation;
+
+    public HashJoinLazyStream(RowStream streamA, RowStream streamB) {
+        this(streamA, streamB, config.getJoinMemoryBudget(), config.getSpillDirectory());
+    }
+
+    public HashJoinLazyStream(
+            RowStream streamA, RowStream streamB, long memoryBudget, String spillDirectory) {
+        super(streamA, streamB);
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
+        this.cache = new LinkedList<>();
+        this.probePrefix = new ArrayDeque<>();
+        this.reservation = MemoryBroker.newReservation("hash join table");
+    }
+
+    /** 解析连接条件并构造输出表头，返回两侧连接列在各自表头中的下标 */
+    protected abstract Pair<int[], int[]> initializeJoin() throws PhysicalException;
+
+    /** 连接键相等的一对行，返回是否满足连接条件，满足时由子类将结果放入 cache */
+    protected abstract boolean tryJoin(Row rowA, Row rowB) throws PhysicalException;
+
+    /** 探测行的所有候选行处理完毕，matchCount 为满足连接条件的行数 */
+    protected void afterProbe(Row row, boolean isRowA, int matchCount) throws PhysicalException {}
+
+    /** 连接键中存在空值的探测行，不会与任何行匹配 */
+    protected void onNullKeyProbeRow(Row row, boolean isRowA) throws PhysicalException {}
+
+    /** 构建侧中没有被匹配的行 */
+    protected void onUnmatchedBuildRow(Row row, boolean isRowA) throws PhysicalException {}
+
+    /** 一个分区（未溢写时即全部数据）的连接全部完成 */
+    protected void afterPartition() throws PhysicalException {}
+
+    /** 是否允许以 streamA 作为构建侧 */
+    protected boolean canBuildOnA() {
+        return false;
+    }
+
+    /** 探测行是否需要找出全部匹配的行，为 false 时找到第一行即停止 */
+    protected boolean needAllMatches() {
+        return true;
+    }
+
+    private void initialize() throws PhysicalException {
+        Pair<int[], int[]> joinIndices = initializeJoin();
+        this.joinIndicesA = joinIndices.k;
+        this.joinIndicesB = joinIndices.v;
+        this.keyKinds =
+                JoinHashTable.getKeyKinds(
+                        streamA.getHeader(), joinIndicesA, streamB.getHeader(), joinIndicesB);
+
+        List<Row> buildPrefix = new ArrayList<>();
+        if (canBuildOnA()) {
+            chooseBuildSide(buildPrefix);
+        }
+        build(buildPrefix);
+        this.hasInitialized = true;
+    }
+
+    /** 交替读取两侧的数据，先读完的一侧较小，作为构建侧；缓存超出内存预算时仍以 streamB 作为构建侧 */
+    private void chooseBuildSide(List<Row> buildPrefix) throws PhysicalException {
+        List<Row> rowsA = new ArrayList<>();
+        List<Row> rowsB = new ArrayList<>();
+        long memoryUsage = 0;
+        while (true) {
+            if (!streamB.hasNext()) {
+                break;
+            }
+            if (!streamA.hasNext()) {
+                buildOnA = true;
+                break;
+            }
+            if (memoryUsage > memoryBudget) {
+                break;
+            }
+            Row rowA = streamA.next();
+            Row rowB = streamB.next();
+            rowsA.add(rowA);
+            rowsB.add(rowB);
+            memoryUsage += RowSpillFile.estimateSize(rowA) + RowSpillFile.estimateSize(rowB);
+        }
+        buildPrefix.addAll(buildOnA ? rowsA : rowsB);
+        probePrefix.addAll(buildOnA ? rowsB : rowsA);
+    }
+
+    private void build(List<Row> buildPrefix) throws PhysicalException {
+        this.table = new JoinHashTable(keyKinds, getBuildIndices());
+        this.nullKeyBuildRows = new ArrayList<>();
+        for (Row row : buildPrefix) {
+            addBuildRow(row);
+        }
+        buildPrefix.clear();
+        RowStream buildStream = buildOnA ? streamA : streamB;
+        while (buildStream.hasNext()) {
+            addBuildRow(buildStream.next());
+        }
+        if (buildPartitions == null) {
+            return;
+        }
+        RowStream probeStream = buildOnA ? streamB : streamA;
+        while (!probePrefix.isEmpty()) {
+            writePartition(probePartitions, probePrefix.pollFirst(), getProbeIndices());
+        }
+        while (probeStream.hasNext()) {
+            writePartition(probePartitions, probeStream.next(), getProbeIndices());
+        }
+        this.table = null;
+    }
+
+    private void addBuildRow(Row row) throws PhysicalException {
+        if (buildPartitions != null) {
+            writePartition(buildPartitions, row, getBuildIndices());
+            return;
+        }
+        if (JoinHashTable.hasNullKey(row, getBuildIndices())) {
+            nullKeyBuildRows.add(row);
+        } else {
+            table.add(row);
+        }
+        long size = table.getEstimatedSize();
+        if (size > memoryBudget || !reservation.tryResize(size)) {
+            spillBuildSide();
+            reservation.resize(0);
+        }
+    }
+
+    private void spillBuildSide() throws PhysicalException {
+        Header buildHeader = buildOnA ? streamA.getHeader() : streamB.getHeader();
+        Header probeHeader = buildOnA ? streamB.getHeader() : streamA.getHeader();
+        buildPartitions = new RowSpillFile[PARTITION_COUNT];
+        probePartitions = new RowSpillFile[PARTITION_COUNT];
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            buildPartitions[i] = new RowSpillFile(buildHeader, spillDirectory);
+            probePartitions[i] = new RowSpillFile(probeHeader, spillDirectory);
+        }
+        for (int i = 0; i < table.size(); i++) {
+            writePartition(buildPartitions, table.getRow(i), getBuildIndices());
+        }
+        for (Row row : nullKeyBuildRows) {
+            writePartition(buildPartitions, row, getBuildIndices());
+        }
+        nullKeyBuildRows.clear();
+        // 分区阶段只使用空表计算连接键的哈希值
+        table = new JoinHashTable(keyKinds, getBuildIndices());
+    }
+
+    private void writePartition(RowSpillFile[] partitions, Row row, int[] indices)
+            throws PhysicalException {
+        int index = 0;
+        if (!JoinHashTable.hasNullKey(row, indices)) {
+            index = (int) (table.hash(row, indices) >>> 60) & (PARTITION_COUNT - 1);
+        }
+        partitions[index].write(row);
+    }
+
+    private void loadPartition(int index) throws PhysicalException {
+        table = new JoinHashTable(keyKinds, getBuildIndices());
+        nullKeyBuildRows = new ArrayList<>();
+        RowSpillFile partitionFile = buildPartitions[index];
+        while (partitionFile.hasNext()) {
+            Row row = partitionFile.next();
+            if (JoinHashTable.hasNullKey(row, getBuildIndices())) {
+                nullKeyBuildRows.add(row);
+            } else {
+                table.add(row);
+            }
+            // 分区已无法继续拆分，超出预算时取消查询
+            reservation.resize(table.getEstimatedSize());
+        }
+        partitionFile.close();
+        unmatchedBuildRowsEmitted = false;
+    }
+
+    /** 推进一步连接过程，全部完成时返回 false */
+    private boolean advance() throws PhysicalException {
+        if (table != null) {
+            Row row = nextProbeRow();
+            if (row != null) {
+                probe(row);
+                return true;
+            }
+            if (!unmatchedBuildRowsEmitted) {
+                for (int i = 0; i < table.size(); i++) {
+                    if (!table.isMatched(i)) {
+                        onUnmatchedBuildRow(table.getRow(i), buildOnA);
+                    }
+                }
+                for (Row buildRow : nullKeyBuildRows) {
+                    onUnmatchedBuildRow(buildRow, buildOnA);
+                }
+                afterPartition();
+                unmatchedBuildRowsEmitted = true;
+                return true;
+            }
+        }
+        if (buildPartitions == null || partition + 1 >= PARTITION_COUNT) {
+            return false;
+        }
+        if (partition >= 0) {
+            probePartitions[partition].close();
+        }
+        partition++;
+        loadPartition(partition);
+        return true;
+    }
+
+    private Row nextProbeRow() throws PhysicalException {
+        if (buildPartitions != null) {
+            RowSpillFile partitionFile = probePartitions[partition];
+            return partitionFile.hasNext() ? partitionFile.next() : null;
+        }
+        if (!probePrefix.isEmpty()) {
+            return probePrefix.pollFirst();
+        }
+        RowStream probeStream = buildOnA ? streamB : streamA;
+        return probeStream.hasNext() ? probeStream.next() : null;
+    }
+
+    private void probe(Row row) throws PhysicalException {
+        int[] probeIndices = getProbeIndices();
+        if (JoinHashTable.hasNullKey(row, probeIndices)) {
+            onNullKeyProbeRow(row, !buildOnA);
+            return;
+        }
+        int matchCount = 0;
+        for (int i = table.find(row, probeIndices); i != -1; i = table.next(i)) {
+            Row buildRow = table.getRow(i);
+            boolean matched = buildOnA ? tryJoin(buildRow, row) : tryJoin(row, buildRow);
+            if (matched) {
+                matchCount++;
+                table.markMatched(i);
+                if (!needAllMatches()) {
+                    break;
+                }
+            }
+        }
+        afterProbe(row, !buildOnA, matchCount);
+    }
+
+    private int[] getBuildIndices() {
+        return buildOnA ? joinIndicesA : joinIndicesB;
+    }
+
+    private int[] getProbeIndices() {
+        return buildOnA ? joinIndicesB : joinIndicesA;
+    }
+
+    @Override
+    public Header getHeader() throws PhysicalException {
+        if (!hasInitialized) {
+            initialize();
+        }
+        return header;
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        if (!hasInitialized) {
+            initialize();
+        }
+        while (cache.isEmpty() && advance()) {}
+        return !cache.isEmpty();
+    }
+
+    @Override
+    public Row next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new IllegalStateException("row stream doesn't have more data!");
+        }
+        return cache.pollFirst();
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        if (buildPartitions != null) {
+            for (int i = 0; i < PARTITION_COUNT; i++) {
+                buildPartitions[i].close();
+                probePartitions[i].close();
+            }
+        }
+        table = null;
+        reservation.close();
+        super.close();
+    }
+}
@@ -4,67 +4,39 @@ import cn.edu.tsinghua.iginx.engine.physical.exception.InvalidOperatorParameterE
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.FilterUtils;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowUtils;
-import cn.edu.tsinghua.iginx.engine.shared.data.Value;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
-import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.ValueUtils;
 import cn.edu.tsinghua.iginx.engine.shared.operator.OuterJoin;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.FilterType;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.PathFilter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.type.OuterJoinType;
-import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.Deque;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
-import java.util.Set;
 
-public class HashOuterJoinLazyStream extends BinaryLazyStream {
+public class HashOuterJoinLazyStream extends HashJoinLazyStream {
 
     private final OuterJoin outerJoin;
 
-    private final HashMap<Integer, List<Row>> streamBHashMap;
+    private int[] indexOfJoinColumnsInTable;
 
-    private final List<Integer> streamBHashPutOrder;
+    private int joinColumnCount;
 
     private final List<Row> unmatchedStreamARows; // 未被匹配过的StreamA的行
 
-    private final Set<Integer> matchedStreamBRowHashSet; // 已被匹配过的StreamB的行
-
-    private final Deque<Row> cache;
-
-    private Header header;
-
-    private int index;
-
-    private boolean hasInitialized = false;
-
-    private boolean lastPartHasInitialized = false; // 外连接未匹配部分是否被初始化
-
-    private String joinColumnA;
-
-    private String joinColumnB;
-
-    private boolean needTypeCast = false;
+    private final List<Row> unmatchedStreamBRows; // 未被匹配过的StreamB的行
 
     public HashOuterJoinLazyStream(OuterJoin outerJoin, RowStream streamA, RowStream streamB) {
         super(streamA, streamB);
         this.outerJoin = outerJoin;
-        this.streamBHashMap = new HashMap<>();
-        this.streamBHashPutOrder = new LinkedList<>();
         this.unmatchedStreamARows = new ArrayList<>();
-        this.matchedStreamBRowHashSet = new HashSet<>();
-        this.cache = new LinkedList<>();
+        this.unmatchedStreamBRows = new ArrayList<>();
     }
 
-    private void initialize() throws PhysicalException {
+    @Override
+    protected Pair<int[], int[]> initializeJoin() throws PhysicalException {
         Filter filter = outerJoin.getFilter();
         OuterJoinType outerJoinType = outerJoin.getOuterJoinType();
 
@@ -82,6 +54,8 @@ public class HashOuterJoinLazyStream extends BinaryLazyStream {
                     "using(or natural) and on operator cannot be used at the same time");
         }
 
+        int[] indicesA;
+        int[] indicesB;
         if (filter != null) {
             if (!filter.getType().equals(FilterType.Path)) {
                 throw new InvalidOperatorParameterException(
@@ -93,208 +67,118 @@ public class HashOuterJoinLazyStream extends BinaryLazyStream {
                         "hash join only support equal path filter yet.");
             }
             if (headerA.indexOf(p.k) != -1 && headerB.indexOf(p.v) != -1) {
-                this.joinColumnA = p.k.replaceFirst(outerJoin.getPrefixA() + '.', "");
-                this.joinColumnB = p.v.replaceFirst(outerJoin.getPrefixB() + ".", "");
+                indicesA = new int[] {headerA.indexOf(p.k)};
+                indicesB = new int[] {headerB.indexOf(p.v)};
             } else if (headerA.indexOf(p.v) != -1 && headerB.indexOf(p.k) != -1) {
-                this.joinColumnA = p.v.replaceFirst(outerJoin.getPrefixA() + '.', "");
-                this.joinColumnB = p.k.replaceFirst(outerJoin.getPrefixB() + ".", "");
+                indicesA = new int[] {headerA.indexOf(p.v)};
+                indicesB = new int[] {headerB.indexOf(p.k)};
             } else {
                 throw new InvalidOperatorParameterException("invalid hash join path filter input.");
             }
-        } else {
-            if (joinColumns.size() != 1) {
-                throw new InvalidOperatorParameterException(
-                        "hash join only support the number of join column is one yet.");
-            }
-            if (headerA.indexOf(outerJoin.getPrefixA() + '.' + joinColumns.get(0)) != -1
-                    && headerB.indexOf(outerJoin.getPrefixB() + '.' + joinColumns.get(0)) != -1) {
-                this.joinColumnA = this.joinColumnB = joinColumns.get(0);
-            } else {
-                throw new InvalidOperatorParameterException("invalid hash join column input.");
-            }
-        }
-
-        int indexAnother;
-        if (outerJoinType == OuterJoinType.RIGHT) {
-            this.index = headerA.indexOf(outerJoin.getPrefixA() + '.' + joinColumnA);
-            indexAnother = headerB.indexOf(outerJoin.getPrefixB() + '.' + joinColumnB);
-        } else {
-            this.index = headerB.indexOf(outerJoin.getPrefixB() + '.' + joinColumnB);
-            indexAnother = headerA.indexOf(outerJoin.getPrefixA() + '.' + joinColumnA);
-        }
-
-        DataType dataType1 = headerA.getField(indexAnother).getType();
-        DataType dataType2 = headerB.getField(index).getType();
-        if (ValueUtils.isNumericType(dataType1) && ValueUtils.isNumericType(dataType2)) {
-            this.needTypeCast = true;
-        }
-
-        while (streamB.hasNext()) {
-            Row rowB = streamB.next();
-            Value value = rowB.getAsValue(outerJoin.getPrefixB() + '.' + joinColumnB);
-            if (value == null) {
-                continue;
-            }
-            if (needTypeCast) {
-                value = ValueUtils.transformToDouble(value);
-            }
-            int hash;
-            if (value.getDataType() == DataType.BINARY) {
-                hash = Arrays.hashCode(value.getBinaryV());
-            } else {
-                hash = value.getValue().hashCode();
-            }
-            List<Row> rows = streamBHashMap.getOrDefault(hash, new ArrayList<>());
-            rows.add(rowB);
-            streamBHashMap.putIfAbsent(hash, rows);
-            if (rows.size() == 1) {
-                streamBHashPutOrder.add(hash);
-            }
-        }
-
-        if (filter != null) { // Join condition: on
             this.header =
                     RowUtils.constructNewHead(
                             headerA, headerB, outerJoin.getPrefixA(), outerJoin.getPrefixB());
-        } else { // Join condition: natural or using
-            if (outerJoinType == OuterJoinType.RIGHT) {
-                this.header =
-                        RowUtils.constructNewHead(
-                                        headerA,
-                                        headerB,
-                                        outerJoin.getPrefixA(),
-                                        outerJoin.getPrefixB(),
-                                        Collections.singletonList(joinColumnA),
-                                        false)
-                                .getV();
-            } else {
-                this.header =
-                        RowUtils.constructNewHead(
-                                        headerA,
-                                        headerB,
-                                        outerJoin.getPrefixA(),
-                                        outerJoin.getPrefixB(),
-                                        Collections.singletonList(joinColumnB),
-                                        true)
-                                .getV();
+        } else {
+            indicesA = new int[joinColumns.size()];
+            indicesB = new int[joinColumns.size()];
+            for (int i = 0; i < joinColumns.size(); i++) {
+                indicesA[i] = headerA.indexOf(outerJoin.getPrefixA() + '.' + joinColumns.get(i));
+                indicesB[i] = headerB.indexOf(outerJoin.getPrefixB() + '.' + joinColumns.get(i));
+                if (indicesA[i] == -1 || indicesB[i] == -1) {
+                    throw new InvalidOperatorParameterException("invalid hash join column input.");
+                }
             }
-        }
+            Pair<int[], Header> pair =
+                    RowUtils.constructNewHead(
+                            headerA,
+                            headerB,
+                            outerJoin.getPrefixA(),
+                            outerJoin.getPrefixB(),
+                            joinColumns,
+                            outerJoinType != OuterJoinType.RIGHT);
+            this.indexOfJoinColumnsInTable = pair.getK();
+            this.header = pair.getV();
+            this.joinColumnCount = joinColumns.size();
+        }
+        return new Pair<>(indicesA, indicesB);
+    }
 
-        this.hasInitialized = true;
+    @Override
+    protected boolean canBuildOnA() {
+        return true;
     }
 
-    private void initializeLastPart() throws PhysicalException {
-        if (lastPartHasInitialized) {
-            return;
-        }
-        OuterJoinType outerType = outerJoin.getOuterJoinType();
-        if (outerType == OuterJoinType.FULL || outerType == OuterJoinType.LEFT) {
-            int anotherRowSize =
-                    streamB.getHeader().hasKey()
-                            ? streamB.getHeader().getFieldSize() + 1
-                            : streamB.getHeader().getFieldSize();
-            if (outerJoin.getFilter() == null) {
-                anotherRowSize -= 1;
-            }
-            for (Row halfRow : unmatchedStreamARows) {
-                Row unmatchedRow =
-                        RowUtils.constructUnmatchedRow(header, halfRow, anotherRowSize, true);
-                cache.add(unmatchedRow);
-            }
-        }
-        if (outerType == OuterJoinType.FULL || outerType == OuterJoinType.RIGHT) {
-            int anotherRowSize =
-                    streamA.getHeader().hasKey()
-                            ? streamA.getHeader().getFieldSize() + 1
-                            : streamA.getHeader().getFieldSize();
-            if (outerJoin.getFilter() == null) {
-                anotherRowSize -= 1;
-            }
-            for (int hash : streamBHashPutOrder) {
-                if (!matchedStreamBRowHashSet.contains(hash)) {
-                    List<Row> unmatchedRows = streamBHashMap.get(hash);
-                    for (Row halfRow : unmatchedRows) {
-                        Row unmatchedRow =
-                                RowUtils.constructUnmatchedRow(
-                                        header, halfRow, anotherRowSize, false);
-                        cache.add(unmatchedRow);
-                    }
-                }
+    @Override
+    protected boolean tryJoin(Row rowA, Row rowB) throws PhysicalException {
+        if (outerJoin.getFilter() != null) {
+            Row row = RowUtils.constructNewRow(header, rowA, rowB);
+            if (!FilterUtils.validate(outerJoin.getFilter(), row)) {
+                return false;
             }
-        }
-        this.lastPartHasInitialized = true;
+            cache.addLast(row);
+        } else {
+            cache.addLast(
+                    RowUtils.constructNewRow(
+                            header,
+                            rowA,
+                            rowB,
+                            indexOfJoinColumnsInTable,
+                            outerJoin.getOuterJoinType() != OuterJoinType.RIGHT));
+        }
+        return true;
     }
 
     @Override
-    public Header getHeader() throws PhysicalException {
-        if (!hasInitialized) {
-            initialize();
+    protected void afterProbe(Row row, boolean isRowA, int matchCount) {
+        if (matchCount == 0) {
+            addUnmatchedRow(row, isRowA);
         }
-        return header;
     }
 
     @Override
-    public boolean hasNext() throws PhysicalException {
-        if (!hasInitialized) {
-            initialize();
-        }
-        while (cache.isEmpty() && streamA.hasNext()) {
-            tryMatch();
-        }
-        if (cache.isEmpty() && !lastPartHasInitialized) {
-            initializeLastPart();
-        }
-        return !cache.isEmpty();
+    protected void onNullKeyProbeRow(Row row, boolean isRowA) {
+        addUnmatchedRow(row, isRowA);
     }
 
-    private void tryMatch() throws PhysicalException {
-        Row rowA = streamA.next();
-
-        Value value = rowA.getAsValue(outerJoin.getPrefixA() + '.' + joinColumnA);
-        if (value == null) {
-            return;
-        }
-        if (needTypeCast) {
-            value = ValueUtils.transformToDouble(value);
-        }
-        int hash;
-        if (value.getDataType() == DataType.BINARY) {
-            hash = Arrays.hashCode(value.getBinaryV());
-        } else {
-            hash = value.getValue().hashCode();
-        }
+    @Override
+    protected void onUnmatchedBuildRow(Row row, boolean isRowA) {
+        addUnmatchedRow(row, isRowA);
+    }
 
-        if (streamBHashMap.containsKey(hash)) {
-            List<Row> rowsB = streamBHashMap.get(hash);
-            for (Row rowB : rowsB) {
-                if (outerJoin.getFilter() != null) {
-                    Row row = RowUtils.constructNewRow(header, rowA, rowB);
-                    if (FilterUtils.validate(outerJoin.getFilter(), row)) {
-                        cache.addLast(row);
-                    }
-                } else {
-                    Row row;
-                    if (outerJoin.getOuterJoinType() == OuterJoinType.RIGHT) {
-                        row =
-                                RowUtils.constructNewRow(
-                                        header, rowA, rowB, new int[] {index}, false);
-                    } else {
-                        row = RowUtils.constructNewRow(header, rowA, rowB, new int[] {index}, true);
-                    }
-                    cache.addLast(row);
-                }
-            }
-            matchedStreamBRowHashSet.add(hash);
-        } else {
-            unmatchedStreamARows.add(rowA);
+    private void addUnmatchedRow(Row row, boolean isRowA) {
+        OuterJoinType outerType = outerJoin.getOuterJoinType();
+        if (isRowA && outerType != OuterJoinType.RIGHT) {
+            unmatchedStreamARows.add(row);
+        } else if (!isRowA && outerType != OuterJoinType.LEFT) {
+            unmatchedStreamBRows.add(row);
         }
     }
 
     @Override
-    public Row next() throws PhysicalException {
-        if (!hasNext()) {
-            throw new IllegalStateException("row stream doesn't have more data!");
+    protected void afterPartition() throws PhysicalException {
+        // 未匹配的行在所有匹配结果之后输出，先输出 streamA 中的行
+        for (Row halfRow : unmatchedStreamARows) {
+            cache.addLast(
+                    RowUtils.constructUnmatchedRow(
+                            header, halfRow, getAnotherRowSize(streamB.getHeader()), true));
+        }
+        for (Row halfRow : unmatchedStreamBRows) {
+            cache.addLast(
+                    RowUtils.constructUnmatchedRow(
+                            header, halfRow, getAnotherRowSize(streamA.getHeader()), false));
+        }
+        unmatchedStreamARows.clear();
+        unmatchedStreamBRows.clear();
+    }
+
+    private int getAnotherRowSize(Header anotherHeader) {
+        int anotherRowSize =
+                anotherHeader.hasKey()
+                        ? anotherHeader.getFieldSize() + 1
+                        : anotherHeader.getFieldSize();
+        if (outerJoin.getFilter() == null) {
+            anotherRowSize -= joinColumnCount;
         }
-        return cache.pollFirst();
+        return anotherRowSize;
     }
 }
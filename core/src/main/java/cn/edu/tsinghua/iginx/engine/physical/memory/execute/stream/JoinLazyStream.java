@@ -102,6 +102,10 @@ public class JoinLazyStream extends BinaryLazyStream {
         } else {
             newFields.addAll(headerA.getFields());
             newFields.addAll(headerB.getFields());
+            fieldIndices = new HashMap<>();
+            for (int i = 0; i < newFields.size(); i++) {
+                fieldIndices.put(newFields.get(i), i);
+            }
         }
 
         if (joinByTime) {
@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.InvalidOperatorParameterException;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.operator.MultiwayMerge;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** 使用小顶堆对多个按 key 有序的流做归并，key 相同时按输入顺序输出，与逐对执行的 Join/Union 链结果一致。 每个输入的列在输出中的位置预先计算好，合并时直接写入输出行。 */
+public class MultiwayMergeLazyStream implements RowStream {
+
+    private final MultiwayMerge merge;
+
+    private final List<RowStream> streams;
+
+    private boolean hasInitialized = false;
+
+    private Header header;
+
+    private int[][] positions;
+
+    private Row[] heads;
+
+    private int[] heap;
+
+    private int heapSize;
+
+    private int[] sameKeySources;
+
+    private int currentStream;
+
+    private Row nextRow;
+
+    public MultiwayMergeLazyStream(MultiwayMerge merge, List<RowStream> streams) {
+        this.merge = merge;
+        this.streams = streams;
+    }
+
+    private void initialize() throws PhysicalException {
+        if (hasInitialized) {
+            return;
+        }
+        List<Header> headers = new ArrayList<>();
+        for (RowStream stream : streams) {
+            headers.add(stream.getHeader());
+        }
+        header = merge.isCombineSameKey() ? buildJoinHeader(headers) : buildUnionHeader(headers);
+        positions = new int[streams.size()][];
+        for (int i = 0; i < streams.size(); i++) {
+            List<Field> fields = headers.get(i).getFields();
+            positions[i] = new int[fields.size()];
+            for (int j = 0; j < fields.size(); j++) {
+                positions[i][j] = header.indexOf(fields.get(j));
+            }
+        }
+        heads = new Row[streams.size()];
+        heap = new int[streams.size()];
+        sameKeySources = new int[streams.size()];
+        if (header.hasKey()) {
+            for (int i = 0; i < streams.size(); i++) {
+                RowStream stream = streams.get(i);
+                if (stream.hasNext()) {
+                    heads[i] = stream.next();
+                    heap[heapSize++] = i;
+                    siftUp(heapSize - 1);
+                }
+            }
+        }
+        hasInitialized = true;
+    }
+
+    private Header buildJoinHeader(List<Header> headers) throws PhysicalException {
+        Map<Field, Integer> fieldIndices = new LinkedHashMap<>();
+        for (Header header : headers) {
+            if (!header.hasKey()) {
+                throw new InvalidOperatorParameterException(
+                        "row streams for join operator by time should have timestamp.");
+            }
+            for (Field field : header.getFields()) {
+                fieldIndices.putIfAbsent(field, fieldIndices.size());
+            }
+        }
+        return new Header(Field.KEY, new ArrayList<>(fieldIndices.keySet()));
+    }
+
+    /** 按照逐对 Union 的方式推导表头，保证列的顺序与原有执行方式一致 */
+    private Header buildUnionHeader(List<Header> headers) throws PhysicalException {
+        Header targetHeader = headers.get(0);
+        for (int i = 1; i < headers.size(); i++) {
+            Header headerB = headers.get(i);
+            boolean isEmptyA = !targetHeader.hasKey() && targetHeader.getFieldSize() == 0;
+            boolean isEmptyB = !headerB.hasKey() && headerB.getFieldSize() == 0;
+            if (!isEmptyA && !isEmptyB && (targetHeader.hasKey() ^ headerB.hasKey())) {
+                throw new InvalidOperatorParameterException(
+                        "row stream to be union must have same fields");
+            }
+            boolean hasTimestamp = isEmptyA ? headerB.hasKey() : targetHeader.hasKey();
+            Set<Field> targetFieldSet = new HashSet<>();
+            targetFieldSet.addAll(targetHeader.getFields());
+            targetFieldSet.addAll(headerB.getFields());
+            List<Field> targetFields = new ArrayList<>(targetFieldSet);
+            if (hasTimestamp) {
+                targetHeader = new Header(Field.KEY, targetFields);
+            } else {
+                targetHeader = new Header(targetFields);
+            }
+        }
+        return targetHeader;
+    }
+
+    @Override
+    public Header getHeader() throws PhysicalException {
+        if (!hasInitialized) {
+            initialize();
+        }
+        return header;
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        PhysicalException exception = null;
+        for (RowStream stream : streams) {
+            try {
+                stream.close();
+            } catch (PhysicalException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        if (!hasInitialized) {
+            initialize();
+        }
+        if (nextRow == null) {
+            nextRow = header.hasKey() ? loadNextByKey() : loadNextInOrder();
+        }
+        return nextRow != null;
+    }
+
+    @Override
+    public Row next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new IllegalStateException("row stream doesn't have more data!");
+        }
+        Row row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    /** 不包含 key 时只需依次输出各个流 */
+    private Row loadNextInOrder() throws PhysicalException {
+        while (currentStream < streams.size()) {
+            RowStream stream = streams.get(currentStream);
+            if (stream.hasNext()) {
+                Object[] values = new Object[header.getFieldSize()];
+                writeValues(values, currentStream, stream.next());
+                return new Row(header, values);
+            }
+            currentStream++;
+        }
+        return null;
+    }
+
+    private Row loadNextByKey() throws PhysicalException {
+        if (heapSize == 0) {
+            return null;
+        }
+        long key = heads[heap[0]].getKey();
+        Object[] values = new Object[header.getFieldSize()];
+        // 每个输入在一行中至多贡献一条记录，先全部弹出再统一补充，避免同一输入内重复的 key 被合并
+        int count = 0;
+        do {
+            int source = popHeap();
+            writeValues(values, source, heads[source]);
+            sameKeySources[count++] = source;
+        } while (merge.isCombineSameKey() && heapSize > 0 && heads[heap[0]].getKey() == key);
+        for (int i = 0; i < count; i++) {
+            int source = sameKeySources[i];
+            RowStream stream = streams.get(source);
+            if (stream.hasNext()) {
+                heads[source] = stream.next();
+                heap[heapSize++] = source;
+                siftUp(heapSize - 1);
+            } else {
+                heads[source] = null;
+            }
+        }
+        return new Row(header, key, values);
+    }
+
+    private void writeValues(Object[] values, int source, Row row) {
+        int[] position = positions[source];
+        Object[] sourceValues = row.getValues();
+        for (int i = 0; i < position.length; i++) {
+            if (sourceValues[i] != null) {
+                values[position[i]] = sourceValues[i];
+            }
+        }
+    }
+
+    private boolean less(int a, int b) {
+        long keyA = heads[a].getKey();
+        long keyB = heads[b].getKey();
+        return keyA < keyB || (keyA == keyB && a < b);
+    }
+
+    private int popHeap() {
+        int top = heap[0];
+        heap[0] = heap[--heapSize];
+        siftDown(0);
+        return top;
+    }
+
+    private void siftUp(int index) {
+        int source = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!less(source, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = source;
+    }
+
+    private void siftDown(int index) {
+        if (heapSize == 0) {
+            return;
+        }
+        int source = heap[index];
+        int half = heapSize >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < heapSize && less(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!less(heap[child], source)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = source;
+    }
+}
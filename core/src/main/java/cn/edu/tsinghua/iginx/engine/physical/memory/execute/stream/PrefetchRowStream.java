@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream;
+
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 在后台线程中按批预取上游的数据，预取的批数达到上限后暂停读取上游，形成反压。
+ *
+ * <p>后台任务每次只读取一批即归还线程；消费者取数时若后台任务尚未开始，则直接在当前线程读取，因此嵌套的预取流多于线程数时也不会相互阻塞。
+ */
+public class PrefetchRowStream implements RowStream {
+
+    private static final List<Row> END_OF_STREAM = new ArrayList<>(0);
+
+    private final RowStream stream;
+
+    private final Header header;
+
+    private final int batchSize;
+
+    private final int queueSize;
+
+    private final BlockingQueue<List<Row>> queue = new LinkedBlockingQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private volatile boolean exhausted = false;
+
+    private volatile boolean closed = false;
+
+    private volatile PhysicalException failure;
+
+    private List<Row> current;
+
+    private int index;
+
+    public PrefetchRowStream(RowStream stream, int batchSize, int queueSize)
+            throws PhysicalException {
+        this.stream = stream;
+        this.header = stream.getHeader();
+        this.batchSize = Math.max(batchSize, 1);
+        this.queueSize = Math.max(queueSize, 1);
+        schedule();
+    }
+
+    /** 为尚未物化、也未开启预取的流开启预取 */
+    public static RowStream prefetch(RowStream stream) throws PhysicalException {
+        if (stream instanceof Table || stream instanceof PrefetchRowStream) {
+            return stream;
+        }
+        Config config = ConfigDescriptor.getInstance().getConfig();
+        return new PrefetchRowStream(
+                stream, config.getPrefetchBatchSize(), config.getPrefetchQueueSize());
+    }
+
+    public static List<RowStream> prefetch(List<RowStream> streams) throws PhysicalException {
+        List<RowStream> prefetchStreams = new ArrayList<>(streams.size());
+        for (RowStream stream : streams) {
+            prefetchStreams.add(prefetch(stream));
+        }
+        return prefetchStreams;
+    }
+
+    private void schedule() {
+        if (exhausted || closed || queue.size() >= queueSize) {
+            return;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            PrefetchThreadPoolHolder.POOL.submit(this::fetch);
+        }
+    }
+
+    private void fetch() {
+        boolean fetched = false;
+        try {
+            if (lock.tryLock()) {
+                fetched = true;
+                try {
+                    if (!closed && !exhausted && queue.size() < queueSize) {
+                        fetchBatch();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+        } finally {
+            scheduled.set(false);
+        }
+        // 未获取到锁说明消费者正在自行读取，由消费者负责再次调度
+        if (fetched) {
+            schedule();
+        }
+    }
+
+    /** 调用时需持有 lock */
+    private void fetchBatch() {
+        try {
+            List<Row> batch = new ArrayList<>(batchSize);
+            while (batch.size() < batchSize && stream.hasNext()) {
+                batch.add(stream.next());
+            }
+            if (!batch.isEmpty()) {
+                queue.add(batch);
+            }
+            if (batch.size() < batchSize) {
+                exhausted = true;
+                queue.add(END_OF_STREAM);
+            }
+        } catch (Exception e) {
+            failure =
+                    e instanceof PhysicalException
+                            ? (PhysicalException) e
+                            : new PhysicalException(e);
+            exhausted = true;
+            queue.add(END_OF_STREAM);
+        }
+    }
+
+    @Override
+    public Header getHeader() {
+        return header;
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        closed = true;
+        lock.lock();
+        try {
+            stream.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        while (current == null || index == current.size()) {
+            if (current == END_OF_STREAM) {
+                return false;
+            }
+            List<Row> batch = queue.poll();
+            if (batch == null) {
+                // 后台任务尚未开始读取时直接在当前线程读取，否则等待正在进行的读取完成
+                if (lock.tryLock()) {
+                    try {
+                        if (queue.isEmpty() && !exhausted) {
+                            fetchBatch();
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                try {
+                    batch = queue.take();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new PhysicalException("interrupted when prefetch rows", e);
+                }
+            }
+            current = batch;
+            index = 0;
+            schedule();
+            if (current == END_OF_STREAM && failure != null) {
+                throw failure;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Row next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new IllegalStateException("row stream doesn't have more data!");
+        }
+        return current.get(index++);
+    }
+
+    private static class PrefetchThreadPoolHolder {
+
+        private static final ExecutorService POOL =
+                Executors.newFixedThreadPool(
+                        ConfigDescriptor.getInstance().getConfig().getPrefetchThreadPoolSize(),
+                        runnable -> {
+                            Thread thread = new Thread(runnable, "prefetch");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+
+        private PrefetchThreadPoolHolder() {}
+    }
+}
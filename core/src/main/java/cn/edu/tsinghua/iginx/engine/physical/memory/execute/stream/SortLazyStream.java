@@ -18,32 +18,71 @@
  */
 package cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream;
 
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowSpillFile;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowUtils;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Sort;
+import cn.edu.tsinghua.iginx.resource.MemoryBroker;
+import cn.edu.tsinghua.iginx.resource.MemoryReservation;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.PriorityQueue;
 
+/** 外部排序：内存中的数据超过 memoryBudget 或查询的内存预留被拒绝时排序后溢写为有序段，最终多路归并输出；设置 topN 后只在堆中保留前 N 行 */
 public class SortLazyStream extends UnaryLazyStream {
 
+    private static final Config config = ConfigDescriptor.getInstance().getConfig();
+
     private final Sort sort;
 
     private final boolean asc;
 
+    private final long memoryBudget;
+
+    private final String spillDirectory;
+
     private final List<Row> rows;
 
+    private final List<RowSpillFile> runs;
+
+    private final MemoryReservation reservation;
+
+    private PriorityQueue<RunCursor> mergeQueue;
+
+    private Comparator<Row> comparator;
+
+    private int topN = -1;
+
     private boolean hasSorted = false;
 
     private int cur = 0;
 
     public SortLazyStream(Sort sort, RowStream stream) {
+        this(sort, stream, config.getSortMemoryBudget(), config.getSpillDirectory());
+    }
+
+    public SortLazyStream(Sort sort, RowStream stream, long memoryBudget, String spillDirectory) {
         super(stream);
         this.sort = sort;
         this.asc = sort.getSortType() == Sort.SortType.ASC;
+        this.memoryBudget = memoryBudget;
+        this.spillDirectory = spillDirectory;
         this.rows = new ArrayList<>();
+        this.runs = new ArrayList<>();
+        this.reservation = MemoryBroker.newReservation("sort buffer");
+    }
+
+    /** 上层紧跟 Limit 时只需要保留排序后的前 n 行 */
+    public void setTopN(int n) {
+        if (!hasSorted) {
+            this.topN = n;
+        }
     }
 
     @Override
@@ -54,12 +93,22 @@ public class SortLazyStream extends UnaryLazyStream {
     @Override
     public boolean hasNext() throws PhysicalException {
         if (!hasSorted) {
-            while (stream.hasNext()) {
-                rows.add(stream.next());
+            Header header = stream.getHeader();
+            List<String> sortByCols = sort.getSortByCols();
+            comparator =
+                    sortByCols == null || sortByCols.isEmpty()
+                            ? (a, b) -> 0
+                            : RowUtils.getSortComparator(header, asc, sortByCols);
+            if (topN >= 0) {
+                selectTopN(header);
+            } else {
+                externalSort(header);
             }
-            RowUtils.sortRows(rows, asc, sort.getSortByCols());
             hasSorted = true;
         }
+        if (mergeQueue != null) {
+            return !mergeQueue.isEmpty();
+        }
         return cur < rows.size();
     }
 
@@ -68,6 +117,129 @@ public class SortLazyStream extends UnaryLazyStream {
         if (!hasNext()) {
             throw new IllegalStateException("row stream doesn't have more data!");
         }
-        return rows.get(cur++);
+        if (mergeQueue == null) {
+            return rows.get(cur++);
+        }
+        RunCursor cursor = mergeQueue.poll();
+        Row row = cursor.row;
+        RowSpillFile run = runs.get(cursor.index);
+        if (run.hasNext()) {
+            cursor.row = run.next();
+            mergeQueue.add(cursor);
+        }
+        return row;
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        for (RowSpillFile run : runs) {
+            run.close();
+        }
+        runs.clear();
+        reservation.close();
+        super.close();
+    }
+
+    private void externalSort(Header header) throws PhysicalException {
+        long memoryUsage = 0;
+        for (Row row : rows) {
+            memoryUsage += RowSpillFile.estimateSize(row);
+        }
+        while (stream.hasNext()) {
+            Row row = stream.next();
+            rows.add(row);
+            memoryUsage += RowSpillFile.estimateSize(row);
+            if ((memoryUsage > memoryBudget || !reservation.tryResize(memoryUsage))
+                    && rows.size() > 1) {
+                spill(header);
+                memoryUsage = 0;
+                reservation.resize(0);
+            }
+        }
+        if (runs.isEmpty()) {
+            rows.sort(comparator);
+            return;
+        }
+        if (!rows.isEmpty()) {
+            spill(header);
+        }
+        reservation.resize(0);
+        // 比较结果相同时按照段的先后顺序输出，保证与内存中的稳定排序结果一致
+        mergeQueue =
+                new PriorityQueue<>(
+                        runs.size(),
+                        (a, b) -> {
+                            int cmp = comparator.compare(a.row, b.row);
+                            return cmp != 0 ? cmp : Integer.compare(a.index, b.index);
+                        });
+        for (int i = 0; i < runs.size(); i++) {
+            RowSpillFile run = runs.get(i);
+            if (run.hasNext()) {
+                mergeQueue.add(new RunCursor(run.next(), i));
+            }
+        }
+    }
+
+    private void spill(Header header) throws PhysicalException {
+        rows.sort(comparator);
+        RowSpillFile run = new RowSpillFile(header, spillDirectory);
+        runs.add(run);
+        for (Row row : rows) {
+            run.write(row);
+        }
+        rows.clear();
+    }
+
+    private void selectTopN(Header header) throws PhysicalException {
+        if (topN == 0) {
+            return;
+        }
+        // 堆顶为当前保留的行中排序最靠后的一行，次序相同时后到达的行排在后面
+        Comparator<RunCursor> order =
+                (a, b) -> {
+                    int cmp = comparator.compare(a.row, b.row);
+                    return cmp != 0 ? cmp : Integer.compare(a.index, b.index);
+                };
+        PriorityQueue<RunCursor> heap = new PriorityQueue<>(order.reversed());
+        long memoryUsage = 0;
+        int index = 0;
+        while (stream.hasNext()) {
+            Row row = stream.next();
+            if (heap.size() < topN) {
+                heap.add(new RunCursor(row, index++));
+                memoryUsage += RowSpillFile.estimateSize(row);
+            } else if (comparator.compare(row, heap.peek().row) < 0) {
+                memoryUsage -= RowSpillFile.estimateSize(heap.poll().row);
+                heap.add(new RunCursor(row, index++));
+                memoryUsage += RowSpillFile.estimateSize(row);
+            }
+            if (memoryUsage > memoryBudget || !reservation.tryResize(memoryUsage)) {
+                // 前 N 行超出内存预算时退化为外部排序，被淘汰的行不会出现在结果中
+                List<RunCursor> cursors = new ArrayList<>(heap);
+                cursors.sort(Comparator.comparingInt(cursor -> cursor.index));
+                for (RunCursor cursor : cursors) {
+                    rows.add(cursor.row);
+                }
+                externalSort(header);
+                return;
+            }
+        }
+        List<RunCursor> cursors = new ArrayList<>(heap);
+        cursors.sort(order);
+        for (RunCursor cursor : cursors) {
+            rows.add(cursor.row);
+        }
+    }
+
+    private static class RunCursor {
+
+        private Row row;
+
+        private final int index;
+
+        RunCursor(Row row, int index) {
+            this.row = row;
+            this.index = index;
+        }
     }
 }
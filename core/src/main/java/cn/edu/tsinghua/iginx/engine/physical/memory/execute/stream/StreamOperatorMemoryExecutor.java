@@ -18,13 +18,18 @@
  */
 package cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream;
 
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
 import cn.edu.tsinghua.iginx.engine.physical.exception.InvalidOperatorParameterException;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.physical.exception.UnexpectedOperatorException;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.OperatorMemoryExecutor;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.batch.BatchOperatorMemoryExecutor;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.PartialAggregateUtils;
 import cn.edu.tsinghua.iginx.engine.shared.Constants;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.operator.*;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import java.util.List;
 
 public class StreamOperatorMemoryExecutor implements OperatorMemoryExecutor {
 
@@ -68,6 +73,18 @@ public class StreamOperatorMemoryExecutor implements OperatorMemoryExecutor {
         }
     }
 
+    @Override
+    public RowStream executeUnaryOperators(List<UnaryOperator> operators, RowStream stream)
+            throws PhysicalException {
+        // 整条算子链均支持批处理时，改用列式批执行
+        if (ConfigDescriptor.getInstance().getConfig().isEnableBatchExecution()
+                && BatchOperatorMemoryExecutor.supportBatch(operators)) {
+            return BatchOperatorMemoryExecutor.getInstance()
+                    .executeUnaryOperators(operators, stream);
+        }
+        return OperatorMemoryExecutor.super.executeUnaryOperators(operators, stream);
+    }
+
     @Override
     public RowStream executeBinaryOperator(
             BinaryOperator operator, RowStream streamA, RowStream streamB)
@@ -93,6 +110,18 @@ public class StreamOperatorMemoryExecutor implements OperatorMemoryExecutor {
         }
     }
 
+    @Override
+    public RowStream executeMultipleOperator(MultipleOperator operator, List<RowStream> streams)
+            throws PhysicalException {
+        if (operator.getType() == OperatorType.MultiwayMerge) {
+            return executeMultiwayMerge((MultiwayMerge) operator, streams);
+        }
+        if (operator.getType() == OperatorType.PartialAggregateMerge) {
+            return PartialAggregateUtils.merge((PartialAggregateMerge) operator, streams);
+        }
+        throw new UnexpectedOperatorException("unknown multiple operator: " + operator.getType());
+    }
+
     private RowStream executeProject(Project project, RowStream stream) {
         return new ProjectLazyStream(project, stream);
     }
@@ -106,6 +135,10 @@ public class StreamOperatorMemoryExecutor implements OperatorMemoryExecutor {
     }
 
     private RowStream executeLimit(Limit limit, RowStream stream) {
+        long topN = (long) limit.getLimit() + limit.getOffset();
+        if (stream instanceof SortLazyStream && topN <= Integer.MAX_VALUE) {
+            ((SortLazyStream) stream).setTopN((int) topN);
+        }
         return new LimitLazyStream(limit, stream);
     }
 
@@ -271,6 +304,11 @@ public class StreamOperatorMemoryExecutor implements OperatorMemoryExecutor {
         return new HashMarkJoinLazyStream(markJoin, streamA, streamB);
     }
 
+    private RowStream executeMultiwayMerge(MultiwayMerge merge, List<RowStream> streams)
+            throws PhysicalException {
+        return new MultiwayMergeLazyStream(merge, PrefetchRowStream.prefetch(streams));
+    }
+
     private RowStream executeUnion(Union union, RowStream streamA, RowStream streamB) {
         return new UnionLazyStream(union, streamA, streamB);
     }
@@ -54,11 +54,14 @@ public class UnionLazyStream extends BinaryLazyStream {
         }
         Header headerA = streamA.getHeader();
         Header headerB = streamB.getHeader();
-        if (headerA.hasKey() ^ headerB.hasKey()) {
+        // 降采样等算子在没有数据时会返回空表头，此时以另一侧的表头为准
+        boolean isEmptyA = !headerA.hasKey() && headerA.getFieldSize() == 0;
+        boolean isEmptyB = !headerB.hasKey() && headerB.getFieldSize() == 0;
+        if (!isEmptyA && !isEmptyB && (headerA.hasKey() ^ headerB.hasKey())) {
             throw new InvalidOperatorParameterException(
                     "row stream to be union must have same fields");
         }
-        boolean hasTimestamp = headerA.hasKey();
+        boolean hasTimestamp = isEmptyA ? headerB.hasKey() : headerA.hasKey();
         Set<Field> targetFieldSet = new HashSet<>();
         targetFieldSet.addAll(headerA.getFields());
         targetFieldSet.addAll(headerB.getFields());
@@ -21,8 +21,10 @@ package cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils;
 import cn.edu.tsinghua.iginx.engine.physical.exception.InvalidOperatorParameterException;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.ColumnVector;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
 import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.ValueUtils;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.BoolFilter;
@@ -34,8 +36,10 @@ import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.OrFilter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.PathFilter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.ValueFilter;
+import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 public class FilterUtils {
@@ -175,6 +179,190 @@ public class FilterUtils {
         return false;
     }
 
+    /** 对一批数据进行向量化过滤，返回满足条件的行对应的 bitmap */
+    public static BitSet validate(Filter filter, RowBatch batch) throws PhysicalException {
+        int size = batch.getSize();
+        BitSet result;
+        switch (filter.getType()) {
+            case Or:
+                OrFilter orFilter = (OrFilter) filter;
+                result = new BitSet(size);
+                for (Filter childFilter : orFilter.getChildren()) {
+                    result.or(validate(childFilter, batch));
+                }
+                return result;
+            case Bool:
+                BoolFilter booleanFilter = (BoolFilter) filter;
+                result = new BitSet(size);
+                if (booleanFilter.isTrue()) {
+                    result.set(0, size);
+                }
+                return result;
+            case And:
+                AndFilter andFilter = (AndFilter) filter;
+                result = new BitSet(size);
+                result.set(0, size);
+                for (Filter childFilter : andFilter.getChildren()) {
+                    if (result.isEmpty()) {
+                        break;
+                    }
+                    result.and(validate(childFilter, batch));
+                }
+                return result;
+            case Not:
+                NotFilter notFilter = (NotFilter) filter;
+                result = validate(notFilter.getChild(), batch);
+                result.flip(0, size);
+                return result;
+            case Key:
+                return validateTimeFilter((KeyFilter) filter, batch);
+            case Value:
+                ValueFilter valueFilter = (ValueFilter) filter;
+                if (!valueFilter.getPath().contains("*")) {
+                    return validateValueFilter(valueFilter, batch);
+                }
+                break;
+            default:
+                break;
+        }
+        // 无法向量化的过滤条件，逐行进行判断
+        result = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (validate(filter, batch.getRow(i))) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    private static BitSet validateTimeFilter(KeyFilter keyFilter, RowBatch batch) {
+        int size = batch.getSize();
+        BitSet result = new BitSet(size);
+        long value = keyFilter.getValue();
+        for (int i = 0; i < size; i++) {
+            long key = batch.getKey(i);
+            if (key != Row.NON_EXISTED_KEY
+                    && compareWithOp(keyFilter.getOp(), Long.compare(key, value))) {
+                result.set(i);
+            }
+        }
+        return result;
+    }
+
+    private static BitSet validateValueFilter(ValueFilter valueFilter, RowBatch batch)
+            throws PhysicalException {
+        int size = batch.getSize();
+        BitSet result = new BitSet(size);
+        Value targetValue = valueFilter.getValue();
+        int index = batch.getHeader().indexOf(valueFilter.getPath());
+        if (targetValue.isNull() || index == -1) {
+            return result;
+        }
+        Op op = valueFilter.getOp();
+        ColumnVector column = batch.getColumn(index);
+        DataType type = column.getType();
+        boolean sameType = type == targetValue.getDataType();
+        if (op == Op.LIKE
+                || (!sameType
+                        && !(ValueUtils.isNumericType(type)
+                                && ValueUtils.isNumericType(targetValue)))) {
+            // 字符串匹配以及非数值类型之间的比较，逐行复用原有逻辑
+            for (int i = 0; i < size; i++) {
+                if (!column.isNull(i)
+                        && validateValueCompare(
+                                op, new Value(type, column.getObject(i)), targetValue)) {
+                    result.set(i);
+                }
+            }
+            return result;
+        }
+        if (!sameType) {
+            double target = ValueUtils.transformToDouble(targetValue).getDoubleV();
+            for (int i = 0; i < size; i++) {
+                if (!column.isNull(i)
+                        && compareWithOp(op, Double.compare(column.getAsDouble(i), target))) {
+                    result.set(i);
+                }
+            }
+            return result;
+        }
+        switch (type) {
+            case INTEGER:
+                {
+                    int target = targetValue.getIntV();
+                    for (int i = 0; i < size; i++) {
+                        if (!column.isNull(i)
+                                && compareWithOp(op, Integer.compare(column.getInt(i), target))) {
+                            result.set(i);
+                        }
+                    }
+                    break;
+                }
+            case LONG:
+                {
+                    long target = targetValue.getLongV();
+                    for (int i = 0; i < size; i++) {
+                        if (!column.isNull(i)
+                                && compareWithOp(op, Long.compare(column.getLong(i), target))) {
+                            result.set(i);
+                        }
+                    }
+                    break;
+                }
+            case FLOAT:
+                {
+                    float target = targetValue.getFloatV();
+                    for (int i = 0; i < size; i++) {
+                        if (!column.isNull(i)
+                                && compareWithOp(op, Float.compare(column.getFloat(i), target))) {
+                            result.set(i);
+                        }
+                    }
+                    break;
+                }
+            case DOUBLE:
+                {
+                    double target = targetValue.getDoubleV();
+                    for (int i = 0; i < size; i++) {
+                        if (!column.isNull(i)
+                                && compareWithOp(op, Double.compare(column.getDouble(i), target))) {
+                            result.set(i);
+                        }
+                    }
+                    break;
+                }
+            default:
+                for (int i = 0; i < size; i++) {
+                    if (!column.isNull(i)
+                            && validateValueCompare(
+                                    op, new Value(type, column.getObject(i)), targetValue)) {
+                        result.set(i);
+                    }
+                }
+                break;
+        }
+        return result;
+    }
+
+    private static boolean compareWithOp(Op op, int compareResult) {
+        switch (op) {
+            case E:
+                return compareResult == 0;
+            case G:
+                return compareResult > 0;
+            case L:
+                return compareResult < 0;
+            case GE:
+                return compareResult >= 0;
+            case LE:
+                return compareResult <= 0;
+            case NE:
+                return compareResult != 0;
+            default:
+                return false;
+        }
+    }
+
     public static List<Pair<String, String>> getJoinColumnsFromFilter(Filter filter) {
         List<Pair<String, String>> l = new ArrayList<>();
         switch (filter.getType()) {
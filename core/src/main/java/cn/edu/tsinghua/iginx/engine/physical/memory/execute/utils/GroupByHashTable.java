@@ -0,0 +1,253 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils;
+
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.JoinHashTable.KeyKind;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** 分组聚合的哈希表。单列整数或浮点分组键使用开放寻址的原生数组保存，其余情况使用多列组合键；每个分组保存分组列的值以及各累加器的中间状态 */
+public class GroupByHashTable {
+
+    private static final int EMPTY = -1;
+
+    private final KeyKind[] kinds;
+
+    private final int[] groupIndices;
+
+    private final List<Accumulator> accumulators;
+
+    private final boolean primitive;
+
+    private long[] slotKeys;
+
+    private int[] slotGroups;
+
+    private int slotCount;
+
+    private int nullGroup = EMPTY;
+
+    private final Map<List<Object>, Integer> compositeMap;
+
+    private final List<Object[]> groupValues;
+
+    private final List<Object[]> states;
+
+    private final int resultSize;
+
+    private final long groupSize;
+
+    private long estimatedSize;
+
+    public GroupByHashTable(Header header, int[] groupIndices, List<Accumulator> accumulators) {
+        this.kinds = JoinHashTable.getKeyKinds(header, groupIndices, header, groupIndices);
+        this.groupIndices = groupIndices;
+        this.accumulators = accumulators;
+        this.primitive = kinds.length == 1 && kinds[0] != KeyKind.OTHER;
+        if (primitive) {
+            this.slotKeys = new long[16];
+            this.slotGroups = new int[16];
+            Arrays.fill(slotGroups, EMPTY);
+            this.compositeMap = null;
+        } else {
+            this.compositeMap = new HashMap<>();
+        }
+        this.groupValues = new ArrayList<>();
+        this.states = new ArrayList<>();
+        int resultSize = groupIndices.length;
+        for (Accumulator accumulator : accumulators) {
+            resultSize += accumulator.getHeader().getFieldSize();
+        }
+        this.resultSize = resultSize;
+        this.groupSize = 64L + 32L * resultSize;
+    }
+
+    /** 计算分组键的 64 位哈希值，用于溢写时的分区 */
+    public long hash(Row row) {
+        if (primitive) {
+            Object value = row.getValue(groupIndices[0]);
+            return value == null ? 0L : JoinHashTable.mix(primitiveKey(value));
+        }
+        return JoinHashTable.mix(compositeKey(row).hashCode());
+    }
+
+    /** 返回行所属分组的编号，分组不存在时返回 -1 */
+    public int find(Row row) {
+        if (primitive) {
+            Object value = row.getValue(groupIndices[0]);
+            if (value == null) {
+                return nullGroup;
+            }
+            return slotGroups[findSlot(primitiveKey(value))];
+        }
+        Integer group = compositeMap.get(compositeKey(row));
+        return group == null ? EMPTY : group;
+    }
+
+    /** 以行中分组列的值创建新的分组，调用方需保证该分组尚不存在 */
+    public int add(Row row) {
+        int group = groupValues.size();
+        Object[] values = new Object[groupIndices.length];
+        for (int i = 0; i < groupIndices.length; i++) {
+            values[i] = row.getValue(groupIndices[i]);
+            if (values[i] instanceof byte[]) {
+                estimatedSize += ((byte[]) values[i]).length;
+            }
+        }
+        groupValues.add(values);
+        Object[] groupStates = new Object[accumulators.size()];
+        for (int i = 0; i < groupStates.length; i++) {
+            groupStates[i] = accumulators.get(i).init();
+        }
+        states.add(groupStates);
+        estimatedSize += groupSize;
+
+        if (primitive) {
+            Object value = values[0];
+            if (value == null) {
+                nullGroup = group;
+                return group;
+            }
+            if ((slotCount + 1) * 2 > slotKeys.length) {
+                resize();
+            }
+            long key = primitiveKey(value);
+            int slot = findSlot(key);
+            slotKeys[slot] = key;
+            slotGroups[slot] = group;
+            slotCount++;
+        } else {
+            compositeMap.put(compositeKey(row), group);
+        }
+        return group;
+    }
+
+    public void accumulate(int group, Row row) {
+        Object[] groupStates = states.get(group);
+        for (int i = 0; i < groupStates.length; i++) {
+            accumulators.get(i).accumulate(groupStates[i], row);
+        }
+    }
+
+    /** 返回分组的结果行：分组列的值之后依次是各累加器的结果 */
+    public Object[] getResult(int group) {
+        Object[] result = new Object[resultSize];
+        Object[] values = groupValues.get(group);
+        System.arraycopy(values, 0, result, 0, values.length);
+        int offset = values.length;
+        Object[] groupStates = states.get(group);
+        for (int i = 0; i < groupStates.length; i++) {
+            Object[] finished = accumulators.get(i).finish(groupStates[i]);
+            System.arraycopy(finished, 0, result, offset, finished.length);
+            offset += finished.length;
+        }
+        return result;
+    }
+
+    /** 按照分组值列表的哈希值组织分组的输出顺序，与物化分组的实现输出顺序一致 */
+    public List<Integer> getOutputOrder() {
+        Map<Integer, List<Integer>> buckets = new HashMap<>();
+        for (int group = 0; group < groupValues.size(); group++) {
+            List<Object> hashValues = new ArrayList<>(groupIndices.length);
+            for (Object value : groupValues.get(group)) {
+                hashValues.add(value instanceof byte[] ? new String((byte[]) value) : value);
+            }
+            int hash = hashValues.hashCode();
+            List<Integer> bucket = buckets.get(hash);
+            if (bucket == null) {
+                bucket = new ArrayList<>();
+                buckets.put(hash, bucket);
+            }
+            bucket.add(group);
+        }
+        List<Integer> order = new ArrayList<>(groupValues.size());
+        buckets.values().forEach(order::addAll);
+        return order;
+    }
+
+    public int size() {
+        return groupValues.size();
+    }
+
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    private int findSlot(long key) {
+        int mask = slotKeys.length - 1;
+        int slot = (int) JoinHashTable.mix(key) & mask;
+        while (slotGroups[slot] != EMPTY && slotKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = slotKeys;
+        int[] oldGroups = slotGroups;
+        slotKeys = new long[oldKeys.length << 1];
+        slotGroups = new int[oldKeys.length << 1];
+        Arrays.fill(slotGroups, EMPTY);
+        estimatedSize += 12L * oldKeys.length;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldGroups[i] != EMPTY) {
+                int slot = findSlot(oldKeys[i]);
+                slotKeys[slot] = oldKeys[i];
+                slotGroups[slot] = oldGroups[i];
+            }
+        }
+    }
+
+    private long primitiveKey(Object value) {
+        if (kinds[0] == KeyKind.LONG) {
+            return ((Number) value).longValue();
+        }
+        double d = ((Number) value).doubleValue();
+        return d == 0.0D ? 0L : Double.doubleToLongBits(d);
+    }
+
+    private List<Object> compositeKey(Row row) {
+        Object[] key = new Object[groupIndices.length];
+        for (int i = 0; i < groupIndices.length; i++) {
+            Object value = row.getValue(groupIndices[i]);
+            if (value == null) {
+                continue;
+            }
+            switch (kinds[i]) {
+                case LONG:
+                    key[i] = ((Number) value).longValue();
+                    break;
+                case DOUBLE:
+                    double d = ((Number) value).doubleValue();
+                    key[i] = d == 0.0D ? 0.0D : d;
+                    break;
+                default:
+                    key[i] = value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value;
+            }
+        }
+        return Arrays.asList(key);
+    }
+}
@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils;
+
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** 哈希连接的构建表。单列整数或浮点连接键使用开放寻址的原生数组保存，其余情况使用多列组合键；键相同的行通过 next 链表按插入顺序串联 */
+public class JoinHashTable {
+
+    public enum KeyKind {
+        LONG,
+        DOUBLE,
+        OTHER
+    }
+
+    private static final int EMPTY = -1;
+
+    private final KeyKind[] kinds;
+
+    private final int[] buildIndices;
+
+    private final boolean primitive;
+
+    private long[] slotKeys;
+
+    private int[] slotHeads;
+
+    private int[] slotTails;
+
+    private int slotCount;
+
+    private final Map<List<Object>, int[]> compositeMap;
+
+    private final List<Row> rows;
+
+    private int[] next;
+
+    private final BitSet matched;
+
+    private long estimatedSize;
+
+    public JoinHashTable(KeyKind[] kinds, int[] buildIndices) {
+        this.kinds = kinds;
+        this.buildIndices = buildIndices;
+        this.primitive = kinds.length == 1 && kinds[0] != KeyKind.OTHER;
+        if (primitive) {
+            this.slotKeys = new long[16];
+            this.slotHeads = new int[16];
+            this.slotTails = new int[16];
+            Arrays.fill(slotHeads, EMPTY);
+            this.compositeMap = null;
+        } else {
+            this.compositeMap = new HashMap<>();
+        }
+        this.rows = new ArrayList<>();
+        this.next = new int[16];
+        this.matched = new BitSet();
+    }
+
+    /** 根据两侧连接列的类型确定每一列键的比较方式：两侧均为整数时按 long 比较，均为数值时按 double 比较 */
+    public static KeyKind[] getKeyKinds(
+            Header headerA, int[] indicesA, Header headerB, int[] indicesB) {
+        KeyKind[] kinds = new KeyKind[indicesA.length];
+        for (int i = 0; i < kinds.length; i++) {
+            DataType typeA = headerA.getField(indicesA[i]).getType();
+            DataType typeB = headerB.getField(indicesB[i]).getType();
+            if (isIntegral(typeA) && isIntegral(typeB)) {
+                kinds[i] = KeyKind.LONG;
+            } else if (isNumeric(typeA) && isNumeric(typeB)) {
+                kinds[i] = KeyKind.DOUBLE;
+            } else {
+                kinds[i] = KeyKind.OTHER;
+            }
+        }
+        return kinds;
+    }
+
+    private static boolean isIntegral(DataType type) {
+        return type == DataType.INTEGER || type == DataType.LONG;
+    }
+
+    private static boolean isNumeric(DataType type) {
+        return isIntegral(type) || type == DataType.FLOAT || type == DataType.DOUBLE;
+    }
+
+    public static boolean hasNullKey(Row row, int[] indices) {
+        for (int index : indices) {
+            if (row.getValue(index) == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** 计算连接键的 64 位哈希值，构建侧与探测侧相等的键得到相同的结果 */
+    public long hash(Row row, int[] indices) {
+        if (primitive) {
+            return mix(primitiveKey(row.getValue(indices[0])));
+        }
+        return mix(compositeKey(row, indices).hashCode());
+    }
+
+    public void add(Row row) {
+        int index = rows.size();
+        rows.add(row);
+        if (index == next.length) {
+            next = Arrays.copyOf(next, next.length << 1);
+        }
+        next[index] = EMPTY;
+        estimatedSize += RowSpillFile.estimateSize(row);
+
+        if (primitive) {
+            if ((slotCount + 1) * 2 > slotKeys.length) {
+                resize();
+            }
+            long key = primitiveKey(row.getValue(buildIndices[0]));
+            int slot = findSlot(key);
+            if (slotHeads[slot] == EMPTY) {
+                slotKeys[slot] = key;
+                slotHeads[slot] = index;
+                slotCount++;
+            } else {
+                next[slotTails[slot]] = index;
+            }
+            slotTails[slot] = index;
+        } else {
+            estimatedSize += 16L * buildIndices.length;
+            List<Object> key = compositeKey(row, buildIndices);
+            int[] entry = compositeMap.get(key);
+            if (entry == null) {
+                compositeMap.put(key, new int[] {index, index});
+            } else {
+                next[entry[1]] = index;
+                entry[1] = index;
+            }
+        }
+    }
+
+    /** 返回与探测行连接键相等的第一行在表中的下标，不存在时返回 -1 */
+    public int find(Row probe, int[] probeIndices) {
+        if (primitive) {
+            int slot = findSlot(primitiveKey(probe.getValue(probeIndices[0])));
+            return slotHeads[slot];
+        }
+        int[] entry = compositeMap.get(compositeKey(probe, probeIndices));
+        return entry == null ? EMPTY : entry[0];
+    }
+
+    public int next(int index) {
+        return next[index];
+    }
+
+    public Row getRow(int index) {
+        return rows.get(index);
+    }
+
+    public void markMatched(int index) {
+        matched.set(index);
+    }
+
+    public boolean isMatched(int index) {
+        return matched.get(index);
+    }
+
+    public int size() {
+        return rows.size();
+    }
+
+    public long getEstimatedSize() {
+        return estimatedSize;
+    }
+
+    private int findSlot(long key) {
+        int mask = slotKeys.length - 1;
+        int slot = (int) mix(key) & mask;
+        while (slotHeads[slot] != EMPTY && slotKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void resize() {
+        long[] oldKeys = slotKeys;
+        int[] oldHeads = slotHeads;
+        int[] oldTails = slotTails;
+        slotKeys = new long[oldKeys.length << 1];
+        slotHeads = new int[oldKeys.length << 1];
+        slotTails = new int[oldKeys.length << 1];
+        Arrays.fill(slotHeads, EMPTY);
+        estimatedSize += 16L * oldKeys.length;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldHeads[i] != EMPTY) {
+                int slot = findSlot(oldKeys[i]);
+                slotKeys[slot] = oldKeys[i];
+                slotHeads[slot] = oldHeads[i];
+                slotTails[slot] = oldTails[i];
+            }
+        }
+    }
+
+    private long primitiveKey(Object value) {
+        if (kinds[0] == KeyKind.LONG) {
+            return ((Number) value).longValue();
+        }
+        double d = ((Number) value).doubleValue();
+        return d == 0.0D ? 0L : Double.doubleToLongBits(d);
+    }
+
+    private List<Object> compositeKey(Row row, int[] indices) {
+        Object[] key = new Object[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            Object value = row.getValue(indices[i]);
+            switch (kinds[i]) {
+                case LONG:
+                    key[i] = ((Number) value).longValue();
+                    break;
+                case DOUBLE:
+                    double d = ((Number) value).doubleValue();
+                    key[i] = d == 0.0D ? 0.0D : d;
+                    break;
+                default:
+                    key[i] = value instanceof byte[] ? ByteBuffer.wrap((byte[]) value) : value;
+            }
+        }
+        return Arrays.asList(key);
+    }
+
+    static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb53a0e0d5cb1L;
+        key ^= key >>> 33;
+        return key;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Function;
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Count;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.FirstValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.LastValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Max;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Min;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Sum;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.ValueUtils;
+import cn.edu.tsinghua.iginx.engine.shared.operator.PartialAggregateMerge;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** 跨分片聚合的部分聚合与合并：各分片分别计算部分聚合，再按结果列合并为最终结果 */
+public class PartialAggregateUtils {
+
+    /** 各分片上需要计算的部分聚合函数，avg 拆分为 sum 与 count */
+    public static List<Function> getPartialFunctions(FunctionCall functionCall) {
+        if (functionCall.getFunction().getIdentifier().equals(Avg.AVG)) {
+            return Arrays.asList(Sum.getInstance(), Count.getInstance());
+        }
+        return Collections.singletonList(functionCall.getFunction());
+    }
+
+    /** 按结果列合并各个输入的部分聚合结果，各输入的列可能不同，只在部分输入中出现的列按其余输入没有数据处理 */
+    public static Table merge(PartialAggregateMerge merge, List<RowStream> streams)
+            throws PhysicalException {
+        String function = merge.getFunctionCall().getFunction().getIdentifier();
+        boolean isAvg = function.equals(Avg.AVG);
+        Map<String, Integer> indexMap = new HashMap<>();
+        Map<String, Long> counts = new HashMap<>();
+        List<Field> fields = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (RowStream stream : streams) {
+            Header header = stream.getHeader();
+            Row row = stream.hasNext() ? stream.next() : null;
+            stream.close();
+            if (row == null) {
+                continue;
+            }
+            for (int i = 0; i < header.getFieldSize(); i++) {
+                Field field = header.getField(i);
+                Object value = row.getValue(i);
+                String key = field.getFullName();
+                if (isAvg) {
+                    if (key.startsWith(Count.COUNT + "(")) {
+                        if (value != null) {
+                            counts.merge(getTarget(key, Count.COUNT), (Long) value, Long::sum);
+                        }
+                        continue;
+                    }
+                    key = getTarget(key, Sum.SUM);
+                }
+                Integer index = indexMap.get(key);
+                if (index == null) {
+                    indexMap.put(key, fields.size());
+                    if (isAvg) {
+                        fields.add(
+                                new Field(
+                                        Avg.AVG + "(" + getTarget(field.getName(), Sum.SUM) + ")",
+                                        Avg.AVG + "(" + key + ")",
+                                        field.getType(),
+                                        field.getTags()));
+                    } else {
+                        fields.add(field);
+                    }
+                    values.add(value);
+                    continue;
+                }
+                Field target = fields.get(index);
+                Object merged =
+                        mergeValue(
+                                isAvg ? Sum.SUM : function,
+                                target.getType(),
+                                values.get(index),
+                                field.getType(),
+                                value);
+                if (merged instanceof Double && target.getType() != DataType.DOUBLE) {
+                    // 不同分片上的同名序列类型不同时，sum 的结果提升为 DOUBLE
+                    target =
+                            new Field(
+                                    target.getName(),
+                                    target.getFullName(),
+                                    DataType.DOUBLE,
+                                    target.getTags());
+                    fields.set(index, target);
+                }
+                values.set(index, merged);
+            }
+        }
+        if (isAvg) {
+            for (Map.Entry<String, Integer> entry : indexMap.entrySet()) {
+                int index = entry.getValue();
+                Field field = fields.get(index);
+                Object sum = values.get(index);
+                long count = counts.getOrDefault(entry.getKey(), 0L);
+                fields.set(
+                        index,
+                        new Field(
+                                field.getName(),
+                                field.getFullName(),
+                                DataType.DOUBLE,
+                                field.getTags()));
+                values.set(index, sum == null ? null : ((Number) sum).doubleValue() / count);
+            }
+        }
+        Header header = new Header(fields);
+        return new Table(header, Collections.singletonList(new Row(header, values.toArray())));
+    }
+
+    private static Object mergeValue(
+            String function, DataType typeA, Object valueA, DataType typeB, Object valueB)
+            throws PhysicalException {
+        if (valueA == null) {
+            return valueB;
+        }
+        if (valueB == null) {
+            return valueA;
+        }
+        switch (function) {
+            case Count.COUNT:
+                return (long) valueA + (long) valueB;
+            case Sum.SUM:
+                if (valueA instanceof Long && valueB instanceof Long) {
+                    return (long) valueA + (long) valueB;
+                }
+                return ((Number) valueA).doubleValue() + ((Number) valueB).doubleValue();
+            case Max.MAX:
+                return ValueUtils.compare(valueA, valueB, typeA, typeB) >= 0 ? valueA : valueB;
+            case Min.MIN:
+                return ValueUtils.compare(valueA, valueB, typeA, typeB) <= 0 ? valueA : valueB;
+            case FirstValue.FIRST_VALUE:
+                return valueA;
+            case LastValue.LAST_VALUE:
+                return valueB;
+            default:
+                throw new PhysicalException("unsupported partial aggregate function: " + function);
+        }
+    }
+
+    /** 由部分聚合的结果列名得到聚合的目标序列名，如 sum(a.b) 得到 a.b */
+    private static String getTarget(String name, String function) {
+        return name.substring(function.length() + 1, name.length() - 1);
+    }
+}
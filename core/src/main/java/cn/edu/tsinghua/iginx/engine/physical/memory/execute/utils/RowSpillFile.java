@@ -0,0 +1,249 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.exception.RowFetchException;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** 以紧凑的二进制格式将行数据溢写到本地临时文件，并按写入顺序读回 */
+public class RowSpillFile implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RowSpillFile.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String PREFIX = "iginx-spill-";
+
+    private static final String SUFFIX = ".tmp";
+
+    private final Header header;
+
+    private final File file;
+
+    private DataOutputStream output;
+
+    private DataInputStream input;
+
+    private long rowCount = 0;
+
+    private long readCount = 0;
+
+    public RowSpillFile(Header header, String directory) throws PhysicalException {
+        this.header = header;
+        try {
+            File dir = getDirectory(directory);
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new PhysicalException("cannot create spill directory " + dir);
+            }
+            this.file = File.createTempFile(PREFIX, SUFFIX, dir);
+            this.output =
+                    new DataOutputStream(
+                            new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        } catch (IOException e) {
+            throw new PhysicalException("create spill file failure", e);
+        }
+    }
+
+    private static File getDirectory(String directory) {
+        return directory == null || directory.isEmpty()
+                ? new File(System.getProperty("java.io.tmpdir"))
+                : new File(directory);
+    }
+
+    /** 删除溢写目录中上次运行遗留的溢写文件，启动时调用。只删除在当前进程启动前修改过的文件，多个实例不应共用同一个溢写目录 */
+    public static void cleanStaleFiles(String directory) {
+        File[] files =
+                getDirectory(directory)
+                        .listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        long startTime = ManagementFactory.getRuntimeMXBean().getStartTime();
+        int count = 0;
+        for (File file : files) {
+            if (file.lastModified() < startTime && file.delete()) {
+                count++;
+            }
+        }
+        if (count > 0) {
+            logger.info("deleted {} stale spill files in {}", count, getDirectory(directory));
+        }
+    }
+
+    public void write(Row row) throws PhysicalException {
+        try {
+            writeRow(output, header, row);
+            rowCount++;
+        } catch (IOException e) {
+            throw new PhysicalException("write spill file failure", e);
+        }
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public boolean hasNext() throws PhysicalException {
+        if (input == null) {
+            try {
+                output.close();
+                output = null;
+                input =
+                        new DataInputStream(
+                                new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+            } catch (IOException e) {
+                throw new RowFetchException(e);
+            }
+        }
+        return readCount < rowCount;
+    }
+
+    public Row next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new IllegalStateException("spill file doesn't have more data!");
+        }
+        try {
+            Row row = readRow(input, header);
+            readCount++;
+            return row;
+        } catch (IOException e) {
+            throw new RowFetchException(e);
+        }
+    }
+
+    /** 按 header 中各列的类型序列化一行数据 */
+    public static void writeRow(DataOutput output, Header header, Row row) throws IOException {
+        if (header.hasKey()) {
+            output.writeLong(row.getKey());
+        }
+        Object[] values = row.getValues();
+        for (int i = 0; i < values.length; i++) {
+            Object value = values[i];
+            if (value == null) {
+                output.writeBoolean(false);
+                continue;
+            }
+            output.writeBoolean(true);
+            switch (header.getField(i).getType()) {
+                case BOOLEAN:
+                    output.writeBoolean((Boolean) value);
+                    break;
+                case INTEGER:
+                    output.writeInt((Integer) value);
+                    break;
+                case LONG:
+                    output.writeLong((Long) value);
+                    break;
+                case FLOAT:
+                    output.writeFloat((Float) value);
+                    break;
+                case DOUBLE:
+                    output.writeDouble((Double) value);
+                    break;
+                case BINARY:
+                    byte[] bytes = (byte[]) value;
+                    output.writeInt(bytes.length);
+                    output.write(bytes);
+                    break;
+            }
+        }
+    }
+
+    public static Row readRow(DataInput input, Header header) throws IOException {
+        long key = header.hasKey() ? input.readLong() : Row.NON_EXISTED_KEY;
+        Object[] values = new Object[header.getFieldSize()];
+        for (int i = 0; i < values.length; i++) {
+            if (!input.readBoolean()) {
+                continue;
+            }
+            DataType type = header.getField(i).getType();
+            switch (type) {
+                case BOOLEAN:
+                    values[i] = input.readBoolean();
+                    break;
+                case INTEGER:
+                    values[i] = input.readInt();
+                    break;
+                case LONG:
+                    values[i] = input.readLong();
+                    break;
+                case FLOAT:
+                    values[i] = input.readFloat();
+                    break;
+                case DOUBLE:
+                    values[i] = input.readDouble();
+                    break;
+                case BINARY:
+                    byte[] bytes = new byte[input.readInt()];
+                    input.readFully(bytes);
+                    values[i] = bytes;
+                    break;
+            }
+        }
+        return header.hasKey() ? new Row(header, key, values) : new Row(header, values);
+    }
+
+    @Override
+    public void close() {
+        try {
+            if (output != null) {
+                output.close();
+            }
+            if (input != null) {
+                input.close();
+            }
+        } catch (IOException e) {
+            // pass
+        }
+        try {
+            Files.deleteIfExists(file.toPath());
+        } catch (IOException e) {
+            // pass
+        }
+    }
+
+    /** 估算一行数据在堆上占用的字节数 */
+    public static long estimateSize(Row row) {
+        long size = 32;
+        for (Object value : row.getValues()) {
+            size += 16;
+            if (value instanceof byte[]) {
+                size += ((byte[]) value).length;
+            }
+        }
+        return size;
+    }
+}
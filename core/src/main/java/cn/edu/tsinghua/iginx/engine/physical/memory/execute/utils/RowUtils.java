@@ -39,6 +39,7 @@ import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
@@ -501,8 +502,13 @@ public class RowUtils {
         if (sortByCols == null || sortByCols.isEmpty()) {
             return;
         }
-        Header header = rows.get(0).getHeader();
+        rows.sort(getSortComparator(rows.get(0).getHeader(), asc, sortByCols));
+    }
 
+    /** 构造按照 sortByCols 排序的行比较器 */
+    public static Comparator<Row> getSortComparator(
+            Header header, boolean asc, List<String> sortByCols)
+            throws PhysicalTaskExecuteFailureException {
         List<Integer> indexList = new LinkedList<>();
         List<DataType> typeList = new LinkedList<>();
         boolean hasKey = false;
@@ -521,33 +527,32 @@ public class RowUtils {
         }
 
         boolean finalHasKey = hasKey;
-        rows.sort(
-                (a, b) -> {
-                    if (finalHasKey) {
-                        int cmp =
-                                asc
-                                        ? Long.compare(a.getKey(), b.getKey())
-                                        : Long.compare(b.getKey(), a.getKey());
-                        if (cmp != 0) {
-                            return cmp;
-                        }
-                    }
-                    for (int i = 0; i < indexList.size(); i++) {
-                        int cmp =
-                                asc
-                                        ? ValueUtils.compare(
-                                                a.getValue(indexList.get(i)),
-                                                b.getValue(indexList.get(i)),
-                                                typeList.get(i))
-                                        : ValueUtils.compare(
-                                                b.getValue(indexList.get(i)),
-                                                a.getValue(indexList.get(i)),
-                                                typeList.get(i));
-                        if (cmp != 0) {
-                            return cmp;
-                        }
-                    }
-                    return 0;
-                });
+        return (a, b) -> {
+            if (finalHasKey) {
+                int cmp =
+                        asc
+                                ? Long.compare(a.getKey(), b.getKey())
+                                : Long.compare(b.getKey(), a.getKey());
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            for (int i = 0; i < indexList.size(); i++) {
+                int cmp =
+                        asc
+                                ? ValueUtils.compare(
+                                        a.getValue(indexList.get(i)),
+                                        b.getValue(indexList.get(i)),
+                                        typeList.get(i))
+                                : ValueUtils.compare(
+                                        b.getValue(indexList.get(i)),
+                                        a.getValue(indexList.get(i)),
+                                        typeList.get(i));
+                if (cmp != 0) {
+                    return cmp;
+                }
+            }
+            return 0;
+        };
     }
 }
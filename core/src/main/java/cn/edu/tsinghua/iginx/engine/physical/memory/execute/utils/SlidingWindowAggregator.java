@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalTaskExecuteFailureException;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * 基于窗格的增量降采样。时间轴按窗口长度与滑动步长的最大公约数切分为窗格，每个窗格只保存一份累加器状态，窗口结果由其覆盖的窗格合并得到，重叠窗口之间不会重复扫描数据。输入需按 key 升序到达。
+ */
+public class SlidingWindowAggregator {
+
+    private final Accumulator accumulator;
+
+    private final Header header;
+
+    private final long bias;
+
+    private final long slideDistance;
+
+    private final long paneSize;
+
+    private final long windowPanes;
+
+    private final long slidePanes;
+
+    private final long windowCount;
+
+    private final Deque<Pane> panes = new ArrayDeque<>();
+
+    private final Deque<Row> results = new ArrayDeque<>();
+
+    private long nextWindow;
+
+    public SlidingWindowAggregator(Accumulator accumulator, Downsample downsample) {
+        this.accumulator = accumulator;
+        this.header = new Header(Field.KEY, accumulator.getHeader().getFields());
+        this.bias = downsample.getTimeRange().getActualBeginTime();
+        long precision = downsample.getPrecision();
+        this.slideDistance = downsample.getSlideDistance();
+        this.paneSize = gcd(precision, slideDistance);
+        this.windowPanes = precision / paneSize;
+        this.slidePanes = slideDistance / paneSize;
+        if (precision == slideDistance) {
+            // 滚动窗口不限制窗口数量
+            this.windowCount = Long.MAX_VALUE;
+            this.nextWindow = Long.MIN_VALUE;
+        } else {
+            long endTime = downsample.getTimeRange().getActualEndTime();
+            // startTime + (n - 1) * slideDistance + precision - 1 >= endTime
+            this.windowCount =
+                    (long)
+                            (Math.ceil((double) (endTime - bias - precision + 1) / slideDistance)
+                                    + 1);
+            this.nextWindow = 0;
+        }
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    /** 返回 key 所在窗格的结束时间（不含） */
+    public long getPaneEnd(long key) {
+        return bias + (Math.floorDiv(key - bias, paneSize) + 1) * paneSize;
+    }
+
+    public void accumulate(Row row) throws PhysicalException {
+        Object state = currentPane(row.getKey());
+        try {
+            accumulator.accumulate(state, row);
+        } catch (RuntimeException e) {
+            throw new PhysicalTaskExecuteFailureException(
+                    "encounter error when execute set mapping function.", e);
+        }
+    }
+
+    /** 累加批中 [from, to) 范围内的行，这些行需位于同一个窗格 */
+    public void accumulate(RowBatch batch, int from, int to) throws PhysicalException {
+        Object state = currentPane(batch.getKey(from));
+        try {
+            accumulator.accumulate(state, batch, from, to);
+        } catch (RuntimeException e) {
+            throw new PhysicalTaskExecuteFailureException(
+                    "encounter error when execute set mapping function.", e);
+        }
+    }
+
+    /** 输入已经结束，剩余的窗口全部可以输出 */
+    public void finish() {
+        emitWindows(Long.MAX_VALUE);
+    }
+
+    public boolean hasNext() {
+        return !results.isEmpty();
+    }
+
+    public Row next() {
+        return results.pollFirst();
+    }
+
+    private Object currentPane(long key) {
+        long index = Math.floorDiv(key - bias, paneSize);
+        Pane last = panes.peekLast();
+        if (last != null && last.index == index) {
+            return last.state;
+        }
+        if (last != null && last.index > index) {
+            throw new IllegalStateException("rows of downsample must be sorted by key.");
+        }
+        emitWindows(index);
+        Pane pane = new Pane(index, accumulator.init());
+        panes.addLast(pane);
+        return pane.state;
+    }
+
+    /** 输出所有只覆盖 completedPane 之前窗格的窗口，不被任何窗口覆盖的窗格直接丢弃 */
+    private void emitWindows(long completedPane) {
+        while (true) {
+            while (!panes.isEmpty() && panes.peekFirst().index < nextWindow * slidePanes) {
+                panes.pollFirst();
+            }
+            if (panes.isEmpty()) {
+                return;
+            }
+            long first = panes.peekFirst().index;
+            nextWindow = Math.max(nextWindow, -Math.floorDiv(windowPanes - 1 - first, slidePanes));
+            if (nextWindow >= windowCount) {
+                panes.clear();
+                return;
+            }
+            long start = nextWindow * slidePanes;
+            if (start > first) {
+                continue;
+            }
+            long end = start + windowPanes;
+            if (end > completedPane) {
+                return;
+            }
+            results.addLast(
+                    new Row(header, bias + nextWindow * slideDistance, finishWindow(start, end)));
+            nextWindow++;
+        }
+    }
+
+    private Object[] finishWindow(long start, long end) {
+        if (windowPanes == 1) {
+            return accumulator.finish(panes.pollFirst().state);
+        }
+        Object merged = accumulator.init();
+        for (Pane pane : panes) {
+            if (pane.index >= end) {
+                break;
+            }
+            accumulator.merge(merged, pane.state);
+        }
+        return accumulator.finish(merged);
+    }
+
+    private static long gcd(long a, long b) {
+        while (b != 0) {
+            long t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+
+    private static class Pane {
+
+        private final long index;
+
+        private final Object state;
+
+        Pane(long index, Object state) {
+            this.index = index;
+            this.state = state;
+        }
+    }
+}
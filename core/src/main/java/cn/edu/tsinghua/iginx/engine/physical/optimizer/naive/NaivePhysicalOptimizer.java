@@ -19,18 +19,35 @@
 package cn.edu.tsinghua.iginx.engine.physical.optimizer.naive;
 
 import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.logical.utils.OperatorUtils;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.PartialAggregateUtils;
 import cn.edu.tsinghua.iginx.engine.physical.optimizer.PhysicalOptimizer;
 import cn.edu.tsinghua.iginx.engine.physical.optimizer.ReplicaDispatcher;
 import cn.edu.tsinghua.iginx.engine.physical.optimizer.rule.Rule;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.FilterPushDownUtils;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.PushDownUtils;
 import cn.edu.tsinghua.iginx.engine.physical.task.*;
+import cn.edu.tsinghua.iginx.engine.shared.Constants;
+import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
 import cn.edu.tsinghua.iginx.engine.shared.constraint.ConstraintManager;
+import cn.edu.tsinghua.iginx.engine.shared.function.Function;
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
 import cn.edu.tsinghua.iginx.engine.shared.operator.*;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
 import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import cn.edu.tsinghua.iginx.engine.shared.source.FragmentSource;
 import cn.edu.tsinghua.iginx.engine.shared.source.OperatorSource;
 import cn.edu.tsinghua.iginx.engine.shared.source.Source;
 import cn.edu.tsinghua.iginx.engine.shared.source.SourceType;
+import cn.edu.tsinghua.iginx.metadata.entity.FragmentMeta;
+import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 
 public class NaivePhysicalOptimizer implements PhysicalOptimizer {
@@ -73,19 +90,44 @@ public class NaivePhysicalOptimizer implements PhysicalOptimizer {
                     return new StoragePhysicalTask(operators);
                 }
             } else { // 构建内存中的计划
+                boolean enablePushDown =
+                        ConfigDescriptor.getInstance().getConfig().isEnablePushDown();
+                if (enablePushDown && operator.getType() == OperatorType.Downsample) {
+                    Operator splitOperator = splitDownsample((Downsample) operator);
+                    if (splitOperator != null) {
+                        return constructTask(splitOperator);
+                    }
+                }
+                if (enablePushDown && operator.getType() == OperatorType.SetTransform) {
+                    Operator splitOperator = splitSetTransform((SetTransform) operator);
+                    if (splitOperator != null) {
+                        return constructTask(splitOperator);
+                    }
+                }
                 OperatorSource operatorSource = (OperatorSource) source;
-                Operator sourceOperator = operatorSource.getOperator();
                 PhysicalTask sourceTask = constructTask(operatorSource.getOperator());
-                if (ConfigDescriptor.getInstance().getConfig().isEnablePushDown()
+                if (enablePushDown
                         && sourceTask instanceof StoragePhysicalTask
-                        && sourceOperator.getType() == OperatorType.Project
-                        && ((Project) sourceOperator).getTagFilter() == null
-                        && ((UnaryOperator) sourceOperator).getSource().getType()
-                                == SourceType.Fragment
-                        && operator.getType() == OperatorType.Select
-                        && ((Select) operator).getTagFilter() == null) {
-                    sourceTask.getOperators().add(operator);
-                    return sourceTask;
+                        && canPushDown((StoragePhysicalTask) sourceTask, operator)) {
+                    Operator pushDown = operator;
+                    if (operator.getType() == OperatorType.Downsample) {
+                        TimeInterval interval =
+                                ((FragmentSource)
+                                                ((Project) sourceTask.getOperators().get(0))
+                                                        .getSource())
+                                        .getFragment()
+                                        .getTimeInterval();
+                        pushDown =
+                                clampDownsample(
+                                        (Downsample) operator,
+                                        operatorSource.getOperator(),
+                                        interval.getStartTime(),
+                                        interval.getEndTime());
+                    }
+                    if (pushDown != null) {
+                        sourceTask.getOperators().add(pushDown);
+                        return sourceTask;
+                    }
                 }
                 List<Operator> operators = new ArrayList<>();
                 operators.add(operator);
@@ -94,6 +136,19 @@ public class NaivePhysicalOptimizer implements PhysicalOptimizer {
                 return task;
             }
         } else if (OperatorType.isBinaryOperator(operator.getType())) {
+            if (ConfigDescriptor.getInstance().getConfig().isEnableMultiwayMerge()
+                    && isMergeByKey(operator)) {
+                List<Operator> inputs = new ArrayList<>();
+                collectMergeInputs(operator, operator.getType(), inputs);
+                if (inputs.size() > 2) {
+                    List<Source> sources = new ArrayList<>();
+                    for (Operator input : inputs) {
+                        sources.add(new OperatorSource(input));
+                    }
+                    return constructTask(
+                            new MultiwayMerge(sources, operator.getType() == OperatorType.Join));
+                }
+            }
             BinaryOperator binaryOperator = (BinaryOperator) operator;
             OperatorSource sourceA = (OperatorSource) binaryOperator.getSourceA();
             OperatorSource sourceB = (OperatorSource) binaryOperator.getSourceB();
@@ -124,6 +179,255 @@ public class NaivePhysicalOptimizer implements PhysicalOptimizer {
         }
     }
 
+    /** 按 key 的 Join 与 Union 都是对有序输入的归并，可以折叠为一个多路归并算子 */
+    private boolean isMergeByKey(Operator operator) {
+        if (operator.getType() == OperatorType.Union) {
+            return true;
+        }
+        return operator.getType() == OperatorType.Join
+                && ((Join) operator).getJoinBy().equals(Constants.KEY);
+    }
+
+    private void collectMergeInputs(Operator operator, OperatorType type, List<Operator> inputs) {
+        if (operator.getType() != type || !isMergeByKey(operator)) {
+            inputs.add(operator);
+            return;
+        }
+        BinaryOperator binaryOperator = (BinaryOperator) operator;
+        collectMergeInputs(
+                ((OperatorSource) binaryOperator.getSourceA()).getOperator(), type, inputs);
+        collectMergeInputs(
+                ((OperatorSource) binaryOperator.getSourceB()).getOperator(), type, inputs);
+    }
+
+    /** 判断算子能否与下层对分片的查询合并为同一个存储任务 */
+    private boolean canPushDown(StoragePhysicalTask task, Operator operator) {
+        List<Operator> operators = task.getOperators();
+        Operator project = operators.get(0);
+        if (project.getType() != OperatorType.Project
+                || ((Project) project).getTagFilter() != null) {
+            return false;
+        }
+        for (int i = 1; i < operators.size(); i++) {
+            if (operators.get(i).getType() != OperatorType.Select) {
+                return false;
+            }
+        }
+        if (operator.getType() == OperatorType.Select) {
+            return operators.size() == 1 && ((Select) operator).getTagFilter() == null;
+        }
+        return PushDownUtils.isPushDownCandidate(operator);
+    }
+
+    /** 降采样跨越多个时间分片时，分片内部的窗口下推至各分片，跨越分片边界的窗口在内存中计算 */
+    private Operator splitDownsample(Downsample downsample) {
+        if (!PushDownUtils.isPushDownCandidate(downsample)) {
+            return null;
+        }
+        List<Filter> filters = new ArrayList<>();
+        Operator child = ((OperatorSource) downsample.getSource()).getOperator();
+        if (child.getType() == OperatorType.Select) {
+            Select select = (Select) child;
+            if (select.getTagFilter() != null
+                    || select.getSource().getType() != SourceType.Operator) {
+                return null;
+            }
+            filters.add(select.getFilter());
+            child = ((OperatorSource) select.getSource()).getOperator();
+        }
+        List<Operator> leaves = new ArrayList<>();
+        if (!collectUnionLeaves(child, leaves) || leaves.size() < 2) {
+            return null;
+        }
+
+        long bias = downsample.getTimeRange().getActualBeginTime();
+        long precision = downsample.getPrecision();
+        long rangeEnd = getExclusiveEndTime(downsample);
+        List<Operator> windows = new ArrayList<>();
+        List<Operator> edges = new ArrayList<>();
+        for (Operator leaf : leaves) {
+            List<Filter> leafFilters = new ArrayList<>(filters);
+            if (leaf.getType() == OperatorType.Select) {
+                leafFilters.add(((Select) leaf).getFilter());
+                leaf = ((OperatorSource) ((Select) leaf).getSource()).getOperator();
+            }
+            Project project = (Project) leaf;
+            // 按过滤条件收紧分片的范围，内存中计算的边界部分不会被再次拆分
+            TimeInterval interval =
+                    ((FragmentSource) project.getSource()).getFragment().getTimeInterval();
+            for (Filter filter : leafFilters) {
+                interval = FilterPushDownUtils.intersect(interval, filter);
+            }
+            long start = interval.getStartTime();
+            long end = Math.min(interval.getEndTime(), rangeEnd);
+            if (end == Long.MAX_VALUE) {
+                // 没有上界的窗口无法下推，整个分片在内存中计算
+                edges.add(selectByKey(project, leafFilters, start, end));
+                continue;
+            }
+            // 起始时间之前的数据所在的窗口与第一个窗口可能重合，因此统一放到内存中计算
+            long lower = Math.max(start, bias);
+            long first = lower - (lower - bias) % precision;
+            if (first < lower || start < bias) {
+                first += precision;
+            }
+            long last = end > first ? end - (end - bias) % precision : first;
+            if (last <= first) {
+                edges.add(selectByKey(project, leafFilters, start, end));
+                continue;
+            }
+            if (start < first) {
+                edges.add(selectByKey(project, leafFilters, start, first));
+            }
+            windows.add(
+                    copyDownsample(
+                            downsample,
+                            selectByKey(project, leafFilters, first, last),
+                            new TimeRange(first, last)));
+            if (last < end) {
+                edges.add(selectByKey(project, leafFilters, last, end));
+            }
+        }
+        if (windows.isEmpty()) {
+            return null;
+        }
+        if (!edges.isEmpty()) {
+            windows.add(
+                    copyDownsample(
+                            downsample,
+                            OperatorUtils.unionOperators(edges),
+                            downsample.getTimeRange().copy()));
+        }
+        return OperatorUtils.unionOperators(windows);
+    }
+
+    /** 聚合跨越多个时间分片时，各分片分别计算部分聚合并尽量下推至存储引擎，再在内存中合并各分片的结果 */
+    private Operator splitSetTransform(SetTransform setTransform) {
+        if (!PushDownUtils.isPushDownCandidate(setTransform)) {
+            return null;
+        }
+        List<Filter> filters = new ArrayList<>();
+        Operator child = ((OperatorSource) setTransform.getSource()).getOperator();
+        if (child.getType() == OperatorType.Select) {
+            Select select = (Select) child;
+            if (select.getTagFilter() != null
+                    || select.getSource().getType() != SourceType.Operator) {
+                return null;
+            }
+            filters.add(select.getFilter());
+            child = ((OperatorSource) select.getSource()).getOperator();
+        }
+        List<Operator> leaves = new ArrayList<>();
+        if (!collectUnionLeaves(child, leaves) || leaves.size() < 2) {
+            return null;
+        }
+        // first_value 与 last_value 的合并依赖各分片结果按时间排列
+        leaves.sort(
+                Comparator.comparingLong(
+                        leaf -> getFragment(leaf).getTimeInterval().getStartTime()));
+
+        FunctionCall functionCall = setTransform.getFunctionCall();
+        List<Function> partialFunctions = PartialAggregateUtils.getPartialFunctions(functionCall);
+        List<Source> sources = new ArrayList<>();
+        for (Operator leaf : leaves) {
+            List<Filter> leafFilters = new ArrayList<>(filters);
+            if (leaf.getType() == OperatorType.Select) {
+                leafFilters.add(((Select) leaf).getFilter());
+                leaf = ((OperatorSource) ((Select) leaf).getSource()).getOperator();
+            }
+            TimeInterval interval = getFragment(leaf).getTimeInterval();
+            for (Function function : partialFunctions) {
+                sources.add(
+                        new OperatorSource(
+                                new SetTransform(
+                                        new OperatorSource(
+                                                selectByKey(
+                                                        (Project) leaf,
+                                                        leafFilters,
+                                                        interval.getStartTime(),
+                                                        interval.getEndTime())),
+                                        new FunctionCall(
+                                                function,
+                                                new HashMap<>(functionCall.getParams())))));
+            }
+        }
+        return new PartialAggregateMerge(sources, functionCall.copy());
+    }
+
+    private FragmentMeta getFragment(Operator leaf) {
+        if (leaf.getType() == OperatorType.Select) {
+            leaf = ((OperatorSource) ((Select) leaf).getSource()).getOperator();
+        }
+        return ((FragmentSource) ((Project) leaf).getSource()).getFragment();
+    }
+
+    private boolean collectUnionLeaves(Operator operator, List<Operator> leaves) {
+        if (operator.getType() == OperatorType.Union) {
+            Union union = (Union) operator;
+            return collectUnionLeaves(((OperatorSource) union.getSourceA()).getOperator(), leaves)
+                    && collectUnionLeaves(
+                            ((OperatorSource) union.getSourceB()).getOperator(), leaves);
+        }
+        Operator project = operator;
+        if (operator.getType() == OperatorType.Select) {
+            Select select = (Select) operator;
+            if (select.getTagFilter() != null
+                    || select.getSource().getType() != SourceType.Operator) {
+                return false;
+            }
+            project = ((OperatorSource) select.getSource()).getOperator();
+        }
+        if (project.getType() != OperatorType.Project
+                || ((Project) project).getSource().getType() != SourceType.Fragment
+                || ((Project) project).getTagFilter() != null) {
+            return false;
+        }
+        leaves.add(operator);
+        return true;
+    }
+
+    private Operator selectByKey(Project project, List<Filter> filters, long start, long end) {
+        List<Filter> children = new ArrayList<>();
+        for (Filter filter : filters) {
+            children.add(filter.copy());
+        }
+        children.add(new KeyFilter(Op.GE, start));
+        children.add(new KeyFilter(Op.L, end));
+        return new Select(new OperatorSource(project.copy()), new AndFilter(children), null);
+    }
+
+    private Downsample copyDownsample(Downsample downsample, Operator source, TimeRange range) {
+        return new Downsample(
+                new OperatorSource(source),
+                downsample.getPrecision(),
+                downsample.getSlideDistance(),
+                downsample.getFunctionCall().copy(),
+                range);
+    }
+
+    private static long getExclusiveEndTime(Downsample downsample) {
+        long end = downsample.getTimeRange().getActualEndTime();
+        return end == Long.MAX_VALUE ? end : end + 1;
+    }
+
+    /**
+     * 将下推至单个分片的降采样的时间范围收紧到分片 [start, end) 与查询范围的交集，起点按窗口对齐，避免存储引擎遍历整个查询范围内的空窗口。范围没有上界时返回 null，不进行下推
+     */
+    private Downsample clampDownsample(
+            Downsample downsample, Operator source, long start, long end) {
+        long bias = downsample.getTimeRange().getActualBeginTime();
+        end = Math.min(end, getExclusiveEndTime(downsample));
+        if (end == Long.MAX_VALUE) {
+            return null;
+        }
+        long begin = Math.max(start, bias);
+        begin -= (begin - bias) % downsample.getPrecision();
+        if (begin >= end) {
+            return null;
+        }
+        return copyDownsample(downsample, source, new TimeRange(begin, end));
+    }
+
     private static class NaivePhysicalOptimizerHolder {
 
         private static final NaivePhysicalOptimizer INSTANCE = new NaivePhysicalOptimizer();
@@ -22,6 +22,7 @@ import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
 import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeSeriesRange;
 import cn.edu.tsinghua.iginx.utils.Pair;
@@ -40,5 +41,10 @@ public interface IStorage {
         return getBoundaryOfStorage(null);
     }
 
+    /** 能否在存储引擎中原生执行下推的 Downsample、SetTransform 或 Limit 算子，不支持时由内存执行 */
+    default boolean isSupportPushDown(Operator operator) {
+        return false;
+    }
+
     void release() throws PhysicalException;
 }
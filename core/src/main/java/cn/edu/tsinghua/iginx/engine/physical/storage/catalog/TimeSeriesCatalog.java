@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.storage.catalog;
+
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.storage.IStorage;
+import cn.edu.tsinghua.iginx.engine.physical.storage.StorageManager;
+import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Delete;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Insert;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
+import cn.edu.tsinghua.iginx.metadata.IMetaManager;
+import cn.edu.tsinghua.iginx.metadata.entity.StorageEngineMeta;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.Pair;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** 时间序列目录，由本节点的写入与删除增量维护，并周期性地与各个存储引擎的 getTimeSeries 结果对账，以纳入其他节点写入的序列。只有已经完成对账的存储引擎才由目录提供查询 */
+public class TimeSeriesCatalog {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesCatalog.class);
+
+    private final IMetaManager metaManager;
+
+    private final StorageManager storageManager;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final TimeSeriesIndex index = new TimeSeriesIndex();
+
+    // 序列 -> 拥有该序列的存储引擎
+    private final Map<Timeseries, Set<Long>> owners = new HashMap<>();
+
+    // 存储引擎 -> 序列 -> 由写入登记的时间，经过对账确认的序列为 0
+    private final Map<Long, Map<Timeseries, Long>> engineSeries = new ConcurrentHashMap<>();
+
+    private final Set<Long> reconciledEngines = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService reconcileService =
+            Executors.newSingleThreadScheduledExecutor(
+                    r -> {
+                        Thread thread = new Thread(r, "TimeSeriesCatalogReconciler");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+
+    public TimeSeriesCatalog(IMetaManager metaManager, StorageManager storageManager) {
+        this.metaManager = metaManager;
+        this.storageManager = storageManager;
+    }
+
+    public void start() {
+        long interval =
+                ConfigDescriptor.getInstance().getConfig().getTimeSeriesCatalogReconcileInterval();
+        reconcileService.scheduleWithFixedDelay(
+                this::reconcileAll, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /** 尽快对账一次，用于新加入存储引擎等场景 */
+    public void reconcileSoon() {
+        reconcileService.execute(this::reconcileAll);
+    }
+
+    /** 给定的存储引擎是否都已完成对账，可以由目录代替引擎回答查询 */
+    public boolean covers(List<StorageEngineMeta> storageList) {
+        for (StorageEngineMeta storage : storageList) {
+            if (!reconciledEngines.contains(storage.getId())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public List<Timeseries> match(Collection<String> patterns, TagFilter tagFilter) {
+        lock.readLock().lock();
+        try {
+            return index.match(patterns, tagFilter);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /** 登记一次成功写入涉及的序列，已登记的序列只需一次并发表查找 */
+    public void recordInsert(long storageId, Insert insert) {
+        Map<Timeseries, Long> series =
+                engineSeries.computeIfAbsent(storageId, k -> new ConcurrentHashMap<>());
+        String schemaPrefix = getSchemaPrefix(storageId);
+        DataView data = insert.getData();
+        List<Timeseries> newSeries = null;
+        for (int i = 0; i < data.getPathNum(); i++) {
+            Timeseries timeseries =
+                    normalize(schemaPrefix, data.getPath(i), data.getDataType(i), data.getTags(i));
+            if (!series.containsKey(timeseries)) {
+                if (newSeries == null) {
+                    newSeries = new ArrayList<>();
+                }
+                newSeries.add(timeseries);
+            }
+        }
+        if (newSeries == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lock.writeLock().lock();
+        try {
+            for (Timeseries timeseries : newSeries) {
+                if (series.putIfAbsent(timeseries, now) == null) {
+                    addOwner(timeseries, storageId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /** 删除序列（不带时间范围的删除）成功后，从目录中移除该存储引擎上匹配的序列 */
+    public void recordDelete(long storageId, Delete delete) {
+        if (delete.getTimeRanges() != null && !delete.getTimeRanges().isEmpty()) {
+            return;
+        }
+        Map<Timeseries, Long> series = engineSeries.get(storageId);
+        if (series == null) {
+            return;
+        }
+        String schemaPrefix = getSchemaPrefix(storageId);
+        List<String> patterns = new ArrayList<>();
+        for (String pattern : delete.getPatterns()) {
+            patterns.add(schemaPrefix == null ? pattern : schemaPrefix + "." + pattern);
+        }
+        lock.writeLock().lock();
+        try {
+            for (Timeseries timeseries : index.match(patterns, delete.getTagFilter())) {
+                if (series.remove(timeseries) != null) {
+                    removeOwner(timeseries, storageId);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void reconcileAll() {
+        for (StorageEngineMeta storage : metaManager.getStorageEngineList()) {
+            try {
+                reconcile(storage);
+            } catch (Exception e) {
+                logger.error("fail to reconcile time series of storage " + storage.getId(), e);
+            }
+        }
+    }
+
+    private void reconcile(StorageEngineMeta storage) throws PhysicalException {
+        long storageId = storage.getId();
+        Pair<IStorage, ThreadPoolExecutor> pair = storageManager.getStorage(storageId);
+        if (pair == null) {
+            return;
+        }
+        long startTime = System.currentTimeMillis();
+        Set<Timeseries> latest = new HashSet<>();
+        for (Timeseries timeseries : pair.k.getTimeSeries()) {
+            latest.add(
+                    normalize(
+                            storage.getSchemaPrefix(),
+                            timeseries.getPath(),
+                            timeseries.getDataType(),
+                            timeseries.getTags()));
+        }
+
+        Map<Timeseries, Long> series =
+                engineSeries.computeIfAbsent(storageId, k -> new ConcurrentHashMap<>());
+        int added = 0, removed = 0;
+        lock.writeLock().lock();
+        try {
+            for (Timeseries timeseries : latest) {
+                if (series.put(timeseries, 0L) == null) {
+                    addOwner(timeseries, storageId);
+                    added++;
+                }
+            }
+            // 对账开始之后才由写入登记的序列可能不在本次结果中，保留到下一次对账
+            List<Timeseries> stale = new ArrayList<>();
+            for (Map.Entry<Timeseries, Long> entry : series.entrySet()) {
+                if (entry.getValue() < startTime && !latest.contains(entry.getKey())) {
+                    stale.add(entry.getKey());
+                }
+            }
+            for (Timeseries timeseries : stale) {
+                series.remove(timeseries);
+                removeOwner(timeseries, storageId);
+                removed++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+        reconciledEngines.add(storageId);
+        if (added != 0 || removed != 0) {
+            logger.info(
+                    "reconcile time series of storage {}: {} added, {} removed",
+                    storageId,
+                    added,
+                    removed);
+        }
+    }
+
+    private void addOwner(Timeseries timeseries, long storageId) {
+        owners.computeIfAbsent(timeseries, k -> new HashSet<>()).add(storageId);
+        index.add(timeseries);
+    }
+
+    private void removeOwner(Timeseries timeseries, long storageId) {
+        Set<Long> storageIds = owners.get(timeseries);
+        if (storageIds == null) {
+            return;
+        }
+        storageIds.remove(storageId);
+        if (storageIds.isEmpty()) {
+            owners.remove(timeseries);
+            index.remove(timeseries);
+        }
+    }
+
+    private String getSchemaPrefix(long storageId) {
+        StorageEngineMeta storage = metaManager.getStorageEngine(storageId);
+        return storage == null ? null : storage.getSchemaPrefix();
+    }
+
+    // 空标签统一表示为 null，存储引擎的 schemaPrefix 拼接在路径之前，与 SHOW COLUMNS 的结果一致
+    private static Timeseries normalize(
+            String schemaPrefix, String path, DataType dataType, Map<String, String> tags) {
+        if (schemaPrefix != null) {
+            path = schemaPrefix + "." + path;
+        }
+        if (tags == null || tags.isEmpty()) {
+            tags = null;
+        }
+        return new Timeseries(path, dataType, tags);
+    }
+}
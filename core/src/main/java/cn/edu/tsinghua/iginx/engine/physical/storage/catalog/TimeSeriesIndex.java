@@ -0,0 +1,265 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.storage.catalog;
+
+import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.TagKVUtils;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.AndTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.BasePreciseTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.BaseTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.OrTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.PreciseTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
+import cn.edu.tsinghua.iginx.utils.StringUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/** 时间序列的路径前缀树与标签倒排索引，非线程安全，由 TimeSeriesCatalog 加锁访问 */
+public class TimeSeriesIndex {
+
+    private final Node root = new Node();
+
+    private final Set<Timeseries> allSeries = new HashSet<>();
+
+    private final Set<Timeseries> untaggedSeries = new HashSet<>();
+
+    // tagKey -> tagValue -> series
+    private final Map<String, Map<String, Set<Timeseries>>> tagIndex = new HashMap<>();
+
+    public boolean add(Timeseries timeseries) {
+        if (!allSeries.add(timeseries)) {
+            return false;
+        }
+        Node node = root;
+        for (String segment : split(timeseries.getPath())) {
+            node = node.children.computeIfAbsent(segment, k -> new Node());
+        }
+        node.series.add(timeseries);
+
+        Map<String, String> tags = timeseries.getTags();
+        if (tags == null || tags.isEmpty()) {
+            untaggedSeries.add(timeseries);
+        } else {
+            for (Map.Entry<String, String> entry : tags.entrySet()) {
+                tagIndex.computeIfAbsent(entry.getKey(), k -> new HashMap<>())
+                        .computeIfAbsent(entry.getValue(), k -> new HashSet<>())
+                        .add(timeseries);
+            }
+        }
+        return true;
+    }
+
+    public boolean remove(Timeseries timeseries) {
+        if (!allSeries.remove(timeseries)) {
+            return false;
+        }
+        removeFromTrie(root, split(timeseries.getPath()), 0, timeseries);
+
+        Map<String, String> tags = timeseries.getTags();
+        if (tags == null || tags.isEmpty()) {
+            untaggedSeries.remove(timeseries);
+        } else {
+            for (Map.Entry<String, String> entry : tags.entrySet()) {
+                Map<String, Set<Timeseries>> values = tagIndex.get(entry.getKey());
+                Set<Timeseries> series = values.get(entry.getValue());
+                series.remove(timeseries);
+                if (series.isEmpty()) {
+                    values.remove(entry.getValue());
+                    if (values.isEmpty()) {
+                        tagIndex.remove(entry.getKey());
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    // 返回子节点是否已经为空，可以从父节点中删除
+    private boolean removeFromTrie(Node node, String[] segments, int depth, Timeseries timeseries) {
+        if (depth == segments.length) {
+            node.series.remove(timeseries);
+        } else {
+            Node child = node.children.get(segments[depth]);
+            if (child != null && removeFromTrie(child, segments, depth + 1, timeseries)) {
+                node.children.remove(segments[depth]);
+            }
+        }
+        return node.series.isEmpty() && node.children.isEmpty();
+    }
+
+    public int size() {
+        return allSeries.size();
+    }
+
+    public boolean contains(Timeseries timeseries) {
+        return allSeries.contains(timeseries);
+    }
+
+    /** 返回路径匹配任一模式（模式集合为空时不限制路径）且标签满足过滤条件的时间序列 */
+    public List<Timeseries> match(Collection<String> patterns, TagFilter tagFilter) {
+        Set<Timeseries> tagCandidates = tagFilter == null ? null : getTagCandidates(tagFilter);
+        Collection<Timeseries> pathCandidates;
+        if (patterns == null || patterns.isEmpty()) {
+            pathCandidates = tagCandidates != null ? tagCandidates : allSeries;
+        } else {
+            Set<Timeseries> candidates = new HashSet<>();
+            for (String pattern : patterns) {
+                collectByPattern(pattern, candidates);
+            }
+            pathCandidates = candidates;
+        }
+
+        List<Timeseries> result = new ArrayList<>();
+        for (Timeseries timeseries : pathCandidates) {
+            if (tagCandidates != null && !tagCandidates.contains(timeseries)) {
+                continue;
+            }
+            if (tagFilter != null && !TagKVUtils.match(timeseries.getTags(), tagFilter)) {
+                continue;
+            }
+            result.add(timeseries);
+        }
+        return result;
+    }
+
+    /** 沿模式中不含通配符的前缀在前缀树中定位，再对该子树中的序列逐个做正则匹配 */
+    private void collectByPattern(String pattern, Set<Timeseries> candidates) {
+        String[] segments = split(pattern);
+        Node node = root;
+        int depth = 0;
+        while (depth < segments.length && !segments[depth].contains("*")) {
+            node = node.children.get(segments[depth]);
+            if (node == null) {
+                return;
+            }
+            depth++;
+        }
+        if (depth == segments.length) {
+            candidates.addAll(node.series);
+            return;
+        }
+        Pattern regex = Pattern.compile(StringUtils.reformatPath(pattern));
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            for (Timeseries timeseries : current.series) {
+                if (regex.matcher(timeseries.getPath()).matches()) {
+                    candidates.add(timeseries);
+                }
+            }
+            for (Node child : current.children.values()) {
+                stack.push(child);
+            }
+        }
+    }
+
+    /** 由倒排索引得到满足标签过滤条件的候选序列的超集，结果仍需逐个校验 */
+    private Set<Timeseries> getTagCandidates(TagFilter tagFilter) {
+        switch (tagFilter.getType()) {
+            case Base:
+                {
+                    BaseTagFilter filter = (BaseTagFilter) tagFilter;
+                    Map<String, Set<Timeseries>> values = tagIndex.get(filter.getTagKey());
+                    if (values == null) {
+                        return Collections.emptySet();
+                    }
+                    String expectedValue = filter.getTagValue();
+                    if (!StringUtils.isPattern(expectedValue)) {
+                        return values.getOrDefault(expectedValue, Collections.emptySet());
+                    }
+                    Pattern regex = Pattern.compile(StringUtils.reformatPath(expectedValue));
+                    Set<Timeseries> candidates = new HashSet<>();
+                    for (Map.Entry<String, Set<Timeseries>> entry : values.entrySet()) {
+                        if (regex.matcher(entry.getKey()).matches()) {
+                            candidates.addAll(entry.getValue());
+                        }
+                    }
+                    return candidates;
+                }
+            case BasePrecise:
+                {
+                    Map<String, String> tags = ((BasePreciseTagFilter) tagFilter).getTags();
+                    Set<Timeseries> smallest = null;
+                    for (Map.Entry<String, String> entry : tags.entrySet()) {
+                        Set<Timeseries> series =
+                                tagIndex.getOrDefault(entry.getKey(), Collections.emptyMap())
+                                        .getOrDefault(entry.getValue(), Collections.emptySet());
+                        if (smallest == null || series.size() < smallest.size()) {
+                            smallest = series;
+                        }
+                    }
+                    return smallest == null ? Collections.emptySet() : smallest;
+                }
+            case Precise:
+                {
+                    Set<Timeseries> candidates = new HashSet<>();
+                    for (BasePreciseTagFilter child :
+                            ((PreciseTagFilter) tagFilter).getChildren()) {
+                        candidates.addAll(getTagCandidates(child));
+                    }
+                    return candidates;
+                }
+            case And:
+                {
+                    // 取最小的子条件候选集，其余子条件在逐个校验时检查
+                    Set<Timeseries> smallest = null;
+                    for (TagFilter child : ((AndTagFilter) tagFilter).getChildren()) {
+                        Set<Timeseries> candidates = getTagCandidates(child);
+                        if (smallest == null || candidates.size() < smallest.size()) {
+                            smallest = candidates;
+                        }
+                    }
+                    return smallest == null ? Collections.emptySet() : smallest;
+                }
+            case Or:
+                {
+                    Set<Timeseries> candidates = new HashSet<>();
+                    for (TagFilter child : ((OrTagFilter) tagFilter).getChildren()) {
+                        candidates.addAll(getTagCandidates(child));
+                    }
+                    return candidates;
+                }
+            case WithoutTag:
+                return untaggedSeries;
+            default:
+                return allSeries;
+        }
+    }
+
+    private static String[] split(String path) {
+        return path.split("\\.", -1);
+    }
+
+    private static class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+
+        private final Set<Timeseries> series = new HashSet<>(2);
+    }
+}
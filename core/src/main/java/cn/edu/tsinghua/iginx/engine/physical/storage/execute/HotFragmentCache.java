@@ -0,0 +1,956 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.storage.execute;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.exception.RowFetchException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowSpillFile;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.FilterPushDownUtils;
+import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
+import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
+import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Delete;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Insert;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Select;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import cn.edu.tsinghua.iginx.engine.shared.source.FragmentSource;
+import cn.edu.tsinghua.iginx.engine.shared.source.SourceType;
+import cn.edu.tsinghua.iginx.metadata.entity.FragmentMeta;
+import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
+import cn.edu.tsinghua.iginx.monitor.HotSpotMonitor;
+import cn.edu.tsinghua.iginx.monitor.MetricsMonitor;
+import cn.edu.tsinghua.iginx.utils.StringUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 热点分片读缓存：按存储单元、分片与查询列缓存读取结果，结果按 key 划分为对齐的块，没有数据的连续区间记录为一个空块。查询从缓存中读取连续命中的前缀，
+ * 其余部分向存储引擎读取并回填完整覆盖的块；写入与删除使所涉及 key 范围内的块失效，容量不足时在最久未访问的若干块中淘汰所属分片读取热度最低的块
+ */
+public class HotFragmentCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(HotFragmentCache.class);
+
+    // 淘汰时参与比较的最久未访问的块数
+    private static final int EVICTION_CANDIDATES = 8;
+
+    // 块本身的估算开销，空块只占用该大小
+    private static final long BLOCK_OVERHEAD = 64;
+
+    // 每个存储单元保留的失效记录数上限，超出后合并为一条覆盖所有序列与 key 的记录
+    private static final int MAX_INVALIDATIONS = 1024;
+
+    private final long capacity;
+
+    private final long blockSize;
+
+    private final boolean offHeap;
+
+    private final ToLongFunction<FragmentMeta> hotness;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private final LinkedHashMap<Block, Boolean> lru = new LinkedHashMap<>(16, 0.75f, true);
+
+    // 写入与删除的序号，读取开始时记下当前序号，回填时只检查其后发生的失效
+    private long sequence = 0;
+
+    // 每个存储单元上进行中的读取开始后发生的写入与删除，与其序列和 key 范围重叠的块不回填
+    private final Map<String, List<Invalidation>> invalidations = new HashMap<>();
+
+    // 进行中的读取开始时的序号及读取数，早于所有读取的失效记录被丢弃
+    private final TreeMap<Long, Integer> activeReads = new TreeMap<>();
+
+    private long usedBytes = 0;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong partialHitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public HotFragmentCache(long capacity, long blockSize, boolean offHeap) {
+        this(
+                capacity,
+                blockSize,
+                offHeap,
+                fragment ->
+                        HotSpotMonitor.getInstance()
+                                .getReadHotspotMap()
+                                .getOrDefault(fragment, 0L));
+        MetricsMonitor monitor = MetricsMonitor.getInstance();
+        monitor.register("hotFragmentCache.hit", this::getHitCount);
+        monitor.register("hotFragmentCache.partialHit", this::getPartialHitCount);
+        monitor.register("hotFragmentCache.miss", this::getMissCount);
+        monitor.register("hotFragmentCache.eviction", this::getEvictionCount);
+        monitor.register("hotFragmentCache.usedBytes", this::getUsedBytes);
+    }
+
+    HotFragmentCache(
+            long capacity, long blockSize, boolean offHeap, ToLongFunction<FragmentMeta> hotness) {
+        this.capacity = capacity;
+        this.blockSize = Math.max(1, blockSize);
+        this.offHeap = offHeap;
+        this.hotness = hotness;
+    }
+
+    /** 只缓存真实存储单元上的 Project 任务，可以附带一个只包含 key 范围条件的 Select */
+    public static boolean isCacheable(StoragePhysicalTask task) {
+        List<Operator> operators = task.getOperators();
+        if (task.isDummyStorageUnit()
+                || task.getTargetFragment() == null
+                || operators.isEmpty()
+                || operators.size() > 2) {
+            return false;
+        }
+        Operator first = operators.get(0);
+        if (first.getType() != OperatorType.Project
+                || ((Project) first).getSource().getType() != SourceType.Fragment) {
+            return false;
+        }
+        if (operators.size() == 1) {
+            return true;
+        }
+        Operator second = operators.get(1);
+        return second.getType() == OperatorType.Select
+                && ((Select) second).getTagFilter() == null
+                && FilterPushDownUtils.isKeyRangeFilter(((Select) second).getFilter());
+    }
+
+    static String getKey(StoragePhysicalTask task) {
+        FragmentMeta fragment = task.getTargetFragment();
+        return task.getStorageUnit()
+                + '|'
+                + fragment.getTimeInterval().getStartTime()
+                + '-'
+                + fragment.getTimeInterval().getEndTime()
+                + '|'
+                + fragment.getTsInterval()
+                + '|'
+                + task.getOperators().get(0).getInfo();
+    }
+
+    private static TimeInterval getRange(StoragePhysicalTask task) {
+        TimeInterval interval = task.getTargetFragment().getTimeInterval();
+        if (task.getOperators().size() == 1) {
+            return interval;
+        }
+        return FilterPushDownUtils.intersect(
+                interval, ((Select) task.getOperators().get(1)).getFilter());
+    }
+
+    /** 执行可缓存的任务：缓存命中的前缀直接返回，剩余部分由 executor 读取并回填缓存 */
+    public TaskExecuteResult execute(
+            StoragePhysicalTask task, Function<StoragePhysicalTask, TaskExecuteResult> executor) {
+        TimeInterval range = getRange(task);
+        long start = range.getStartTime();
+        long end = range.getEndTime();
+        if (start >= end) {
+            return executor.apply(task);
+        }
+        String key = getKey(task);
+        List<Block> blocks = new ArrayList<>();
+        Header header = null;
+        long cursor = start;
+        long version = 0;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                header = entry.header;
+                while (cursor < end) {
+                    Map.Entry<Long, Block> floor = entry.blocks.floorEntry(cursor);
+                    if (floor == null || floor.getValue().end <= cursor) {
+                        break;
+                    }
+                    Block block = floor.getValue();
+                    lru.get(block);
+                    blocks.add(block);
+                    cursor = block.end;
+                }
+            }
+            if (cursor < end) {
+                version = sequence;
+                activeReads.merge(version, 1, Integer::sum);
+            }
+        }
+        if (cursor >= end) {
+            hitCount.incrementAndGet();
+            return new TaskExecuteResult(new CachedRowStream(header, blocks, start, end, null));
+        }
+
+        TaskExecuteResult result;
+        try {
+            result = executor.apply(cursor == start ? task : createRangeTask(task, cursor, end));
+        } catch (RuntimeException e) {
+            endRead(version);
+            throw e;
+        }
+        RowStream source = result.getRowStream();
+        if (result.getException() != null || source == null) {
+            endRead(version);
+            result.setRowStream(source);
+            return result;
+        }
+        try {
+            Header sourceHeader = source.getHeader();
+            if (!blocks.isEmpty() && !sourceHeader.equals(header)) {
+                // 序列发生了变化，缓存的块不能与新读取的结果拼接，丢弃后重新读取
+                endRead(version);
+                source.close();
+                synchronized (this) {
+                    Entry entry = entries.get(key);
+                    if (entry != null && entry.header.equals(header)) {
+                        removeEntry(entry);
+                    }
+                }
+                return execute(task, executor);
+            }
+            (blocks.isEmpty() ? missCount : partialHitCount).incrementAndGet();
+            RowStream tail;
+            if (sourceHeader.hasKey()) {
+                tail = new FillingRowStream(key, task, sourceHeader, source, version, cursor, end);
+            } else {
+                endRead(version);
+                tail = source;
+            }
+            return new TaskExecuteResult(
+                    new CachedRowStream(sourceHeader, blocks, start, cursor, tail));
+        } catch (PhysicalException e) {
+            logger.error("encounter error when read storage result: ", e);
+            endRead(version);
+            return new TaskExecuteResult(e);
+        }
+    }
+
+    /** 读取结束后调用，丢弃早于所有进行中的读取的失效记录 */
+    private synchronized void endRead(long version) {
+        activeReads.computeIfPresent(version, (k, count) -> count == 1 ? null : count - 1);
+        if (activeReads.isEmpty()) {
+            invalidations.clear();
+            return;
+        }
+        long oldest = activeReads.firstKey();
+        for (List<Invalidation> log : invalidations.values()) {
+            log.removeIf(invalidation -> invalidation.sequence <= oldest);
+        }
+        invalidations.values().removeIf(List::isEmpty);
+    }
+
+    /** 记录进行中的读取开始后发生的一次失效 */
+    private void record(String storageUnit, Invalidation invalidation) {
+        List<Invalidation> log = invalidations.computeIfAbsent(storageUnit, k -> new ArrayList<>());
+        log.add(invalidation);
+        if (log.size() > MAX_INVALIDATIONS) {
+            log.clear();
+            log.add(new Invalidation(invalidation.sequence, null, Long.MIN_VALUE, Long.MAX_VALUE));
+        }
+    }
+
+    private static StoragePhysicalTask createRangeTask(
+            StoragePhysicalTask task, long start, long end) {
+        FragmentMeta fragment = task.getTargetFragment();
+        Filter filter =
+                end == Long.MAX_VALUE
+                        ? new KeyFilter(Op.GE, start)
+                        : new AndFilter(
+                                Arrays.asList(
+                                        new KeyFilter(Op.GE, start), new KeyFilter(Op.L, end)));
+        StoragePhysicalTask rangeTask =
+                new StoragePhysicalTask(
+                        Arrays.asList(
+                                task.getOperators().get(0).copy(),
+                                new Select(new FragmentSource(fragment), filter, null)),
+                        fragment,
+                        task.isSync(),
+                        task.isNeedBroadcasting());
+        rangeTask.setStorageUnit(task.getStorageUnit());
+        rangeTask.setDummyStorageUnit(task.isDummyStorageUnit());
+        rangeTask.setStorage(task.getStorage());
+        rangeTask.setMemoryContext(task.getMemoryContext());
+        return rangeTask;
+    }
+
+    /** 写入或删除任务执行后调用，使目标存储单元上所涉及 key 范围内的块失效 */
+    public synchronized void invalidate(StoragePhysicalTask task) {
+        Operator operator = task.getOperators().get(0);
+        if (operator.getType() != OperatorType.Insert
+                && operator.getType() != OperatorType.Delete) {
+            return;
+        }
+        String storageUnit = task.getStorageUnit();
+        long current = ++sequence;
+        boolean reading = !activeReads.isEmpty();
+        List<Entry> targets = new ArrayList<>();
+        for (Entry entry : entries.values()) {
+            if (entry.storageUnit.equals(storageUnit)) {
+                targets.add(entry);
+            }
+        }
+        if (operator.getType() == OperatorType.Insert) {
+            DataView data = ((Insert) operator).getData();
+            if (data.getTimeSize() == 0) {
+                return;
+            }
+            long minKey = Long.MAX_VALUE;
+            long maxKey = Long.MIN_VALUE;
+            for (int i = 0; i < data.getTimeSize(); i++) {
+                long key = data.getKey(i);
+                minKey = Math.min(minKey, key);
+                maxKey = Math.max(maxKey, key);
+            }
+            if (reading) {
+                record(storageUnit, new Invalidation(current, data, minKey, exclusiveEnd(maxKey)));
+            }
+            for (Entry entry : targets) {
+                if (entry.hasNewPath(data)) {
+                    // 新的序列改变了结果的列，整个条目失效
+                    removeEntry(entry);
+                } else if (entry.containsPath(data)) {
+                    invalidateRange(entry, minKey, exclusiveEnd(maxKey));
+                }
+            }
+        } else {
+            List<TimeRange> timeRanges = ((Delete) operator).getTimeRanges();
+            if (reading) {
+                if (timeRanges == null || timeRanges.isEmpty()) {
+                    record(
+                            storageUnit,
+                            new Invalidation(current, null, Long.MIN_VALUE, Long.MAX_VALUE));
+                } else {
+                    for (TimeRange timeRange : timeRanges) {
+                        record(
+                                storageUnit,
+                                new Invalidation(
+                                        current,
+                                        null,
+                                        timeRange.getBeginTime(),
+                                        exclusiveEnd(timeRange.getEndTime())));
+                    }
+                }
+            }
+            for (Entry entry : targets) {
+                if (timeRanges == null || timeRanges.isEmpty()) {
+                    removeEntry(entry);
+                    continue;
+                }
+                for (TimeRange timeRange : timeRanges) {
+                    invalidateRange(
+                            entry, timeRange.getBeginTime(), exclusiveEnd(timeRange.getEndTime()));
+                }
+            }
+        }
+    }
+
+    private static long exclusiveEnd(long key) {
+        return key == Long.MAX_VALUE ? key : key + 1;
+    }
+
+    private void invalidateRange(Entry entry, long from, long to) {
+        Long floor = entry.blocks.floorKey(from);
+        List<Block> overlapped =
+                new ArrayList<>(
+                        entry.blocks
+                                .subMap(floor == null ? from : floor, true, to, false)
+                                .values());
+        for (Block block : overlapped) {
+            if (block.end > from) {
+                removeBlock(block);
+            }
+        }
+    }
+
+    /** 回填一个完整覆盖的块，读取开始后与块的序列和 key 范围重叠的写入或删除使该块不被回填。返回 false 时不再继续回填 */
+    private synchronized boolean put(
+            String key, StoragePhysicalTask task, Header header, long version, Block block) {
+        if (block.size > capacity) {
+            return false;
+        }
+        Entry entry = entries.get(key);
+        if (entry != null && !entry.header.equals(header)) {
+            removeEntry(entry);
+            entry = null;
+        }
+        if (entry == null) {
+            Project project = (Project) task.getOperators().get(0);
+            entry =
+                    new Entry(
+                            key,
+                            task.getStorageUnit(),
+                            task.getTargetFragment(),
+                            project.getPatterns(),
+                            header);
+        }
+        for (Invalidation invalidation :
+                invalidations.getOrDefault(task.getStorageUnit(), Collections.emptyList())) {
+            if (invalidation.sequence > version
+                    && invalidation.overlaps(entry, block.start, block.end)) {
+                return true;
+            }
+        }
+        entries.put(key, entry);
+        invalidateRange(entry, block.start, block.end);
+        // 条目可能因失效了所有的块而被移除
+        entries.put(key, entry);
+        block.entry = entry;
+        entry.blocks.put(block.start, block);
+        lru.put(block, Boolean.TRUE);
+        usedBytes += block.size;
+        evict();
+        return true;
+    }
+
+    private void evict() {
+        while (usedBytes > capacity && !lru.isEmpty()) {
+            Block victim = null;
+            long victimHotness = Long.MAX_VALUE;
+            Iterator<Block> iterator = lru.keySet().iterator();
+            for (int i = 0; i < EVICTION_CANDIDATES && iterator.hasNext(); i++) {
+                Block block = iterator.next();
+                long blockHotness = hotness.applyAsLong(block.entry.fragment);
+                if (blockHotness < victimHotness) {
+                    victim = block;
+                    victimHotness = blockHotness;
+                }
+            }
+            removeBlock(victim);
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    private void removeBlock(Block block) {
+        Entry entry = block.entry;
+        entry.blocks.remove(block.start);
+        lru.remove(block);
+        usedBytes -= block.size;
+        if (entry.blocks.isEmpty()) {
+            entries.remove(entry.key, entry);
+        }
+    }
+
+    private void removeEntry(Entry entry) {
+        for (Block block : new ArrayList<>(entry.blocks.values())) {
+            removeBlock(block);
+        }
+        entries.remove(entry.key, entry);
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : new ArrayList<>(entries.values())) {
+            removeEntry(entry);
+        }
+    }
+
+    /** 完全由缓存返回的任务数 */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /** 部分由缓存返回的任务数 */
+    public long getPartialHitCount() {
+        return partialHitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized int getBlockCount() {
+        return lru.size();
+    }
+
+    private long alignDown(long key) {
+        return key - Math.floorMod(key, blockSize);
+    }
+
+    private long blockEnd(long blockStart) {
+        return blockStart > Long.MAX_VALUE - blockSize ? Long.MAX_VALUE : blockStart + blockSize;
+    }
+
+    private Block createBlock(Header header, long start, long end, List<Row> rows)
+            throws IOException {
+        if (rows.isEmpty()) {
+            return new Block(header, start, end, null, null, 0, BLOCK_OVERHEAD);
+        }
+        if (!offHeap) {
+            long size = BLOCK_OVERHEAD;
+            for (Row row : rows) {
+                size += RowSpillFile.estimateSize(row);
+            }
+            return new Block(header, start, end, rows, null, rows.size(), size);
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+        for (Row row : rows) {
+            RowSpillFile.writeRow(output, header, row);
+        }
+        output.flush();
+        ByteBuffer data = ByteBuffer.allocateDirect(bytes.size());
+        data.put(bytes.toByteArray());
+        data.flip();
+        return new Block(
+                header, start, end, null, data, rows.size(), BLOCK_OVERHEAD + bytes.size());
+    }
+
+    private static class Entry {
+
+        private final String key;
+
+        private final String storageUnit;
+
+        private final FragmentMeta fragment;
+
+        private final List<String> patterns;
+
+        private final Header header;
+
+        private final Set<String> paths = new HashSet<>();
+
+        private final TreeMap<Long, Block> blocks = new TreeMap<>();
+
+        Entry(
+                String key,
+                String storageUnit,
+                FragmentMeta fragment,
+                List<String> patterns,
+                Header header) {
+            this.key = key;
+            this.storageUnit = storageUnit;
+            this.fragment = fragment;
+            this.patterns = patterns;
+            this.header = header;
+            for (Field field : header.getFields()) {
+                paths.add(field.getFullName());
+            }
+        }
+
+        /** 写入的序列中是否有结果中的序列 */
+        boolean containsPath(DataView data) {
+            for (int i = 0; i < data.getPathNum(); i++) {
+                if (paths.contains(Field.toFullName(data.getPath(i), data.getTags(i)))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** 写入的序列中是否有匹配查询列但不在结果中的序列 */
+        boolean hasNewPath(DataView data) {
+            for (int i = 0; i < data.getPathNum(); i++) {
+                String path = data.getPath(i);
+                if (paths.contains(Field.toFullName(path, data.getTags(i)))) {
+                    continue;
+                }
+                for (String pattern : patterns) {
+                    if (Pattern.matches(StringUtils.reformatPath(pattern), path)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /** 一次写入或删除所涉及的序列与 key 范围 [from, to) */
+    private static class Invalidation {
+
+        private final long sequence;
+
+        // 写入的数据，删除时为 null，视为涉及所有序列
+        private final DataView data;
+
+        private final long from;
+
+        private final long to;
+
+        Invalidation(long sequence, DataView data, long from, long to) {
+            this.sequence = sequence;
+            this.data = data;
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean overlaps(Entry entry, long start, long end) {
+            if (data != null && entry.hasNewPath(data)) {
+                // 新的序列改变了结果的列
+                return true;
+            }
+            if (data != null && !entry.containsPath(data)) {
+                return false;
+            }
+            return from < end && start < to;
+        }
+    }
+
+    /** key 范围 [start, end) 内的全部结果，堆外存放时以序列化后的形式保存 */
+    private static class Block {
+
+        private final Header header;
+
+        private final long start;
+
+        private final long end;
+
+        private final List<Row> rows;
+
+        private final ByteBuffer data;
+
+        private final int rowCount;
+
+        private final long size;
+
+        private Entry entry;
+
+        Block(
+                Header header,
+                long start,
+                long end,
+                List<Row> rows,
+                ByteBuffer data,
+                int rowCount,
+                long size) {
+            this.header = header;
+            this.start = start;
+            this.end = end;
+            this.rows = rows;
+            this.data = data;
+            this.rowCount = rowCount;
+            this.size = size;
+        }
+
+        List<Row> getRows() throws PhysicalException {
+            if (rows != null) {
+                return rows;
+            }
+            List<Row> result = new ArrayList<>(rowCount);
+            if (data == null) {
+                return result;
+            }
+            DataInputStream input =
+                    new DataInputStream(new ByteBufferInputStream(data.duplicate()));
+            try {
+                for (int i = 0; i < rowCount; i++) {
+                    result.add(RowSpillFile.readRow(input, header));
+                }
+            } catch (IOException e) {
+                throw new RowFetchException(e);
+            }
+            return result;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+
+    /** 依次返回缓存的块中 [from, to) 范围内的行与向存储引擎读取的剩余结果 */
+    private static class CachedRowStream implements RowStream {
+
+        private final Header header;
+
+        private final List<Block> blocks;
+
+        private final long from;
+
+        private final long to;
+
+        private final RowStream tail;
+
+        private int blockIndex = 0;
+
+        private List<Row> rows = null;
+
+        private int rowIndex = 0;
+
+        private Row nextRow = null;
+
+        CachedRowStream(Header header, List<Block> blocks, long from, long to, RowStream tail) {
+            this.header = header;
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+            this.tail = tail;
+        }
+
+        @Override
+        public Header getHeader() {
+            return header;
+        }
+
+        @Override
+        public void close() throws PhysicalException {
+            if (tail != null) {
+                tail.close();
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws PhysicalException {
+            if (nextRow != null) {
+                return true;
+            }
+            while (true) {
+                if (rows != null && rowIndex < rows.size()) {
+                    Row row = rows.get(rowIndex++);
+                    if (row.getKey() >= from && row.getKey() < to) {
+                        nextRow = row;
+                        return true;
+                    }
+                    continue;
+                }
+                if (blockIndex < blocks.size()) {
+                    rows = blocks.get(blockIndex++).getRows();
+                    rowIndex = 0;
+                    continue;
+                }
+                if (tail != null && tail.hasNext()) {
+                    nextRow = tail.next();
+                    return true;
+                }
+                return false;
+            }
+        }
+
+        @Override
+        public Row next() throws PhysicalException {
+            if (!hasNext()) {
+                throw new IllegalStateException("row stream doesn't have more data!");
+            }
+            Row row = nextRow;
+            nextRow = null;
+            return row;
+        }
+    }
+
+    /** 透传存储引擎返回的结果，同时将完整覆盖的块回填到缓存中 */
+    private class FillingRowStream implements RowStream {
+
+        private final String key;
+
+        private final StoragePhysicalTask task;
+
+        private final Header header;
+
+        private final RowStream source;
+
+        private final long version;
+
+        private final long end;
+
+        // 下一个待回填的块的起点，之前的部分已回填或不完整
+        private long filledTo;
+
+        private long blockStart = -1;
+
+        private List<Row> blockRows = null;
+
+        private long blockBytes = 0;
+
+        private boolean filling = true;
+
+        private boolean reading = true;
+
+        FillingRowStream(
+                String key,
+                StoragePhysicalTask task,
+                Header header,
+                RowStream source,
+                long version,
+                long start,
+                long end) {
+            this.key = key;
+            this.task = task;
+            this.header = header;
+            this.source = source;
+            this.version = version;
+            this.end = end;
+            this.filledTo = alignDown(start) == start ? start : blockEnd(alignDown(start));
+        }
+
+        @Override
+        public Header getHeader() {
+            return header;
+        }
+
+        @Override
+        public void close() throws PhysicalException {
+            filling = false;
+            blockRows = null;
+            endReading();
+            source.close();
+        }
+
+        @Override
+        public boolean hasNext() throws PhysicalException {
+            if (source.hasNext()) {
+                return true;
+            }
+            finish();
+            endReading();
+            return false;
+        }
+
+        private void endReading() {
+            if (reading) {
+                reading = false;
+                endRead(version);
+            }
+        }
+
+        @Override
+        public Row next() throws PhysicalException {
+            Row row = source.next();
+            if (filling) {
+                add(row);
+            }
+            return row;
+        }
+
+        private void add(Row row) {
+            long rowKey = row.getKey();
+            if (rowKey < filledTo) {
+                return;
+            }
+            long start = alignDown(rowKey);
+            if (blockRows != null && start != blockStart) {
+                if (start < blockStart) {
+                    // 结果未按 key 有序，放弃回填
+                    filling = false;
+                    return;
+                }
+                flushBlock();
+            }
+            if (blockRows == null) {
+                if (start > filledTo) {
+                    putBlock(filledTo, start, new ArrayList<>());
+                }
+                blockStart = start;
+                blockRows = new ArrayList<>();
+                blockBytes = 0;
+            }
+            blockRows.add(row);
+            blockBytes += RowSpillFile.estimateSize(row);
+            if (blockBytes > capacity) {
+                filling = false;
+                blockRows = null;
+            }
+        }
+
+        private void flushBlock() {
+            long blockEnd = blockEnd(blockStart);
+            putBlock(blockStart, blockEnd, blockRows);
+            filledTo = blockEnd;
+            blockRows = null;
+        }
+
+        /** 结果读完后回填最后一个块与其后直到查询范围末尾的空区间 */
+        private void finish() {
+            if (!filling) {
+                return;
+            }
+            if (blockRows != null) {
+                if (blockEnd(blockStart) > end) {
+                    filling = false;
+                    return;
+                }
+                flushBlock();
+            }
+            long tailEnd = end == Long.MAX_VALUE ? Long.MAX_VALUE : alignDown(end);
+            if (tailEnd > filledTo) {
+                putBlock(filledTo, tailEnd, new ArrayList<>());
+                filledTo = tailEnd;
+            }
+            filling = false;
+        }
+
+        private void putBlock(long start, long blockEnd, List<Row> rows) {
+            if (!filling) {
+                return;
+            }
+            try {
+                filling =
+                        put(key, task, header, version, createBlock(header, start, blockEnd, rows));
+            } catch (IOException e) {
+                logger.error("encounter error when cache block of {}: ", key, e);
+                filling = false;
+            }
+        }
+    }
+}
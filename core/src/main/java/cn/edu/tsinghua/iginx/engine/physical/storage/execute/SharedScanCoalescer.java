@@ -0,0 +1,481 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.storage.execute;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowSpillFile;
+import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
+import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import cn.edu.tsinghua.iginx.metadata.entity.FragmentMeta;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 共享扫描：同一存储单元上算子完全相同的只读任务在前一个任务的读取尚未结束时到达，不再访问存储引擎，而是共享前一个任务的结果。结果按需从存储引擎读取并缓存在可重放的缓冲区中，
+ * 每个任务从头读取；不再接受新的任务后，所有任务都已读过的行被丢弃。缓冲区超过上限时，读取最慢的任务脱离共享，自行从存储引擎重新读取剩余的结果
+ */
+public class SharedScanCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(SharedScanCoalescer.class);
+
+    // 所有任务都已读过的行累积到该数量后才从缓冲区中丢弃，避免频繁移动数组
+    private static final int TRIM_THRESHOLD = 1024;
+
+    private final long maxBufferedBytes;
+
+    private final Map<String, SharedScan> scans = new ConcurrentHashMap<>();
+
+    private final AtomicLong scanCount = new AtomicLong();
+
+    private final AtomicLong sharedCount = new AtomicLong();
+
+    private final AtomicLong detachedCount = new AtomicLong();
+
+    public SharedScanCoalescer(long maxBufferedBytes) {
+        this.maxBufferedBytes = maxBufferedBytes;
+    }
+
+    /** 只有仅包含 Project 与 Select 的读取任务可以共享 */
+    public static boolean isShareable(StoragePhysicalTask task) {
+        if (task.getTargetFragment() == null || task.getOperators().isEmpty()) {
+            return false;
+        }
+        if (task.getOperators().get(0).getType() != OperatorType.Project) {
+            return false;
+        }
+        for (Operator operator : task.getOperators()) {
+            if (operator.getType() != OperatorType.Project
+                    && operator.getType() != OperatorType.Select) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** 由目标存储单元、分片范围与各算子的描述组成，描述中包含查询的列、过滤条件与标签过滤条件 */
+    static String getKey(StoragePhysicalTask task) {
+        FragmentMeta fragment = task.getTargetFragment();
+        StringBuilder builder = new StringBuilder();
+        builder.append(task.getStorageUnit())
+                .append('|')
+                .append(task.isDummyStorageUnit())
+                .append('|')
+                .append(fragment.getTimeInterval().getStartTime())
+                .append('-')
+                .append(fragment.getTimeInterval().getEndTime())
+                .append('|')
+                .append(fragment.getTsInterval());
+        for (Operator operator : task.getOperators()) {
+            builder.append('|').append(operator.getType()).append(':').append(operator.getInfo());
+        }
+        return builder.toString();
+    }
+
+    /** 执行可共享的任务：存在进行中的相同读取时等待并共享其结果，否则由当前线程调用 executor 读取 */
+    public TaskExecuteResult execute(
+            StoragePhysicalTask task, Supplier<TaskExecuteResult> executor) {
+        String key = getKey(task);
+        while (true) {
+            SharedScan created = new SharedScan(key);
+            SharedScan scan = scans.putIfAbsent(key, created);
+            if (scan == null) {
+                scanCount.incrementAndGet();
+                return created.start(executor);
+            }
+            TaskExecuteResult result = scan.join(executor);
+            if (result != null) {
+                sharedCount.incrementAndGet();
+                return result;
+            }
+            // 共享的读取已经不再接受新的任务，重新发起
+        }
+    }
+
+    /** 写入或删除任务完成后调用，目标存储单元上进行中的读取不再接受新的任务 */
+    public void invalidate(StoragePhysicalTask task) {
+        OperatorType type = task.getOperators().get(0).getType();
+        if (type != OperatorType.Insert && type != OperatorType.Delete) {
+            return;
+        }
+        String prefix = task.getStorageUnit() + '|';
+        for (Map.Entry<String, SharedScan> entry : scans.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                entry.getValue().stopSharing();
+            }
+        }
+    }
+
+    /** 发起的存储读取次数 */
+    public long getScanCount() {
+        return scanCount.get();
+    }
+
+    /** 共享了已有读取结果的任务数 */
+    public long getSharedCount() {
+        return sharedCount.get();
+    }
+
+    /** 因读取过慢脱离共享、重新读取存储的任务数 */
+    public long getDetachedCount() {
+        return detachedCount.get();
+    }
+
+    public int getActiveScanCount() {
+        return scans.size();
+    }
+
+    private class SharedScan {
+
+        private final String key;
+
+        private final CountDownLatch started = new CountDownLatch(1);
+
+        private TaskExecuteResult sourceResult;
+
+        private RowStream source;
+
+        private Header header;
+
+        // 缓冲区中第一行在结果中的序号
+        private long base = 0;
+
+        private final List<Row> buffer = new ArrayList<>();
+
+        private long bufferedBytes = 0;
+
+        private final List<SharedRowStream> consumers = new ArrayList<>();
+
+        // 是否仍接受新的任务
+        private boolean open = true;
+
+        private boolean exhausted = false;
+
+        private PhysicalException failure;
+
+        SharedScan(String key) {
+            this.key = key;
+        }
+
+        TaskExecuteResult start(Supplier<TaskExecuteResult> executor) {
+            SharedRowStream stream = register(executor);
+            TaskExecuteResult result;
+            try {
+                result = executor.get();
+            } catch (RuntimeException e) {
+                result = new TaskExecuteResult(new PhysicalException(e));
+            }
+            synchronized (this) {
+                sourceResult = result;
+                source = result.getRowStream();
+                if (result.getException() != null || source == null) {
+                    closeToJoiners();
+                }
+            }
+            started.countDown();
+            return toResult(stream);
+        }
+
+        /** 加入共享的读取并等待读取开始，已不再接受新的任务时返回 null */
+        TaskExecuteResult join(Supplier<TaskExecuteResult> executor) {
+            SharedRowStream stream;
+            synchronized (this) {
+                if (!open) {
+                    return null;
+                }
+                stream = register(executor);
+            }
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                synchronized (this) {
+                    consumers.remove(stream);
+                }
+                return new TaskExecuteResult(new PhysicalException(e));
+            }
+            return toResult(stream);
+        }
+
+        // 在读取开始前登记，保证加入的任务读取完整的结果
+        private synchronized SharedRowStream register(Supplier<TaskExecuteResult> executor) {
+            SharedRowStream stream = new SharedRowStream(this, executor);
+            consumers.add(stream);
+            return stream;
+        }
+
+        private synchronized TaskExecuteResult toResult(SharedRowStream stream) {
+            if (sourceResult.getException() != null || source == null) {
+                consumers.remove(stream);
+                return sourceResult;
+            }
+            return new TaskExecuteResult(stream);
+        }
+
+        synchronized Header getHeader() throws PhysicalException {
+            if (header == null) {
+                header = source.getHeader();
+            }
+            return header;
+        }
+
+        /** 确保任务的下一行在缓冲区中，结果已读完或任务已脱离共享时返回 false */
+        synchronized boolean fill(SharedRowStream consumer) throws PhysicalException {
+            while (!consumer.detached && consumer.position >= base + buffer.size()) {
+                if (failure != null) {
+                    throw failure;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                try {
+                    if (!source.hasNext()) {
+                        exhausted = true;
+                        closeToJoiners();
+                        return false;
+                    }
+                    Row row = source.next();
+                    buffer.add(row);
+                    bufferedBytes += RowSpillFile.estimateSize(row);
+                } catch (PhysicalException e) {
+                    failure = e;
+                    closeToJoiners();
+                    throw e;
+                }
+                if (bufferedBytes > maxBufferedBytes) {
+                    if (open) {
+                        logger.debug("shared scan buffer is full, stop sharing {}", key);
+                        closeToJoiners();
+                    }
+                    detachLaggards(consumer);
+                }
+            }
+            return !consumer.detached;
+        }
+
+        /** 返回任务的下一行，任务已脱离共享时返回 null */
+        synchronized Row get(SharedRowStream consumer) {
+            if (consumer.detached) {
+                return null;
+            }
+            Row row = buffer.get((int) (consumer.position - base));
+            consumer.position++;
+            trim(false);
+            return row;
+        }
+
+        /** 缓冲区超过上限时，依次让读取位置最靠前的任务脱离共享，直到缓冲区回到上限以内 */
+        private void detachLaggards(SharedRowStream reader) throws PhysicalException {
+            // 脱离的任务在共享的结果关闭后仍可能读取表头
+            getHeader();
+            while (bufferedBytes > maxBufferedBytes && consumers.size() > 1) {
+                SharedRowStream laggard = null;
+                for (SharedRowStream consumer : consumers) {
+                    if (consumer != reader
+                            && (laggard == null || consumer.position < laggard.position)) {
+                        laggard = consumer;
+                    }
+                }
+                logger.debug(
+                        "shared scan buffer is full, detach consumer at row {} from {}",
+                        laggard.position,
+                        key);
+                laggard.detached = true;
+                consumers.remove(laggard);
+                detachedCount.incrementAndGet();
+                trim(true);
+            }
+        }
+
+        /** 不再接受新的任务后，丢弃所有任务都已读过的行，force 为 false 时攒够一定数量再丢弃 */
+        private void trim(boolean force) {
+            if (open) {
+                return;
+            }
+            long min = Long.MAX_VALUE;
+            for (SharedRowStream consumer : consumers) {
+                min = Math.min(min, consumer.position);
+            }
+            int count = (int) Math.min(min - base, buffer.size());
+            if (count > 0 && (force || count >= TRIM_THRESHOLD || count == buffer.size())) {
+                List<Row> dropped = buffer.subList(0, count);
+                for (Row row : dropped) {
+                    bufferedBytes -= RowSpillFile.estimateSize(row);
+                }
+                dropped.clear();
+                base += count;
+            }
+        }
+
+        synchronized void stopSharing() {
+            closeToJoiners();
+        }
+
+        private void closeToJoiners() {
+            if (open) {
+                open = false;
+                scans.remove(key, this);
+            }
+        }
+
+        synchronized void close(SharedRowStream consumer) throws PhysicalException {
+            // 脱离共享的任务已不在 consumers 中
+            if (!consumers.remove(consumer)) {
+                return;
+            }
+            if (!consumers.isEmpty()) {
+                trim(false);
+                return;
+            }
+            closeToJoiners();
+            buffer.clear();
+            bufferedBytes = 0;
+            source.close();
+        }
+    }
+
+    /** 每个任务各自的读取位置，脱离共享后改为读取自己重新发起的存储读取 */
+    private static class SharedRowStream implements RowStream {
+
+        private final SharedScan scan;
+
+        private final Supplier<TaskExecuteResult> executor;
+
+        // 已从共享的结果中读取的行数
+        private long position = 0;
+
+        private long lastKey;
+
+        private volatile boolean detached = false;
+
+        private RowStream own;
+
+        private Row pending;
+
+        private boolean closed = false;
+
+        SharedRowStream(SharedScan scan, Supplier<TaskExecuteResult> executor) {
+            this.scan = scan;
+            this.executor = executor;
+        }
+
+        @Override
+        public Header getHeader() throws PhysicalException {
+            return own != null ? own.getHeader() : scan.getHeader();
+        }
+
+        @Override
+        public void close() throws PhysicalException {
+            if (!closed) {
+                closed = true;
+                try {
+                    if (own != null) {
+                        own.close();
+                    }
+                } finally {
+                    scan.close(this);
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() throws PhysicalException {
+            if (closed) {
+                return false;
+            }
+            if (own == null) {
+                if (scan.fill(this)) {
+                    return true;
+                }
+                if (!detached) {
+                    return false;
+                }
+                reread();
+            }
+            if (pending == null && own.hasNext()) {
+                pending = own.next();
+            }
+            return pending != null;
+        }
+
+        @Override
+        public Row next() throws PhysicalException {
+            if (!hasNext()) {
+                throw new IllegalStateException("row stream doesn't have more data!");
+            }
+            if (own == null) {
+                Row row = scan.get(this);
+                if (row == null) {
+                    // 在 hasNext 之后脱离了共享
+                    return next();
+                }
+                lastKey = row.getKey();
+                return row;
+            }
+            Row row = pending;
+            pending = null;
+            return row;
+        }
+
+        /** 重新发起存储读取，并跳过已经从共享的结果中读过的行 */
+        private void reread() throws PhysicalException {
+            TaskExecuteResult result;
+            try {
+                result = executor.get();
+            } catch (RuntimeException e) {
+                throw new PhysicalException(e);
+            }
+            if (result.getException() != null) {
+                throw result.getException();
+            }
+            own = result.getRowStream();
+            if (own == null) {
+                throw new PhysicalException("re-read of a detached shared scan returns no data");
+            }
+            if (position == 0) {
+                return;
+            }
+            if (own.getHeader().hasKey()) {
+                // 结果按 key 有序，跳过 key 不大于最后读过的行
+                while (own.hasNext()) {
+                    Row row = own.next();
+                    if (row.getKey() > lastKey) {
+                        pending = row;
+                        break;
+                    }
+                }
+            } else {
+                for (long i = 0; i < position && own.hasNext(); i++) {
+                    own.next();
+                }
+            }
+        }
+    }
+}
@@ -19,22 +19,34 @@
 package cn.edu.tsinghua.iginx.engine.physical.storage.execute;
 
 import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.LastValueCache;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.physical.exception.TooManyPhysicalTasksException;
 import cn.edu.tsinghua.iginx.engine.physical.exception.UnexpectedOperatorException;
 import cn.edu.tsinghua.iginx.engine.physical.memory.MemoryPhysicalTaskDispatcher;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.OperatorMemoryExecutorFactory;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream.PrefetchRowStream;
 import cn.edu.tsinghua.iginx.engine.physical.optimizer.ReplicaDispatcher;
 import cn.edu.tsinghua.iginx.engine.physical.storage.IStorage;
 import cn.edu.tsinghua.iginx.engine.physical.storage.StorageManager;
+import cn.edu.tsinghua.iginx.engine.physical.storage.catalog.TimeSeriesCatalog;
 import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
 import cn.edu.tsinghua.iginx.engine.physical.storage.queue.StoragePhysicalTaskQueue;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.PushDownUtils;
 import cn.edu.tsinghua.iginx.engine.physical.storage.utils.TagKVUtils;
 import cn.edu.tsinghua.iginx.engine.physical.task.GlobalPhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.MemoryPhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Delete;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Insert;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.ShowTimeSeries;
+import cn.edu.tsinghua.iginx.engine.shared.operator.UnaryOperator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
 import cn.edu.tsinghua.iginx.metadata.DefaultMetaManager;
 import cn.edu.tsinghua.iginx.metadata.IMetaManager;
 import cn.edu.tsinghua.iginx.metadata.entity.StorageEngineMeta;
@@ -78,6 +90,31 @@ public class StoragePhysicalTaskExecutor {
     private final int maxCachedPhysicalTaskPerStorage =
             ConfigDescriptor.getInstance().getConfig().getMaxCachedPhysicalTaskPerStorage();
 
+    private final TimeSeriesCatalog timeSeriesCatalog =
+            ConfigDescriptor.getInstance().getConfig().isEnableTimeSeriesCatalog()
+                    ? new TimeSeriesCatalog(metaManager, storageManager)
+                    : null;
+
+    private final SharedScanCoalescer sharedScanCoalescer =
+            ConfigDescriptor.getInstance().getConfig().isEnableSharedScan()
+                    ? new SharedScanCoalescer(
+                            ConfigDescriptor.getInstance().getConfig().getSharedScanBufferSize())
+                    : null;
+
+    private final LastValueCache lastValueCache = LastValueCache.getInstance();
+
+    private final HotFragmentCache hotFragmentCache =
+            ConfigDescriptor.getInstance().getConfig().isEnableHotFragmentCache()
+                    ? new HotFragmentCache(
+                            ConfigDescriptor.getInstance().getConfig().getHotFragmentCacheSize(),
+                            ConfigDescriptor.getInstance()
+                                    .getConfig()
+                                    .getHotFragmentCacheBlockSize(),
+                            ConfigDescriptor.getInstance()
+                                    .getConfig()
+                                    .isEnableHotFragmentCacheOffHeap())
+                    : null;
+
     private StoragePhysicalTaskExecutor() {
         StorageUnitHook storageUnitHook =
                 (before, after) -> {
@@ -128,7 +165,10 @@ public class StoragePhysicalTaskExecutor {
                                                         long taskId = System.nanoTime();
                                                         long startTime = System.currentTimeMillis();
                                                         try {
-                                                            result = pair.k.execute(task);
+                                                            result =
+                                                                    pipeline(
+                                                                            executeCached(
+                                                                                    pair.k, task));
                                                         } catch (Exception e) {
                                                             logger.error(
                                                                     "execute task error: " + e);
@@ -137,6 +177,8 @@ public class StoragePhysicalTaskExecutor {
                                                                             new PhysicalException(
                                                                                     e));
                                                         }
+                                                        recordCatalog(storageId, task, result);
+                                                        recordLastValue(task, result);
                                                         try {
                                                             HotSpotMonitor.getInstance()
                                                                     .recordAfter(
@@ -244,6 +286,9 @@ public class StoragePhysicalTaskExecutor {
                         if (after.getCreatedBy() != metaManager.getIginxId()) {
                             storageManager.addStorage(after);
                         }
+                        if (timeSeriesCatalog != null) {
+                            timeSeriesCatalog.reconcileSoon();
+                        }
                     }
                 };
         metaManager.registerStorageEngineChangeHook(storageEngineChangeHook);
@@ -254,6 +299,145 @@ public class StoragePhysicalTaskExecutor {
                 storageUnitHook.onChange(null, storage.getDummyStorageUnit());
             }
         }
+        if (timeSeriesCatalog != null) {
+            timeSeriesCatalog.start();
+        }
+    }
+
+    /** 成功的写入与删除同步到时间序列目录 */
+    private void recordCatalog(long storageId, StoragePhysicalTask task, TaskExecuteResult result) {
+        if (timeSeriesCatalog == null || result == null || result.getException() != null) {
+            return;
+        }
+        Operator operator = task.getOperators().get(0);
+        try {
+            if (operator.getType() == OperatorType.Insert) {
+                timeSeriesCatalog.recordInsert(storageId, (Insert) operator);
+            } else if (operator.getType() == OperatorType.Delete) {
+                timeSeriesCatalog.recordDelete(storageId, (Delete) operator);
+            }
+        } catch (Exception e) {
+            logger.error("encounter error when update time series catalog: ", e);
+        }
+    }
+
+    /** 写入成功后更新最新值缓存，写入失败或删除后使涉及的序列失效 */
+    private void recordLastValue(StoragePhysicalTask task, TaskExecuteResult result) {
+        if (!lastValueCache.isEnabled()) {
+            return;
+        }
+        Operator operator = task.getOperators().get(0);
+        try {
+            if (operator.getType() == OperatorType.Insert) {
+                DataView data = ((Insert) operator).getData();
+                if (result == null || result.getException() != null) {
+                    lastValueCache.invalidate(data);
+                } else {
+                    lastValueCache.update(data);
+                }
+            } else if (operator.getType() == OperatorType.Delete) {
+                lastValueCache.invalidate(((Delete) operator).getPatterns());
+            }
+        } catch (Exception e) {
+            logger.error("encounter error when update last value cache: ", e);
+        }
+    }
+
+    /** 开启热点分片读缓存时，读取任务优先从缓存中返回，写入与删除执行后使缓存失效 */
+    private TaskExecuteResult executeCached(IStorage storage, StoragePhysicalTask task) {
+        if (hotFragmentCache == null) {
+            return executeShared(storage, task);
+        }
+        if (HotFragmentCache.isCacheable(task)) {
+            return hotFragmentCache.execute(task, t -> executeShared(storage, t));
+        }
+        try {
+            return executeShared(storage, task);
+        } finally {
+            // 写入失败时也可能已经部分生效
+            hotFragmentCache.invalidate(task);
+        }
+    }
+
+    /** 开启共享扫描时，相同的只读任务共享一次存储读取 */
+    private TaskExecuteResult executeShared(IStorage storage, StoragePhysicalTask task) {
+        if (sharedScanCoalescer == null) {
+            return execute(storage, task);
+        }
+        if (!SharedScanCoalescer.isShareable(task)) {
+            TaskExecuteResult result = execute(storage, task);
+            // 写入完成后到达的读取不能共享写入前开始的读取
+            sharedScanCoalescer.invalidate(task);
+            return result;
+        }
+        return sharedScanCoalescer.execute(task, () -> execute(storage, task));
+    }
+
+    /** 存储引擎不支持下推的算子时，只向引擎请求原始数据，剩余的算子在内存中执行 */
+    private TaskExecuteResult execute(IStorage storage, StoragePhysicalTask task) {
+        List<Operator> operators = task.getOperators();
+        int index = 0;
+        while (index < operators.size()
+                && !PushDownUtils.isPushDownCandidate(operators.get(index))) {
+            index++;
+        }
+        if (index == operators.size()) {
+            return storage.execute(task);
+        }
+        if (!task.isDummyStorageUnit() && storage.isSupportPushDown(operators.get(index))) {
+            TaskExecuteResult result = storage.execute(task);
+            if (result.getException() == null) {
+                return result;
+            }
+            logger.warn(
+                    "execute pushed down operator failed, fall back to memory: "
+                            + result.getException());
+        }
+        StoragePhysicalTask rawTask =
+                new StoragePhysicalTask(
+                        new ArrayList<>(operators.subList(0, index)),
+                        task.getTargetFragment(),
+                        task.isSync(),
+                        task.isNeedBroadcasting());
+        rawTask.setStorageUnit(task.getStorageUnit());
+        rawTask.setDummyStorageUnit(task.isDummyStorageUnit());
+        rawTask.setStorage(task.getStorage());
+        TaskExecuteResult result = storage.execute(rawTask);
+        if (result.getException() != null) {
+            return result;
+        }
+        List<UnaryOperator> residualOperators = new ArrayList<>();
+        for (Operator operator : operators.subList(index, operators.size())) {
+            residualOperators.add((UnaryOperator) operator);
+        }
+        try {
+            return new TaskExecuteResult(
+                    OperatorMemoryExecutorFactory.getInstance()
+                            .getMemoryExecutor()
+                            .executeUnaryOperators(residualOperators, result.getRowStream()));
+        } catch (PhysicalException e) {
+            logger.error("encounter error when execute operator in memory: ", e);
+            return new TaskExecuteResult(e);
+        }
+    }
+
+    /** 流水线执行时，存储引擎返回的结果由后台线程通过有界队列持续读取，下游任务可以立即开始消费 */
+    private TaskExecuteResult pipeline(TaskExecuteResult result) {
+        if (!ConfigDescriptor.getInstance().getConfig().isEnablePipelinedExecution()
+                || result.getException() != null) {
+            return result;
+        }
+        RowStream stream = result.getRowStream();
+        if (stream == null) {
+            return result;
+        }
+        try {
+            result.setRowStream(PrefetchRowStream.prefetch(stream));
+        } catch (PhysicalException e) {
+            logger.error("encounter error when prefetch storage result: ", e);
+            return new TaskExecuteResult(e);
+        }
+        return result;
     }
 
     public static StoragePhysicalTaskExecutor getInstance() {
@@ -272,6 +456,17 @@ public class StoragePhysicalTaskExecutor {
         List<StorageEngineMeta> storageList = metaManager.getStorageEngineList();
         switch (task.getOperator().getType()) {
             case ShowTimeSeries:
+                ShowTimeSeries operator = (ShowTimeSeries) task.getOperator();
+                Set<String> pathRegexSet = operator.getPathRegexSet();
+                TagFilter tagFilter = operator.getTagFilter();
+
+                TreeSet<Timeseries> tsSetAfterFilter =
+                        new TreeSet<>(Comparator.comparing(Timeseries::getPhysicalPath));
+                if (timeSeriesCatalog != null && timeSeriesCatalog.covers(storageList)) {
+                    tsSetAfterFilter.addAll(timeSeriesCatalog.match(pathRegexSet, tagFilter));
+                    return showTimeSeriesResult(operator, tsSetAfterFilter);
+                }
+
                 Set<Timeseries> timeseriesSet = new HashSet<>();
                 for (StorageEngineMeta storage : storageList) {
                     long id = storage.getId();
@@ -294,12 +489,6 @@ public class StoragePhysicalTaskExecutor {
                     }
                 }
 
-                ShowTimeSeries operator = (ShowTimeSeries) task.getOperator();
-                Set<String> pathRegexSet = operator.getPathRegexSet();
-                TagFilter tagFilter = operator.getTagFilter();
-
-                TreeSet<Timeseries> tsSetAfterFilter =
-                        new TreeSet<>(Comparator.comparing(Timeseries::getPhysicalPath));
                 for (Timeseries timeseries : timeseriesSet) {
                     boolean isTarget = true;
                     if (!pathRegexSet.isEmpty()) {
@@ -322,27 +511,7 @@ public class StoragePhysicalTaskExecutor {
                     }
                 }
 
-                int limit = operator.getLimit();
-                int offset = operator.getOffset();
-                if (limit == Integer.MAX_VALUE && offset == 0) {
-                    return new TaskExecuteResult(Timeseries.toRowStream(tsSetAfterFilter));
-                } else {
-                    // only need part of data.
-                    List<Timeseries> tsList = new ArrayList<>();
-                    int cur = 0, size = tsSetAfterFilter.size();
-                    for (Iterator<Timeseries> iter = tsSetAfterFilter.iterator();
-                            iter.hasNext();
-                            cur++) {
-                        if (cur >= size || cur - offset >= limit) {
-                            break;
-                        }
-                        Timeseries ts = iter.next();
-                        if (cur >= offset) {
-                            tsList.add(ts);
-                        }
-                    }
-                    return new TaskExecuteResult(Timeseries.toRowStream(tsList));
-                }
+                return showTimeSeriesResult(operator, tsSetAfterFilter);
             default:
                 return new TaskExecuteResult(
                         new UnexpectedOperatorException(
@@ -350,6 +519,29 @@ public class StoragePhysicalTaskExecutor {
         }
     }
 
+    private TaskExecuteResult showTimeSeriesResult(
+            ShowTimeSeries operator, TreeSet<Timeseries> tsSetAfterFilter) {
+        int limit = operator.getLimit();
+        int offset = operator.getOffset();
+        if (limit == Integer.MAX_VALUE && offset == 0) {
+            return new TaskExecuteResult(Timeseries.toRowStream(tsSetAfterFilter));
+        } else {
+            // only need part of data.
+            List<Timeseries> tsList = new ArrayList<>();
+            int cur = 0, size = tsSetAfterFilter.size();
+            for (Iterator<Timeseries> iter = tsSetAfterFilter.iterator(); iter.hasNext(); cur++) {
+                if (cur >= size || cur - offset >= limit) {
+                    break;
+                }
+                Timeseries ts = iter.next();
+                if (cur >= offset) {
+                    tsList.add(ts);
+                }
+            }
+            return new TaskExecuteResult(Timeseries.toRowStream(tsList));
+        }
+    }
+
     public void commit(List<StoragePhysicalTask> tasks) {
         for (StoragePhysicalTask task : tasks) {
             if (replicaDispatcher == null) {
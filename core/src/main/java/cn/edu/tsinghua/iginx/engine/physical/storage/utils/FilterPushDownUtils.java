@@ -0,0 +1,231 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.storage.utils;
+
+import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.BoolFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.FilterType;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.NotFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.OrFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.ValueFilter;
+import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
+import java.util.ArrayList;
+import java.util.List;
+
+/** 过滤条件下推至只支持部分过滤语义的存储引擎时使用的工具方法。只与 key 有关的条件可以由引擎精确执行；值条件在引擎中只能按单条序列收窄数据， 行级语义仍需由内存中的剩余条件保证 */
+public class FilterPushDownUtils {
+
+    /** 展开顶层的 And，返回各个合取项 */
+    public static List<Filter> splitConjuncts(Filter filter) {
+        List<Filter> conjuncts = new ArrayList<>();
+        if (filter == null) {
+            return conjuncts;
+        }
+        if (filter.getType() == FilterType.And) {
+            for (Filter child : ((AndFilter) filter).getChildren()) {
+                conjuncts.addAll(splitConjuncts(child));
+            }
+        } else {
+            conjuncts.add(filter);
+        }
+        return conjuncts;
+    }
+
+    /** 将合取项重新组合为一个过滤条件，没有合取项时返回 null */
+    public static Filter combineConjuncts(List<Filter> conjuncts) {
+        if (conjuncts.isEmpty()) {
+            return null;
+        }
+        if (conjuncts.size() == 1) {
+            return conjuncts.get(0);
+        }
+        return new AndFilter(new ArrayList<>(conjuncts));
+    }
+
+    /** 过滤条件是否只与 key 有关 */
+    public static boolean isKeyOnly(Filter filter) {
+        switch (filter.getType()) {
+            case Key:
+            case Bool:
+                return true;
+            case Not:
+                return isKeyOnly(((NotFilter) filter).getChild());
+            case And:
+                return ((AndFilter) filter)
+                        .getChildren()
+                        .stream()
+                        .allMatch(FilterPushDownUtils::isKeyOnly);
+            case Or:
+                return ((OrFilter) filter)
+                        .getChildren()
+                        .stream()
+                        .allMatch(FilterPushDownUtils::isKeyOnly);
+            case Value:
+            case Path:
+            default:
+                return false;
+        }
+    }
+
+    /** 可以在单条序列上预先过滤的值条件：路径不含通配符，与数值常量比较且不是 LIKE */
+    public static boolean isSeriesLocal(Filter filter) {
+        if (filter.getType() != FilterType.Value) {
+            return false;
+        }
+        ValueFilter valueFilter = (ValueFilter) filter;
+        if (valueFilter.getPath().contains("*") || valueFilter.getOp() == Op.LIKE) {
+            return false;
+        }
+        Value value = valueFilter.getValue();
+        if (value == null || value.isNull()) {
+            return false;
+        }
+        switch (value.getDataType()) {
+            case INTEGER:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** 按单条序列预先过滤时使用的比较符。引擎侧按浮点数比较，精度损失只会让不等式从严格变为非严格，因此严格比较放宽为非严格比较，不等比较无法安全下推，返回 null */
+    public static Op relaxForNarrowing(Op op) {
+        switch (op) {
+            case G:
+            case GE:
+                return Op.GE;
+            case L:
+            case LE:
+                return Op.LE;
+            case E:
+                return Op.E;
+            default:
+                return null;
+        }
+    }
+
+    /** 过滤条件是否只由 key 的范围比较通过 AND 组成，此时 getKeyInterval 返回的范围与过滤条件等价 */
+    public static boolean isKeyRangeFilter(Filter filter) {
+        switch (filter.getType()) {
+            case Key:
+                switch (((KeyFilter) filter).getOp()) {
+                    case G:
+                    case GE:
+                    case L:
+                    case LE:
+                    case E:
+                        return true;
+                    default:
+                        return false;
+                }
+            case And:
+                for (Filter child : ((AndFilter) filter).getChildren()) {
+                    if (!isKeyRangeFilter(child)) {
+                        return false;
+                    }
+                }
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** 过滤条件所蕴含的 key 范围 [start, end)，不能推出范围的条件视为不受限制 */
+    public static TimeInterval getKeyInterval(Filter filter) {
+        switch (filter.getType()) {
+            case Key:
+                return getKeyInterval((KeyFilter) filter);
+            case Bool:
+                return ((BoolFilter) filter).isTrue()
+                        ? new TimeInterval(0, Long.MAX_VALUE)
+                        : new TimeInterval(0, 0);
+            case And:
+                {
+                    long start = 0, end = Long.MAX_VALUE;
+                    for (Filter child : ((AndFilter) filter).getChildren()) {
+                        TimeInterval interval = getKeyInterval(child);
+                        start = Math.max(start, interval.getStartTime());
+                        end = Math.min(end, interval.getEndTime());
+                    }
+                    return new TimeInterval(start, Math.max(start, end));
+                }
+            case Or:
+                {
+                    long start = Long.MAX_VALUE, end = 0;
+                    for (Filter child : ((OrFilter) filter).getChildren()) {
+                        TimeInterval interval = getKeyInterval(child);
+                        if (interval.getStartTime() >= interval.getEndTime()) {
+                            continue;
+                        }
+                        start = Math.min(start, interval.getStartTime());
+                        end = Math.max(end, interval.getEndTime());
+                    }
+                    return start >= end ? new TimeInterval(0, 0) : new TimeInterval(start, end);
+                }
+            case Not:
+            case Value:
+            case Path:
+            default:
+                return new TimeInterval(0, Long.MAX_VALUE);
+        }
+    }
+
+    private static TimeInterval getKeyInterval(KeyFilter filter) {
+        long value = filter.getValue();
+        switch (filter.getOp()) {
+            case G:
+                return value == Long.MAX_VALUE
+                        ? new TimeInterval(0, 0)
+                        : new TimeInterval(Math.max(value + 1, 0), Long.MAX_VALUE);
+            case GE:
+                return new TimeInterval(Math.max(value, 0), Long.MAX_VALUE);
+            case L:
+                return new TimeInterval(0, Math.max(value, 0));
+            case LE:
+                return new TimeInterval(
+                        0, value == Long.MAX_VALUE ? Long.MAX_VALUE : Math.max(value + 1, 0));
+            case E:
+                return value < 0 || value == Long.MAX_VALUE
+                        ? new TimeInterval(0, 0)
+                        : new TimeInterval(value, value + 1);
+            case NE:
+            case LIKE:
+            default:
+                return new TimeInterval(0, Long.MAX_VALUE);
+        }
+    }
+
+    /** 将过滤条件蕴含的 key 范围与分片的时间范围求交 */
+    public static TimeInterval intersect(TimeInterval interval, Filter filter) {
+        if (filter == null) {
+            return interval;
+        }
+        TimeInterval keyInterval = getKeyInterval(filter);
+        long start = Math.max(interval.getStartTime(), keyInterval.getStartTime());
+        long end = Math.min(interval.getEndTime(), keyInterval.getEndTime());
+        return new TimeInterval(start, Math.max(start, end));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.storage.utils;
+
+import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_PATHS;
+
+import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionType;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Count;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.FirstValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.LastValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Max;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Min;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Sum;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.SetTransform;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.StringUtils;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/** 聚合、降采样与 limit 算子下推至存储引擎时使用的工具方法 */
+public class PushDownUtils {
+
+    private static final Set<String> PUSH_DOWN_FUNCTIONS =
+            new HashSet<>(
+                    Arrays.asList(
+                            Avg.AVG,
+                            Sum.SUM,
+                            Count.COUNT,
+                            Max.MAX,
+                            Min.MIN,
+                            FirstValue.FIRST_VALUE,
+                            LastValue.LAST_VALUE));
+
+    /** 判断算子是否有可能被下推到存储引擎执行，具体能否执行由各个引擎自行判断 */
+    public static boolean isPushDownCandidate(Operator operator) {
+        switch (operator.getType()) {
+            case Limit:
+                return true;
+            case Downsample:
+                // 存储引擎只支持不重叠的窗口
+                Downsample downsample = (Downsample) operator;
+                return downsample.getPrecision() == downsample.getSlideDistance()
+                        && isPushDownFunction(downsample.getFunctionCall());
+            case SetTransform:
+                return isPushDownFunction(((SetTransform) operator).getFunctionCall());
+            default:
+                return false;
+        }
+    }
+
+    public static boolean isPushDownFunction(FunctionCall functionCall) {
+        if (functionCall.getFunction().getFunctionType() != FunctionType.System) {
+            return false;
+        }
+        if (!PUSH_DOWN_FUNCTIONS.contains(functionCall.getFunction().getIdentifier())) {
+            return false;
+        }
+        // 带有 group by level 的聚合需要在内存中合并不同序列，不进行下推
+        Value param = functionCall.getParams().get(PARAM_PATHS);
+        return functionCall.getParams().size() == 1
+                && param != null
+                && param.getDataType() == DataType.BINARY;
+    }
+
+    public static FunctionCall getFunctionCall(Operator operator) {
+        if (operator.getType() == OperatorType.Downsample) {
+            return ((Downsample) operator).getFunctionCall();
+        } else if (operator.getType() == OperatorType.SetTransform) {
+            return ((SetTransform) operator).getFunctionCall();
+        }
+        return null;
+    }
+
+    public static String getFunctionName(Operator operator) {
+        FunctionCall functionCall = getFunctionCall(operator);
+        return functionCall == null ? null : functionCall.getFunction().getIdentifier();
+    }
+
+    /** 与系统函数保持一致的目标序列匹配规则 */
+    public static Pattern getTargetPattern(FunctionCall functionCall) {
+        String target = functionCall.getParams().get(PARAM_PATHS).getBinaryVAsString();
+        return Pattern.compile(StringUtils.reformatPath(target) + ".*");
+    }
+
+    /** 与系统函数保持一致的结果列命名与类型规则 */
+    public static Field getTargetField(String function, Field field) {
+        String name = function + "(" + field.getName() + ")";
+        String fullName = function + "(" + field.getFullName() + ")";
+        return new Field(name, fullName, getTargetType(function, field.getType()));
+    }
+
+    public static DataType getTargetType(String function, DataType type) {
+        switch (function) {
+            case Avg.AVG:
+                return DataType.DOUBLE;
+            case Count.COUNT:
+                return DataType.LONG;
+            case Sum.SUM:
+                return type == DataType.INTEGER || type == DataType.LONG
+                        ? DataType.LONG
+                        : DataType.DOUBLE;
+            default:
+                return type;
+        }
+    }
+
+    /** 将存储引擎返回的聚合值转换为目标列的类型 */
+    public static Object castTargetValue(DataType type, Object value) {
+        if (value == null) {
+            return null;
+        }
+        switch (type) {
+            case INTEGER:
+                return value instanceof Number ? ((Number) value).intValue() : value;
+            case LONG:
+                return value instanceof Number ? ((Number) value).longValue() : value;
+            case FLOAT:
+                return value instanceof Number ? ((Number) value).floatValue() : value;
+            case DOUBLE:
+                return value instanceof Number ? ((Number) value).doubleValue() : value;
+            case BINARY:
+                return value instanceof String ? ((String) value).getBytes() : value;
+            default:
+                return value;
+        }
+    }
+}
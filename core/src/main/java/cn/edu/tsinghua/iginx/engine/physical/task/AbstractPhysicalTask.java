@@ -19,6 +19,7 @@
 package cn.edu.tsinghua.iginx.engine.physical.task;
 
 import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.resource.QueryMemoryContext;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
@@ -40,6 +41,8 @@ public abstract class AbstractPhysicalTask implements PhysicalTask {
 
     private long span = 0;
 
+    private QueryMemoryContext memoryContext;
+
     public AbstractPhysicalTask(TaskType type, List<Operator> operators) {
         this.type = type;
         this.operators = operators;
@@ -92,6 +95,16 @@ public abstract class AbstractPhysicalTask implements PhysicalTask {
         this.span = span;
     }
 
+    @Override
+    public QueryMemoryContext getMemoryContext() {
+        return memoryContext;
+    }
+
+    @Override
+    public void setMemoryContext(QueryMemoryContext memoryContext) {
+        this.memoryContext = memoryContext;
+    }
+
     @Override
     public int getAffectedRows() {
         return affectRows;
@@ -18,15 +18,18 @@
  */
 package cn.edu.tsinghua.iginx.engine.physical.task;
 
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.physical.exception.UnexpectedOperatorException;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.OperatorMemoryExecutor;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.OperatorMemoryExecutorFactory;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream.PrefetchRowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.operator.BinaryOperator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.UnaryOperator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import java.util.ArrayList;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -86,15 +89,22 @@ public class BinaryMemoryPhysicalTask extends MemoryPhysicalTask {
                 throw new UnexpectedOperatorException(
                         "unexpected unary operator " + op + " in unary task");
             }
+            if (ConfigDescriptor.getInstance().getConfig().isEnablePipelinedExecution()) {
+                // 两个输入分别在后台线程中计算，互不等待
+                streamA = PrefetchRowStream.prefetch(streamA);
+                streamB = PrefetchRowStream.prefetch(streamB);
+            }
             stream = executor.executeBinaryOperator((BinaryOperator) op, streamA, streamB);
+            List<UnaryOperator> unaryOperators = new ArrayList<>();
             for (int i = 1; i < operators.size(); i++) {
                 op = operators.get(i);
                 if (OperatorType.isBinaryOperator(op.getType())) {
                     throw new UnexpectedOperatorException(
                             "unexpected binary operator " + op + " in unary task");
                 }
-                stream = executor.executeUnaryOperator((UnaryOperator) op, stream);
+                unaryOperators.add((UnaryOperator) op);
             }
+            stream = executor.executeUnaryOperators(unaryOperators, stream);
         } catch (PhysicalException e) {
             logger.error("encounter error when execute operator in memory: ", e);
             return new TaskExecuteResult(e);
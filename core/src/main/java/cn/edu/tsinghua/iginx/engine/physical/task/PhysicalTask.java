@@ -19,6 +19,7 @@
 package cn.edu.tsinghua.iginx.engine.physical.task;
 
 import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.resource.QueryMemoryContext;
 import java.util.List;
 
 public interface PhysicalTask extends Measurable {
@@ -36,4 +37,9 @@ public interface PhysicalTask extends Measurable {
     void setFollowerTask(PhysicalTask task);
 
     String getInfo();
+
+    /** 任务所属查询的内存账户，执行任务时绑定到执行线程上 */
+    QueryMemoryContext getMemoryContext();
+
+    void setMemoryContext(QueryMemoryContext memoryContext);
 }
@@ -8,6 +8,7 @@ import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.UnaryOperator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import java.util.ArrayList;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,13 +44,15 @@ public class UnaryMemoryPhysicalTask extends MemoryPhysicalTask {
         OperatorMemoryExecutor executor =
                 OperatorMemoryExecutorFactory.getInstance().getMemoryExecutor();
         try {
+            List<UnaryOperator> unaryOperators = new ArrayList<>();
             for (Operator op : operators) {
                 if (OperatorType.isBinaryOperator(op.getType())) {
                     throw new UnexpectedOperatorException(
                             "unexpected binary operator " + op + " in unary task");
                 }
-                stream = executor.executeUnaryOperator((UnaryOperator) op, stream);
+                unaryOperators.add((UnaryOperator) op);
             }
+            stream = executor.executeUnaryOperators(unaryOperators, stream);
         } catch (PhysicalException e) {
             logger.error("encounter error when execute operator in memory: ", e);
             return new TaskExecuteResult(e);
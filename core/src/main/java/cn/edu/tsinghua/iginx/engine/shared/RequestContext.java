@@ -1,11 +1,16 @@
 package cn.edu.tsinghua.iginx.engine.shared;
 
+import cn.edu.tsinghua.iginx.engine.PreparedStatementManager.PreparedSql;
 import cn.edu.tsinghua.iginx.engine.physical.task.PhysicalTask;
+import cn.edu.tsinghua.iginx.resource.QueryMemoryContext;
 import cn.edu.tsinghua.iginx.sql.statement.Statement;
+import cn.edu.tsinghua.iginx.thrift.CompressionType;
+import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.thrift.SqlType;
 import cn.edu.tsinghua.iginx.thrift.Status;
 import cn.edu.tsinghua.iginx.utils.SnowFlakeUtils;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import lombok.Data;
 
@@ -32,12 +37,25 @@ public class RequestContext {
 
     private Statement statement;
 
+    // 非空时执行的是预编译语句，语句由预编译时解析的语法树绑定参数得到
+    private PreparedSql preparedSql;
+
+    private List<Object> parameters;
+
+    private List<DataType> parameterTypes;
+
     private Result result;
 
     private boolean useStream;
 
+    // 非空时查询结果按列编码并使用该方式压缩
+    private CompressionType columnarCompression;
+
     private PhysicalTask physicalTree;
 
+    // 查询的内存账户，流式查询在游标关闭时释放
+    private QueryMemoryContext memoryContext;
+
     private void init() {
         this.id = SnowFlakeUtils.getInstance().nextId();
         this.startTime = System.currentTimeMillis();
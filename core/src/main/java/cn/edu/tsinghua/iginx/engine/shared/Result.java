@@ -8,6 +8,7 @@ import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.thrift.*;
 import cn.edu.tsinghua.iginx.utils.Bitmap;
 import cn.edu.tsinghua.iginx.utils.ByteUtils;
+import cn.edu.tsinghua.iginx.utils.ColumnarDataSetUtils;
 import cn.edu.tsinghua.iginx.utils.RpcUtils;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -30,6 +31,7 @@ public class Result {
     private Long[] timestamps;
     private List<ByteBuffer> valuesList;
     private List<ByteBuffer> bitmapList;
+    private ColumnarDataSet columnarDataSet;
 
     private SqlType sqlType;
     private Long pointsNum;
@@ -144,6 +146,9 @@ public class Result {
                         new QueryDataSet(ByteBuffer.allocate(0), valuesList, bitmapList));
             }
         }
+        if (columnarDataSet != null) {
+            resp.setColumnarDataSet(columnarDataSet);
+        }
 
         resp.setIginxInfos(iginxInfos);
         resp.setStorageEngineInfos(storageEngineInfos);
@@ -157,6 +162,12 @@ public class Result {
     }
 
     public ExecuteStatementResp getExecuteStatementResp(int fetchSize) {
+        return getExecuteStatementResp(fetchSize, null);
+    }
+
+    /** compressionType 非空时按列编码返回结果，否则按行编码 */
+    public ExecuteStatementResp getExecuteStatementResp(
+            int fetchSize, CompressionType compressionType) {
         ExecuteStatementResp resp = new ExecuteStatementResp(status, sqlType);
         if (status != RpcUtils.SUCCESS) {
             return resp;
@@ -188,6 +199,14 @@ public class Result {
                                     tagsList.add(field.getTags());
                                 }
                             });
+            resp.setColumns(paths);
+            resp.setTagsList(tagsList);
+            resp.setDataTypeList(types);
+
+            if (compressionType != null) {
+                resp.setColumnarDataSet(nextColumnarDataSet(fetchSize, compressionType));
+                return resp;
+            }
 
             List<ByteBuffer> valuesList = new ArrayList<>();
             List<ByteBuffer> bitmapList = new ArrayList<>();
@@ -215,9 +234,6 @@ public class Result {
                 bitmapList.add(ByteBuffer.wrap(bitmap.getBytes()));
                 cnt++;
             }
-            resp.setColumns(paths);
-            resp.setTagsList(tagsList);
-            resp.setDataTypeList(types);
             resp.setQueryDataSet(new QueryDataSetV2(valuesList, bitmapList));
         } catch (PhysicalException e) {
             logger.error("unexpected error when load row stream: ", e);
@@ -227,12 +243,22 @@ public class Result {
     }
 
     public FetchResultsResp fetch(int fetchSize) {
+        return fetch(fetchSize, null);
+    }
+
+    public FetchResultsResp fetch(int fetchSize, CompressionType compressionType) {
         FetchResultsResp resp = new FetchResultsResp(status, false);
 
         if (status != RpcUtils.SUCCESS) {
             return resp;
         }
         try {
+            if (compressionType != null) {
+                resp.setColumnarDataSet(nextColumnarDataSet(fetchSize, compressionType));
+                resp.setHasMoreResults(resultStream.hasNext());
+                return resp;
+            }
+
             List<DataType> types = new ArrayList<>();
 
             Header header = resultStream.getHeader();
@@ -277,4 +303,23 @@ public class Result {
         }
         return resp;
     }
+
+    /** 从结果流中取出至多 fetchSize 行并按列编码，key 单独编码而不作为第一列 */
+    private ColumnarDataSet nextColumnarDataSet(int fetchSize, CompressionType compressionType)
+            throws PhysicalException {
+        Header header = resultStream.getHeader();
+        List<DataType> types = new ArrayList<>();
+        header.getFields().forEach(field -> types.add(field.getType()));
+
+        List<Object[]> rows = new ArrayList<>();
+        List<Long> keys = new ArrayList<>();
+        while (resultStream.hasNext() && rows.size() < fetchSize) {
+            Row row = resultStream.next();
+            rows.add(row.getValues());
+            keys.add(row.getKey());
+        }
+        long[] keyArray =
+                header.hasKey() ? keys.stream().mapToLong(Long::longValue).toArray() : null;
+        return ColumnarDataSetUtils.encode(rows, keyArray, types, compressionType);
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.shared.data.read;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.PushDownUtils;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Count;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/** 将存储引擎原生计算出的聚合结果（列仍以原始序列命名及定型）转换为与内存中执行一致的格式 */
+public class AggregatedRowStreamWrapper implements RowStream {
+
+    private final RowStream stream;
+
+    private final String function;
+
+    private final boolean isDownsample;
+
+    private final long bias;
+
+    private final long precision;
+
+    private final Header header;
+
+    private final int[] indices;
+
+    private Row nextRow;
+
+    private boolean hasConsumed = false;
+
+    public AggregatedRowStreamWrapper(RowStream stream, Operator operator)
+            throws PhysicalException {
+        this(stream, operator, Collections.emptyMap());
+    }
+
+    /** sourceTypes 为原始序列的类型，用于引擎返回的聚合列类型与原始序列不同的情况，如总是返回 DOUBLE 的 sum */
+    public AggregatedRowStreamWrapper(
+            RowStream stream, Operator operator, Map<String, DataType> sourceTypes)
+            throws PhysicalException {
+        this.stream = stream;
+        this.function = PushDownUtils.getFunctionName(operator);
+        this.isDownsample = operator.getType() == OperatorType.Downsample;
+        if (isDownsample) {
+            Downsample downsample = (Downsample) operator;
+            this.bias = downsample.getTimeRange().getActualBeginTime();
+            this.precision = downsample.getPrecision();
+        } else {
+            this.bias = 0L;
+            this.precision = 1L;
+        }
+
+        Pattern pattern = PushDownUtils.getTargetPattern(PushDownUtils.getFunctionCall(operator));
+        List<Field> fields = stream.getHeader().getFields();
+        List<Field> targetFields = new ArrayList<>();
+        List<Integer> targetIndices = new ArrayList<>();
+        for (int i = 0; i < fields.size(); i++) {
+            Field field = fields.get(i);
+            if (pattern.matcher(field.getFullName()).matches()) {
+                DataType type = sourceTypes.get(field.getFullName());
+                if (type != null) {
+                    field = new Field(field.getName(), field.getFullName(), type, field.getTags());
+                }
+                targetFields.add(PushDownUtils.getTargetField(function, field));
+                targetIndices.add(i);
+            }
+        }
+        this.indices = targetIndices.stream().mapToInt(Integer::intValue).toArray();
+        this.header = isDownsample ? new Header(Field.KEY, targetFields) : new Header(targetFields);
+    }
+
+    @Override
+    public Header getHeader() {
+        return header;
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        stream.close();
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        if (nextRow != null) {
+            return true;
+        }
+        if (isDownsample) {
+            loadNextWindow();
+        } else if (!hasConsumed) {
+            // 聚合查询无论是否有数据都只返回一行结果
+            nextRow = transform(stream.hasNext() ? stream.next() : null);
+            hasConsumed = true;
+        }
+        return nextRow != null;
+    }
+
+    @Override
+    public Row next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new PhysicalException("the row stream has used up");
+        }
+        Row row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    private void loadNextWindow() throws PhysicalException {
+        while (nextRow == null && stream.hasNext()) {
+            Row row = transform(stream.next());
+            if (!isEmptyWindow(row)) {
+                nextRow = row;
+            }
+        }
+    }
+
+    /** 部分引擎会为没有数据的窗口返回空值或者 0 值的 count，这些窗口在内存中执行时并不存在 */
+    private boolean isEmptyWindow(Row row) {
+        boolean isCount = function.equals(Count.COUNT);
+        for (Object value : row.getValues()) {
+            if (value != null && !(isCount && (long) value == 0L)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private Row transform(Row row) {
+        Object[] values = new Object[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            Object value = row == null ? null : row.getValue(indices[i]);
+            if (value == null && row == null && function.equals(Count.COUNT)) {
+                value = 0L;
+            }
+            values[i] = PushDownUtils.castTargetValue(header.getField(i).getType(), value);
+        }
+        if (!isDownsample) {
+            return new Row(header, values);
+        }
+        // 部分引擎以被查询范围截断后的窗口起点作为 key，统一对齐到窗口起点
+        long key = row.getKey() - Math.floorMod(row.getKey() - bias, precision);
+        return new Row(header, key, values);
+    }
+}
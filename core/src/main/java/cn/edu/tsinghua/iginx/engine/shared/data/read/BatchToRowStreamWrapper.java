@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.shared.data.read;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+
+/** 将 BatchStream 逐行展开为 RowStream，供行式算子或结果集消费 */
+public class BatchToRowStreamWrapper implements RowStream {
+
+    private final BatchStream batchStream;
+
+    private RowBatch batch;
+
+    private int index;
+
+    public BatchToRowStreamWrapper(BatchStream batchStream) {
+        this.batchStream = batchStream;
+        this.batch = null;
+        this.index = 0;
+    }
+
+    public BatchStream getBatchStream() {
+        return batchStream;
+    }
+
+    @Override
+    public Header getHeader() throws PhysicalException {
+        return batchStream.getHeader();
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        batchStream.close();
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        while (batch == null || index >= batch.getSize()) {
+            if (!batchStream.hasNext()) {
+                return false;
+            }
+            batch = batchStream.next();
+            index = 0;
+        }
+        return true;
+    }
+
+    @Override
+    public Row next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new IllegalStateException("row stream doesn't have more data!");
+        }
+        return batch.getRow(index++);
+    }
+}
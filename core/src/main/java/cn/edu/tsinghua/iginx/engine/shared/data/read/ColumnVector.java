@@ -0,0 +1,331 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.shared.data.read;
+
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** 单列数据的列式存储，数值类型使用原生数组保存，空值通过 bitmap 标识。 */
+public final class ColumnVector {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private final DataType type;
+
+    private final BitSet nulls;
+
+    private boolean[] booleans;
+
+    private int[] ints;
+
+    private long[] longs;
+
+    private float[] floats;
+
+    private double[] doubles;
+
+    private byte[][] binaries;
+
+    private int size;
+
+    public ColumnVector(DataType type) {
+        this(type, DEFAULT_CAPACITY);
+    }
+
+    public ColumnVector(DataType type, int capacity) {
+        this.type = type;
+        this.nulls = new BitSet(capacity);
+        this.size = 0;
+        capacity = Math.max(capacity, 1);
+        switch (type) {
+            case BOOLEAN:
+                booleans = new boolean[capacity];
+                break;
+            case INTEGER:
+                ints = new int[capacity];
+                break;
+            case LONG:
+                longs = new long[capacity];
+                break;
+            case FLOAT:
+                floats = new float[capacity];
+                break;
+            case DOUBLE:
+                doubles = new double[capacity];
+                break;
+            case BINARY:
+                binaries = new byte[capacity][];
+                break;
+            default:
+                throw new IllegalArgumentException("unknown data type: " + type);
+        }
+    }
+
+    public DataType getType() {
+        return type;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isNull(int index) {
+        return nulls.get(index);
+    }
+
+    public boolean hasNull() {
+        return !nulls.isEmpty();
+    }
+
+    public BitSet getNulls() {
+        return nulls;
+    }
+
+    public boolean getBoolean(int index) {
+        return booleans[index];
+    }
+
+    public int getInt(int index) {
+        return ints[index];
+    }
+
+    public long getLong(int index) {
+        return longs[index];
+    }
+
+    public float getFloat(int index) {
+        return floats[index];
+    }
+
+    public double getDouble(int index) {
+        return doubles[index];
+    }
+
+    public byte[] getBinary(int index) {
+        return binaries[index];
+    }
+
+    public double getAsDouble(int index) {
+        switch (type) {
+            case INTEGER:
+                return ints[index];
+            case LONG:
+                return longs[index];
+            case FLOAT:
+                return floats[index];
+            case DOUBLE:
+                return doubles[index];
+            case BOOLEAN:
+                return booleans[index] ? 1.0D : 0.0D;
+            default:
+                throw new IllegalStateException("Unexpected field type: " + type);
+        }
+    }
+
+    public long getAsLong(int index) {
+        switch (type) {
+            case INTEGER:
+                return ints[index];
+            case LONG:
+                return longs[index];
+            default:
+                throw new IllegalStateException("Unexpected field type: " + type);
+        }
+    }
+
+    public Object getObject(int index) {
+        if (nulls.get(index)) {
+            return null;
+        }
+        switch (type) {
+            case BOOLEAN:
+                return booleans[index];
+            case INTEGER:
+                return ints[index];
+            case LONG:
+                return longs[index];
+            case FLOAT:
+                return floats[index];
+            case DOUBLE:
+                return doubles[index];
+            case BINARY:
+                return binaries[index];
+            default:
+                throw new IllegalStateException("Unexpected field type: " + type);
+        }
+    }
+
+    public void appendNull() {
+        ensureCapacity(size + 1);
+        nulls.set(size);
+        size++;
+    }
+
+    public void appendObject(Object value) {
+        if (value == null) {
+            appendNull();
+            return;
+        }
+        ensureCapacity(size + 1);
+        switch (type) {
+            case BOOLEAN:
+                booleans[size] = (boolean) value;
+                break;
+            case INTEGER:
+                ints[size] = (int) value;
+                break;
+            case LONG:
+                longs[size] = (long) value;
+                break;
+            case FLOAT:
+                floats[size] = (float) value;
+                break;
+            case DOUBLE:
+                doubles[size] = (double) value;
+                break;
+            case BINARY:
+                binaries[size] = (byte[]) value;
+                break;
+            default:
+                throw new IllegalStateException("Unexpected field type: " + type);
+        }
+        size++;
+    }
+
+    public void appendFrom(ColumnVector other, int index) {
+        ensureCapacity(size + 1);
+        if (other.nulls.get(index)) {
+            nulls.set(size);
+        } else {
+            copyValue(other, index, size);
+        }
+        size++;
+    }
+
+    public void appendRange(ColumnVector other, int from, int to) {
+        int length = to - from;
+        if (length <= 0) {
+            return;
+        }
+        ensureCapacity(size + length);
+        switch (type) {
+            case BOOLEAN:
+                System.arraycopy(other.booleans, from, booleans, size, length);
+                break;
+            case INTEGER:
+                System.arraycopy(other.ints, from, ints, size, length);
+                break;
+            case LONG:
+                System.arraycopy(other.longs, from, longs, size, length);
+                break;
+            case FLOAT:
+                System.arraycopy(other.floats, from, floats, size, length);
+                break;
+            case DOUBLE:
+                System.arraycopy(other.doubles, from, doubles, size, length);
+                break;
+            case BINARY:
+                System.arraycopy(other.binaries, from, binaries, size, length);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected field type: " + type);
+        }
+        for (int i = other.nulls.nextSetBit(from);
+                i >= 0 && i < to;
+                i = other.nulls.nextSetBit(i + 1)) {
+            nulls.set(size + i - from);
+        }
+        size += length;
+    }
+
+    private void copyValue(ColumnVector other, int from, int to) {
+        switch (type) {
+            case BOOLEAN:
+                booleans[to] = other.booleans[from];
+                break;
+            case INTEGER:
+                ints[to] = other.ints[from];
+                break;
+            case LONG:
+                longs[to] = other.longs[from];
+                break;
+            case FLOAT:
+                floats[to] = other.floats[from];
+                break;
+            case DOUBLE:
+                doubles[to] = other.doubles[from];
+                break;
+            case BINARY:
+                binaries[to] = other.binaries[from];
+                break;
+            default:
+                throw new IllegalStateException("Unexpected field type: " + type);
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        int current = capacity();
+        if (capacity <= current) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, current << 1);
+        switch (type) {
+            case BOOLEAN:
+                booleans = Arrays.copyOf(booleans, newCapacity);
+                break;
+            case INTEGER:
+                ints = Arrays.copyOf(ints, newCapacity);
+                break;
+            case LONG:
+                longs = Arrays.copyOf(longs, newCapacity);
+                break;
+            case FLOAT:
+                floats = Arrays.copyOf(floats, newCapacity);
+                break;
+            case DOUBLE:
+                doubles = Arrays.copyOf(doubles, newCapacity);
+                break;
+            case BINARY:
+                binaries = Arrays.copyOf(binaries, newCapacity);
+                break;
+            default:
+                throw new IllegalStateException("Unexpected field type: " + type);
+        }
+    }
+
+    private int capacity() {
+        switch (type) {
+            case BOOLEAN:
+                return booleans.length;
+            case INTEGER:
+                return ints.length;
+            case LONG:
+                return longs.length;
+            case FLOAT:
+                return floats.length;
+            case DOUBLE:
+                return doubles.length;
+            case BINARY:
+                return binaries.length;
+            default:
+                throw new IllegalStateException("Unexpected field type: " + type);
+        }
+    }
+}
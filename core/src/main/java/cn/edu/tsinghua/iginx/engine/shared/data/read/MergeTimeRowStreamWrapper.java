@@ -77,24 +77,20 @@ public class MergeTimeRowStreamWrapper implements RowStream {
         if (sameTimeRows == null || sameTimeRows.isEmpty()) {
             return null;
         }
-
-        Row ret = sameTimeRows.get(0);
-        for (int i = 1; i < sameTimeRows.size(); i++) {
-            ret = mergeTwoRows(ret, sameTimeRows.get(i));
+        if (sameTimeRows.size() == 1) {
+            return sameTimeRows.get(0);
         }
-        return ret;
-    }
-
-    private Row mergeTwoRows(Row row1, Row row2) {
-        int fieldSize = row1.getHeader().getFieldSize();
-        Object[] values = new Object[fieldSize];
-        for (int i = 0; i < fieldSize; i++) {
-            if (row2.getValue(i) != null) {
-                values[i] = row2.getValue(i);
-            } else {
-                values[i] = row1.getValue(i);
+        // 后出现的非空值覆盖之前的值，所有行直接写入同一个数组
+        Row first = sameTimeRows.get(0);
+        Object[] values = new Object[first.getHeader().getFieldSize()];
+        for (Row row : sameTimeRows) {
+            Object[] rowValues = row.getValues();
+            for (int i = 0; i < values.length; i++) {
+                if (rowValues[i] != null) {
+                    values[i] = rowValues[i];
+                }
             }
         }
-        return new Row(row1.getHeader(), row1.getKey(), values);
+        return new Row(first.getHeader(), first.getKey(), values);
     }
 }
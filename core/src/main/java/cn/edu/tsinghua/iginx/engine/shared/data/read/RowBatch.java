@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.shared.data.read;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/** 一批行数据的列式表示，key 与每一列都使用原生数组保存 */
+public final class RowBatch {
+
+    private final Header header;
+
+    private final ColumnVector[] columns;
+
+    private long[] keys;
+
+    private int size;
+
+    public RowBatch(Header header, int capacity) {
+        this.header = header;
+        this.keys = new long[Math.max(capacity, 1)];
+        this.columns = new ColumnVector[header.getFieldSize()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new ColumnVector(header.getField(i).getType(), capacity);
+        }
+        this.size = 0;
+    }
+
+    private RowBatch(Header header, long[] keys, ColumnVector[] columns, int size) {
+        this.header = header;
+        this.keys = keys;
+        this.columns = columns;
+        this.size = size;
+    }
+
+    public static RowBatch of(Header header, List<Row> rows) {
+        RowBatch batch = new RowBatch(header, rows.size());
+        for (Row row : rows) {
+            batch.appendRow(row);
+        }
+        return batch;
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long getKey(int index) {
+        return keys[index];
+    }
+
+    public ColumnVector getColumn(int index) {
+        return columns[index];
+    }
+
+    public int getColumnSize() {
+        return columns.length;
+    }
+
+    public void appendRow(Row row) {
+        ensureKeyCapacity(size + 1);
+        keys[size] = row.getKey();
+        Object[] values = row.getValues();
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].appendObject(values[i]);
+        }
+        size++;
+    }
+
+    public void appendRow(long key, Object[] values) {
+        ensureKeyCapacity(size + 1);
+        keys[size] = key;
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].appendObject(values[i]);
+        }
+        size++;
+    }
+
+    public void appendRange(RowBatch other, int from, int to) {
+        if (to <= from) {
+            return;
+        }
+        ensureKeyCapacity(size + to - from);
+        System.arraycopy(other.keys, from, keys, size, to - from);
+        for (int i = 0; i < columns.length; i++) {
+            columns[i].appendRange(other.columns[i], from, to);
+        }
+        size += to - from;
+    }
+
+    public Row getRow(int index) {
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = columns[i].getObject(index);
+        }
+        if (header.hasKey()) {
+            return new Row(header, keys[index], values);
+        }
+        return new Row(header, values);
+    }
+
+    /** 只保留 selected 中被标记的行 */
+    public RowBatch select(BitSet selected) {
+        int count = selected.cardinality();
+        if (count == size) {
+            return this;
+        }
+        RowBatch batch = new RowBatch(header, count);
+        for (int i = selected.nextSetBit(0); i >= 0 && i < size; i = selected.nextSetBit(i + 1)) {
+            batch.keys[batch.size] = keys[i];
+            for (int j = 0; j < columns.length; j++) {
+                batch.columns[j].appendFrom(columns[j], i);
+            }
+            batch.size++;
+        }
+        return batch;
+    }
+
+    /** 按照列下标生成新的批，列数据与原批共享，不发生拷贝 */
+    public RowBatch project(Header header, int[] indices) {
+        ColumnVector[] targetColumns = new ColumnVector[indices.length];
+        for (int i = 0; i < indices.length; i++) {
+            targetColumns[i] = columns[indices[i]];
+        }
+        return new RowBatch(header, keys, targetColumns, size);
+    }
+
+    public RowBatch slice(int from, int to) {
+        RowBatch batch = new RowBatch(header, to - from);
+        batch.appendRange(this, from, to);
+        return batch;
+    }
+
+    private void ensureKeyCapacity(int capacity) {
+        if (capacity > keys.length) {
+            keys = Arrays.copyOf(keys, Math.max(capacity, keys.length << 1));
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.shared.data.read;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+
+/** 将行式的 RowStream 按批组装为 BatchStream */
+public class RowToBatchStreamWrapper implements BatchStream {
+
+    private final RowStream rowStream;
+
+    private final int batchSize;
+
+    public RowToBatchStreamWrapper(RowStream rowStream, int batchSize) {
+        this.rowStream = rowStream;
+        this.batchSize = batchSize;
+    }
+
+    public RowStream getRowStream() {
+        return rowStream;
+    }
+
+    @Override
+    public Header getHeader() throws PhysicalException {
+        return rowStream.getHeader();
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        rowStream.close();
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        return rowStream.hasNext();
+    }
+
+    @Override
+    public RowBatch next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new IllegalStateException("batch stream doesn't have more data!");
+        }
+        RowBatch batch = new RowBatch(rowStream.getHeader(), batchSize);
+        while (batch.getSize() < batchSize && rowStream.hasNext()) {
+            batch.appendRow(rowStream.next());
+        }
+        return batch;
+    }
+}
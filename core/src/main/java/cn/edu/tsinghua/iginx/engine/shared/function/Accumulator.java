@@ -0,0 +1,46 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.shared.function;
+
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
+
+/** 集合映射函数的增量计算接口：init 创建一个分组的中间状态，accumulate 逐行更新状态，merge 合并两个部分状态，finish 得到最终结果 */
+public interface Accumulator {
+
+    /** 最终结果的 header */
+    Header getHeader();
+
+    Object init();
+
+    void accumulate(Object state, Row row);
+
+    /** 将批中 [from, to) 范围内的行累加到状态中，默认逐行展开，系统函数会覆盖为按列计算 */
+    default void accumulate(Object state, RowBatch batch, int from, int to) {
+        for (int i = from; i < to; i++) {
+            accumulate(state, batch.getRow(i));
+        }
+    }
+
+    /** 将 other 合并到 state 中，other 对应的输入行在 state 之后 */
+    void merge(Object state, Object other);
+
+    Object[] finish(Object state);
+}
@@ -18,12 +18,32 @@
  */
 package cn.edu.tsinghua.iginx.engine.shared.function;
 
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 public interface SetMappingFunction extends Function {
 
     Row transform(RowStream rows, Map<String, Value> params) throws Exception;
+
+    /** 对一批列式数据进行计算，默认逐行展开后复用行式实现，系统函数会覆盖为向量化实现 */
+    default Row transform(RowBatch batch, Map<String, Value> params) throws Exception {
+        List<Row> rows = new ArrayList<>(batch.getSize());
+        for (int i = 0; i < batch.getSize(); i++) {
+            rows.add(batch.getRow(i));
+        }
+        return transform(new Table(batch.getHeader(), rows), params);
+    }
+
+    /** 返回支持增量计算的累加器，返回 null 表示不支持，此时分组聚合需要物化整组数据后调用 transform */
+    default Accumulator createAccumulator(Header header, Map<String, Value> params)
+            throws Exception {
+        return null;
+    }
 }
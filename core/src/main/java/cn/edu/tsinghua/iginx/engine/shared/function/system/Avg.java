@@ -22,13 +22,17 @@ import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_LEVELS;
 import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_PATHS;
 
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.ColumnVector;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
 import cn.edu.tsinghua.iginx.engine.shared.function.FunctionType;
 import cn.edu.tsinghua.iginx.engine.shared.function.MappingType;
 import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.AggregateTargets;
 import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.GroupByUtils;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.DataTypeUtils;
@@ -65,6 +69,36 @@ public class Avg implements SetMappingFunction {
 
     @Override
     public Row transform(RowStream rows, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(rows.getHeader(), params);
+        Object state = accumulator.init();
+        while (rows.hasNext()) {
+            accumulator.accumulate(state, rows.next());
+        }
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    @Override
+    public Row transform(RowBatch batch, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(batch.getHeader(), params);
+        Object state = accumulator.init();
+        accumulator.accumulate(state, batch, 0, batch.getSize());
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    private static Object[] buildValues(double[] targetSums, long[] counts) {
+        Object[] targetValues = new Object[targetSums.length];
+        for (int i = 0; i < targetValues.length; i++) {
+            targetValues[i] = targetSums[i] / counts[i];
+        }
+        return targetValues;
+    }
+
+    @Override
+    public Accumulator createAccumulator(Header header, Map<String, Value> params) {
+        return new AvgAccumulator(resolveTargets(header, params), header);
+    }
+
+    private AggregateTargets resolveTargets(Header header, Map<String, Value> params) {
         if (params.size() == 0 || params.size() > 2) {
             throw new IllegalArgumentException("unexpected params for avg.");
         }
@@ -77,7 +111,7 @@ public class Avg implements SetMappingFunction {
             groupByLevels = GroupByUtils.parseLevelsFromValue(params.get(PARAM_LEVELS));
         }
         String target = param.getBinaryVAsString();
-        List<Field> fields = rows.getHeader().getFields();
+        List<Field> fields = header.getFields();
 
         Pattern pattern = Pattern.compile(StringUtils.reformatPath(target) + ".*");
         List<Field> targetFields = new ArrayList<>();
@@ -121,45 +155,140 @@ public class Avg implements SetMappingFunction {
                 throw new IllegalArgumentException("only number can calculate average");
             }
         }
+        return new AggregateTargets(
+                targetFields, indices, groupByLevels == null ? null : groupOrderIndexMap);
+    }
 
-        double[] targetSums = new double[targetFields.size()];
-        long[] counts = new long[targetFields.size()];
-        while (rows.hasNext()) {
-            Row row = rows.next();
-            for (int i = 0; i < indices.size(); i++) {
-                int index = indices.get(i);
-                Object value = row.getValue(index);
+    private static class AvgState {
+
+        private final double[] sums;
+
+        private final long[] counts;
+
+        AvgState(int size) {
+            this.sums = new double[size];
+            this.counts = new long[size];
+        }
+    }
+
+    private static class AvgAccumulator implements Accumulator {
+
+        private final AggregateTargets targets;
+
+        private final DataType[] types;
+
+        AvgAccumulator(AggregateTargets targets, Header header) {
+            this.targets = targets;
+            this.types = new DataType[targets.getSourceSize()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = header.getField(targets.getSourceIndex(i)).getType();
+            }
+        }
+
+        @Override
+        public Header getHeader() {
+            return targets.getHeader();
+        }
+
+        @Override
+        public Object init() {
+            return new AvgState(targets.getTargetSize());
+        }
+
+        @Override
+        public void accumulate(Object state, Row row) {
+            AvgState avgState = (AvgState) state;
+            for (int i = 0; i < types.length; i++) {
+                Object value = row.getValue(targets.getSourceIndex(i));
                 if (value == null) {
                     continue;
                 }
-                int targetIndex = i;
-                if (groupByLevels != null) {
-                    targetIndex = groupOrderIndexMap.get(index);
+                int targetIndex = targets.getTargetIndex(i);
+                switch (types[i]) {
+                    case INTEGER:
+                        avgState.sums[targetIndex] += (int) value;
+                        break;
+                    case LONG:
+                        avgState.sums[targetIndex] += (long) value;
+                        break;
+                    case FLOAT:
+                        avgState.sums[targetIndex] += (float) value;
+                        break;
+                    case DOUBLE:
+                        avgState.sums[targetIndex] += (double) value;
+                        break;
+                    default:
+                        throw new IllegalStateException(
+                                "Unexpected field type: " + types[i].toString());
                 }
-                switch (fields.get(index).getType()) {
+                avgState.counts[targetIndex]++;
+            }
+        }
+
+        @Override
+        public void accumulate(Object state, RowBatch batch, int from, int to) {
+            AvgState avgState = (AvgState) state;
+            for (int i = 0; i < types.length; i++) {
+                ColumnVector column = batch.getColumn(targets.getSourceIndex(i));
+                double sum = 0.0D;
+                long count = 0L;
+                switch (types[i]) {
                     case INTEGER:
-                        targetSums[targetIndex] += (int) value;
+                        for (int j = from; j < to; j++) {
+                            if (!column.isNull(j)) {
+                                sum += column.getInt(j);
+                                count++;
+                            }
+                        }
                         break;
                     case LONG:
-                        targetSums[targetIndex] += (long) value;
+                        for (int j = from; j < to; j++) {
+                            if (!column.isNull(j)) {
+                                sum += column.getLong(j);
+                                count++;
+                            }
+                        }
                         break;
                     case FLOAT:
-                        targetSums[targetIndex] += (float) value;
+                        for (int j = from; j < to; j++) {
+                            if (!column.isNull(j)) {
+                                sum += column.getFloat(j);
+                                count++;
+                            }
+                        }
                         break;
                     case DOUBLE:
-                        targetSums[targetIndex] += (double) value;
+                        for (int j = from; j < to; j++) {
+                            if (!column.isNull(j)) {
+                                sum += column.getDouble(j);
+                                count++;
+                            }
+                        }
                         break;
                     default:
                         throw new IllegalStateException(
-                                "Unexpected field type: " + fields.get(index).getType().toString());
+                                "Unexpected field type: " + types[i].toString());
                 }
-                counts[targetIndex]++;
+                int targetIndex = targets.getTargetIndex(i);
+                avgState.sums[targetIndex] += sum;
+                avgState.counts[targetIndex] += count;
             }
         }
-        Object[] targetValues = new Object[targetFields.size()];
-        for (int i = 0; i < targetValues.length; i++) {
-            targetValues[i] = targetSums[i] / counts[i];
+
+        @Override
+        public void merge(Object state, Object other) {
+            AvgState avgState = (AvgState) state;
+            AvgState otherState = (AvgState) other;
+            for (int i = 0; i < avgState.sums.length; i++) {
+                avgState.sums[i] += otherState.sums[i];
+                avgState.counts[i] += otherState.counts[i];
+            }
+        }
+
+        @Override
+        public Object[] finish(Object state) {
+            AvgState avgState = (AvgState) state;
+            return buildValues(avgState.sums, avgState.counts);
         }
-        return new Row(new Header(targetFields), targetValues);
     }
 }
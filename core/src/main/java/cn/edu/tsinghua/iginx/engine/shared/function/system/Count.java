@@ -22,13 +22,17 @@ import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_LEVELS;
 import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_PATHS;
 
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.ColumnVector;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
 import cn.edu.tsinghua.iginx.engine.shared.function.FunctionType;
 import cn.edu.tsinghua.iginx.engine.shared.function.MappingType;
 import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.AggregateTargets;
 import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.GroupByUtils;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.StringUtils;
@@ -69,6 +73,36 @@ public class Count implements SetMappingFunction {
 
     @Override
     public Row transform(RowStream rows, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(rows.getHeader(), params);
+        Object state = accumulator.init();
+        while (rows.hasNext()) {
+            accumulator.accumulate(state, rows.next());
+        }
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    @Override
+    public Row transform(RowBatch batch, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(batch.getHeader(), params);
+        Object state = accumulator.init();
+        accumulator.accumulate(state, batch, 0, batch.getSize());
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    private static Object[] buildValues(long[] counts) {
+        Object[] targetValues = new Object[counts.length];
+        for (int i = 0; i < counts.length; i++) {
+            targetValues[i] = counts[i];
+        }
+        return targetValues;
+    }
+
+    @Override
+    public Accumulator createAccumulator(Header header, Map<String, Value> params) {
+        return new CountAccumulator(resolveTargets(header, params));
+    }
+
+    private AggregateTargets resolveTargets(Header header, Map<String, Value> params) {
         if (params.size() == 0 || params.size() > 2) {
             throw new IllegalArgumentException("unexpected params for count.");
         }
@@ -86,8 +120,8 @@ public class Count implements SetMappingFunction {
         List<Integer> indices = new ArrayList<>();
         Map<String, Integer> groupNameIndexMap = new HashMap<>(); // 只有在存在 group by 的时候才奏效
         Map<Integer, Integer> groupOrderIndexMap = new HashMap<>();
-        for (int i = 0; i < rows.getHeader().getFieldSize(); i++) {
-            Field field = rows.getHeader().getField(i);
+        for (int i = 0; i < header.getFieldSize(); i++) {
+            Field field = header.getField(i);
             if (pattern.matcher(field.getFullName()).matches()) {
                 if (groupByLevels == null) {
                     String name = getIdentifier() + "(" + field.getName() + ")";
@@ -117,25 +151,66 @@ public class Count implements SetMappingFunction {
                 indices.add(i);
             }
         }
-        long[] counts = new long[targetFields.size()];
-        while (rows.hasNext()) {
-            Row row = rows.next();
+        return new AggregateTargets(
+                targetFields, indices, groupByLevels == null ? null : groupOrderIndexMap);
+    }
+
+    private static class CountAccumulator implements Accumulator {
+
+        private final AggregateTargets targets;
+
+        CountAccumulator(AggregateTargets targets) {
+            this.targets = targets;
+        }
+
+        @Override
+        public Header getHeader() {
+            return targets.getHeader();
+        }
+
+        @Override
+        public Object init() {
+            return new long[targets.getTargetSize()];
+        }
+
+        @Override
+        public void accumulate(Object state, Row row) {
+            long[] counts = (long[]) state;
             Object[] values = row.getValues();
-            for (int i = 0; i < indices.size(); i++) {
-                int index = indices.get(i);
-                if (values[index] != null) {
-                    int targetIndex = i;
-                    if (groupByLevels != null) {
-                        targetIndex = groupOrderIndexMap.get(index);
+            for (int i = 0; i < targets.getSourceSize(); i++) {
+                if (values[targets.getSourceIndex(i)] != null) {
+                    counts[targets.getTargetIndex(i)]++;
+                }
+            }
+        }
+
+        @Override
+        public void accumulate(Object state, RowBatch batch, int from, int to) {
+            long[] counts = (long[]) state;
+            for (int i = 0; i < targets.getSourceSize(); i++) {
+                ColumnVector column = batch.getColumn(targets.getSourceIndex(i));
+                long count = 0L;
+                for (int j = from; j < to; j++) {
+                    if (!column.isNull(j)) {
+                        count++;
                     }
-                    counts[targetIndex]++;
                 }
+                counts[targets.getTargetIndex(i)] += count;
             }
         }
-        Object[] targetValues = new Object[targetFields.size()];
-        for (int i = 0; i < counts.length; i++) {
-            targetValues[i] = counts[i];
+
+        @Override
+        public void merge(Object state, Object other) {
+            long[] counts = (long[]) state;
+            long[] otherCounts = (long[]) other;
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += otherCounts[i];
+            }
+        }
+
+        @Override
+        public Object[] finish(Object state) {
+            return buildValues((long[]) state);
         }
-        return new Row(new Header(targetFields), targetValues);
     }
 }
@@ -21,13 +21,17 @@ package cn.edu.tsinghua.iginx.engine.shared.function.system;
 import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_PATHS;
 
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.ColumnVector;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
 import cn.edu.tsinghua.iginx.engine.shared.function.FunctionType;
 import cn.edu.tsinghua.iginx.engine.shared.function.MappingType;
 import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.AggregateTargets;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.StringUtils;
 import java.util.ArrayList;
@@ -64,6 +68,28 @@ public class LastValue implements SetMappingFunction {
 
     @Override
     public Row transform(RowStream rows, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(rows.getHeader(), params);
+        Object state = accumulator.init();
+        while (rows.hasNext()) {
+            accumulator.accumulate(state, rows.next());
+        }
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    @Override
+    public Row transform(RowBatch batch, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(batch.getHeader(), params);
+        Object state = accumulator.init();
+        accumulator.accumulate(state, batch, 0, batch.getSize());
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    @Override
+    public Accumulator createAccumulator(Header header, Map<String, Value> params) {
+        return new LastValueAccumulator(resolveTargets(header, params));
+    }
+
+    private AggregateTargets resolveTargets(Header header, Map<String, Value> params) {
         if (params.size() != 1) {
             throw new IllegalArgumentException("unexpected params for last value.");
         }
@@ -72,7 +98,7 @@ public class LastValue implements SetMappingFunction {
             throw new IllegalArgumentException("unexpected param type for last value.");
         }
         String target = param.getBinaryVAsString();
-        List<Field> fields = rows.getHeader().getFields();
+        List<Field> fields = header.getFields();
         Pattern pattern = Pattern.compile(StringUtils.reformatPath(target) + ".*");
         List<Field> targetFields = new ArrayList<>();
         List<Integer> indices = new ArrayList<>();
@@ -85,17 +111,66 @@ public class LastValue implements SetMappingFunction {
                 indices.add(i);
             }
         }
-        Object[] targetValues = new Object[targetFields.size()];
-        while (rows.hasNext()) {
-            Row row = rows.next();
-            for (int i = 0; i < indices.size(); i++) {
-                Object value = row.getValue(indices.get(i));
-                if (value == null) {
-                    continue;
+        return new AggregateTargets(targetFields, indices);
+    }
+
+    private static class LastValueAccumulator implements Accumulator {
+
+        private final AggregateTargets targets;
+
+        LastValueAccumulator(AggregateTargets targets) {
+            this.targets = targets;
+        }
+
+        @Override
+        public Header getHeader() {
+            return targets.getHeader();
+        }
+
+        @Override
+        public Object init() {
+            return new Object[targets.getTargetSize()];
+        }
+
+        @Override
+        public void accumulate(Object state, Row row) {
+            Object[] targetValues = (Object[]) state;
+            Object[] values = row.getValues();
+            for (int i = 0; i < targets.getSourceSize(); i++) {
+                Object value = values[targets.getSourceIndex(i)];
+                if (value != null) {
+                    targetValues[i] = value;
                 }
-                targetValues[i] = value;
             }
         }
-        return new Row(new Header(targetFields), targetValues);
+
+        @Override
+        public void accumulate(Object state, RowBatch batch, int from, int to) {
+            Object[] targetValues = (Object[]) state;
+            for (int i = 0; i < targets.getSourceSize(); i++) {
+                ColumnVector column = batch.getColumn(targets.getSourceIndex(i));
+                int index = column.getNulls().previousClearBit(to - 1);
+                if (index >= from) {
+                    targetValues[i] = column.getObject(index);
+                }
+            }
+        }
+
+        @Override
+        public void merge(Object state, Object other) {
+            Object[] targetValues = (Object[]) state;
+            Object[] otherValues = (Object[]) other;
+            for (int i = 0; i < targetValues.length; i++) {
+                Object value = otherValues[i];
+                if (value != null) {
+                    targetValues[i] = value;
+                }
+            }
+        }
+
+        @Override
+        public Object[] finish(Object state) {
+            return (Object[]) state;
+        }
     }
 }
@@ -21,13 +21,17 @@ package cn.edu.tsinghua.iginx.engine.shared.function.system;
 import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_PATHS;
 
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.ColumnVector;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
 import cn.edu.tsinghua.iginx.engine.shared.function.FunctionType;
 import cn.edu.tsinghua.iginx.engine.shared.function.MappingType;
 import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.AggregateTargets;
 import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.ValueUtils;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.StringUtils;
@@ -65,6 +69,89 @@ public class Min implements SetMappingFunction {
 
     @Override
     public Row transform(RowStream rows, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(rows.getHeader(), params);
+        Object state = accumulator.init();
+        while (rows.hasNext()) {
+            accumulator.accumulate(state, rows.next());
+        }
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    @Override
+    public Row transform(RowBatch batch, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(batch.getHeader(), params);
+        Object state = accumulator.init();
+        accumulator.accumulate(state, batch, 0, batch.getSize());
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    private static Object minOf(ColumnVector column, int from, int to) {
+        int first = column.getNulls().nextClearBit(from);
+        if (first >= to) {
+            return null;
+        }
+        switch (column.getType()) {
+            case INTEGER:
+                {
+                    int target = column.getInt(first);
+                    for (int j = first + 1; j < to; j++) {
+                        if (!column.isNull(j) && target > column.getInt(j)) {
+                            target = column.getInt(j);
+                        }
+                    }
+                    return target;
+                }
+            case LONG:
+                {
+                    long target = column.getLong(first);
+                    for (int j = first + 1; j < to; j++) {
+                        if (!column.isNull(j) && target > column.getLong(j)) {
+                            target = column.getLong(j);
+                        }
+                    }
+                    return target;
+                }
+            case FLOAT:
+                {
+                    float target = column.getFloat(first);
+                    for (int j = first + 1; j < to; j++) {
+                        if (!column.isNull(j) && Float.compare(target, column.getFloat(j)) > 0) {
+                            target = column.getFloat(j);
+                        }
+                    }
+                    return target;
+                }
+            case DOUBLE:
+                {
+                    double target = column.getDouble(first);
+                    for (int j = first + 1; j < to; j++) {
+                        if (!column.isNull(j) && Double.compare(target, column.getDouble(j)) > 0) {
+                            target = column.getDouble(j);
+                        }
+                    }
+                    return target;
+                }
+            default:
+                {
+                    Object target = column.getObject(first);
+                    for (int j = first + 1; j < to; j++) {
+                        Object value = column.getObject(j);
+                        if (value != null
+                                && ValueUtils.compare(target, value, column.getType()) > 0) {
+                            target = value;
+                        }
+                    }
+                    return target;
+                }
+        }
+    }
+
+    @Override
+    public Accumulator createAccumulator(Header header, Map<String, Value> params) {
+        return new MinAccumulator(resolveTargets(header, params));
+    }
+
+    private AggregateTargets resolveTargets(Header header, Map<String, Value> params) {
         if (params.size() != 1) {
             throw new IllegalArgumentException("unexpected params for max.");
         }
@@ -76,8 +163,8 @@ public class Min implements SetMappingFunction {
         Pattern pattern = Pattern.compile(StringUtils.reformatPath(target) + ".*");
         List<Field> targetFields = new ArrayList<>();
         List<Integer> indices = new ArrayList<>();
-        for (int i = 0; i < rows.getHeader().getFieldSize(); i++) {
-            Field field = rows.getHeader().getField(i);
+        for (int i = 0; i < header.getFieldSize(); i++) {
+            Field field = header.getField(i);
             if (pattern.matcher(field.getFullName()).matches()) {
                 String name = getIdentifier() + "(" + field.getName() + ")";
                 String fullName = getIdentifier() + "(" + field.getFullName() + ")";
@@ -85,24 +172,80 @@ public class Min implements SetMappingFunction {
                 indices.add(i);
             }
         }
-        Object[] targetValues = new Object[targetFields.size()];
-        while (rows.hasNext()) {
-            Row row = rows.next();
+        return new AggregateTargets(targetFields, indices);
+    }
+
+    private static class MinAccumulator implements Accumulator {
+
+        private final AggregateTargets targets;
+
+        MinAccumulator(AggregateTargets targets) {
+            this.targets = targets;
+        }
+
+        @Override
+        public Header getHeader() {
+            return targets.getHeader();
+        }
+
+        @Override
+        public Object init() {
+            return new Object[targets.getTargetSize()];
+        }
+
+        @Override
+        public void accumulate(Object state, Row row) {
+            Object[] targetValues = (Object[]) state;
             Object[] values = row.getValues();
-            for (int i = 0; i < indices.size(); i++) {
-                Object value = values[indices.get(i)];
+            for (int i = 0; i < targets.getSourceSize(); i++) {
+                Object value = values[targets.getSourceIndex(i)];
                 if (targetValues[i] == null) {
                     targetValues[i] = value;
-                } else {
-                    if (value != null
-                            && ValueUtils.compare(
-                                            targetValues[i], value, targetFields.get(i).getType())
-                                    > 0) {
-                        targetValues[i] = value;
-                    }
+                } else if (value != null
+                        && ValueUtils.compare(
+                                        targetValues[i], value, targets.getTargetField(i).getType())
+                                > 0) {
+                    targetValues[i] = value;
+                }
+            }
+        }
+
+        @Override
+        public void accumulate(Object state, RowBatch batch, int from, int to) {
+            Object[] targetValues = (Object[]) state;
+            for (int i = 0; i < targets.getSourceSize(); i++) {
+                Object value = minOf(batch.getColumn(targets.getSourceIndex(i)), from, to);
+                if (targetValues[i] == null) {
+                    targetValues[i] = value;
+                } else if (value != null
+                        && ValueUtils.compare(
+                                        targetValues[i], value, targets.getTargetField(i).getType())
+                                > 0) {
+                    targetValues[i] = value;
                 }
             }
         }
-        return new Row(new Header(targetFields), targetValues);
+
+        @Override
+        public void merge(Object state, Object other) {
+            Object[] targetValues = (Object[]) state;
+            Object[] otherValues = (Object[]) other;
+            for (int i = 0; i < targetValues.length; i++) {
+                Object value = otherValues[i];
+                if (targetValues[i] == null) {
+                    targetValues[i] = value;
+                } else if (value != null
+                        && ValueUtils.compare(
+                                        targetValues[i], value, targets.getTargetField(i).getType())
+                                > 0) {
+                    targetValues[i] = value;
+                }
+            }
+        }
+
+        @Override
+        public Object[] finish(Object state) {
+            return (Object[]) state;
+        }
     }
 }
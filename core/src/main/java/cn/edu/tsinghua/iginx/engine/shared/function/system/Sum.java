@@ -22,13 +22,17 @@ import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_LEVELS;
 import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_PATHS;
 
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.ColumnVector;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowBatch;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
 import cn.edu.tsinghua.iginx.engine.shared.function.FunctionType;
 import cn.edu.tsinghua.iginx.engine.shared.function.MappingType;
 import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.AggregateTargets;
 import cn.edu.tsinghua.iginx.engine.shared.function.system.utils.GroupByUtils;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.DataTypeUtils;
@@ -65,6 +69,28 @@ public class Sum implements SetMappingFunction {
 
     @Override
     public Row transform(RowStream rows, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(rows.getHeader(), params);
+        Object state = accumulator.init();
+        while (rows.hasNext()) {
+            accumulator.accumulate(state, rows.next());
+        }
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    @Override
+    public Row transform(RowBatch batch, Map<String, Value> params) throws Exception {
+        Accumulator accumulator = createAccumulator(batch.getHeader(), params);
+        Object state = accumulator.init();
+        accumulator.accumulate(state, batch, 0, batch.getSize());
+        return new Row(accumulator.getHeader(), accumulator.finish(state));
+    }
+
+    @Override
+    public Accumulator createAccumulator(Header header, Map<String, Value> params) {
+        return new SumAccumulator(resolveTargets(header, params), header);
+    }
+
+    private AggregateTargets resolveTargets(Header header, Map<String, Value> params) {
         if (params.size() == 0 || params.size() > 2) {
             throw new IllegalArgumentException("unexpected params for sum.");
         }
@@ -77,7 +103,7 @@ public class Sum implements SetMappingFunction {
             groupByLevels = GroupByUtils.parseLevelsFromValue(params.get(PARAM_LEVELS));
         }
         String target = param.getBinaryVAsString();
-        List<Field> fields = rows.getHeader().getFields();
+        List<Field> fields = header.getFields();
 
         Pattern pattern = Pattern.compile(StringUtils.reformatPath(target) + ".*");
         List<Field> targetFields = new ArrayList<>();
@@ -123,51 +149,143 @@ public class Sum implements SetMappingFunction {
                 throw new IllegalArgumentException("only number can calculate sum");
             }
         }
+        return new AggregateTargets(
+                targetFields, indices, groupByLevels == null ? null : groupOrderIndexMap);
+    }
+
+    private static class SumState {
+
+        private final long[] longSums;
+
+        private final double[] doubleSums;
+
+        SumState(int size) {
+            this.longSums = new long[size];
+            this.doubleSums = new double[size];
+        }
+    }
+
+    private static class SumAccumulator implements Accumulator {
+
+        private final AggregateTargets targets;
+
+        private final DataType[] types;
 
-        Object[] targetValues = new Object[targetFields.size()];
-        for (int i = 0; i < targetFields.size(); i++) {
-            Field targetField = targetFields.get(i);
-            if (targetField.getType() == DataType.LONG) {
-                targetValues[i] = 0L;
-            } else {
-                targetValues[i] = 0.0D;
+        SumAccumulator(AggregateTargets targets, Header header) {
+            this.targets = targets;
+            this.types = new DataType[targets.getSourceSize()];
+            for (int i = 0; i < types.length; i++) {
+                types[i] = header.getField(targets.getSourceIndex(i)).getType();
             }
         }
-        while (rows.hasNext()) {
-            Row row = rows.next();
-            for (int i = 0; i < indices.size(); i++) {
-                int index = indices.get(i);
-                Object value = row.getValue(index);
+
+        @Override
+        public Header getHeader() {
+            return targets.getHeader();
+        }
+
+        @Override
+        public Object init() {
+            return new SumState(targets.getTargetSize());
+        }
+
+        @Override
+        public void accumulate(Object state, Row row) {
+            SumState sumState = (SumState) state;
+            for (int i = 0; i < types.length; i++) {
+                Object value = row.getValue(targets.getSourceIndex(i));
                 if (value == null) {
                     continue;
                 }
-                int targetIndex = i;
-                if (groupByLevels != null) {
-                    targetIndex = groupOrderIndexMap.get(index);
+                int targetIndex = targets.getTargetIndex(i);
+                switch (types[i]) {
+                    case INTEGER:
+                        sumState.longSums[targetIndex] += (int) value;
+                        break;
+                    case LONG:
+                        sumState.longSums[targetIndex] += (long) value;
+                        break;
+                    case FLOAT:
+                        sumState.doubleSums[targetIndex] += (float) value;
+                        break;
+                    case DOUBLE:
+                        sumState.doubleSums[targetIndex] += (double) value;
+                        break;
+                    default:
+                        throw new IllegalStateException(
+                                "Unexpected field type: " + types[i].toString());
                 }
-                switch (fields.get(index).getType()) {
+            }
+        }
+
+        @Override
+        public void accumulate(Object state, RowBatch batch, int from, int to) {
+            SumState sumState = (SumState) state;
+            for (int i = 0; i < types.length; i++) {
+                ColumnVector column = batch.getColumn(targets.getSourceIndex(i));
+                long longSum = 0L;
+                double doubleSum = 0.0D;
+                switch (types[i]) {
                     case INTEGER:
-                        targetValues[targetIndex] =
-                                ((long) targetValues[targetIndex]) + (int) value;
+                        for (int j = from; j < to; j++) {
+                            if (!column.isNull(j)) {
+                                longSum += column.getInt(j);
+                            }
+                        }
                         break;
                     case LONG:
-                        targetValues[targetIndex] =
-                                ((long) targetValues[targetIndex]) + (long) value;
+                        for (int j = from; j < to; j++) {
+                            if (!column.isNull(j)) {
+                                longSum += column.getLong(j);
+                            }
+                        }
                         break;
                     case FLOAT:
-                        targetValues[targetIndex] =
-                                ((double) targetValues[targetIndex]) + (float) value;
+                        for (int j = from; j < to; j++) {
+                            if (!column.isNull(j)) {
+                                doubleSum += column.getFloat(j);
+                            }
+                        }
                         break;
                     case DOUBLE:
-                        targetValues[targetIndex] =
-                                ((double) targetValues[targetIndex]) + (double) value;
+                        for (int j = from; j < to; j++) {
+                            if (!column.isNull(j)) {
+                                doubleSum += column.getDouble(j);
+                            }
+                        }
                         break;
                     default:
                         throw new IllegalStateException(
-                                "Unexpected field type: " + fields.get(index).getType().toString());
+                                "Unexpected field type: " + types[i].toString());
+                }
+                int targetIndex = targets.getTargetIndex(i);
+                sumState.longSums[targetIndex] += longSum;
+                sumState.doubleSums[targetIndex] += doubleSum;
+            }
+        }
+
+        @Override
+        public void merge(Object state, Object other) {
+            SumState sumState = (SumState) state;
+            SumState otherState = (SumState) other;
+            for (int i = 0; i < sumState.longSums.length; i++) {
+                sumState.longSums[i] += otherState.longSums[i];
+                sumState.doubleSums[i] += otherState.doubleSums[i];
+            }
+        }
+
+        @Override
+        public Object[] finish(Object state) {
+            SumState sumState = (SumState) state;
+            Object[] targetValues = new Object[targets.getTargetSize()];
+            for (int i = 0; i < targetValues.length; i++) {
+                if (targets.getTargetField(i).getType() == DataType.LONG) {
+                    targetValues[i] = sumState.longSums[i];
+                } else {
+                    targetValues[i] = sumState.doubleSums[i];
                 }
             }
+            return targetValues;
         }
-        return new Row(new Header(targetFields), targetValues);
     }
 }
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.shared.function.system.utils;
+
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import java.util.List;
+import java.util.Map;
+
+/** 聚合函数的输入列与输出列之间的映射关系，由函数根据输入的 header 解析得到 */
+public class AggregateTargets {
+
+    private final Header header;
+
+    private final int[] sourceIndices;
+
+    private final int[] targetIndices;
+
+    public AggregateTargets(List<Field> targetFields, List<Integer> indices) {
+        this(targetFields, indices, null);
+    }
+
+    public AggregateTargets(
+            List<Field> targetFields,
+            List<Integer> indices,
+            Map<Integer, Integer> groupOrderIndexMap) {
+        this.header = new Header(targetFields);
+        this.sourceIndices = new int[indices.size()];
+        this.targetIndices = new int[indices.size()];
+        for (int i = 0; i < indices.size(); i++) {
+            int index = indices.get(i);
+            sourceIndices[i] = index;
+            targetIndices[i] = groupOrderIndexMap == null ? i : groupOrderIndexMap.get(index);
+        }
+    }
+
+    public Header getHeader() {
+        return header;
+    }
+
+    public List<Field> getTargetFields() {
+        return header.getFields();
+    }
+
+    public Field getTargetField(int targetIndex) {
+        return header.getField(targetIndex);
+    }
+
+    public int getTargetSize() {
+        return header.getFieldSize();
+    }
+
+    public int getSourceSize() {
+        return sourceIndices.length;
+    }
+
+    public int getSourceIndex(int i) {
+        return sourceIndices[i];
+    }
+
+    public int getTargetIndex(int i) {
+        return targetIndices[i];
+    }
+}
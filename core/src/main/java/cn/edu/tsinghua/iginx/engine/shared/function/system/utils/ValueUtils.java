@@ -85,7 +85,7 @@ public class ValueUtils {
                                 + " can't be compared");
             }
         }
-        switch (dataType1) {
+        switch (v1.getDataType()) {
             case INTEGER:
                 return Integer.compare(v1.getIntV(), v2.getIntV());
             case LONG:
@@ -0,0 +1,56 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.shared.operator;
+
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import cn.edu.tsinghua.iginx.engine.shared.source.Source;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按 key 对多个有序输入做多路归并，由物理优化器将多个分片之上逐对按 key 连接或合并的算子树折叠而成。 combineSameKey 为 true 时等价于按 key 的 Join
+ * 链，相同 key 的行合并为一行；否则等价于 Union 链。
+ */
+public class MultiwayMerge extends AbstractMultipleOperator {
+
+    private final boolean combineSameKey;
+
+    public MultiwayMerge(List<Source> sources, boolean combineSameKey) {
+        super(OperatorType.MultiwayMerge, sources);
+        this.combineSameKey = combineSameKey;
+    }
+
+    public boolean isCombineSameKey() {
+        return combineSameKey;
+    }
+
+    @Override
+    public Operator copy() {
+        List<Source> sources = new ArrayList<>();
+        for (Source source : getSources()) {
+            sources.add(source.copy());
+        }
+        return new MultiwayMerge(sources, combineSameKey);
+    }
+
+    @Override
+    public String getInfo() {
+        return "CombineSameKey: " + combineSameKey + ", SourceSize: " + getSources().size();
+    }
+}
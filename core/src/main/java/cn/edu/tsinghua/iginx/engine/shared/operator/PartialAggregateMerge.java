@@ -0,0 +1,60 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.shared.operator;
+
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import cn.edu.tsinghua.iginx.engine.shared.source.Source;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 合并各个分片上计算得到的部分聚合结果，由物理优化器将跨越多个分片的全量聚合拆分而成。每个输入最多包含一行，avg 的输入为各分片上的 sum 与
+ * count，其余函数的输入为各分片上的同名聚合，输入按分片的起始时间排列。
+ */
+public class PartialAggregateMerge extends AbstractMultipleOperator {
+
+    private final FunctionCall functionCall;
+
+    public PartialAggregateMerge(List<Source> sources, FunctionCall functionCall) {
+        super(OperatorType.PartialAggregateMerge, sources);
+        if (functionCall == null || functionCall.getFunction() == null) {
+            throw new IllegalArgumentException("function shouldn't be null");
+        }
+        this.functionCall = functionCall;
+    }
+
+    public FunctionCall getFunctionCall() {
+        return functionCall;
+    }
+
+    @Override
+    public Operator copy() {
+        List<Source> sources = new ArrayList<>();
+        for (Source source : getSources()) {
+            sources.add(source.copy());
+        }
+        return new PartialAggregateMerge(sources, functionCall.copy());
+    }
+
+    @Override
+    public String getInfo() {
+        return "Func: " + functionCall.toString() + ", SourceSize: " + getSources().size();
+    }
+}
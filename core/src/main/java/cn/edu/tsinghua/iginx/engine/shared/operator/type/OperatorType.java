@@ -25,6 +25,8 @@ public enum OperatorType {
 
     // MultipleOperator[10,19]
     CombineNonQuery(10),
+    MultiwayMerge,
+    PartialAggregateMerge,
 
     // isGlobalOperator[20,29]
     ShowTimeSeries(20),
@@ -87,7 +89,7 @@ public enum OperatorType {
     }
 
     public static boolean isMultipleOperator(OperatorType op) {
-        return op == CombineNonQuery;
+        return op == CombineNonQuery || op == MultiwayMerge || op == PartialAggregateMerge;
     }
 
     public static boolean isGlobalOperator(OperatorType op) {
@@ -935,6 +935,11 @@ public class DefaultMetaManager implements IMetaManager {
         return cache.hasFragment();
     }
 
+    @Override
+    public long getMetaVersion() {
+        return cache.getVersion();
+    }
+
     private void checkInitialFragmentCompletion(List<FragmentMeta> fragments) {
         Map<Long, List<FragmentMeta>> fragmentsByStartTime = new HashMap<>();
         for (FragmentMeta fragment : fragments) {
@@ -120,6 +120,9 @@ public interface IMetaManager {
     /** 是否已经创建过分片 */
     boolean hasFragment();
 
+    /** 元数据的版本号，分片、存储单元、存储引擎、schemaMapping 或 transform task 变化后递增 */
+    long getMetaVersion();
+
     /** 创建初始分片和初始存储单元 */
     boolean createInitialFragmentsAndStorageUnits(
             List<StorageUnitMeta> storageUnits, List<FragmentMeta> initialFragments);
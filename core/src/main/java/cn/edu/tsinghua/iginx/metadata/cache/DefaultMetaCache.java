@@ -28,6 +28,7 @@ import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
@@ -92,6 +93,9 @@ public class DefaultMetaCache implements IMetaCache {
     // transform task 的缓存
     private final Map<String, TransformTaskMeta> transformTaskMetaMap;
 
+    // 分片、存储单元、存储引擎、schemaMapping 与 transform task 的版本号，每次变化后递增
+    private final AtomicLong version = new AtomicLong();
+
     private DefaultMetaCache() {
         if (enableFragmentCacheControl) {
             long sizeOfFragment = FragmentMeta.sizeOf();
@@ -242,6 +246,7 @@ public class DefaultMetaCache implements IMetaCache {
             }
         }
         fragmentLock.writeLock().unlock();
+        version.incrementAndGet();
     }
 
     private void kickOffHistoryFragment() {
@@ -284,6 +289,7 @@ public class DefaultMetaCache implements IMetaCache {
         }
 
         fragmentLock.writeLock().unlock();
+        version.incrementAndGet();
     }
 
     private void updateSortedFragmentsList(
@@ -319,6 +325,7 @@ public class DefaultMetaCache implements IMetaCache {
         List<FragmentMeta> fragmentMetaList = fragmentMetaListMap.get(fragmentMeta.getTsInterval());
         fragmentMetaList.set(fragmentMetaList.size() - 1, fragmentMeta);
         fragmentLock.writeLock().unlock();
+        version.incrementAndGet();
     }
 
     @Override
@@ -340,6 +347,7 @@ public class DefaultMetaCache implements IMetaCache {
         } finally {
             fragmentLock.writeLock().unlock();
         }
+        version.incrementAndGet();
     }
 
     @Override
@@ -364,6 +372,7 @@ public class DefaultMetaCache implements IMetaCache {
         } finally {
             fragmentLock.writeLock().unlock();
         }
+        version.incrementAndGet();
     }
 
     @Override
@@ -543,6 +552,11 @@ public class DefaultMetaCache implements IMetaCache {
         return resultList;
     }
 
+    @Override
+    public long getVersion() {
+        return version.get();
+    }
+
     @Override
     public boolean hasFragment() {
         return !sortedFragmentMetaLists.isEmpty()
@@ -562,6 +576,7 @@ public class DefaultMetaCache implements IMetaCache {
             getStorageEngine(storageUnit.getStorageEngineId()).addStorageUnit(storageUnit);
         }
         storageUnitLock.writeLock().unlock();
+        version.incrementAndGet();
     }
 
     @Override
@@ -610,6 +625,7 @@ public class DefaultMetaCache implements IMetaCache {
         storageUnitLock.writeLock().lock();
         storageUnitMetaMap.put(storageUnitMeta.getId(), storageUnitMeta);
         storageUnitLock.writeLock().unlock();
+        version.incrementAndGet();
     }
 
     @Override
@@ -617,6 +633,7 @@ public class DefaultMetaCache implements IMetaCache {
         storageUnitLock.writeLock().lock();
         storageUnitMetaMap.put(storageUnitMeta.getId(), storageUnitMeta);
         storageUnitLock.writeLock().unlock();
+        version.incrementAndGet();
     }
 
     @Override
@@ -650,6 +667,7 @@ public class DefaultMetaCache implements IMetaCache {
         }
         fragmentLock.writeLock().unlock();
         storageUnitLock.writeLock().unlock();
+        version.incrementAndGet();
     }
 
     @Override
@@ -681,6 +699,7 @@ public class DefaultMetaCache implements IMetaCache {
 
         fragmentLock.writeLock().unlock();
         storageUnitLock.writeLock().unlock();
+        version.incrementAndGet();
         return true;
     }
 
@@ -723,6 +742,7 @@ public class DefaultMetaCache implements IMetaCache {
     @Override
     public void removeSchemaMapping(String schema) {
         schemaMappings.remove(schema);
+        version.incrementAndGet();
     }
 
     @Override
@@ -731,6 +751,7 @@ public class DefaultMetaCache implements IMetaCache {
         if (schemaMapping != null) {
             schemaMapping.remove(key);
         }
+        version.incrementAndGet();
     }
 
     @Override
@@ -738,6 +759,7 @@ public class DefaultMetaCache implements IMetaCache {
         Map<String, Integer> mapping =
                 schemaMappings.computeIfAbsent(schema, e -> new ConcurrentHashMap<>());
         mapping.putAll(schemaMapping);
+        version.incrementAndGet();
     }
 
     @Override
@@ -745,6 +767,7 @@ public class DefaultMetaCache implements IMetaCache {
         Map<String, Integer> mapping =
                 schemaMappings.computeIfAbsent(schema, e -> new ConcurrentHashMap<>());
         mapping.put(key, value);
+        version.incrementAndGet();
     }
 
     @Override
@@ -909,11 +932,13 @@ public class DefaultMetaCache implements IMetaCache {
     @Override
     public void addOrUpdateTransformTask(TransformTaskMeta transformTask) {
         transformTaskMetaMap.put(transformTask.getName(), transformTask);
+        version.incrementAndGet();
     }
 
     @Override
     public void dropTransformTask(String name) {
         transformTaskMetaMap.remove(name);
+        version.incrementAndGet();
     }
 
     @Override
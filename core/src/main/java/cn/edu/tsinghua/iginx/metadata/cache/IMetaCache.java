@@ -69,6 +69,9 @@ public interface IMetaCache {
 
     boolean hasFragment();
 
+    /** 分片、存储单元、存储引擎、schemaMapping 或 transform task 每次变化后递增的版本号 */
+    long getVersion();
+
     long getFragmentMinTimestamp();
 
     // 数据单元相关的缓存读写接口
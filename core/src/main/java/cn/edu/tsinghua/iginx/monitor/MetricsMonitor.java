@@ -0,0 +1,44 @@
+package cn.edu.tsinghua.iginx.monitor;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** 各组件注册的计数器，由 MonitorManager 在每个统计周期输出 */
+public class MetricsMonitor implements IMonitor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MetricsMonitor.class);
+
+    private final Map<String, LongSupplier> metrics = new ConcurrentHashMap<>(); // 计数器名称->当前值
+    private static final MetricsMonitor instance = new MetricsMonitor();
+
+    public static MetricsMonitor getInstance() {
+        return instance;
+    }
+
+    /** 注册一个计数器，同名的计数器以后注册的为准 */
+    public void register(String name, LongSupplier metric) {
+        metrics.put(name, metric);
+    }
+
+    /** 按名称排序的所有计数器的当前值 */
+    public Map<String, Long> getMetrics() {
+        Map<String, Long> values = new TreeMap<>();
+        metrics.forEach((name, metric) -> values.put(name, metric.getAsLong()));
+        return values;
+    }
+
+    public void report() {
+        if (!metrics.isEmpty()) {
+            logger.info("metrics: {}", getMetrics());
+        }
+    }
+
+    @Override
+    public void clear() {
+        // 计数器为累计值，不随统计周期清空
+    }
+}
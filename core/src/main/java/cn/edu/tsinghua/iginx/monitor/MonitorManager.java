@@ -50,6 +50,7 @@ public class MonitorManager implements Runnable {
                 Map<FragmentMeta, Long> readHotspotMap =
                         HotSpotMonitor.getInstance().getReadHotspotMap();
                 metaManager.updateFragmentHeat(writeHotspotMap, readHotspotMap);
+                MetricsMonitor.getInstance().report();
             } catch (Exception e) {
                 logger.error("monitor manager error ", e);
             }
@@ -0,0 +1,325 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.resource;
+
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.shared.RequestContext;
+import cn.edu.tsinghua.iginx.exceptions.StatusCode;
+import cn.edu.tsinghua.iginx.sql.statement.Statement;
+import cn.edu.tsinghua.iginx.sql.statement.StatementType;
+import cn.edu.tsinghua.iginx.thrift.Status;
+import cn.edu.tsinghua.iginx.utils.RpcUtils;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 请求准入控制：同时执行的请求数达到上限、系统资源紧张或查询内存预留达到全局上限时，请求进入准入队列等待，而不是直接被拒绝。队列按优先级分层，同一层内各会话轮流放行，
+ * 低优先级的请求随等待时间提升次序，避免被持续到达的高优先级请求饿死
+ */
+public class AdmissionController {
+
+    private static final Config config = ConfigDescriptor.getInstance().getConfig();
+
+    // 资源紧张时排队的请求重新检查系统资源的间隔，单位为毫秒
+    private static final long RECHECK_INTERVAL = 100;
+
+    // 等待时间每多出该值，请求的次序提升一个优先级，单位为毫秒
+    private static final long AGING_TIME = 1000;
+
+    public enum Priority {
+        // 写入、删除与系统语句
+        HIGH,
+        // 一般查询
+        NORMAL,
+        // 流式读取大量结果的查询
+        LOW
+    }
+
+    private final int maxConcurrency;
+
+    private final int maxQueueSize;
+
+    private final long queueTimeout;
+
+    private final BooleanSupplier resourceAvailable;
+
+    private final Object lock = new Object();
+
+    // 每个优先级一层，层内按会话排队，会话的顺序即轮流放行的顺序
+    private final List<LinkedHashMap<Long, Deque<Waiter>>> queues;
+
+    private int running = 0;
+
+    private int queued = 0;
+
+    private final AtomicLong admittedCount = new AtomicLong();
+
+    private final AtomicLong queuedCount = new AtomicLong();
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private final AtomicLong waitTime = new AtomicLong();
+
+    AdmissionController(
+            int maxConcurrency,
+            int maxQueueSize,
+            long queueTimeout,
+            BooleanSupplier resourceAvailable) {
+        this.maxConcurrency = maxConcurrency;
+        this.maxQueueSize = maxQueueSize;
+        this.queueTimeout = queueTimeout;
+        this.resourceAvailable = resourceAvailable;
+        this.queues = new ArrayList<>();
+        for (int i = 0; i < Priority.values().length; i++) {
+            queues.add(new LinkedHashMap<>());
+        }
+    }
+
+    public static AdmissionController getInstance() {
+        return AdmissionControllerHolder.INSTANCE;
+    }
+
+    /** 根据请求的语句类型估计其开销，决定排队时的优先级 */
+    public static Priority getPriority(RequestContext ctx) {
+        Statement statement = ctx.getStatement();
+        if (statement != null) {
+            StatementType type = statement.getType();
+            if (type == StatementType.SELECT
+                    || type == StatementType.INSERT_FROM_SELECT
+                    || type == StatementType.COUNT_POINTS) {
+                return ctx.isUseStream() ? Priority.LOW : Priority.NORMAL;
+            }
+            return Priority.HIGH;
+        }
+        if (ctx.isFromSQL() && ctx.getSql() != null) {
+            String sql = ctx.getSql().trim();
+            int end = 0;
+            while (end < sql.length() && Character.isLetter(sql.charAt(end))) {
+                end++;
+            }
+            String keyword = sql.substring(0, end);
+            if (keyword.equalsIgnoreCase("select")
+                    || keyword.equalsIgnoreCase("explain")
+                    || keyword.equalsIgnoreCase("count")) {
+                return ctx.isUseStream() ? Priority.LOW : Priority.NORMAL;
+            }
+        }
+        return Priority.HIGH;
+    }
+
+    /** 等待请求被放行，返回 SUCCESS；队列已满或等待超时时返回 SERVICE_UNAVAILABLE，放行的请求执行完成后需调用 release */
+    public Status acquire(RequestContext ctx) throws InterruptedException {
+        synchronized (lock) {
+            if (queued == 0 && canAdmit()) {
+                running++;
+                admittedCount.incrementAndGet();
+                return RpcUtils.SUCCESS;
+            }
+            if (queued >= maxQueueSize) {
+                rejectedCount.incrementAndGet();
+                return RpcUtils.status(
+                        StatusCode.SERVICE_UNAVAILABLE,
+                        "admission queue is full, " + queued + " requests are waiting");
+            }
+            Waiter waiter = new Waiter(ctx.getSessionId(), getPriority(ctx));
+            enqueue(waiter);
+            queuedCount.incrementAndGet();
+            try {
+                long deadline = waiter.enqueueTime + queueTimeout;
+                while (!waiter.admitted) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        remove(waiter);
+                        timeoutCount.incrementAndGet();
+                        return RpcUtils.status(
+                                StatusCode.SERVICE_UNAVAILABLE,
+                                "request waited in admission queue for more than "
+                                        + queueTimeout
+                                        + "ms");
+                    }
+                    lock.wait(Math.min(remaining, RECHECK_INTERVAL));
+                    // 系统资源恢复时没有请求结束来触发放行，由等待中的请求定期检查
+                    dispatch();
+                }
+            } catch (InterruptedException e) {
+                if (waiter.admitted) {
+                    running--;
+                    dispatch();
+                } else {
+                    remove(waiter);
+                }
+                throw e;
+            }
+            waitTime.addAndGet(System.currentTimeMillis() - waiter.enqueueTime);
+            admittedCount.incrementAndGet();
+            return RpcUtils.SUCCESS;
+        }
+    }
+
+    public void release() {
+        synchronized (lock) {
+            running--;
+            dispatch();
+        }
+    }
+
+    private boolean canAdmit() {
+        return (maxConcurrency <= 0 || running < maxConcurrency)
+                && (running == 0 || resourceAvailable.getAsBoolean());
+    }
+
+    private void enqueue(Waiter waiter) {
+        queues.get(waiter.priority.ordinal())
+                .computeIfAbsent(waiter.sessionId, k -> new ArrayDeque<>())
+                .addLast(waiter);
+        queued++;
+    }
+
+    private void remove(Waiter waiter) {
+        Map<Long, Deque<Waiter>> queue = queues.get(waiter.priority.ordinal());
+        Deque<Waiter> waiters = queue.get(waiter.sessionId);
+        if (waiters != null && waiters.remove(waiter)) {
+            queued--;
+            if (waiters.isEmpty()) {
+                queue.remove(waiter.sessionId);
+            }
+        }
+    }
+
+    /** 在资源允许的范围内放行排队的请求，需持有 lock */
+    private void dispatch() {
+        boolean admitted = false;
+        while (queued > 0 && canAdmit()) {
+            Waiter waiter = poll();
+            waiter.admitted = true;
+            running++;
+            admitted = true;
+        }
+        if (admitted) {
+            lock.notifyAll();
+        }
+    }
+
+    /** 选出等待时间扣除优先级折算后最长的一层，从该层的下一个会话中取出最早的请求 */
+    private Waiter poll() {
+        long now = System.currentTimeMillis();
+        LinkedHashMap<Long, Deque<Waiter>> chosen = null;
+        long chosenScore = Long.MIN_VALUE;
+        for (int i = 0; i < queues.size(); i++) {
+            LinkedHashMap<Long, Deque<Waiter>> queue = queues.get(i);
+            if (queue.isEmpty()) {
+                continue;
+            }
+            long oldest = Long.MAX_VALUE;
+            for (Deque<Waiter> waiters : queue.values()) {
+                oldest = Math.min(oldest, waiters.peekFirst().enqueueTime);
+            }
+            long score = now - oldest - i * AGING_TIME;
+            if (chosen == null || score > chosenScore) {
+                chosen = queue;
+                chosenScore = score;
+            }
+        }
+        Iterator<Map.Entry<Long, Deque<Waiter>>> iterator = chosen.entrySet().iterator();
+        Map.Entry<Long, Deque<Waiter>> entry = iterator.next();
+        iterator.remove();
+        Waiter waiter = entry.getValue().pollFirst();
+        if (!entry.getValue().isEmpty()) {
+            // 该会话还有请求时移到队尾，使各会话轮流放行
+            chosen.put(entry.getKey(), entry.getValue());
+        }
+        queued--;
+        return waiter;
+    }
+
+    public int getRunningCount() {
+        synchronized (lock) {
+            return running;
+        }
+    }
+
+    public int getQueuedCount() {
+        synchronized (lock) {
+            return queued;
+        }
+    }
+
+    public long getAdmittedCount() {
+        return admittedCount.get();
+    }
+
+    /** 曾经进入准入队列等待的请求数 */
+    public long getTotalQueuedCount() {
+        return queuedCount.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /** 排队后被放行的请求的平均等待时间，单位为毫秒 */
+    public double getAverageWaitTime() {
+        long count = queuedCount.get() - timeoutCount.get();
+        return count <= 0 ? 0 : (double) waitTime.get() / count;
+    }
+
+    private static class Waiter {
+
+        private final long sessionId;
+
+        private final Priority priority;
+
+        private final long enqueueTime;
+
+        private boolean admitted = false;
+
+        Waiter(long sessionId, Priority priority) {
+            this.sessionId = sessionId;
+            this.priority = priority;
+            this.enqueueTime = System.currentTimeMillis();
+        }
+    }
+
+    private static class AdmissionControllerHolder {
+
+        private static final AdmissionController INSTANCE =
+                new AdmissionController(
+                        config.getMaxConcurrentQueries(),
+                        config.getAdmissionQueueSize(),
+                        config.getAdmissionQueueTimeout(),
+                        () ->
+                                (!config.isEnableMemoryControl()
+                                                || !ResourceManager.getInstance().isOverwhelmed())
+                                        && MemoryBroker.getInstance().hasCapacity());
+    }
+}
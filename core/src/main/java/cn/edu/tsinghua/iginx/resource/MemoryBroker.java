@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.resource;
+
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 查询内存代理：记录每个查询的算子（排序缓存、连接哈希表、分组表、游标结果）预留的内存，同时限制单个查询与所有查询的预留总量。算子在预留失败时先溢写到磁盘，无法溢写时取消查询 */
+public class MemoryBroker {
+
+    private static final Config config = ConfigDescriptor.getInstance().getConfig();
+
+    // 当前线程正在执行的查询，内存算子在构造时据此确定预留的账户
+    private static final ThreadLocal<QueryMemoryContext> current = new ThreadLocal<>();
+
+    private final long queryMemoryLimit;
+
+    private final long globalMemoryLimit;
+
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    private final Map<Long, QueryMemoryContext> queries = new ConcurrentHashMap<>();
+
+    private final AtomicLong deniedCount = new AtomicLong();
+
+    private final AtomicLong cancelledCount = new AtomicLong();
+
+    MemoryBroker(long queryMemoryLimit, long globalMemoryLimit) {
+        this.queryMemoryLimit = queryMemoryLimit;
+        this.globalMemoryLimit = globalMemoryLimit;
+    }
+
+    public static MemoryBroker getInstance() {
+        return MemoryBrokerHolder.INSTANCE;
+    }
+
+    /** 为查询创建内存账户，查询结束后需调用 QueryMemoryContext.close 释放 */
+    public QueryMemoryContext open(long queryId) {
+        QueryMemoryContext context = new QueryMemoryContext(this, queryId, queryMemoryLimit);
+        queries.put(queryId, context);
+        return context;
+    }
+
+    /** 返回当前线程绑定的查询内存账户，没有时返回 null */
+    public static QueryMemoryContext current() {
+        return current.get();
+    }
+
+    /** 将查询内存账户绑定到当前线程，返回之前绑定的账户以便恢复 */
+    public static QueryMemoryContext bind(QueryMemoryContext context) {
+        QueryMemoryContext previous = current.get();
+        if (context == null) {
+            current.remove();
+        } else {
+            current.set(context);
+        }
+        return previous;
+    }
+
+    /** 在当前线程绑定的查询账户上创建一个预留，没有绑定的账户时预留只计数不受限制 */
+    public static MemoryReservation newReservation(String owner) {
+        return new MemoryReservation(current.get(), owner);
+    }
+
+    boolean tryAcquire(long bytes) {
+        while (true) {
+            long reserved = reservedBytes.get();
+            if (reserved + bytes > globalMemoryLimit) {
+                deniedCount.incrementAndGet();
+                return false;
+            }
+            if (reservedBytes.compareAndSet(reserved, reserved + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    void forceAcquire(long bytes) {
+        reservedBytes.addAndGet(bytes);
+    }
+
+    void release(long bytes) {
+        reservedBytes.addAndGet(-bytes);
+    }
+
+    void onDenied() {
+        deniedCount.incrementAndGet();
+    }
+
+    void onCancelled() {
+        cancelledCount.incrementAndGet();
+    }
+
+    void onClosed(QueryMemoryContext context) {
+        queries.remove(context.getQueryId(), context);
+    }
+
+    /** 已预留的内存是否仍低于全局上限，准入控制据此决定是否放行新的请求 */
+    public boolean hasCapacity() {
+        return reservedBytes.get() < globalMemoryLimit;
+    }
+
+    public long getReservedBytes() {
+        return reservedBytes.get();
+    }
+
+    public long getGlobalMemoryLimit() {
+        return globalMemoryLimit;
+    }
+
+    public long getQueryMemoryLimit() {
+        return queryMemoryLimit;
+    }
+
+    public int getQueryCount() {
+        return queries.size();
+    }
+
+    /** 因超出预算而被拒绝的预留次数，被拒绝的算子会溢写或取消查询 */
+    public long getDeniedCount() {
+        return deniedCount.get();
+    }
+
+    /** 因超出预算而被取消的查询数 */
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    private static class MemoryBrokerHolder {
+
+        private static final MemoryBroker INSTANCE =
+                new MemoryBroker(config.getQueryMemoryLimit(), config.getGlobalQueryMemoryLimit());
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.resource;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.MemoryLimitExceededException;
+
+/** 单个算子在查询内存账户上的预留。向账户申请时按块取整，避免逐行更新账户；账户为 null 时只记录用量 */
+public class MemoryReservation {
+
+    private static final long CHUNK_SIZE = 1 << 20;
+
+    private final QueryMemoryContext context;
+
+    private final String owner;
+
+    // 算子实际使用的字节数
+    private long usedBytes = 0;
+
+    // 已从查询账户取得的字节数
+    private long grantedBytes = 0;
+
+    MemoryReservation(QueryMemoryContext context, String owner) {
+        this.context = context;
+        this.owner = owner;
+    }
+
+    private static long roundUp(long bytes) {
+        return (bytes + CHUNK_SIZE - 1) / CHUNK_SIZE * CHUNK_SIZE;
+    }
+
+    /** 将用量调整为 bytes，增长的部分超出预算时返回 false 且用量不变，调用方应溢写后重新调整 */
+    public synchronized boolean tryResize(long bytes) {
+        bytes = Math.max(0, bytes);
+        if (context == null) {
+            usedBytes = bytes;
+            return true;
+        }
+        if (bytes > grantedBytes) {
+            long granted = roundUp(bytes);
+            if (!context.tryReserve(granted - grantedBytes)) {
+                return false;
+            }
+            grantedBytes = granted;
+        }
+        usedBytes = bytes;
+        shrink();
+        return true;
+    }
+
+    /** 将用量调整为 bytes，超出预算时抛出 MemoryLimitExceededException，用于无法溢写的算子 */
+    public void resize(long bytes) throws MemoryLimitExceededException {
+        if (!tryResize(bytes)) {
+            context.onCancelled();
+            throw new MemoryLimitExceededException(
+                    String.format(
+                            "query %d exceeds its memory budget: %s needs %d bytes, the query has reserved %d of %d bytes",
+                            context.getQueryId(),
+                            owner,
+                            bytes,
+                            context.getReservedBytes(),
+                            context.getLimit()));
+        }
+    }
+
+    public boolean tryReserve(long bytes) {
+        return tryResize(getUsedBytes() + bytes);
+    }
+
+    public void reserve(long bytes) throws MemoryLimitExceededException {
+        resize(getUsedBytes() + bytes);
+    }
+
+    /** 登记已经占用的内存，不受预算限制 */
+    public synchronized void forceReserve(long bytes) {
+        usedBytes += bytes;
+        if (context != null && usedBytes > grantedBytes) {
+            long granted = roundUp(usedBytes);
+            context.forceReserve(granted - grantedBytes);
+            grantedBytes = granted;
+        }
+    }
+
+    public synchronized void release(long bytes) {
+        usedBytes = Math.max(0, usedBytes - bytes);
+        shrink();
+    }
+
+    /** 归还全部预留 */
+    public synchronized void close() {
+        usedBytes = 0;
+        shrink();
+    }
+
+    private void shrink() {
+        if (context == null) {
+            return;
+        }
+        long granted = roundUp(usedBytes);
+        if (granted < grantedBytes) {
+            context.release(grantedBytes - granted);
+            grantedBytes = granted;
+        }
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getGrantedBytes() {
+        return grantedBytes;
+    }
+}
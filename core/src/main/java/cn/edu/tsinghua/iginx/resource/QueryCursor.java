@@ -0,0 +1,242 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.resource;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowSpillFile;
+import cn.edu.tsinghua.iginx.engine.shared.RequestContext;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** 服务端保留的查询游标，记录所属会话、最近一次访问的时间以及已读取和仍缓存在服务端的数据量 */
+public class QueryCursor {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryCursor.class);
+
+    // 尚未读取任何数据时用于估算行大小的 BINARY 值长度
+    private static final int ESTIMATED_BINARY_LENGTH = 32;
+
+    private final long queryId;
+
+    private final long sessionId;
+
+    private final RequestContext context;
+
+    private final long createTime;
+
+    private volatile long lastAccessTime;
+
+    private volatile long readRows = 0;
+
+    private volatile long readBytes = 0;
+
+    // 已物化但尚未读取的结果占用的内存，结果为惰性流时只统计已读取的部分
+    private volatile long bufferedBytes = 0;
+
+    // 已物化结果的总行数，结果为惰性流时为 0
+    private final long materializedRows;
+
+    // 已物化结果在查询内存账户上的预留，随结果被读取而减少
+    private final MemoryReservation reservation;
+
+    private int users = 0;
+
+    private boolean closed = false;
+
+    QueryCursor(long queryId, long sessionId, RequestContext context) {
+        this.queryId = queryId;
+        this.sessionId = sessionId;
+        this.context = context;
+        this.createTime = System.currentTimeMillis();
+        this.lastAccessTime = createTime;
+
+        RowStream stream = context.getResult().getResultStream();
+        if (stream instanceof Table) {
+            long bytes = 0;
+            for (Row row : ((Table) stream).getRows()) {
+                bytes += RowSpillFile.estimateSize(row);
+            }
+            bufferedBytes = bytes;
+            materializedRows = ((Table) stream).getRowSize();
+        } else {
+            materializedRows = 0;
+        }
+        QueryMemoryContext memoryContext = context.getMemoryContext();
+        reservation = new MemoryReservation(memoryContext, "query cursor");
+        reservation.forceReserve(bufferedBytes);
+        context.getResult().setResultStream(new CountingRowStream(stream));
+    }
+
+    public long getQueryId() {
+        return queryId;
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public RequestContext getContext() {
+        return context;
+    }
+
+    public long getCreateTime() {
+        return createTime;
+    }
+
+    public long getLastAccessTime() {
+        return lastAccessTime;
+    }
+
+    public long getReadRows() {
+        return readRows;
+    }
+
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    public long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    /** 按单次读取的内存预算与已读取数据的平均行大小限制本次返回的行数 */
+    public int adaptFetchSize(int fetchSize, long memoryBudget) throws PhysicalException {
+        long rowSize;
+        if (readRows > 0) {
+            rowSize = readBytes / readRows;
+        } else if (materializedRows > 0) {
+            rowSize = bufferedBytes / materializedRows;
+        } else {
+            rowSize = estimateRowSize(context.getResult().getResultStream().getHeader());
+        }
+        long limit = Math.max(1, memoryBudget / Math.max(1, rowSize));
+        return (int) Math.min(fetchSize, limit);
+    }
+
+    private static long estimateRowSize(Header header) {
+        long size = 32;
+        for (Field field : header.getFields()) {
+            size += 16;
+            if (field.getType() == DataType.BINARY) {
+                size += ESTIMATED_BINARY_LENGTH;
+            }
+        }
+        return size;
+    }
+
+    synchronized boolean acquire() {
+        if (closed) {
+            return false;
+        }
+        users++;
+        lastAccessTime = System.currentTimeMillis();
+        return true;
+    }
+
+    synchronized void release() {
+        users--;
+        lastAccessTime = System.currentTimeMillis();
+    }
+
+    /** 结果已读完时关闭游标，返回游标是否已关闭 */
+    synchronized boolean closeIfExhausted() {
+        try {
+            if (context.getResult().getResultStream().hasNext()) {
+                return false;
+            }
+        } catch (PhysicalException e) {
+            logger.error("unexpected error when check result stream of query {}: ", queryId, e);
+        }
+        close();
+        return true;
+    }
+
+    /** 没有请求正在读取时关闭游标，返回游标是否已关闭 */
+    synchronized boolean closeIfIdle() {
+        if (users > 0) {
+            return false;
+        }
+        close();
+        return true;
+    }
+
+    synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        bufferedBytes = 0;
+        try {
+            context.getResult().getResultStream().close();
+        } catch (PhysicalException e) {
+            logger.error("unexpected error when close result stream of query {}: ", queryId, e);
+        }
+        reservation.close();
+        if (context.getMemoryContext() != null) {
+            context.getMemoryContext().close();
+        }
+    }
+
+    /** 在读取结果时累计行数与字节数 */
+    private class CountingRowStream implements RowStream {
+
+        private final RowStream stream;
+
+        private final boolean materialized;
+
+        CountingRowStream(RowStream stream) {
+            this.stream = stream;
+            this.materialized = stream instanceof Table;
+        }
+
+        @Override
+        public Header getHeader() throws PhysicalException {
+            return stream.getHeader();
+        }
+
+        @Override
+        public void close() throws PhysicalException {
+            stream.close();
+        }
+
+        @Override
+        public boolean hasNext() throws PhysicalException {
+            return stream.hasNext();
+        }
+
+        @Override
+        public Row next() throws PhysicalException {
+            Row row = stream.next();
+            long size = RowSpillFile.estimateSize(row);
+            readRows++;
+            readBytes += size;
+            if (materialized) {
+                bufferedBytes = Math.max(0, bufferedBytes - size);
+                reservation.release(size);
+            }
+            return row;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.resource;
+
+/** 单个查询的内存账户，汇总该查询所有算子的预留，查询结束时一次性归还 */
+public class QueryMemoryContext {
+
+    private final MemoryBroker broker;
+
+    private final long queryId;
+
+    private final long limit;
+
+    private long reservedBytes = 0;
+
+    private long peakBytes = 0;
+
+    private boolean closed = false;
+
+    QueryMemoryContext(MemoryBroker broker, long queryId, long limit) {
+        this.broker = broker;
+        this.queryId = queryId;
+        this.limit = limit;
+    }
+
+    /** 预留 bytes 字节，超出单个查询或全局的上限时返回 false */
+    synchronized boolean tryReserve(long bytes) {
+        if (closed) {
+            return true;
+        }
+        if (reservedBytes + bytes > limit) {
+            broker.onDenied();
+            return false;
+        }
+        if (!broker.tryAcquire(bytes)) {
+            return false;
+        }
+        reservedBytes += bytes;
+        peakBytes = Math.max(peakBytes, reservedBytes);
+        return true;
+    }
+
+    /** 登记已经占用、无法拒绝的内存，例如已物化的查询结果 */
+    synchronized void forceReserve(long bytes) {
+        if (closed) {
+            return;
+        }
+        broker.forceAcquire(bytes);
+        reservedBytes += bytes;
+        peakBytes = Math.max(peakBytes, reservedBytes);
+    }
+
+    synchronized void release(long bytes) {
+        if (closed) {
+            return;
+        }
+        bytes = Math.min(bytes, reservedBytes);
+        broker.release(bytes);
+        reservedBytes -= bytes;
+    }
+
+    void onCancelled() {
+        broker.onCancelled();
+    }
+
+    public MemoryReservation newReservation(String owner) {
+        return new MemoryReservation(this, owner);
+    }
+
+    /** 归还所有预留，之后的预留与释放均被忽略 */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        broker.release(reservedBytes);
+        reservedBytes = 0;
+        broker.onClosed(this);
+    }
+
+    public long getQueryId() {
+        return queryId;
+    }
+
+    public long getLimit() {
+        return limit;
+    }
+
+    public synchronized long getReservedBytes() {
+        return reservedBytes;
+    }
+
+    public synchronized long getPeakBytes() {
+        return peakBytes;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+}
@@ -18,32 +18,278 @@
  */
 package cn.edu.tsinghua.iginx.resource;
 
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.shared.RequestContext;
+import cn.edu.tsinghua.iginx.exceptions.StatusCode;
+import cn.edu.tsinghua.iginx.monitor.MetricsMonitor;
+import cn.edu.tsinghua.iginx.thrift.Status;
+import cn.edu.tsinghua.iginx.utils.RpcUtils;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+/** 管理流式查询在服务端保留的游标：限制全局与单个会话的游标数，关闭空闲超时的游标，在缓存的结果超出内存上限时从空闲最久的游标开始关闭，并按内存预算调整每次读取的行数 */
 public class QueryResourceManager {
 
-    private final ConcurrentMap<Long, RequestContext> queries;
+    private static final Logger logger = LoggerFactory.getLogger(QueryResourceManager.class);
+
+    private static final Config config = ConfigDescriptor.getInstance().getConfig();
+
+    private final ConcurrentMap<Long, QueryCursor> queries;
+
+    private final Map<Long, Integer> sessionCursorCounts;
+
+    // 被服务端主动关闭的游标及关闭的原因，客户端继续读取时返回错误而不是空结果
+    private final ConcurrentMap<Long, ClosedCursor> closedQueries;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong idleTimeoutCount = new AtomicLong();
+
+    private final AtomicLong memoryEvictedCount = new AtomicLong();
 
     private QueryResourceManager() {
         this.queries = new ConcurrentHashMap<>();
+        this.sessionCursorCounts = new HashMap<>();
+        this.closedQueries = new ConcurrentHashMap<>();
+
+        long period = Math.max(1000, Math.min(config.getCursorIdleTimeout() / 2, 10000));
+        ScheduledExecutorService reaper =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "query-cursor-reaper");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        reaper.scheduleWithFixedDelay(this::reap, period, period, TimeUnit.MILLISECONDS);
+
+        MetricsMonitor monitor = MetricsMonitor.getInstance();
+        monitor.register("queryCursor.open", this::getOpenCursorCount);
+        monitor.register("queryCursor.bufferedBytes", this::getBufferedBytes);
+        monitor.register("queryCursor.rejected", this::getRejectedCount);
+        monitor.register("queryCursor.idleTimeout", this::getIdleTimeoutCount);
+        monitor.register("queryCursor.memoryEvicted", this::getMemoryEvictedCount);
     }
 
     public static QueryResourceManager getInstance() {
         return QueryManagerHolder.INSTANCE;
     }
 
-    public void registerQuery(long queryId, RequestContext context) {
-        queries.put(queryId, context);
+    /** 为查询结果注册一个游标，超出游标数上限时关闭结果并返回错误状态 */
+    public Status registerQuery(long queryId, long sessionId, RequestContext context) {
+        synchronized (this) {
+            String reason = null;
+            int sessionCount = sessionCursorCounts.getOrDefault(sessionId, 0);
+            if (queries.size() >= config.getMaxOpenCursors()) {
+                reason = "too many open cursors on server: " + queries.size();
+            } else if (sessionCount >= config.getMaxOpenCursorsPerSession()) {
+                reason = "too many open cursors in session: " + sessionCount;
+            }
+            if (reason != null) {
+                rejectedCount.incrementAndGet();
+                try {
+                    context.getResult().getResultStream().close();
+                } catch (PhysicalException e) {
+                    logger.error("unexpected error when close result stream: ", e);
+                }
+                if (context.getMemoryContext() != null) {
+                    context.getMemoryContext().close();
+                }
+                return RpcUtils.status(StatusCode.STATEMENT_EXECUTION_ERROR, reason);
+            }
+            queries.put(queryId, new QueryCursor(queryId, sessionId, context));
+            sessionCursorCounts.put(sessionId, sessionCount + 1);
+        }
+        if (getBufferedBytes() > config.getCursorMemoryBudget()) {
+            evictForMemory();
+        }
+        return RpcUtils.SUCCESS;
+    }
+
+    /** 取得一个游标用于读取结果，游标不存在或已关闭时返回 null，读取完成后需调用 releaseCursor */
+    public QueryCursor acquireQuery(long queryId) {
+        QueryCursor cursor = queries.get(queryId);
+        if (cursor == null || !cursor.acquire()) {
+            return null;
+        }
+        return cursor;
+    }
+
+    /** 结束一次读取，结果已读完时关闭游标 */
+    public void releaseCursor(QueryCursor cursor) {
+        cursor.release();
+        if (cursor.closeIfExhausted()) {
+            remove(cursor);
+        }
+    }
+
+    /** 返回已不存在的游标的状态：被服务端关闭的游标返回关闭原因，正常结束的游标返回成功 */
+    public Status getMissingQueryStatus(long queryId) {
+        ClosedCursor closed = closedQueries.get(queryId);
+        if (closed == null) {
+            return RpcUtils.SUCCESS;
+        }
+        return RpcUtils.status(
+                StatusCode.STATEMENT_EXECUTION_ERROR, "query cursor was closed: " + closed.reason);
+    }
+
+    public int adaptFetchSize(QueryCursor cursor, int fetchSize) {
+        try {
+            return cursor.adaptFetchSize(fetchSize, config.getCursorFetchMemoryBudget());
+        } catch (Exception e) {
+            logger.error("unexpected error when adapt fetch size: ", e);
+            return fetchSize;
+        }
     }
 
     public RequestContext getQuery(long queryId) {
-        return queries.get(queryId);
+        QueryCursor cursor = queries.get(queryId);
+        return cursor == null ? null : cursor.getContext();
     }
 
     public void releaseQuery(long queryId) {
-        queries.remove(queryId);
+        QueryCursor cursor = queries.get(queryId);
+        if (cursor != null) {
+            cursor.close();
+            remove(cursor);
+        }
+        closedQueries.remove(queryId);
+    }
+
+    /** 会话关闭时释放其所有游标 */
+    public void releaseSessionQueries(long sessionId) {
+        for (QueryCursor cursor : queries.values()) {
+            if (cursor.getSessionId() == sessionId) {
+                releaseQuery(cursor.getQueryId());
+            }
+        }
+    }
+
+    private void remove(QueryCursor cursor) {
+        synchronized (this) {
+            if (!queries.remove(cursor.getQueryId(), cursor)) {
+                return;
+            }
+            int count = sessionCursorCounts.getOrDefault(cursor.getSessionId(), 0) - 1;
+            if (count <= 0) {
+                sessionCursorCounts.remove(cursor.getSessionId());
+            } else {
+                sessionCursorCounts.put(cursor.getSessionId(), count);
+            }
+        }
+    }
+
+    private void evict(QueryCursor cursor, String reason) {
+        // 先记录关闭原因再移除游标，避免并发的读取看到游标不存在时误以为结果已正常读完
+        closedQueries.put(
+                cursor.getQueryId(), new ClosedCursor(reason, System.currentTimeMillis()));
+        remove(cursor);
+        logger.warn(
+                "close query cursor {} of session {} ({}), read {} rows",
+                cursor.getQueryId(),
+                cursor.getSessionId(),
+                reason,
+                cursor.getReadRows());
+    }
+
+    private void reap() {
+        try {
+            long now = System.currentTimeMillis();
+            long idleTimeout = config.getCursorIdleTimeout();
+            for (QueryCursor cursor : queries.values()) {
+                if (now - cursor.getLastAccessTime() > idleTimeout && cursor.closeIfIdle()) {
+                    idleTimeoutCount.incrementAndGet();
+                    evict(cursor, "idle timeout");
+                }
+            }
+            if (getBufferedBytes() > config.getCursorMemoryBudget()) {
+                evictForMemory();
+            }
+            closedQueries.values().removeIf(closed -> now - closed.closeTime > idleTimeout);
+            if (!queries.isEmpty() && logger.isDebugEnabled()) {
+                logger.debug(
+                        "open query cursors: {}, buffered bytes: {}, rejected: {}, idle timeout: {}, evicted for memory: {}",
+                        getOpenCursorCount(),
+                        getBufferedBytes(),
+                        getRejectedCount(),
+                        getIdleTimeoutCount(),
+                        getMemoryEvictedCount());
+            }
+        } catch (Exception e) {
+            logger.error("unexpected error when reap query cursors: ", e);
+        }
+    }
+
+    private void evictForMemory() {
+        List<QueryCursor> cursors = new ArrayList<>(queries.values());
+        cursors.sort(Comparator.comparingLong(QueryCursor::getLastAccessTime));
+        long bufferedBytes = getBufferedBytes();
+        for (QueryCursor cursor : cursors) {
+            if (bufferedBytes <= config.getCursorMemoryBudget()) {
+                break;
+            }
+            long cursorBytes = cursor.getBufferedBytes();
+            if (cursorBytes > 0 && cursor.closeIfIdle()) {
+                bufferedBytes -= cursorBytes;
+                memoryEvictedCount.incrementAndGet();
+                evict(cursor, "cursor memory budget exceeded");
+            }
+        }
+    }
+
+    public int getOpenCursorCount() {
+        return queries.size();
+    }
+
+    public int getOpenCursorCount(long sessionId) {
+        synchronized (this) {
+            return sessionCursorCounts.getOrDefault(sessionId, 0);
+        }
+    }
+
+    /** 所有游标仍缓存在服务端的结果的估算字节数 */
+    public long getBufferedBytes() {
+        long bytes = 0;
+        for (QueryCursor cursor : queries.values()) {
+            bytes += cursor.getBufferedBytes();
+        }
+        return bytes;
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public long getIdleTimeoutCount() {
+        return idleTimeoutCount.get();
+    }
+
+    public long getMemoryEvictedCount() {
+        return memoryEvictedCount.get();
+    }
+
+    private static class ClosedCursor {
+
+        private final String reason;
+
+        private final long closeTime;
+
+        ClosedCursor(String reason, long closeTime) {
+            this.reason = reason;
+            this.closeTime = closeTime;
+        }
     }
 
     private static class QueryManagerHolder {
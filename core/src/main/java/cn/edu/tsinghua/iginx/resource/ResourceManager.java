@@ -55,6 +55,11 @@ public class ResourceManager {
     }
 
     public boolean reject(RequestContext ctx) {
+        return isOverwhelmed();
+    }
+
+    /** 堆内存、系统内存或 CPU 的使用率是否超过阈值 */
+    public boolean isOverwhelmed() {
         return heapMemoryOverwhelmed()
                 || systemMetrics.getRecentCpuUsage() > systemCpuThreshold
                 || systemMetrics.getRecentMemoryUsage() > systemMemoryThreshold;
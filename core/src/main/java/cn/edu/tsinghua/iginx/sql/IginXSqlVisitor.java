@@ -21,16 +21,57 @@ import cn.edu.tsinghua.iginx.thrift.*;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import cn.edu.tsinghua.iginx.utils.TimeUtils;
 import java.util.*;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
+import org.antlr.v4.runtime.tree.Trees;
 
 public class IginXSqlVisitor extends SqlBaseVisitor<Statement> {
 
     private static final Set<FuncType> supportedAggregateWithLevelFuncSet =
             new HashSet<>(Arrays.asList(FuncType.Sum, FuncType.Count, FuncType.Avg));
 
+    // 是否解析到了 now()
+    private boolean timeDependent = false;
+
+    // 预编译语句绑定的参数，按占位符在语句中出现的顺序排列
+    private final List<Object> parameters;
+
+    private final List<DataType> parameterTypes;
+
+    // 占位符的 token 下标到参数位置的映射
+    private final Map<Integer, Integer> parameterIndexes = new HashMap<>();
+
+    public IginXSqlVisitor() {
+        this(Collections.emptyList(), Collections.emptyList());
+    }
+
+    public IginXSqlVisitor(List<Object> parameters, List<DataType> parameterTypes) {
+        this.parameters = parameters;
+        this.parameterTypes = parameterTypes;
+    }
+
+    /** 返回语句中 ? 占位符的个数 */
+    public static int getParameterCount(ParseTree tree) {
+        return Trees.findAllTokenNodes(tree, SqlParser.PARAMETER).size();
+    }
+
     @Override
     public Statement visitSqlStatement(SqlStatementContext ctx) {
-        return visit(ctx.statement());
+        for (ParseTree node : Trees.findAllTokenNodes(ctx, SqlParser.PARAMETER)) {
+            int tokenIndex = ((TerminalNode) node).getSymbol().getTokenIndex();
+            parameterIndexes.put(tokenIndex, parameterIndexes.size());
+        }
+        if (parameterIndexes.size() != parameters.size()) {
+            throw new SQLParserException(
+                    String.format(
+                            "statement expects %d parameters, but got %d",
+                            parameterIndexes.size(), parameters.size()));
+        }
+        Statement statement = visit(ctx.statement());
+        if (statement != null) {
+            statement.setTimeDependent(timeDependent);
+        }
+        return statement;
     }
 
     @Override
@@ -952,7 +993,12 @@ public class IginXSqlVisitor extends SqlBaseVisitor<Statement> {
         if (ctx.children.get(0) instanceof ConstantContext) {
             op = Op.getDirectionOpposite(op);
         }
-        long time = (long) parseValue(ctx.constant());
+        long time;
+        if (ctx.constant().PARAMETER() != null) {
+            time = parseKeyParameter(ctx.constant().PARAMETER());
+        } else {
+            time = (long) parseValue(ctx.constant());
+        }
         return new KeyFilter(op, time);
     }
 
@@ -1304,6 +1350,8 @@ public class IginXSqlVisitor extends SqlBaseVisitor<Statement> {
             // Attention!! DataType in thrift interface only! support! binary!
             String str = ctx.stringLiteral().getText();
             return str.substring(1, str.length() - 1).getBytes();
+        } else if (ctx.PARAMETER() != null) {
+            return parameters.get(getParameterIndex(ctx.PARAMETER()));
         } else if (ctx.realLiteral() != null) {
             // maybe contains minus, see Sql.g4 for more details.
             return Double.parseDouble(ctx.getText());
@@ -1323,6 +1371,9 @@ public class IginXSqlVisitor extends SqlBaseVisitor<Statement> {
             return DataType.LONG;
         } else if (ctx.stringLiteral() != null) {
             return DataType.BINARY;
+        } else if (ctx.PARAMETER() != null) {
+            int index = getParameterIndex(ctx.PARAMETER());
+            return parameters.get(index) == null ? null : parameterTypes.get(index);
         } else if (ctx.realLiteral() != null) {
             return DataType.DOUBLE;
         } else if (ctx.INT() != null) {
@@ -1333,6 +1384,23 @@ public class IginXSqlVisitor extends SqlBaseVisitor<Statement> {
         }
     }
 
+    private int getParameterIndex(TerminalNode parameter) {
+        return parameterIndexes.get(parameter.getSymbol().getTokenIndex());
+    }
+
+    /** 出现在 key 位置的参数只能是整数 */
+    private long parseKeyParameter(TerminalNode parameter) {
+        int index = getParameterIndex(parameter);
+        Object value = parameters.get(index);
+        if (value == null
+                || (parameterTypes.get(index) != DataType.LONG
+                        && parameterTypes.get(index) != DataType.INTEGER)) {
+            throw new SQLParserException(
+                    String.format("parameter %d is used as key and must be an integer", index + 1));
+        }
+        return ((Number) value).longValue();
+    }
+
     private long parseTime(TimeValueContext time) {
         long timeInNs;
         if (time.INT() != null) {
@@ -1341,6 +1409,8 @@ public class IginXSqlVisitor extends SqlBaseVisitor<Statement> {
             timeInNs = parseDateExpression(time.dateExpression());
         } else if (time.dateFormat() != null) {
             timeInNs = parseTimeFormat(time.dateFormat());
+        } else if (time.PARAMETER() != null) {
+            timeInNs = parseKeyParameter(time.PARAMETER());
         } else if (time.getText().equalsIgnoreCase(SQLConstant.INF)) {
             timeInNs = Long.MAX_VALUE;
         } else {
@@ -1364,6 +1434,7 @@ public class IginXSqlVisitor extends SqlBaseVisitor<Statement> {
 
     private long parseTimeFormat(DateFormatContext ctx) throws SQLParserException {
         if (ctx.NOW() != null) {
+            timeDependent = true;
             return System.nanoTime();
         }
         if (ctx.TIME_WITH_UNIT() != null) {
@@ -4,7 +4,18 @@ public abstract class Statement {
 
     public StatementType statementType = StatementType.NULL;
 
+    // 语句中含有 now()，其取值与执行时刻相关，逻辑计划不能被缓存
+    private boolean timeDependent = false;
+
     public StatementType getType() {
         return statementType;
     }
+
+    public boolean isTimeDependent() {
+        return timeDependent;
+    }
+
+    public void setTimeDependent(boolean timeDependent) {
+        this.timeDependent = timeDependent;
+    }
 }
@@ -164,6 +164,11 @@ public class MetaManagerMock implements IMetaManager {
         return false;
     }
 
+    @Override
+    public long getMetaVersion() {
+        return 0;
+    }
+
     @Override
     public boolean createInitialFragmentsAndStorageUnits(
             List<StorageUnitMeta> storageUnits, List<FragmentMeta> initialFragments) {
@@ -0,0 +1,268 @@
+package cn.edu.tsinghua.iginx.engine;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.ColumnDataView;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.RawData;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.RawDataType;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.RowDataView;
+import cn.edu.tsinghua.iginx.sql.statement.SelectStatement;
+import cn.edu.tsinghua.iginx.thrift.AggregateType;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.Bitmap;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import org.junit.Test;
+
+public class LastValueCacheTest {
+
+    private static final Header HEADER =
+            new Header(
+                    Field.KEY,
+                    Arrays.asList(
+                            new Field("path", DataType.BINARY),
+                            new Field("value", DataType.BINARY)));
+
+    private static SelectStatement last(long start, long end, String... paths) {
+        return new SelectStatement(Arrays.asList(paths), start, end, AggregateType.LAST);
+    }
+
+    private static Row row(String path, long key, String value) {
+        return new Row(
+                HEADER,
+                key,
+                new Object[] {
+                    path.getBytes(StandardCharsets.UTF_8), value.getBytes(StandardCharsets.UTF_8)
+                });
+    }
+
+    private static void load(LastValueCache cache, List<String> paths, Row... rows)
+            throws PhysicalException {
+        cache.beginLoad(paths).complete(new Table(HEADER, Arrays.asList(rows)));
+    }
+
+    /** 单条序列按列写入，values 中为 null 的点不写入 */
+    private static DataView column(String path, long[] keys, Long... values) {
+        List<Long> keyList = new ArrayList<>();
+        List<Object> nonNull = new ArrayList<>();
+        Bitmap bitmap = new Bitmap(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            keyList.add(keys[i]);
+            if (values[i] != null) {
+                bitmap.mark(i);
+                nonNull.add(values[i]);
+            }
+        }
+        RawData data =
+                new RawData(
+                        Collections.singletonList(path),
+                        Collections.singletonList(new HashMap<>()),
+                        keyList,
+                        new Object[] {nonNull.toArray()},
+                        Collections.singletonList(DataType.LONG),
+                        Collections.singletonList(bitmap),
+                        RawDataType.Column);
+        return new ColumnDataView(data, 0, 1, 0, keys.length);
+    }
+
+    private static List<String> read(RowStream stream) throws PhysicalException {
+        assertNotNull(stream);
+        List<String> results = new ArrayList<>();
+        while (stream.hasNext()) {
+            Row row = stream.next();
+            results.add(
+                    row.getKey()
+                            + " "
+                            + new String((byte[]) row.getValue(0), StandardCharsets.UTF_8)
+                            + "="
+                            + new String((byte[]) row.getValue(1), StandardCharsets.UTF_8));
+        }
+        return results;
+    }
+
+    @Test
+    public void testDisabled() {
+        LastValueCache cache = new LastValueCache(false, 10);
+        assertFalse(cache.isAnswerable(last(0, Long.MAX_VALUE, "a.a")));
+    }
+
+    @Test
+    public void testAnswerable() {
+        LastValueCache cache = new LastValueCache(true, 2);
+        assertTrue(cache.isAnswerable(last(0, Long.MAX_VALUE, "a.a", "a.b")));
+        assertFalse(cache.isAnswerable(last(0, Long.MAX_VALUE, "a.*")));
+        assertFalse(cache.isAnswerable(last(0, Long.MAX_VALUE, "a.a", "a.b", "a.c")));
+        assertFalse(
+                cache.isAnswerable(
+                        new SelectStatement(
+                                Collections.singletonList("a.a"),
+                                0,
+                                Long.MAX_VALUE,
+                                AggregateType.FIRST)));
+        assertFalse(
+                cache.isAnswerable(
+                        new SelectStatement(
+                                Collections.singletonList("a.a"),
+                                0,
+                                Long.MAX_VALUE,
+                                AggregateType.MAX)));
+    }
+
+    @Test
+    public void testLoadAndAnswer() throws PhysicalException {
+        LastValueCache cache = new LastValueCache(true, 10);
+        SelectStatement statement = last(0, Long.MAX_VALUE, "a.b", "a.a");
+        assertNull(cache.answer(statement));
+        assertEquals(
+                Arrays.asList("a.b", "a.a"), cache.getMissingPaths(Arrays.asList("a.b", "a.a")));
+
+        load(
+                cache,
+                Arrays.asList("a.a", "a.b"),
+                row("a.a", 5, "50"),
+                row("a.a{t=1}", 7, "70"),
+                row("a.a", 3, "30"));
+        assertTrue(cache.getMissingPaths(Arrays.asList("a.a", "a.b")).isEmpty());
+        assertEquals(2, cache.getLoadedCount());
+
+        // 没有数据的序列同样被缓存
+        assertEquals(Arrays.asList("5 a.a=50", "7 a.a{t=1}=70"), read(cache.answer(statement)));
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testUpdate() throws PhysicalException {
+        LastValueCache cache = new LastValueCache(true, 10);
+        load(cache, Collections.singletonList("a.a"), row("a.a", 5, "50"));
+
+        cache.update(column("a.a", new long[] {1, 2}, 10L, 20L));
+        cache.update(column("a.b", new long[] {9}, 90L));
+        SelectStatement statement = last(0, Long.MAX_VALUE, "a.a");
+        assertEquals(Collections.singletonList("5 a.a=50"), read(cache.answer(statement)));
+
+        cache.update(column("a.a", new long[] {6, 8, 9}, 60L, 80L, null));
+        assertEquals(Collections.singletonList("8 a.a=80"), read(cache.answer(statement)));
+
+        // 相同 key 的写入覆盖原值
+        cache.update(column("a.a", new long[] {8}, 81L));
+        assertEquals(Collections.singletonList("8 a.a=81"), read(cache.answer(statement)));
+        assertEquals(
+                Collections.singletonList("a.b"),
+                cache.getMissingPaths(Arrays.asList("a.a", "a.b")));
+    }
+
+    @Test
+    public void testUpdateRowData() throws PhysicalException {
+        LastValueCache cache = new LastValueCache(true, 10);
+        load(cache, Arrays.asList("a.a", "a.b"));
+        Bitmap first = new Bitmap(2);
+        first.mark(0);
+        first.mark(1);
+        Bitmap second = new Bitmap(2);
+        second.mark(1);
+        RawData data =
+                new RawData(
+                        Arrays.asList("a.a", "a.b"),
+                        Arrays.asList(new HashMap<>(), new HashMap<>()),
+                        Arrays.asList(1L, 2L),
+                        new Object[] {new Object[] {10L, 11L}, new Object[] {21L}},
+                        Arrays.asList(DataType.LONG, DataType.LONG),
+                        Arrays.asList(first, second),
+                        RawDataType.Row);
+        cache.update(new RowDataView(data, 0, 2, 0, 2));
+        assertEquals(
+                Arrays.asList("1 a.a=10", "2 a.b=21"),
+                read(cache.answer(last(0, Long.MAX_VALUE, "a.a", "a.b"))));
+    }
+
+    @Test
+    public void testLoadRacesWithUpdate() throws PhysicalException {
+        LastValueCache cache = new LastValueCache(true, 10);
+        LastValueCache.Loader loader = cache.beginLoad(Collections.singletonList("a.a"));
+        // 加载期间到达的写入比加载读到的快照更新
+        cache.update(column("a.a", new long[] {9}, 90L));
+        loader.complete(new Table(HEADER, Collections.singletonList(row("a.a", 5, "50"))));
+        assertEquals(
+                Collections.singletonList("9 a.a=90"),
+                read(cache.answer(last(0, Long.MAX_VALUE, "a.a"))));
+
+        // 加载期间失效的序列不会被标记为已加载
+        loader = cache.beginLoad(Collections.singletonList("a.b"));
+        cache.invalidate(Collections.singletonList("a.b"));
+        loader.complete(new Table(HEADER, Collections.singletonList(row("a.b", 5, "50"))));
+        assertEquals(
+                Collections.singletonList("a.b"),
+                cache.getMissingPaths(Collections.singletonList("a.b")));
+
+        loader = cache.beginLoad(Collections.singletonList("a.c"));
+        loader.abort();
+        assertEquals(1, cache.getSize());
+    }
+
+    @Test
+    public void testRange() throws PhysicalException {
+        LastValueCache cache = new LastValueCache(true, 10);
+        load(cache, Arrays.asList("a.a", "a.b"), row("a.a", 5, "50"), row("a.b", 10, "100"));
+
+        assertEquals(
+                Collections.singletonList("10 a.b=100"),
+                read(cache.answer(last(6, Long.MAX_VALUE, "a.a", "a.b"))));
+        // 最新点不在查询范围内时无法判断范围内的最后一个点，回退到存储查询
+        assertNull(cache.answer(last(0, 10, "a.a", "a.b")));
+    }
+
+    @Test
+    public void testPrefix() throws PhysicalException {
+        LastValueCache cache = new LastValueCache(true, 10);
+        load(
+                cache,
+                Arrays.asList("a.a", "a.ab", "a.b"),
+                row("a.a", 5, "50"),
+                row("a.ab", 3, "30"),
+                row("a.b", 1, "10"));
+        // 与 Last 函数一致，a.a 的结果包含同样被查询的 a.ab
+        assertEquals(
+                Arrays.asList("3 a.ab=30", "5 a.a=50", "3 a.ab=30"),
+                read(cache.answer(last(0, Long.MAX_VALUE, "a.a", "a.ab"))));
+    }
+
+    @Test
+    public void testInvalidate() throws PhysicalException {
+        LastValueCache cache = new LastValueCache(true, 10);
+        load(cache, Arrays.asList("a.a", "a.b", "b.a"));
+        cache.invalidate(Collections.singletonList("a.*"));
+        assertEquals(
+                Arrays.asList("a.a", "a.b"),
+                cache.getMissingPaths(Arrays.asList("a.a", "a.b", "b.a")));
+
+        cache.invalidate(column("b.a", new long[] {1}, 1L));
+        assertEquals(0, cache.getSize());
+
+        load(cache, Arrays.asList("a.a", "b.a"));
+        cache.invalidate(Collections.singletonList("*"));
+        assertEquals(0, cache.getSize());
+    }
+
+    @Test
+    public void testEviction() throws PhysicalException {
+        LastValueCache cache = new LastValueCache(true, 2);
+        load(cache, Arrays.asList("a.a", "a.b"));
+        cache.getMissingPaths(Collections.singletonList("a.a"));
+        load(cache, Collections.singletonList("a.c"));
+        assertEquals(2, cache.getSize());
+        assertEquals(
+                Collections.singletonList("a.b"),
+                cache.getMissingPaths(Arrays.asList("a.a", "a.b", "a.c")));
+    }
+}
@@ -0,0 +1,178 @@
+package cn.edu.tsinghua.iginx.engine;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.logical.generator.GeneratorType;
+import cn.edu.tsinghua.iginx.engine.logical.generator.LogicalGenerator;
+import cn.edu.tsinghua.iginx.engine.shared.RequestContext;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.ValueFilter;
+import cn.edu.tsinghua.iginx.engine.shared.source.GlobalSource;
+import cn.edu.tsinghua.iginx.exceptions.SQLParserException;
+import cn.edu.tsinghua.iginx.sql.statement.InsertStatement;
+import cn.edu.tsinghua.iginx.sql.statement.SelectStatement;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.SnowFlakeUtils;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class PlanCacheTest {
+
+    private static final LogicalGenerator generator =
+            new LogicalGenerator() {
+                @Override
+                public GeneratorType getType() {
+                    return GeneratorType.Query;
+                }
+
+                @Override
+                public Operator generate(RequestContext ctx) {
+                    return null;
+                }
+            };
+
+    @BeforeClass
+    public static void setUp() {
+        SnowFlakeUtils.init(0);
+    }
+
+    private static RequestContext ctx(String sql) {
+        return new RequestContext(0, sql);
+    }
+
+    private static Operator plan() {
+        return new Project(new GlobalSource(), Collections.singletonList("a.*"), null);
+    }
+
+    @Test
+    public void testNormalize() {
+        assertEquals(
+                "SELECT a FROM b WHERE c = ' x  y '",
+                PlanCache.normalize("  SELECT  a\n\tFROM b WHERE c = ' x  y ' ;  "));
+        assertEquals(
+                PlanCache.normalize("select a from b;"), PlanCache.normalize("select a  from b"));
+        assertNotEquals(
+                PlanCache.normalize("select a from b"), PlanCache.normalize("select A from b"));
+    }
+
+    @Test
+    public void testPlanInvalidatedByMetaVersion() {
+        AtomicLong version = new AtomicLong();
+        PlanCache cache = new PlanCache(true, 16, version::get);
+        String sql = "SELECT a FROM b";
+        assertNull(cache.getPlan(ctx(sql), generator));
+
+        Operator root = plan();
+        cache.putPlan(ctx(sql), generator, root, cache.getMetaVersion());
+        Operator cached = cache.getPlan(ctx("SELECT a  FROM b;"), generator);
+        assertNotNull(cached);
+        assertNotSame(root, cached);
+        assertEquals(((Project) root).getPatterns(), ((Project) cached).getPatterns());
+
+        version.incrementAndGet();
+        assertNull(cache.getPlan(ctx(sql), generator));
+
+        // 生成计划期间元数据发生变化，计划不应被缓存
+        long staleVersion = cache.getMetaVersion();
+        version.incrementAndGet();
+        cache.putPlan(ctx(sql), generator, plan(), staleVersion);
+        assertNull(cache.getPlan(ctx(sql), generator));
+        assertEquals(1, cache.getPlanHits());
+    }
+
+    @Test
+    public void testLruEviction() {
+        PlanCache cache = new PlanCache(true, 2, () -> 0);
+        cache.putPlan(ctx("q1"), generator, plan(), 0);
+        cache.putPlan(ctx("q2"), generator, plan(), 0);
+        assertNotNull(cache.getPlan(ctx("q1"), generator));
+        cache.putPlan(ctx("q3"), generator, plan(), 0);
+        assertNull(cache.getPlan(ctx("q2"), generator));
+        assertNotNull(cache.getPlan(ctx("q1"), generator));
+        assertNotNull(cache.getPlan(ctx("q3"), generator));
+    }
+
+    @Test
+    public void testDisabled() {
+        PlanCache cache = new PlanCache(false, 16, () -> 0);
+        cache.putPlan(ctx("q1"), generator, plan(), 0);
+        assertNull(cache.getPlan(ctx("q1"), generator));
+    }
+
+    @Test
+    public void testTimeDependentPlanNotCached() {
+        PlanCache cache = new PlanCache(true, 16, () -> 0);
+        RequestContext ctx = ctx("SELECT a FROM b WHERE key > now() - 1h");
+        StatementBuilder.getInstance().buildFromSQL(ctx);
+        assertTrue(ctx.getStatement().isTimeDependent());
+        cache.putPlan(ctx, generator, plan(), 0);
+        assertNull(cache.getPlan(ctx, generator));
+
+        ctx = ctx("SELECT a FROM b WHERE key > 100");
+        StatementBuilder.getInstance().buildFromSQL(ctx);
+        assertFalse(ctx.getStatement().isTimeDependent());
+        cache.putPlan(ctx, generator, plan(), 0);
+        assertNotNull(cache.getPlan(ctx, generator));
+    }
+
+    @Test
+    public void testPreparedStatementBinding() {
+        String sql = "SELECT a FROM b WHERE key > ? AND c = '?' AND d = ?";
+        PreparedStatementManager.PreparedSql statement =
+                new PreparedStatementManager.PreparedSql(
+                        1, 1, sql, StatementBuilder.getInstance().parse(sql));
+        assertEquals(2, statement.getParameterCount());
+
+        // 字符串参数作为一个值绑定，其中的引号不会改变语句结构
+        RequestContext ctx = ctx(sql);
+        ctx.setPreparedSql(statement);
+        ctx.setParameters(Arrays.asList(10L, "x\" || d != \"x".getBytes()));
+        ctx.setParameterTypes(Arrays.asList(DataType.LONG, DataType.BINARY));
+        StatementBuilder.getInstance().buildFromSQL(ctx);
+        AndFilter filter = (AndFilter) ((SelectStatement) ctx.getStatement()).getFilter();
+        assertEquals("key > 10", filter.getChildren().get(0).toString());
+        assertEquals(3, filter.getChildren().size());
+        ValueFilter valueFilter = (ValueFilter) filter.getChildren().get(2);
+        assertEquals("b.d", valueFilter.getPath());
+        assertEquals("x\" || d != \"x", valueFilter.getValue().getBinaryVAsString());
+
+        // 预编译语句的计划依赖参数，不按模板缓存
+        PlanCache cache = new PlanCache(true, 16, () -> 0);
+        cache.putPlan(ctx, generator, plan(), 0);
+        assertNull(cache.getPlan(ctx, generator));
+
+        try {
+            statement.bind(
+                    Collections.singletonList(10L), Collections.singletonList(DataType.LONG));
+            fail();
+        } catch (SQLParserException ignored) {
+        }
+        try {
+            statement.bind(
+                    Arrays.asList("10".getBytes(), "x".getBytes()),
+                    Arrays.asList(DataType.BINARY, DataType.BINARY));
+            fail();
+        } catch (SQLParserException ignored) {
+        }
+    }
+
+    @Test
+    public void testPreparedInsertBinding() {
+        String sql = "INSERT INTO a(key, b, c) VALUES (?, ?, ?)";
+        PreparedStatementManager.PreparedSql statement =
+                new PreparedStatementManager.PreparedSql(
+                        1, 1, sql, StatementBuilder.getInstance().parse(sql));
+        InsertStatement insert =
+                (InsertStatement)
+                        statement.bind(
+                                Arrays.asList(5L, 3, 2.5),
+                                Arrays.asList(DataType.LONG, DataType.INTEGER, DataType.DOUBLE));
+        assertEquals(Collections.singletonList(5L), insert.getTimes());
+        assertEquals(Arrays.asList(DataType.INTEGER, DataType.DOUBLE), insert.getTypes());
+    }
+}
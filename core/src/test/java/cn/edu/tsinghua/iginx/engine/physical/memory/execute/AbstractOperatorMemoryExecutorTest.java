@@ -26,6 +26,7 @@ import static org.junit.Assert.fail;
 
 import cn.edu.tsinghua.iginx.engine.physical.exception.InvalidOperatorParameterException;
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.PartialAggregateUtils;
 import cn.edu.tsinghua.iginx.engine.shared.Constants;
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
 import cn.edu.tsinghua.iginx.engine.shared.data.Value;
@@ -33,23 +34,34 @@ import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Function;
 import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
+import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
 import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Count;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.FirstValue;
 import cn.edu.tsinghua.iginx.engine.shared.function.system.Last;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.LastValue;
 import cn.edu.tsinghua.iginx.engine.shared.function.system.Max;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Min;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Sum;
 import cn.edu.tsinghua.iginx.engine.shared.operator.CrossJoin;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
 import cn.edu.tsinghua.iginx.engine.shared.operator.InnerJoin;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Join;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Limit;
 import cn.edu.tsinghua.iginx.engine.shared.operator.MappingTransform;
 import cn.edu.tsinghua.iginx.engine.shared.operator.MarkJoin;
+import cn.edu.tsinghua.iginx.engine.shared.operator.MultiwayMerge;
 import cn.edu.tsinghua.iginx.engine.shared.operator.OuterJoin;
+import cn.edu.tsinghua.iginx.engine.shared.operator.PartialAggregateMerge;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Reorder;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Select;
 import cn.edu.tsinghua.iginx.engine.shared.operator.SetTransform;
 import cn.edu.tsinghua.iginx.engine.shared.operator.SingleJoin;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Sort;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Union;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.BoolFilter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
@@ -1399,6 +1411,165 @@ public abstract class AbstractOperatorMemoryExecutorTest {
         }
     }
 
+    private List<RowStream> generateStreamsForMerge(boolean timePartitioned) {
+        List<RowStream> streams = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            List<Field> fields = new ArrayList<>();
+            fields.add(new Field("a.s" + (timePartitioned ? i % 3 : i), DataType.LONG));
+            if (i % 2 == 0) {
+                fields.add(new Field("a.shared", DataType.LONG));
+            }
+            Header header = new Header(Field.KEY, fields);
+            List<Row> rows = new ArrayList<>();
+            long begin = timePartitioned ? i * 50L : 0L;
+            long end = timePartitioned ? begin + 60L : 200L;
+            for (long key = begin; key < end; key += timePartitioned ? 1 : i + 1) {
+                Object[] values = new Object[fields.size()];
+                values[0] = key % 7 == 0 ? null : key * 10 + i;
+                if (values.length > 1) {
+                    values[1] = key * 100 + i;
+                }
+                rows.add(new Row(header, key, values));
+            }
+            Table table = new Table(header, rows);
+            if (i % 2 == 0) {
+                streams.add(table);
+                continue;
+            }
+            // 非 Table 的输入会在后台预取
+            streams.add(
+                    new RowStream() {
+                        @Override
+                        public Header getHeader() {
+                            return table.getHeader();
+                        }
+
+                        @Override
+                        public void close() {}
+
+                        @Override
+                        public boolean hasNext() {
+                            return table.hasNext();
+                        }
+
+                        @Override
+                        public Row next() {
+                            return table.next();
+                        }
+                    });
+        }
+        return streams;
+    }
+
+    @Test
+    public void testMultiwayMerge() throws PhysicalException {
+        OperatorMemoryExecutor executor = getExecutor();
+        for (boolean combineSameKey : new boolean[] {true, false}) {
+            List<RowStream> inputs = generateStreamsForMerge(!combineSameKey);
+            RowStream target = inputs.get(0);
+            for (int i = 1; i < inputs.size(); i++) {
+                if (combineSameKey) {
+                    Join join = new Join(EmptySource.EMPTY_SOURCE, EmptySource.EMPTY_SOURCE);
+                    target = executor.executeBinaryOperator(join, target, inputs.get(i));
+                } else {
+                    Union union = new Union(EmptySource.EMPTY_SOURCE, EmptySource.EMPTY_SOURCE);
+                    target = executor.executeBinaryOperator(union, target, inputs.get(i));
+                }
+            }
+            target = transformToTable(target);
+
+            List<Source> sources = new ArrayList<>();
+            for (int i = 0; i < inputs.size(); i++) {
+                sources.add(EmptySource.EMPTY_SOURCE);
+            }
+            MultiwayMerge merge = new MultiwayMerge(sources, combineSameKey);
+            RowStream stream =
+                    transformToTable(
+                            executor.executeMultipleOperator(
+                                    merge, generateStreamsForMerge(!combineSameKey)));
+
+            assertEquals(target.getHeader().getFields(), stream.getHeader().getFields());
+            while (target.hasNext() && stream.hasNext()) {
+                Row rowA = target.next();
+                Row rowB = stream.next();
+                assertEquals(rowA.getKey(), rowB.getKey());
+                assertEquals(Arrays.asList(rowA.getValues()), Arrays.asList(rowB.getValues()));
+            }
+            assertFalse(target.hasNext());
+            assertFalse(stream.hasNext());
+        }
+    }
+
+    private Table generateTableForPartialAggregate(long from, long to, boolean withB) {
+        List<Field> fields = new ArrayList<>();
+        fields.add(new Field("a.a", DataType.LONG));
+        if (withB) {
+            fields.add(new Field("a.b", DataType.DOUBLE));
+        }
+        Header header = new Header(Field.KEY, fields);
+        List<Row> rows = new ArrayList<>();
+        for (long i = from; i < to; i++) {
+            Long a = i % 3 == 0 ? null : i;
+            if (withB) {
+                Double b = i >= 8 && i < 14 ? null : i * 0.5;
+                rows.add(new Row(header, i, new Object[] {a, b}));
+            } else {
+                rows.add(new Row(header, i, new Object[] {a}));
+            }
+        }
+        return new Table(header, rows);
+    }
+
+    @Test
+    public void testPartialAggregateMerge() throws PhysicalException {
+        OperatorMemoryExecutor executor = getExecutor();
+        Map<String, Value> params = new HashMap<>();
+        params.put(PARAM_PATHS, new Value("a.*"));
+        List<SetMappingFunction> functions =
+                Arrays.asList(
+                        Avg.getInstance(),
+                        Sum.getInstance(),
+                        Count.getInstance(),
+                        Max.getInstance(),
+                        Min.getInstance(),
+                        FirstValue.getInstance(),
+                        LastValue.getInstance());
+        // 各分片的范围，第二个分片中没有 a.b 列，第三个分片没有数据
+        long[][] fragments = new long[][] {{1, 8}, {8, 14}, {14, 14}, {14, 20}};
+        for (SetMappingFunction function : functions) {
+            FunctionCall functionCall = new FunctionCall(function, params);
+            RowStream target =
+                    executor.executeUnaryOperator(
+                            new SetTransform(EmptySource.EMPTY_SOURCE, functionCall),
+                            generateTableForPartialAggregate(1, 20, true));
+
+            List<RowStream> streams = new ArrayList<>();
+            List<Source> sources = new ArrayList<>();
+            for (long[] fragment : fragments) {
+                for (Function partial : PartialAggregateUtils.getPartialFunctions(functionCall)) {
+                    streams.add(
+                            executor.executeUnaryOperator(
+                                    new SetTransform(
+                                            EmptySource.EMPTY_SOURCE,
+                                            new FunctionCall(partial, params)),
+                                    generateTableForPartialAggregate(
+                                            fragment[0], fragment[1], fragment[0] != 8)));
+                    sources.add(EmptySource.EMPTY_SOURCE);
+                }
+            }
+            RowStream stream =
+                    executor.executeMultipleOperator(
+                            new PartialAggregateMerge(sources, functionCall), streams);
+
+            assertEquals(target.getHeader().getFields(), stream.getHeader().getFields());
+            assertTrue(stream.hasNext());
+            assertEquals(
+                    Arrays.asList(target.next().getValues()),
+                    Arrays.asList(stream.next().getValues()));
+            assertFalse(stream.hasNext());
+        }
+    }
+
     // for debug
     private Table transformToTable(RowStream stream) throws PhysicalException {
         if (stream instanceof Table) {
@@ -1762,6 +1933,65 @@ public abstract class AbstractOperatorMemoryExecutorTest {
         assertEquals(table.getRowSize(), index);
     }
 
+    @Test
+    public void testSlidingWindowDownsample() throws Exception {
+        Header header =
+                new Header(Field.KEY, Collections.singletonList(new Field("a.a.b", DataType.LONG)));
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 60; i++) {
+            rows.add(
+                    new Row(
+                            header,
+                            i * 3L,
+                            new Object[] {i % 5 == 0 ? null : (long) (i * 7 % 13)}));
+        }
+        Map<String, Value> params = new HashMap<>();
+        params.put(PARAM_PATHS, new Value("a.a.b"));
+        TimeRange timeRange = new TimeRange(0, 180);
+        long[][] windows = new long[][] {{10, 4}, {4, 10}, {6, 6}, {9, 3}};
+        for (SetMappingFunction function :
+                Arrays.asList(Avg.getInstance(), Max.getInstance(), Count.getInstance())) {
+            for (long[] window : windows) {
+                long precision = window[0];
+                long slideDistance = window[1];
+                // 逐个窗口物化后计算，作为增量计算的对照
+                List<Row> expected = new ArrayList<>();
+                long n = (long) (Math.ceil((double) (179 - precision + 1) / slideDistance) + 1);
+                for (long i = 0; i < n; i++) {
+                    long start = i * slideDistance;
+                    List<Row> windowRows = new ArrayList<>();
+                    for (Row row : rows) {
+                        if (row.getKey() >= start && row.getKey() < start + precision) {
+                            windowRows.add(row);
+                        }
+                    }
+                    if (!windowRows.isEmpty()) {
+                        Row row = function.transform(new Table(header, windowRows), params);
+                        expected.add(new Row(header, start, row.getValues()));
+                    }
+                }
+
+                Downsample downsample =
+                        new Downsample(
+                                EmptySource.EMPTY_SOURCE,
+                                precision,
+                                slideDistance,
+                                new FunctionCall(function, params),
+                                timeRange);
+                RowStream stream =
+                        getExecutor().executeUnaryOperator(downsample, new Table(header, rows));
+                for (Row row : expected) {
+                    assertTrue(stream.hasNext());
+                    Row targetRow = stream.next();
+                    assertEquals(row.getKey(), targetRow.getKey());
+                    assertEquals(
+                            Arrays.asList(row.getValues()), Arrays.asList(targetRow.getValues()));
+                }
+                assertFalse(stream.hasNext());
+            }
+        }
+    }
+
     @Test(expected = InvalidOperatorParameterException.class)
     public void testDownsampleWithoutTimestamp() throws PhysicalException {
         Table table = generateTableForUnaryOperator(false);
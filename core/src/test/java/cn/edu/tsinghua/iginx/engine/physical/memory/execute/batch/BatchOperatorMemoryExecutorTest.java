@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.batch;
+
+import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_PATHS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.AbstractOperatorMemoryExecutorTest;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.OperatorMemoryExecutor;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream.DownsampleLazyStream;
+import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.BatchToRowStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowToBatchStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
+import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Count;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.FirstValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.LastValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Max;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Min;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Sum;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
+import cn.edu.tsinghua.iginx.engine.shared.source.Source;
+import cn.edu.tsinghua.iginx.engine.shared.source.SourceType;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class BatchOperatorMemoryExecutorTest extends AbstractOperatorMemoryExecutorTest {
+
+    private static class EmptySource implements Source {
+
+        public static final EmptySource EMPTY_SOURCE = new EmptySource();
+
+        @Override
+        public SourceType getType() {
+            return null;
+        }
+
+        @Override
+        public Source copy() {
+            return null;
+        }
+    }
+
+    private final BatchOperatorMemoryExecutor executor;
+
+    public BatchOperatorMemoryExecutorTest() {
+        this.executor = BatchOperatorMemoryExecutor.getInstance();
+    }
+
+    @Override
+    protected OperatorMemoryExecutor getExecutor() {
+        return executor;
+    }
+
+    private Table generateTableWithNulls() {
+        Header header =
+                new Header(
+                        Field.KEY,
+                        Arrays.asList(
+                                new Field("a.a.b", DataType.LONG),
+                                new Field("a.a.c", DataType.DOUBLE)));
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            rows.add(
+                    new Row(
+                            header,
+                            i * 2,
+                            new Object[] {
+                                i % 7 == 0 ? null : (long) i, i % 3 == 0 ? null : i * 0.5
+                            }));
+        }
+        return new Table(header, rows);
+    }
+
+    @Test
+    public void testDownsampleAcrossBatches() throws PhysicalException {
+        List<SetMappingFunction> functions =
+                Arrays.asList(
+                        Avg.getInstance(),
+                        Sum.getInstance(),
+                        Count.getInstance(),
+                        Max.getInstance(),
+                        Min.getInstance(),
+                        FirstValue.getInstance(),
+                        LastValue.getInstance());
+        for (SetMappingFunction function : functions) {
+            for (int batchSize = 1; batchSize <= 8; batchSize++) {
+                Map<String, Value> params = new HashMap<>();
+                params.put(PARAM_PATHS, new Value("a.a.*"));
+                Downsample downsample =
+                        new Downsample(
+                                EmptySource.EMPTY_SOURCE,
+                                5,
+                                5,
+                                new FunctionCall(function, params),
+                                new TimeRange(1, 100));
+
+                RowStream expected = new DownsampleLazyStream(downsample, generateTableWithNulls());
+                RowStream actual =
+                        new BatchToRowStreamWrapper(
+                                new DownsampleBatchStream(
+                                        downsample,
+                                        new RowToBatchStreamWrapper(
+                                                generateTableWithNulls(), batchSize),
+                                        3));
+
+                assertEquals(expected.getHeader(), actual.getHeader());
+                while (expected.hasNext()) {
+                    assertTrue(actual.hasNext());
+                    Row expectedRow = expected.next();
+                    Row actualRow = actual.next();
+                    assertEquals(expectedRow.getKey(), actualRow.getKey());
+                    assertArrayEquals(expectedRow.getValues(), actualRow.getValues());
+                }
+                assertFalse(actual.hasNext());
+            }
+        }
+    }
+}
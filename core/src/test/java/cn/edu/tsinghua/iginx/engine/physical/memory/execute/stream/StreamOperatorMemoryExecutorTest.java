@@ -18,11 +18,78 @@
  */
 package cn.edu.tsinghua.iginx.engine.physical.memory.execute.stream;
 
+import static cn.edu.tsinghua.iginx.engine.shared.Constants.PARAM_PATHS;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.AbstractOperatorMemoryExecutorTest;
 import cn.edu.tsinghua.iginx.engine.physical.memory.execute.OperatorMemoryExecutor;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils.RowUtils;
+import cn.edu.tsinghua.iginx.engine.shared.Constants;
+import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.function.Accumulator;
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
+import cn.edu.tsinghua.iginx.engine.shared.function.SetMappingFunction;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Count;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.FirstValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.LastValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Max;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Min;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Sum;
+import cn.edu.tsinghua.iginx.engine.shared.operator.BinaryOperator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
+import cn.edu.tsinghua.iginx.engine.shared.operator.GroupBy;
+import cn.edu.tsinghua.iginx.engine.shared.operator.InnerJoin;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Limit;
+import cn.edu.tsinghua.iginx.engine.shared.operator.OuterJoin;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Select;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Sort;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.BoolFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.PathFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.JoinAlgType;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OuterJoinType;
+import cn.edu.tsinghua.iginx.engine.shared.source.Source;
+import cn.edu.tsinghua.iginx.engine.shared.source.SourceType;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.Test;
 
 public class StreamOperatorMemoryExecutorTest extends AbstractOperatorMemoryExecutorTest {
 
+    private static class EmptySource implements Source {
+
+        public static final EmptySource EMPTY_SOURCE = new EmptySource();
+
+        @Override
+        public SourceType getType() {
+            return null;
+        }
+
+        @Override
+        public Source copy() {
+            return null;
+        }
+    }
+
     private final StreamOperatorMemoryExecutor executor;
 
     public StreamOperatorMemoryExecutorTest() {
@@ -33,4 +100,373 @@ public class StreamOperatorMemoryExecutorTest extends AbstractOperatorMemoryExec
     protected OperatorMemoryExecutor getExecutor() {
         return executor;
     }
+
+    private List<Row> generateRows(int size) {
+        Header header =
+                new Header(
+                        Field.KEY,
+                        Arrays.asList(
+                                new Field("a.a", DataType.LONG),
+                                new Field("a.b", DataType.BINARY)));
+        Random random = new Random(0);
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            rows.add(
+                    new Row(
+                            header,
+                            random.nextInt(size),
+                            new Object[] {
+                                (long) random.nextInt(16), ("v" + random.nextInt(8)).getBytes()
+                            }));
+        }
+        return rows;
+    }
+
+    private void assertRowsEqual(List<Row> expected, RowStream stream) throws PhysicalException {
+        for (Row row : expected) {
+            Row actual = stream.next();
+            assertEquals(row.getKey(), actual.getKey());
+            assertEquals(row.getValue(0), actual.getValue(0));
+            assertArrayEquals((byte[]) row.getValue(1), (byte[]) actual.getValue(1));
+        }
+        assertFalse(stream.hasNext());
+        stream.close();
+    }
+
+    @Test
+    public void testExternalSort() throws PhysicalException {
+        List<Row> rows = generateRows(1000);
+        for (Sort.SortType sortType : Sort.SortType.values()) {
+            Sort sort =
+                    new Sort(EmptySource.EMPTY_SOURCE, Collections.singletonList("a.a"), sortType);
+            List<Row> expected = new ArrayList<>(rows);
+            RowUtils.sortRows(expected, sortType == Sort.SortType.ASC, sort.getSortByCols());
+            for (long budget : new long[] {1, 4096, Long.MAX_VALUE}) {
+                RowStream stream =
+                        new SortLazyStream(
+                                sort, new Table(rows.get(0).getHeader(), rows), budget, "");
+                assertRowsEqual(expected, stream);
+            }
+        }
+    }
+
+    @Test
+    public void testTopNSort() throws PhysicalException {
+        List<Row> rows = generateRows(1000);
+        Sort sort =
+                new Sort(
+                        EmptySource.EMPTY_SOURCE,
+                        Arrays.asList(Constants.KEY, "a.a"),
+                        Sort.SortType.DESC);
+        List<Row> expected = new ArrayList<>(rows);
+        RowUtils.sortRows(expected, false, sort.getSortByCols());
+        Limit limit = new Limit(EmptySource.EMPTY_SOURCE, 10, 5);
+        RowStream stream =
+                executor.executeUnaryOperator(
+                        limit,
+                        executor.executeUnaryOperator(
+                                sort, new Table(rows.get(0).getHeader(), rows)));
+        assertRowsEqual(expected.subList(5, 15), stream);
+    }
+
+    private List<String> collectJoinResult(BinaryOperator join, List<Row> rowsA, List<Row> rowsB)
+            throws PhysicalException {
+        RowStream stream =
+                executor.executeBinaryOperator(
+                        join,
+                        new Table(rowsA.get(0).getHeader(), rowsA),
+                        new Table(rowsB.get(0).getHeader(), rowsB));
+        List<String> result = new ArrayList<>();
+        while (stream.hasNext()) {
+            result.add(Arrays.toString(stream.next().getValues()));
+        }
+        stream.close();
+        Collections.sort(result);
+        return result;
+    }
+
+    private List<BinaryOperator> createJoins(JoinAlgType joinAlgType) {
+        return Arrays.asList(
+                new InnerJoin(
+                        EmptySource.EMPTY_SOURCE,
+                        EmptySource.EMPTY_SOURCE,
+                        "a",
+                        "b",
+                        null,
+                        Arrays.asList("k", "m"),
+                        false,
+                        joinAlgType),
+                new OuterJoin(
+                        EmptySource.EMPTY_SOURCE,
+                        EmptySource.EMPTY_SOURCE,
+                        "a",
+                        "b",
+                        OuterJoinType.FULL,
+                        new PathFilter("a.v", Op.E, "b.k"),
+                        Collections.emptyList(),
+                        false,
+                        joinAlgType));
+    }
+
+    @Test
+    public void testHashJoinWithSpill() throws PhysicalException {
+        Header headerA =
+                new Header(
+                        Field.KEY,
+                        Arrays.asList(
+                                new Field("a.k", DataType.LONG),
+                                new Field("a.m", DataType.INTEGER),
+                                new Field("a.v", DataType.DOUBLE)));
+        Header headerB =
+                new Header(
+                        Field.KEY,
+                        Arrays.asList(
+                                new Field("b.k", DataType.INTEGER),
+                                new Field("b.m", DataType.LONG),
+                                new Field("b.w", DataType.DOUBLE)));
+        Random random = new Random(0);
+        List<Row> rowsA = new ArrayList<>();
+        for (int i = 0; i < 150; i++) {
+            rowsA.add(
+                    new Row(
+                            headerA,
+                            i,
+                            new Object[] {(long) random.nextInt(20), random.nextInt(3), i * 0.5}));
+        }
+        List<Row> rowsB = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            rowsB.add(
+                    new Row(
+                            headerB,
+                            i,
+                            new Object[] {random.nextInt(25), (long) random.nextInt(3), i * 0.25}));
+        }
+
+        Config config = ConfigDescriptor.getInstance().getConfig();
+        long memoryBudget = config.getJoinMemoryBudget();
+        List<BinaryOperator> hashJoins = createJoins(JoinAlgType.HashJoin);
+        List<BinaryOperator> nestedLoopJoins = createJoins(JoinAlgType.NestedLoopJoin);
+        for (int i = 0; i < hashJoins.size(); i++) {
+            List<String> expected = collectJoinResult(nestedLoopJoins.get(i), rowsA, rowsB);
+            try {
+                config.setJoinMemoryBudget(Long.MAX_VALUE);
+                assertEquals(expected, collectJoinResult(hashJoins.get(i), rowsA, rowsB));
+                // 构建侧超出内存预算，两侧均按连接键分区溢写
+                config.setJoinMemoryBudget(1);
+                assertEquals(expected, collectJoinResult(hashJoins.get(i), rowsA, rowsB));
+            } finally {
+                config.setJoinMemoryBudget(memoryBudget);
+            }
+        }
+    }
+
+    private List<String> collectRows(RowStream stream) throws PhysicalException {
+        List<String> result = new ArrayList<>();
+        while (stream.hasNext()) {
+            Object[] values = stream.next().getValues().clone();
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] instanceof byte[]) {
+                    values[i] = new String((byte[]) values[i]);
+                }
+            }
+            result.add(Arrays.toString(values));
+        }
+        stream.close();
+        return result;
+    }
+
+    private List<FunctionCall> createAggregateCalls() {
+        List<FunctionCall> functionCalls = new ArrayList<>();
+        List<SetMappingFunction> functions =
+                Arrays.asList(
+                        Avg.getInstance(),
+                        Sum.getInstance(),
+                        Count.getInstance(),
+                        Max.getInstance(),
+                        Min.getInstance(),
+                        FirstValue.getInstance(),
+                        LastValue.getInstance());
+        for (int i = 0; i < functions.size(); i++) {
+            Map<String, Value> params = new HashMap<>();
+            params.put(PARAM_PATHS, new Value(i % 2 == 0 ? "a.v" : "a.w"));
+            functionCalls.add(new FunctionCall(functions.get(i), params));
+        }
+        return functionCalls;
+    }
+
+    private List<Row> generateGroupRows(Header header, int size) {
+        Random random = new Random(0);
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            rows.add(
+                    new Row(
+                            header,
+                            i,
+                            new Object[] {
+                                random.nextInt(10) == 0 ? null : 1L + random.nextInt(60),
+                                ("s" + random.nextInt(3)).getBytes(),
+                                i * 0.5,
+                                random.nextInt(5) == 0 ? null : random.nextInt(100)
+                            }));
+        }
+        return rows;
+    }
+
+    @Test
+    public void testGroupByWithSpill() throws PhysicalException {
+        Header header =
+                new Header(
+                        Field.KEY,
+                        Arrays.asList(
+                                new Field("a.g", DataType.LONG),
+                                new Field("a.s", DataType.BINARY),
+                                new Field("a.v", DataType.DOUBLE),
+                                new Field("a.w", DataType.INTEGER)));
+        List<Row> rows = generateGroupRows(header, 500);
+        for (List<String> cols :
+                Arrays.asList(Collections.singletonList("a.g"), Arrays.asList("a.g", "a.s"))) {
+            GroupBy groupBy = new GroupBy(EmptySource.EMPTY_SOURCE, cols, createAggregateCalls());
+            List<Row> cached = RowUtils.cacheGroupByResult(groupBy, new Table(header, rows));
+            List<String> expected = collectRows(new Table(cached.get(0).getHeader(), cached));
+
+            RowStream stream =
+                    new GroupByLazyStream(groupBy, new Table(header, rows), Long.MAX_VALUE, "");
+            assertEquals(cached.get(0).getHeader().getFields(), stream.getHeader().getFields());
+            assertEquals(expected, collectRows(stream));
+
+            // 分组表超出内存预算，新出现的分组按哈希分区溢写后逐个分区聚合
+            List<String> spilled =
+                    collectRows(new GroupByLazyStream(groupBy, new Table(header, rows), 1, ""));
+            Collections.sort(expected);
+            Collections.sort(spilled);
+            assertEquals(expected, spilled);
+        }
+    }
+
+    @Test
+    public void testAccumulatorMerge() throws Exception {
+        Header header =
+                new Header(
+                        Field.KEY,
+                        Arrays.asList(
+                                new Field("a.g", DataType.LONG),
+                                new Field("a.s", DataType.BINARY),
+                                new Field("a.v", DataType.DOUBLE),
+                                new Field("a.w", DataType.INTEGER)));
+        List<Row> rows = generateGroupRows(header, 100);
+        for (FunctionCall functionCall : createAggregateCalls()) {
+            SetMappingFunction function = (SetMappingFunction) functionCall.getFunction();
+            Row expected = function.transform(new Table(header, rows), functionCall.getParams());
+
+            Accumulator accumulator = function.createAccumulator(header, functionCall.getParams());
+            Object state = accumulator.init();
+            Object other = accumulator.init();
+            for (int i = 0; i < rows.size(); i++) {
+                accumulator.accumulate(i < 40 ? state : other, rows.get(i));
+            }
+            accumulator.merge(state, other);
+            assertArrayEquals(expected.getValues(), accumulator.finish(state));
+        }
+    }
+
+    @Test
+    public void testBatchSlidingWindowDownsample() throws PhysicalException {
+        Header header =
+                new Header(Field.KEY, Collections.singletonList(new Field("a.v", DataType.DOUBLE)));
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < 10000; i++) {
+            rows.add(new Row(header, i * 2L, new Object[] {i % 7 == 0 ? null : i * 0.5}));
+        }
+        Map<String, Value> params = new HashMap<>();
+        params.put(PARAM_PATHS, new Value("a.v"));
+        for (FunctionCall functionCall : createAggregateCalls()) {
+            if (functionCall.getParams().get(PARAM_PATHS).getBinaryVAsString().equals("a.w")) {
+                functionCall = new FunctionCall(functionCall.getFunction(), params);
+            }
+            Downsample downsample =
+                    new Downsample(
+                            EmptySource.EMPTY_SOURCE,
+                            100,
+                            30,
+                            functionCall,
+                            new TimeRange(0, 20000));
+            // 列式批执行与逐行执行的窗格增量计算结果一致
+            List<String> expected =
+                    collectRows(executor.executeUnaryOperator(downsample, new Table(header, rows)));
+            List<String> actual =
+                    collectRows(
+                            executor.executeUnaryOperators(
+                                    Collections.singletonList(downsample),
+                                    new Table(header, rows)));
+            assertEquals(expected, actual);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void testNestedPrefetch() throws PhysicalException {
+        Header header =
+                new Header(Field.KEY, Collections.singletonList(new Field("a.v", DataType.LONG)));
+        List<Row> rows = new ArrayList<>();
+        for (long i = 0; i < 1000; i++) {
+            rows.add(new Row(header, i, new Object[] {i}));
+        }
+        // 嵌套层数远多于预取线程数时仍能读出全部数据
+        RowStream stream = new Table(header, rows);
+        for (int i = 0; i < 64; i++) {
+            stream =
+                    new PrefetchRowStream(
+                            new SelectLazyStream(
+                                    new Select(
+                                            EmptySource.EMPTY_SOURCE, new BoolFilter(true), null),
+                                    stream),
+                            7,
+                            2);
+        }
+        long expected = 0;
+        while (stream.hasNext()) {
+            assertEquals(expected++, stream.next().getKey());
+        }
+        assertEquals(1000, expected);
+        stream.close();
+
+        RowStream failing =
+                new PrefetchRowStream(
+                        new RowStream() {
+                            private int index = 0;
+
+                            @Override
+                            public Header getHeader() {
+                                return header;
+                            }
+
+                            @Override
+                            public void close() {}
+
+                            @Override
+                            public boolean hasNext() throws PhysicalException {
+                                if (index == 50) {
+                                    throw new PhysicalException("storage failure");
+                                }
+                                return true;
+                            }
+
+                            @Override
+                            public Row next() {
+                                return rows.get(index++);
+                            }
+                        },
+                        16,
+                        2);
+        int count = 0;
+        try {
+            while (failing.hasNext()) {
+                failing.next();
+                count++;
+            }
+            fail();
+        } catch (PhysicalException e) {
+            assertEquals("storage failure", e.getMessage());
+        }
+        assertEquals(48, count);
+    }
 }
@@ -0,0 +1,44 @@
+package cn.edu.tsinghua.iginx.engine.physical.memory.execute.utils;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import org.junit.Test;
+
+public class RowSpillFileTest {
+
+    private static final Header header =
+            new Header(Field.KEY, Collections.singletonList(new Field("a.a", DataType.LONG)));
+
+    @Test
+    public void testCleanStaleFiles() throws IOException, PhysicalException {
+        File dir = Files.createTempDirectory("spill").toFile();
+        File stale = new File(dir, "iginx-spill-1.tmp");
+        File other = new File(dir, "other.tmp");
+        assertTrue(stale.createNewFile());
+        assertTrue(other.createNewFile());
+        assertTrue(stale.setLastModified(0));
+        assertTrue(other.setLastModified(0));
+
+        try (RowSpillFile active = new RowSpillFile(header, dir.getPath())) {
+            active.write(new Row(header, 1, new Object[] {1L}));
+            RowSpillFile.cleanStaleFiles(dir.getPath());
+
+            // 只删除启动前遗留的溢写文件，正在使用的溢写文件不受影响
+            assertFalse(stale.exists());
+            assertTrue(other.exists());
+            assertTrue(active.hasNext());
+            assertEquals(1L, active.next().getValue(0));
+        }
+        assertTrue(other.delete());
+        assertTrue(dir.delete());
+    }
+}
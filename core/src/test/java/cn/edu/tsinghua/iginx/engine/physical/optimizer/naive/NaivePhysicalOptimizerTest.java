@@ -0,0 +1,176 @@
+package cn.edu.tsinghua.iginx.engine.physical.optimizer.naive;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.conf.Config;
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.task.BinaryMemoryPhysicalTask;
+import cn.edu.tsinghua.iginx.engine.physical.task.MultipleMemoryPhysicalTask;
+import cn.edu.tsinghua.iginx.engine.physical.task.PhysicalTask;
+import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
+import cn.edu.tsinghua.iginx.engine.physical.task.UnaryMemoryPhysicalTask;
+import cn.edu.tsinghua.iginx.engine.shared.Constants;
+import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
+import cn.edu.tsinghua.iginx.engine.shared.operator.SetTransform;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Union;
+import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
+import cn.edu.tsinghua.iginx.engine.shared.source.FragmentSource;
+import cn.edu.tsinghua.iginx.engine.shared.source.OperatorSource;
+import cn.edu.tsinghua.iginx.metadata.entity.FragmentMeta;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class NaivePhysicalOptimizerTest {
+
+    private final Config config = ConfigDescriptor.getInstance().getConfig();
+
+    private boolean enablePushDown;
+
+    @Before
+    public void setUp() {
+        enablePushDown = config.isEnablePushDown();
+        config.setEnablePushDown(true);
+    }
+
+    @After
+    public void tearDown() {
+        config.setEnablePushDown(enablePushDown);
+    }
+
+    private static Project project(long start, long end) {
+        return new Project(
+                new FragmentSource(new FragmentMeta("a", "b", start, end)),
+                Collections.singletonList("a.a"),
+                null);
+    }
+
+    private static Downsample downsample(Operator source, long precision, TimeRange range) {
+        Map<String, Value> params = new HashMap<>();
+        params.put(Constants.PARAM_PATHS, new Value("a.a"));
+        return new Downsample(
+                new OperatorSource(source),
+                precision,
+                precision,
+                new FunctionCall(Avg.getInstance(), params),
+                range);
+    }
+
+    /** 返回所有下推到存储任务中的降采样 */
+    private static List<Downsample> pushedDownsamples(PhysicalTask task) {
+        List<Downsample> downsamples = new ArrayList<>();
+        collect(task, downsamples);
+        return downsamples;
+    }
+
+    private static void collect(PhysicalTask task, List<Downsample> downsamples) {
+        if (task instanceof StoragePhysicalTask) {
+            for (Operator operator : task.getOperators()) {
+                if (operator.getType() == OperatorType.Downsample) {
+                    downsamples.add((Downsample) operator);
+                }
+            }
+        } else if (task instanceof UnaryMemoryPhysicalTask) {
+            collect(((UnaryMemoryPhysicalTask) task).getParentTask(), downsamples);
+        } else if (task instanceof BinaryMemoryPhysicalTask) {
+            collect(((BinaryMemoryPhysicalTask) task).getParentTaskA(), downsamples);
+            collect(((BinaryMemoryPhysicalTask) task).getParentTaskB(), downsamples);
+        } else if (task instanceof MultipleMemoryPhysicalTask) {
+            for (PhysicalTask parent : ((MultipleMemoryPhysicalTask) task).getParentTasks()) {
+                collect(parent, downsamples);
+            }
+        }
+    }
+
+    @Test
+    public void testClampSingleFragment() {
+        PhysicalTask task =
+                NaivePhysicalOptimizer.getInstance()
+                        .optimize(downsample(project(500, 2000), 30, new TimeRange(0, 1000)));
+        List<Downsample> downsamples = pushedDownsamples(task);
+        assertEquals(1, downsamples.size());
+        // 起点对齐到包含分片起点的窗口，终点取查询范围与分片的交集
+        assertEquals(new TimeRange(480, 1000), downsamples.get(0).getTimeRange());
+    }
+
+    @Test
+    public void testUnboundedNotPushedDown() {
+        PhysicalTask task =
+                NaivePhysicalOptimizer.getInstance()
+                        .optimize(
+                                downsample(
+                                        project(0, Long.MAX_VALUE),
+                                        10,
+                                        new TimeRange(0, Long.MAX_VALUE)));
+        assertTrue(task instanceof UnaryMemoryPhysicalTask);
+        assertTrue(pushedDownsamples(task).isEmpty());
+    }
+
+    @Test
+    public void testClampSplitFragments() {
+        Union union =
+                new Union(
+                        new OperatorSource(project(0, 105)),
+                        new OperatorSource(project(105, Long.MAX_VALUE)));
+        PhysicalTask task =
+                NaivePhysicalOptimizer.getInstance()
+                        .optimize(downsample(union, 10, new TimeRange(0, Long.MAX_VALUE)));
+        List<Downsample> downsamples = pushedDownsamples(task);
+        // 只有第一个分片内部的窗口被下推，最新分片没有上界，与跨越边界的窗口一起在内存中计算
+        assertEquals(1, downsamples.size());
+        assertEquals(new TimeRange(0, 100), downsamples.get(0).getTimeRange());
+
+        task =
+                NaivePhysicalOptimizer.getInstance()
+                        .optimize(downsample(union.copy(), 10, new TimeRange(0, 251)));
+        downsamples = pushedDownsamples(task);
+        assertEquals(2, downsamples.size());
+        assertEquals(new TimeRange(0, 100), downsamples.get(0).getTimeRange());
+        assertEquals(new TimeRange(110, 250), downsamples.get(1).getTimeRange());
+    }
+
+    @Test
+    public void testSplitSetTransform() {
+        Union union =
+                new Union(
+                        new OperatorSource(project(100, Long.MAX_VALUE)),
+                        new OperatorSource(project(0, 100)));
+        Map<String, Value> params = new HashMap<>();
+        params.put(Constants.PARAM_PATHS, new Value("a.a"));
+        PhysicalTask task =
+                NaivePhysicalOptimizer.getInstance()
+                        .optimize(
+                                new SetTransform(
+                                        new OperatorSource(union),
+                                        new FunctionCall(Avg.getInstance(), params)));
+        assertTrue(task instanceof MultipleMemoryPhysicalTask);
+        assertEquals(OperatorType.PartialAggregateMerge, task.getOperators().get(0).getType());
+
+        // 每个分片上分别下推 sum 与 count，并按分片的起始时间排列
+        List<String> partials = new ArrayList<>();
+        for (PhysicalTask parent : ((MultipleMemoryPhysicalTask) task).getParentTasks()) {
+            assertTrue(parent instanceof StoragePhysicalTask);
+            List<Operator> operators = parent.getOperators();
+            assertEquals(3, operators.size());
+            FragmentSource source = (FragmentSource) ((Project) operators.get(0)).getSource();
+            SetTransform setTransform = (SetTransform) operators.get(2);
+            partials.add(
+                    source.getFragment().getTimeInterval().getStartTime()
+                            + " "
+                            + setTransform.getFunctionCall().getFunction().getIdentifier());
+        }
+        assertEquals(Arrays.asList("0 sum", "0 count", "100 sum", "100 count"), partials);
+    }
+}
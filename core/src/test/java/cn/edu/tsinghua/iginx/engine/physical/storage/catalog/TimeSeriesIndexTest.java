@@ -0,0 +1,109 @@
+package cn.edu.tsinghua.iginx.engine.physical.storage.catalog;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.AndTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.BasePreciseTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.BaseTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.OrTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.PreciseTagFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.tag.WithoutTagFilter;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TimeSeriesIndexTest {
+
+    private TimeSeriesIndex index;
+
+    private static Map<String, String> tags(String... kvs) {
+        Map<String, String> tags = new HashMap<>();
+        for (int i = 0; i < kvs.length; i += 2) {
+            tags.put(kvs[i], kvs[i + 1]);
+        }
+        return tags;
+    }
+
+    private static Set<String> paths(List<Timeseries> series) {
+        return series.stream().map(Timeseries::getPath).collect(Collectors.toSet());
+    }
+
+    @Before
+    public void setUp() {
+        index = new TimeSeriesIndex();
+        index.add(new Timeseries("a.b.c", DataType.LONG));
+        index.add(new Timeseries("a.b.d", DataType.DOUBLE, tags("host", "h1")));
+        index.add(new Timeseries("a.bc", DataType.LONG, tags("host", "h2", "dc", "x")));
+        index.add(new Timeseries("e.f", DataType.BINARY, tags("host", "h1", "dc", "y")));
+    }
+
+    @Test
+    public void testPathPatterns() {
+        assertEquals(4, index.match(Collections.emptySet(), null).size());
+        assertEquals(1, index.match(Collections.singleton("a.b.c"), null).size());
+        assertEquals(0, index.match(Collections.singleton("a.b"), null).size());
+        assertEquals(2, index.match(Collections.singleton("a.b.*"), null).size());
+        assertEquals(3, index.match(Collections.singleton("a.b*"), null).size());
+        assertEquals(3, index.match(Collections.singleton("*.b*"), null).size());
+        assertEquals(4, index.match(new HashSet<>(Arrays.asList("a.*", "e.f")), null).size());
+    }
+
+    @Test
+    public void testTagFilters() {
+        assertEquals(
+                new HashSet<>(Arrays.asList("a.b.d", "e.f")),
+                paths(index.match(null, new BaseTagFilter("host", "h1"))));
+        assertEquals(3, index.match(null, new BaseTagFilter("host", "h*")).size());
+        assertEquals(
+                1,
+                index.match(
+                                null,
+                                new AndTagFilter(
+                                        Arrays.asList(
+                                                new BaseTagFilter("host", "h1"),
+                                                new BaseTagFilter("dc", "y"))))
+                        .size());
+        assertEquals(
+                2,
+                index.match(
+                                null,
+                                new OrTagFilter(
+                                        Arrays.asList(
+                                                new BaseTagFilter("host", "h2"),
+                                                new BaseTagFilter("dc", "y"))))
+                        .size());
+        assertEquals(
+                1,
+                index.match(
+                                null,
+                                new PreciseTagFilter(
+                                        Collections.singletonList(
+                                                new BasePreciseTagFilter(tags("host", "h1")))))
+                        .size());
+        assertEquals(1, index.match(null, new WithoutTagFilter()).size());
+        assertEquals(
+                1, index.match(Collections.singleton("a.*"), new BaseTagFilter("dc", "*")).size());
+    }
+
+    @Test
+    public void testRemove() {
+        Timeseries series = new Timeseries("a.b.d", DataType.DOUBLE, tags("host", "h1"));
+        assertTrue(index.remove(series));
+        assertFalse(index.remove(series));
+        assertEquals(3, index.size());
+        assertEquals(1, index.match(Collections.singleton("a.b.*"), null).size());
+        assertEquals(1, index.match(null, new BaseTagFilter("host", "h1")).size());
+        assertTrue(index.add(series));
+        assertFalse(index.add(series));
+        assertEquals(4, index.size());
+    }
+}
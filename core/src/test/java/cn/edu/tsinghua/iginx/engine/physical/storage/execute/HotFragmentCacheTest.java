@@ -0,0 +1,255 @@
+package cn.edu.tsinghua.iginx.engine.physical.storage.execute;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.FilterPushDownUtils;
+import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
+import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.ColumnDataView;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.RawData;
+import cn.edu.tsinghua.iginx.engine.shared.data.write.RawDataType;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Insert;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Select;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.source.FragmentSource;
+import cn.edu.tsinghua.iginx.metadata.entity.FragmentMeta;
+import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
+import cn.edu.tsinghua.iginx.monitor.MetricsMonitor;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.Bitmap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.junit.Test;
+
+public class HotFragmentCacheTest {
+
+    private static final FragmentMeta latest = new FragmentMeta("a", "b", 0, Long.MAX_VALUE);
+
+    private static final Header header =
+            new Header(Field.KEY, Collections.singletonList(new Field("a.a", DataType.LONG)));
+
+    // 模拟存储单元中序列 a.a 的数据
+    private final TreeMap<Long, Long> storage = new TreeMap<>();
+
+    private final AtomicInteger backendReads = new AtomicInteger();
+
+    private final List<TimeInterval> readRanges = new ArrayList<>();
+
+    private final Function<StoragePhysicalTask, TaskExecuteResult> backend =
+            task -> {
+                backendReads.incrementAndGet();
+                TimeInterval range = task.getTargetFragment().getTimeInterval();
+                if (task.getOperators().size() > 1) {
+                    range =
+                            FilterPushDownUtils.intersect(
+                                    range, ((Select) task.getOperators().get(1)).getFilter());
+                }
+                readRanges.add(range);
+                List<Row> rows = new ArrayList<>();
+                storage.subMap(range.getStartTime(), range.getEndTime())
+                        .forEach(
+                                (key, value) ->
+                                        rows.add(new Row(header, key, new Object[] {value})));
+                return new TaskExecuteResult(new Table(header, rows));
+            };
+
+    private static StoragePhysicalTask task(FragmentMeta fragment, long start, long end) {
+        List<Operator> operators = new ArrayList<>();
+        operators.add(
+                new Project(new FragmentSource(fragment), Collections.singletonList("a.*"), null));
+        if (start > 0 || end < Long.MAX_VALUE) {
+            operators.add(
+                    new Select(
+                            new FragmentSource(fragment),
+                            new AndFilter(
+                                    Arrays.asList(
+                                            new KeyFilter(Op.GE, start), new KeyFilter(Op.L, end))),
+                            null));
+        }
+        StoragePhysicalTask task = new StoragePhysicalTask(operators, fragment, true, false);
+        task.setStorageUnit("unit0");
+        return task;
+    }
+
+    private static StoragePhysicalTask insert(String path, long... keys) {
+        List<Long> keyList = new ArrayList<>();
+        Object[] values = new Object[keys.length];
+        Bitmap bitmap = new Bitmap(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            keyList.add(keys[i]);
+            values[i] = keys[i];
+            bitmap.mark(i);
+        }
+        RawData data =
+                new RawData(
+                        Collections.singletonList(path),
+                        Collections.singletonList(new HashMap<>()),
+                        keyList,
+                        new Object[] {values},
+                        Collections.singletonList(DataType.LONG),
+                        Collections.singletonList(bitmap),
+                        RawDataType.Column);
+        StoragePhysicalTask task =
+                new StoragePhysicalTask(
+                        Collections.singletonList(
+                                new Insert(
+                                        new FragmentSource(latest),
+                                        new ColumnDataView(data, 0, 1, 0, keys.length))));
+        task.setStorageUnit("unit0");
+        return task;
+    }
+
+    private static List<Long> readAll(TaskExecuteResult result) throws PhysicalException {
+        assertNull(result.getException());
+        RowStream stream = result.getRowStream();
+        List<Long> keys = new ArrayList<>();
+        while (stream.hasNext()) {
+            Row row = stream.next();
+            assertEquals(row.getKey(), row.getValue(0));
+            keys.add(row.getKey());
+        }
+        stream.close();
+        return keys;
+    }
+
+    private void fill(long start, long end) {
+        for (long key = start; key < end; key++) {
+            storage.put(key, key);
+        }
+    }
+
+    @Test
+    public void testCacheable() {
+        assertTrue(HotFragmentCache.isCacheable(task(latest, 0, Long.MAX_VALUE)));
+        assertTrue(HotFragmentCache.isCacheable(task(latest, 10, 20)));
+        assertFalse(HotFragmentCache.isCacheable(insert("a.a", 1)));
+        StoragePhysicalTask dummy = task(latest, 10, 20);
+        dummy.setDummyStorageUnit(true);
+        assertFalse(HotFragmentCache.isCacheable(dummy));
+    }
+
+    @Test
+    public void testHitAfterFill() throws PhysicalException {
+        fill(0, 300);
+        HotFragmentCache cache = new HotFragmentCache(1 << 20, 100, false);
+        assertEquals(300, readAll(cache.execute(task(latest, 0, 300), backend)).size());
+        assertEquals(3, cache.getBlockCount());
+
+        List<Long> keys = readAll(cache.execute(task(latest, 50, 250), backend));
+        assertEquals(200, keys.size());
+        assertEquals(50L, (long) keys.get(0));
+        assertEquals(249L, (long) keys.get(199));
+        assertEquals(1, backendReads.get());
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void testOffHeapHit() throws PhysicalException {
+        fill(0, 300);
+        HotFragmentCache cache = new HotFragmentCache(1 << 20, 100, true);
+        assertEquals(300, readAll(cache.execute(task(latest, 0, 300), backend)).size());
+        List<Long> keys = readAll(cache.execute(task(latest, 0, 300), backend));
+        assertEquals(300, keys.size());
+        assertEquals(299L, (long) keys.get(299));
+        assertEquals(1, backendReads.get());
+    }
+
+    @Test
+    public void testWriteInvalidatesOnlyTouchedBlocks() throws PhysicalException {
+        fill(0, 250);
+        HotFragmentCache cache = new HotFragmentCache(1 << 20, 100, false);
+        assertEquals(250, readAll(cache.execute(task(latest, 0, Long.MAX_VALUE), backend)).size());
+        // [0, 100), [100, 200), [200, 300) 与其后的空区间
+        assertEquals(4, cache.getBlockCount());
+
+        storage.put(270L, 270L);
+        cache.invalidate(insert("a.a", 270));
+        assertEquals(3, cache.getBlockCount());
+
+        List<Long> keys = readAll(cache.execute(task(latest, 0, Long.MAX_VALUE), backend));
+        assertEquals(251, keys.size());
+        assertEquals(270L, (long) keys.get(250));
+        assertEquals(2, backendReads.get());
+        assertEquals(200, readRanges.get(1).getStartTime());
+        assertEquals(1, cache.getPartialHitCount());
+
+        assertEquals(251, readAll(cache.execute(task(latest, 0, Long.MAX_VALUE), backend)).size());
+        assertEquals(2, backendReads.get());
+    }
+
+    @Test
+    public void testNewSeriesInvalidatesEntry() throws PhysicalException {
+        fill(0, 100);
+        HotFragmentCache cache = new HotFragmentCache(1 << 20, 100, false);
+        readAll(cache.execute(task(latest, 0, 100), backend));
+        assertEquals(1, cache.getBlockCount());
+        cache.invalidate(insert("a.a", 1000));
+        assertEquals(1, cache.getBlockCount());
+        cache.invalidate(insert("a.b", 1000));
+        assertEquals(0, cache.getBlockCount());
+    }
+
+    @Test
+    public void testWriteDuringReadIsNotCached() throws PhysicalException {
+        fill(0, 100);
+        HotFragmentCache cache = new HotFragmentCache(1 << 20, 100, false);
+        TaskExecuteResult result = cache.execute(task(latest, 0, 100), backend);
+        cache.invalidate(insert("a.a", 50));
+        assertEquals(100, readAll(result).size());
+        assertEquals(0, cache.getBlockCount());
+    }
+
+    @Test
+    public void testWriteDuringReadSkipsOnlyOverlappedBlocks() throws PhysicalException {
+        fill(0, 300);
+        HotFragmentCache cache = new HotFragmentCache(1 << 20, 100, false);
+        TaskExecuteResult result = cache.execute(task(latest, 0, 300), backend);
+        cache.invalidate(insert("a.a", 150));
+        // 不在查询结果中的序列不影响回填
+        cache.invalidate(insert("b.b", 50));
+        assertEquals(300, readAll(result).size());
+        assertEquals(2, cache.getBlockCount());
+
+        readAll(cache.execute(task(latest, 0, 300), backend));
+        assertEquals(100, readRanges.get(1).getStartTime());
+        assertEquals(1, cache.getPartialHitCount());
+        assertEquals(
+                cache.getPartialHitCount(),
+                (long)
+                        MetricsMonitor.getInstance()
+                                .getMetrics()
+                                .get("hotFragmentCache.partialHit"));
+    }
+
+    @Test
+    public void testEvictColdFragmentFirst() throws PhysicalException {
+        FragmentMeta cold = new FragmentMeta("a", "b", 0, 1000);
+        fill(0, 100);
+        HotFragmentCache cache =
+                new HotFragmentCache(8000, 100, false, fragment -> fragment == latest ? 100 : 0);
+        readAll(cache.execute(task(latest, 0, 100), backend));
+        readAll(cache.execute(task(cold, 0, 100), backend));
+        assertEquals(1, cache.getEvictionCount());
+        assertTrue(cache.getUsedBytes() <= 8000);
+
+        readAll(cache.execute(task(latest, 0, 100), backend));
+        assertEquals(2, backendReads.get());
+        assertEquals(1, cache.getHitCount());
+    }
+}
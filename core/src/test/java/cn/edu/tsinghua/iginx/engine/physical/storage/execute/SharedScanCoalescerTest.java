@@ -0,0 +1,235 @@
+package cn.edu.tsinghua.iginx.engine.physical.storage.execute;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
+import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Delete;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Select;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.source.FragmentSource;
+import cn.edu.tsinghua.iginx.metadata.entity.FragmentMeta;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+public class SharedScanCoalescerTest {
+
+    private static final FragmentMeta fragment = new FragmentMeta("a", "b", 0, 100);
+
+    private static final Header header =
+            new Header(Field.KEY, Collections.singletonList(new Field("a.a", DataType.LONG)));
+
+    private static StoragePhysicalTask task(long key) {
+        Project project =
+                new Project(new FragmentSource(fragment), Collections.singletonList("a.a"), null);
+        Select select = new Select(new FragmentSource(fragment), new KeyFilter(Op.GE, key), null);
+        StoragePhysicalTask task =
+                new StoragePhysicalTask(Arrays.asList(project, select), fragment, true, false);
+        task.setStorageUnit("unit0");
+        return task;
+    }
+
+    private static TaskExecuteResult scan(int rowCount) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(new Row(header, i, new Object[] {(long) i}));
+        }
+        return new TaskExecuteResult(new Table(header, rows));
+    }
+
+    private static List<Long> readAll(RowStream stream) throws PhysicalException {
+        List<Long> keys = new ArrayList<>();
+        while (stream.hasNext()) {
+            keys.add(stream.next().getKey());
+        }
+        stream.close();
+        return keys;
+    }
+
+    @Test
+    public void testShareable() {
+        assertTrue(SharedScanCoalescer.isShareable(task(0)));
+        List<Operator> operators =
+                Collections.singletonList(
+                        new Delete(
+                                new FragmentSource(fragment),
+                                null,
+                                Collections.singletonList("a.a"),
+                                null));
+        assertFalse(SharedScanCoalescer.isShareable(new StoragePhysicalTask(operators)));
+        assertEquals(SharedScanCoalescer.getKey(task(1)), SharedScanCoalescer.getKey(task(1)));
+        assertNotEquals(SharedScanCoalescer.getKey(task(1)), SharedScanCoalescer.getKey(task(2)));
+    }
+
+    @Test
+    public void testConcurrentReadsShareOneScan() throws Exception {
+        SharedScanCoalescer coalescer = new SharedScanCoalescer(1 << 20);
+        AtomicInteger backendReads = new AtomicInteger();
+        CountDownLatch leaderStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger arrived = new AtomicInteger();
+        int readers = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(readers);
+        List<Future<List<Long>>> futures = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            futures.add(
+                    pool.submit(
+                            () -> {
+                                arrived.incrementAndGet();
+                                return readAll(
+                                        coalescer
+                                                .execute(
+                                                        task(0),
+                                                        () -> {
+                                                            backendReads.incrementAndGet();
+                                                            leaderStarted.countDown();
+                                                            try {
+                                                                release.await();
+                                                            } catch (InterruptedException e) {
+                                                                throw new RuntimeException(e);
+                                                            }
+                                                            return scan(5000);
+                                                        })
+                                                .getRowStream());
+                            }));
+            if (i == 0) {
+                leaderStarted.await();
+            }
+        }
+        while (arrived.get() != readers) {
+            Thread.sleep(5);
+        }
+        Thread.sleep(50);
+        release.countDown();
+        for (Future<List<Long>> future : futures) {
+            List<Long> keys = future.get();
+            assertEquals(5000, keys.size());
+            assertEquals(4999L, (long) keys.get(4999));
+        }
+        pool.shutdown();
+        assertEquals(1, backendReads.get());
+        assertEquals(1, coalescer.getScanCount());
+        assertEquals(readers - 1, coalescer.getSharedCount());
+        assertEquals(0, coalescer.getActiveScanCount());
+    }
+
+    @Test
+    public void testExhaustedScanIsNotShared() throws PhysicalException {
+        SharedScanCoalescer coalescer = new SharedScanCoalescer(1 << 20);
+        assertEquals(10, readAll(coalescer.execute(task(0), () -> scan(10)).getRowStream()).size());
+        assertEquals(3, readAll(coalescer.execute(task(0), () -> scan(3)).getRowStream()).size());
+        assertEquals(2, coalescer.getScanCount());
+        assertEquals(0, coalescer.getSharedCount());
+    }
+
+    @Test
+    public void testReplayAfterPartialRead() throws PhysicalException {
+        SharedScanCoalescer coalescer = new SharedScanCoalescer(1 << 20);
+        RowStream first = coalescer.execute(task(0), () -> scan(100)).getRowStream();
+        for (int i = 0; i < 40; i++) {
+            first.next();
+        }
+        // 后加入的任务从头读取缓冲区中的结果
+        RowStream second = coalescer.execute(task(0), () -> scan(0)).getRowStream();
+        assertEquals(100, readAll(second).size());
+        assertEquals(1, coalescer.getSharedCount());
+        assertEquals(60, readAll(first).size());
+    }
+
+    @Test
+    public void testBufferLimitAndWriteStopSharing() throws PhysicalException {
+        SharedScanCoalescer coalescer = new SharedScanCoalescer(256);
+        RowStream first = coalescer.execute(task(0), () -> scan(100)).getRowStream();
+        for (int i = 0; i < 50; i++) {
+            first.next();
+        }
+        assertEquals(0, coalescer.getActiveScanCount());
+        RowStream second = coalescer.execute(task(0), () -> scan(7)).getRowStream();
+        assertEquals(7, readAll(second).size());
+        assertEquals(50, readAll(first).size());
+
+        RowStream third = coalescer.execute(task(0), () -> scan(100)).getRowStream();
+        assertEquals(1, coalescer.getActiveScanCount());
+        StoragePhysicalTask delete =
+                new StoragePhysicalTask(
+                        Collections.singletonList(
+                                new Delete(
+                                        new FragmentSource(fragment),
+                                        null,
+                                        Collections.singletonList("a.a"),
+                                        null)));
+        delete.setStorageUnit("unit0");
+        coalescer.invalidate(delete);
+        assertEquals(0, coalescer.getActiveScanCount());
+        assertEquals(100, readAll(third).size());
+    }
+
+    @Test
+    public void testStalledConsumerIsDetached() throws PhysicalException {
+        SharedScanCoalescer coalescer = new SharedScanCoalescer(1024);
+        AtomicInteger backendReads = new AtomicInteger();
+        RowStream first =
+                coalescer
+                        .execute(
+                                task(0),
+                                () -> {
+                                    backendReads.incrementAndGet();
+                                    return scan(100);
+                                })
+                        .getRowStream();
+        RowStream second =
+                coalescer
+                        .execute(
+                                task(0),
+                                () -> {
+                                    backendReads.incrementAndGet();
+                                    return scan(100);
+                                })
+                        .getRowStream();
+        RowStream stalled =
+                coalescer
+                        .execute(
+                                task(0),
+                                () -> {
+                                    backendReads.incrementAndGet();
+                                    return scan(100);
+                                })
+                        .getRowStream();
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, second.next().getKey());
+        }
+
+        // 另两个任务停止读取时，缓冲区超过上限后读取较慢的任务脱离共享
+        assertEquals(100, readAll(first).size());
+        assertEquals(2, coalescer.getDetachedCount());
+        assertEquals(1, backendReads.get());
+
+        // 脱离的任务重新读取存储，从上次读到的位置继续
+        List<Long> rest = readAll(second);
+        assertEquals(90, rest.size());
+        assertEquals(10L, (long) rest.get(0));
+        List<Long> all = readAll(stalled);
+        assertEquals(100, all.size());
+        assertEquals(0L, (long) all.get(0));
+        assertEquals(99L, (long) all.get(99));
+        assertEquals(3, backendReads.get());
+    }
+}
@@ -0,0 +1,81 @@
+package cn.edu.tsinghua.iginx.engine.physical.storage.utils;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.NotFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.OrFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.ValueFilter;
+import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+public class FilterPushDownUtilsTest {
+
+    @Test
+    public void testSplitAndCombine() {
+        Filter key = new KeyFilter(Op.GE, 10);
+        Filter value = new ValueFilter("a.b", Op.G, new Value(5L));
+        Filter nested =
+                new AndFilter(
+                        Arrays.asList(
+                                key, new AndFilter(Arrays.asList(value, new KeyFilter(Op.L, 20)))));
+        List<Filter> conjuncts = FilterPushDownUtils.splitConjuncts(nested);
+        assertEquals(3, conjuncts.size());
+        assertTrue(FilterPushDownUtils.splitConjuncts(null).isEmpty());
+
+        assertNull(FilterPushDownUtils.combineConjuncts(Collections.emptyList()));
+        assertSame(key, FilterPushDownUtils.combineConjuncts(Collections.singletonList(key)));
+        assertEquals(
+                3,
+                ((AndFilter) FilterPushDownUtils.combineConjuncts(conjuncts)).getChildren().size());
+    }
+
+    @Test
+    public void testClassify() {
+        Filter key = new KeyFilter(Op.GE, 10);
+        Filter value = new ValueFilter("a.b", Op.G, new Value(5L));
+        assertTrue(FilterPushDownUtils.isKeyOnly(key));
+        assertTrue(
+                FilterPushDownUtils.isKeyOnly(
+                        new NotFilter(new OrFilter(Arrays.asList(key, key)))));
+        assertFalse(FilterPushDownUtils.isKeyOnly(new OrFilter(Arrays.asList(key, value))));
+
+        assertTrue(FilterPushDownUtils.isSeriesLocal(value));
+        assertFalse(FilterPushDownUtils.isSeriesLocal(key));
+        assertFalse(FilterPushDownUtils.isSeriesLocal(new ValueFilter("a.*", Op.G, new Value(5L))));
+        assertFalse(
+                FilterPushDownUtils.isSeriesLocal(
+                        new ValueFilter("a.b", Op.E, new Value("x".getBytes()))));
+    }
+
+    @Test
+    public void testKeyInterval() {
+        TimeInterval interval =
+                FilterPushDownUtils.getKeyInterval(
+                        new AndFilter(
+                                Arrays.asList(new KeyFilter(Op.G, 10), new KeyFilter(Op.LE, 20))));
+        assertEquals(11, interval.getStartTime());
+        assertEquals(21, interval.getEndTime());
+
+        interval =
+                FilterPushDownUtils.getKeyInterval(
+                        new OrFilter(
+                                Arrays.asList(new KeyFilter(Op.E, 5), new KeyFilter(Op.E, 50))));
+        assertEquals(5, interval.getStartTime());
+        assertEquals(51, interval.getEndTime());
+
+        interval = FilterPushDownUtils.getKeyInterval(new NotFilter(new KeyFilter(Op.G, 10)));
+        assertEquals(0, interval.getStartTime());
+        assertEquals(Long.MAX_VALUE, interval.getEndTime());
+
+        interval = FilterPushDownUtils.intersect(new TimeInterval(0, 15), new KeyFilter(Op.GE, 20));
+        assertEquals(interval.getStartTime(), interval.getEndTime());
+    }
+}
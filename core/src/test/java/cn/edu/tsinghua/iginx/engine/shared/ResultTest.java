@@ -0,0 +1,110 @@
+package cn.edu.tsinghua.iginx.engine.shared;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.thrift.ColumnarDataSet;
+import cn.edu.tsinghua.iginx.thrift.CompressionType;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.thrift.ExecuteStatementResp;
+import cn.edu.tsinghua.iginx.thrift.FetchResultsResp;
+import cn.edu.tsinghua.iginx.utils.ColumnarDataSetUtils;
+import cn.edu.tsinghua.iginx.utils.RpcUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class ResultTest {
+
+    private static final List<DataType> TYPES =
+            Arrays.asList(
+                    DataType.BOOLEAN,
+                    DataType.INTEGER,
+                    DataType.LONG,
+                    DataType.FLOAT,
+                    DataType.DOUBLE,
+                    DataType.BINARY);
+
+    private static List<Row> rows(Header header, int size) {
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Object[] values =
+                    new Object[] {
+                        i % 2 == 0,
+                        i % 3 == 0 ? null : i * 7 - 100,
+                        i % 4 == 0 ? null : Long.MAX_VALUE - i * 31L,
+                        i % 5 == 0 ? null : i / 3.0f,
+                        i % 6 == 0 ? null : 20.0 + (i % 10) * 0.1,
+                        i % 7 == 0 ? null : ("value" + i).getBytes()
+                    };
+            rows.add(
+                    header.hasKey()
+                            ? new Row(header, 1000L * i + (i % 3), values)
+                            : new Row(header, values));
+        }
+        return rows;
+    }
+
+    private static Header header(boolean hasKey) {
+        List<Field> fields = new ArrayList<>();
+        for (int i = 0; i < TYPES.size(); i++) {
+            fields.add(new Field("a.s" + i, TYPES.get(i)));
+        }
+        return hasKey ? new Header(Field.KEY, fields) : new Header(fields);
+    }
+
+    private static void assertBatch(List<Row> expected, int offset, ColumnarDataSet dataSet) {
+        List<Object[]> actual = ColumnarDataSetUtils.decodeRows(dataSet, TYPES);
+        long[] keys = ColumnarDataSetUtils.decodeKeys(dataSet);
+        for (int i = 0; i < actual.size(); i++) {
+            Row row = expected.get(offset + i);
+            assertArrayEquals(row.getValues(), actual.get(i));
+            if (row.getHeader().hasKey()) {
+                assertEquals(row.getKey(), keys[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testColumnarFetch() throws Exception {
+        for (CompressionType compressionType : CompressionType.values()) {
+            for (boolean hasKey : new boolean[] {true, false}) {
+                Header header = header(hasKey);
+                List<Row> rows = rows(header, 250);
+                Result result = new Result(RpcUtils.SUCCESS);
+                result.setResultStream(new Table(header, rows));
+
+                ExecuteStatementResp resp = result.getExecuteStatementResp(100, compressionType);
+                assertFalse(resp.isSetQueryDataSet());
+                assertEquals(hasKey ? TYPES.size() + 1 : TYPES.size(), resp.getColumnsSize());
+                assertEquals(100, resp.getColumnarDataSet().getRowCount());
+                assertEquals(hasKey, resp.getColumnarDataSet().isSetKeys());
+                assertBatch(rows, 0, resp.getColumnarDataSet());
+
+                FetchResultsResp fetchResp = result.fetch(100, compressionType);
+                assertTrue(fetchResp.isHasMoreResults());
+                assertBatch(rows, 100, fetchResp.getColumnarDataSet());
+
+                fetchResp = result.fetch(100, compressionType);
+                assertFalse(fetchResp.isHasMoreResults());
+                assertEquals(50, fetchResp.getColumnarDataSet().getRowCount());
+                assertBatch(rows, 200, fetchResp.getColumnarDataSet());
+            }
+        }
+    }
+
+    @Test
+    public void testRowFetchUnchanged() throws Exception {
+        Header header = header(true);
+        Result result = new Result(RpcUtils.SUCCESS);
+        result.setResultStream(new Table(header, rows(header, 10)));
+
+        ExecuteStatementResp resp = result.getExecuteStatementResp(10);
+        assertFalse(resp.isSetColumnarDataSet());
+        assertEquals(10, resp.getQueryDataSet().getValuesListSize());
+    }
+}
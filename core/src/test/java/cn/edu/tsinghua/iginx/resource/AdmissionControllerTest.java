@@ -0,0 +1,122 @@
+package cn.edu.tsinghua.iginx.resource;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.shared.RequestContext;
+import cn.edu.tsinghua.iginx.exceptions.StatusCode;
+import cn.edu.tsinghua.iginx.thrift.Status;
+import cn.edu.tsinghua.iginx.utils.RpcUtils;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.Test;
+
+public class AdmissionControllerTest {
+
+    private static Thread submit(
+            AdmissionController controller, RequestContext ctx, List<String> order, String name) {
+        Thread thread =
+                new Thread(
+                        () -> {
+                            try {
+                                if (controller.acquire(ctx) == RpcUtils.SUCCESS) {
+                                    order.add(name);
+                                    controller.release();
+                                }
+                            } catch (InterruptedException ignored) {
+                            }
+                        });
+        thread.start();
+        return thread;
+    }
+
+    private static void awaitQueued(AdmissionController controller, int count)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while (controller.getQueuedCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, controller.getQueuedCount());
+    }
+
+    @Test
+    public void testPriority() {
+        assertEquals(
+                AdmissionController.Priority.NORMAL,
+                AdmissionController.getPriority(new RequestContext(1, " select * from a")));
+        assertEquals(
+                AdmissionController.Priority.LOW,
+                AdmissionController.getPriority(new RequestContext(1, "SELECT * FROM a", true)));
+        assertEquals(
+                AdmissionController.Priority.HIGH,
+                AdmissionController.getPriority(
+                        new RequestContext(1, "insert into a(key, b) values (1, 1)")));
+        assertEquals(
+                AdmissionController.Priority.HIGH,
+                AdmissionController.getPriority(new RequestContext(1, "show cluster info")));
+    }
+
+    @Test
+    public void testQueueAndFairness() throws InterruptedException {
+        AdmissionController controller = new AdmissionController(1, 16, 10000, () -> true);
+        RequestContext holder = new RequestContext(0, "select * from a");
+        assertSame(RpcUtils.SUCCESS, controller.acquire(holder));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread[] threads = new Thread[5];
+        threads[0] = submit(controller, new RequestContext(1, "select * from a"), order, "s1-1");
+        awaitQueued(controller, 1);
+        threads[1] = submit(controller, new RequestContext(1, "select * from a"), order, "s1-2");
+        awaitQueued(controller, 2);
+        threads[2] = submit(controller, new RequestContext(1, "select * from a"), order, "s1-3");
+        awaitQueued(controller, 3);
+        threads[3] = submit(controller, new RequestContext(2, "select * from a"), order, "s2-1");
+        awaitQueued(controller, 4);
+        threads[4] = submit(controller, new RequestContext(3, "show cluster info"), order, "s3-1");
+        awaitQueued(controller, 5);
+
+        controller.release();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals("[s3-1, s1-1, s2-1, s1-2, s1-3]", order.toString());
+        assertEquals(0, controller.getRunningCount());
+        assertEquals(5, controller.getTotalQueuedCount());
+    }
+
+    @Test
+    public void testTimeoutAndQueueLimit() throws InterruptedException {
+        AdmissionController controller = new AdmissionController(1, 1, 100, () -> true);
+        RequestContext ctx = new RequestContext(0, "select * from a");
+        assertSame(RpcUtils.SUCCESS, controller.acquire(ctx));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread waiter = submit(controller, ctx, order, "waiter");
+        awaitQueued(controller, 1);
+        Status status = controller.acquire(ctx);
+        assertEquals(StatusCode.SERVICE_UNAVAILABLE.getStatusCode(), status.getCode());
+        waiter.join();
+        assertTrue(order.isEmpty());
+        assertEquals(1, controller.getTimeoutCount());
+        assertEquals(1, controller.getRejectedCount());
+        controller.release();
+    }
+
+    @Test
+    public void testWaitForResources() throws InterruptedException {
+        AtomicBoolean available = new AtomicBoolean(false);
+        AdmissionController controller = new AdmissionController(4, 16, 10000, available::get);
+        RequestContext ctx = new RequestContext(0, "select * from a");
+        // 没有请求在执行时总是放行，保证系统能够继续推进
+        assertSame(RpcUtils.SUCCESS, controller.acquire(ctx));
+
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread waiter = submit(controller, ctx, order, "waiter");
+        awaitQueued(controller, 1);
+        available.set(true);
+        waiter.join();
+        assertEquals("[waiter]", order.toString());
+        controller.release();
+    }
+}
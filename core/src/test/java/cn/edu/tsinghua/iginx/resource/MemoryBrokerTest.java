@@ -0,0 +1,89 @@
+package cn.edu.tsinghua.iginx.resource;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.MemoryLimitExceededException;
+import org.junit.Test;
+
+public class MemoryBrokerTest {
+
+    private static final long MB = 1 << 20;
+
+    @Test
+    public void testQueryLimit() throws MemoryLimitExceededException {
+        MemoryBroker broker = new MemoryBroker(4 * MB, 16 * MB);
+        QueryMemoryContext query = broker.open(1);
+        MemoryReservation sort = query.newReservation("sort");
+        assertTrue(sort.tryResize(3 * MB));
+        assertFalse(sort.tryResize(5 * MB));
+        assertEquals(3 * MB, sort.getUsedBytes());
+
+        MemoryReservation join = query.newReservation("join");
+        assertTrue(join.tryReserve(MB / 2));
+        try {
+            join.reserve(MB);
+            fail();
+        } catch (MemoryLimitExceededException ignored) {
+        }
+        assertEquals(1, broker.getCancelledCount());
+
+        sort.close();
+        assertEquals(MB, query.getReservedBytes());
+        join.reserve(2 * MB);
+        assertEquals(3 * MB, broker.getReservedBytes());
+
+        query.close();
+        assertEquals(0, broker.getReservedBytes());
+        assertEquals(0, broker.getQueryCount());
+        // 账户关闭后算子的释放不再影响全局预留
+        join.close();
+        assertEquals(0, broker.getReservedBytes());
+    }
+
+    @Test
+    public void testGlobalLimit() {
+        MemoryBroker broker = new MemoryBroker(8 * MB, 10 * MB);
+        MemoryReservation a = broker.open(1).newReservation("a");
+        MemoryReservation b = broker.open(2).newReservation("b");
+        assertTrue(a.tryResize(6 * MB));
+        assertFalse(b.tryResize(6 * MB));
+        assertTrue(broker.hasCapacity());
+        assertTrue(b.tryResize(4 * MB));
+        assertFalse(broker.hasCapacity());
+        a.release(6 * MB);
+        assertTrue(broker.hasCapacity());
+        assertEquals(4 * MB, broker.getReservedBytes());
+    }
+
+    @Test
+    public void testChunkedGrant() {
+        MemoryBroker broker = new MemoryBroker(8 * MB, 8 * MB);
+        QueryMemoryContext query = broker.open(1);
+        MemoryReservation reservation = query.newReservation("sort");
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(reservation.tryReserve(100));
+        }
+        assertEquals(100000, reservation.getUsedBytes());
+        assertEquals(MB, query.getReservedBytes());
+        reservation.forceReserve(8 * MB);
+        assertEquals(9 * MB, query.getReservedBytes());
+        assertEquals(9 * MB, query.getPeakBytes());
+        reservation.close();
+        assertEquals(0, broker.getReservedBytes());
+    }
+
+    @Test
+    public void testUnboundReservation() throws MemoryLimitExceededException {
+        MemoryBroker.bind(null);
+        MemoryReservation reservation = MemoryBroker.newReservation("sort");
+        reservation.reserve(Long.MAX_VALUE / 2);
+        assertEquals(0, reservation.getGrantedBytes());
+
+        MemoryBroker broker = new MemoryBroker(MB, MB);
+        QueryMemoryContext query = broker.open(1);
+        assertNull(MemoryBroker.bind(query));
+        assertFalse(MemoryBroker.newReservation("sort").tryResize(2 * MB));
+        assertSame(query, MemoryBroker.bind(null));
+        assertNull(MemoryBroker.current());
+    }
+}
@@ -0,0 +1,104 @@
+package cn.edu.tsinghua.iginx.resource;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
+import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
+import cn.edu.tsinghua.iginx.engine.shared.RequestContext;
+import cn.edu.tsinghua.iginx.engine.shared.Result;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.monitor.MetricsMonitor;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.thrift.FetchResultsResp;
+import cn.edu.tsinghua.iginx.utils.RpcUtils;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class QueryResourceManagerTest {
+
+    private final QueryResourceManager manager = QueryResourceManager.getInstance();
+
+    private static RequestContext context(long sessionId, int rowCount) {
+        Header header =
+                new Header(
+                        Field.KEY,
+                        Arrays.asList(
+                                new Field("a.a", DataType.LONG),
+                                new Field("a.b", DataType.BINARY)));
+        List<Row> rows = new ArrayList<>();
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(new Row(header, i, new Object[] {(long) i, new byte[100]}));
+        }
+        RequestContext context = new RequestContext(sessionId);
+        Result result = new Result(RpcUtils.SUCCESS);
+        result.setResultStream(new Table(header, rows));
+        context.setResult(result);
+        return context;
+    }
+
+    @Test
+    public void testExhaustedCursorIsReleased() {
+        long sessionId = 1001L;
+        RequestContext context = context(sessionId, 10);
+        assertEquals(RpcUtils.SUCCESS, manager.registerQuery(context.getId(), sessionId, context));
+        assertEquals(1, manager.getOpenCursorCount(sessionId));
+        assertTrue(manager.getBufferedBytes() > 0);
+        assertEquals(
+                manager.getOpenCursorCount(),
+                (long) MetricsMonitor.getInstance().getMetrics().get("queryCursor.open"));
+
+        QueryCursor cursor = manager.acquireQuery(context.getId());
+        FetchResultsResp resp = context.getResult().fetch(4);
+        manager.releaseCursor(cursor);
+        assertTrue(resp.isHasMoreResults());
+        assertEquals(4, cursor.getReadRows());
+        assertNotNull(manager.getQuery(context.getId()));
+
+        cursor = manager.acquireQuery(context.getId());
+        resp = context.getResult().fetch(100);
+        manager.releaseCursor(cursor);
+        assertFalse(resp.isHasMoreResults());
+        assertNull(manager.getQuery(context.getId()));
+        assertEquals(0, manager.getOpenCursorCount(sessionId));
+        assertEquals(RpcUtils.SUCCESS, manager.getMissingQueryStatus(context.getId()));
+    }
+
+    @Test
+    public void testSessionCursorLimit() {
+        long sessionId = 1002L;
+        int limit = ConfigDescriptor.getInstance().getConfig().getMaxOpenCursorsPerSession();
+        for (int i = 0; i < limit; i++) {
+            RequestContext context = context(sessionId, 1);
+            assertEquals(
+                    RpcUtils.SUCCESS, manager.registerQuery(context.getId(), sessionId, context));
+        }
+        RequestContext context = context(sessionId, 1);
+        assertNotEquals(
+                RpcUtils.SUCCESS, manager.registerQuery(context.getId(), sessionId, context));
+        assertNull(manager.getQuery(context.getId()));
+        assertEquals(limit, manager.getOpenCursorCount(sessionId));
+
+        manager.releaseSessionQueries(sessionId);
+        assertEquals(0, manager.getOpenCursorCount(sessionId));
+    }
+
+    @Test
+    public void testAdaptFetchSize() throws Exception {
+        RequestContext context = context(1003L, 1000);
+        QueryCursor cursor = new QueryCursor(context.getId(), 1003L, context);
+        long rowSize = cursor.getBufferedBytes() / 1000;
+        assertEquals(1000, cursor.adaptFetchSize(1000, Long.MAX_VALUE));
+        assertEquals(10, cursor.adaptFetchSize(1000, rowSize * 10));
+        assertEquals(1, cursor.adaptFetchSize(1000, 1));
+
+        context.getResult().fetch(500);
+        assertEquals(500, cursor.getReadRows());
+        assertEquals(rowSize * 500, cursor.getBufferedBytes());
+        assertEquals(10, cursor.adaptFetchSize(1000, cursor.getReadBytes() / 50));
+        cursor.close();
+    }
+}
@@ -27,22 +27,38 @@ import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalTaskExecuteFailur
 import cn.edu.tsinghua.iginx.engine.physical.exception.StorageInitializationException;
 import cn.edu.tsinghua.iginx.engine.physical.storage.IStorage;
 import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.FilterPushDownUtils;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.PushDownUtils;
 import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.AggregatedRowStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.FilterRowStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.BitmapView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.ColumnDataView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.RowDataView;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Count;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.FirstValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.LastValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Max;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Min;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Sum;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Delete;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Insert;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Select;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
 import cn.edu.tsinghua.iginx.influxdb.query.entity.InfluxDBHistoryQueryRowStream;
 import cn.edu.tsinghua.iginx.influxdb.query.entity.InfluxDBQueryRowStream;
 import cn.edu.tsinghua.iginx.influxdb.query.entity.InfluxDBSchema;
+import cn.edu.tsinghua.iginx.influxdb.tools.FilterTransformer;
 import cn.edu.tsinghua.iginx.influxdb.tools.SchemaTransformer;
 import cn.edu.tsinghua.iginx.influxdb.tools.TagFilterUtils;
 import cn.edu.tsinghua.iginx.metadata.entity.*;
@@ -85,6 +101,25 @@ public class InfluxDBStorage implements IStorage {
     private static final String QUERY_DATA_ALL =
             "from(bucket:\"%s\") |> range(start: time(v: %s), stop: time(v: %s)) |> filter(fn: (r) => (r._measurement =%s and r._field =%s))";
 
+    private static final String AGGREGATE =
+            " |> %s() |> duplicate(column: \"_start\", as: \"_time\")";
+
+    private static final String AGGREGATE_WINDOW =
+            " |> aggregateWindow(every: %dns, offset: %dns, fn: %s, createEmpty: false, timeSrc: \"_start\")";
+
+    /** IGinX 系统函数到 Flux 聚合函数的映射 */
+    private static final Map<String, String> AGGREGATE_FUNCTIONS = new HashMap<>();
+
+    static {
+        AGGREGATE_FUNCTIONS.put(Avg.AVG, "mean");
+        AGGREGATE_FUNCTIONS.put(Sum.SUM, "sum");
+        AGGREGATE_FUNCTIONS.put(Count.COUNT, "count");
+        AGGREGATE_FUNCTIONS.put(Max.MAX, "max");
+        AGGREGATE_FUNCTIONS.put(Min.MIN, "min");
+        AGGREGATE_FUNCTIONS.put(FirstValue.FIRST_VALUE, "first");
+        AGGREGATE_FUNCTIONS.put(LastValue.LAST_VALUE, "last");
+    }
+
     private static final String DELETE_DATA = "_measurement=\"%s\" AND _field=\"%s\"";
 
     private static final String SHOW_TIME_SERIES =
@@ -229,7 +264,17 @@ public class InfluxDBStorage implements IStorage {
     @Override
     public TaskExecuteResult execute(StoragePhysicalTask task) {
         List<Operator> operators = task.getOperators();
-        if (operators.size() != 1) {
+        Filter filter = null;
+        Operator aggregate = null;
+        int size = operators.size();
+        if (size > 1 && isSupportPushDown(operators.get(size - 1))) {
+            aggregate = operators.get(--size);
+        }
+        if (size == 2
+                && operators.get(0).getType() == OperatorType.Project
+                && operators.get(1).getType() == OperatorType.Select) {
+            filter = ((Select) operators.get(1)).getFilter();
+        } else if (size != 1) {
             return new TaskExecuteResult(
                     new NonExecutablePhysicalTaskException("unsupported physical task"));
         }
@@ -239,16 +284,23 @@ public class InfluxDBStorage implements IStorage {
         boolean isDummyStorageUnit = task.isDummyStorageUnit();
         if (op.getType() == OperatorType.Project) { // 目前只实现 project 操作符
             Project project = (Project) op;
+            if (isDummyStorageUnit && aggregate != null) {
+                return new TaskExecuteResult(
+                        new NonExecutablePhysicalTaskException("unsupported physical task"));
+            }
             return isDummyStorageUnit
                     ? executeHistoryProjectTask(
                             task.getTargetFragment().getTsInterval(),
                             fragment.getTimeInterval(),
-                            project)
+                            project,
+                            filter)
                     : executeProjectTask(
                             fragment.getTimeInterval(),
                             fragment.getTsInterval(),
                             storageUnit,
-                            project);
+                            project,
+                            filter,
+                            aggregate);
         } else if (op.getType() == OperatorType.Insert) {
             Insert insert = (Insert) op;
             return executeInsertTask(storageUnit, insert);
@@ -261,7 +313,10 @@ public class InfluxDBStorage implements IStorage {
     }
 
     private TaskExecuteResult executeHistoryProjectTask(
-            TimeSeriesRange timeSeriesInterval, TimeInterval timeInterval, Project project) {
+            TimeSeriesRange timeSeriesInterval,
+            TimeInterval timeInterval,
+            Project project,
+            Filter filter) {
         Map<String, String> bucketQueries = new HashMap<>();
         TagFilter tagFilter = project.getTagFilter();
         for (String pattern : project.getPatterns()) {
@@ -278,8 +333,14 @@ public class InfluxDBStorage implements IStorage {
             bucketQueries.put(bucketName, fullQuery);
         }
 
+        // 历史数据的路径带有 bucket 前缀，只下推与 key 有关的条件
+        Pair<String, Filter> pushDown = FilterTransformer.toFlux(filter, false);
+        timeInterval = FilterPushDownUtils.intersect(timeInterval, filter);
         long startTime = timeInterval.getStartTime();
         long endTime = timeInterval.getEndTime();
+        if (startTime >= endTime) { // 过滤条件与分片的时间范围没有交集
+            bucketQueries.clear();
+        }
 
         Map<String, List<FluxTable>> bucketQueryResults = new HashMap<>();
         for (String bucket : bucketQueries.keySet()) {
@@ -290,13 +351,19 @@ public class InfluxDBStorage implements IStorage {
             if (!bucketQueries.get(bucket).equals("()")) {
                 statement += String.format(" |> filter(fn: (r) => %s)", bucketQueries.get(bucket));
             }
+            if (pushDown.k != null) {
+                statement += String.format(" |> filter(fn: (r) => %s)", pushDown.k);
+            }
             logger.info("execute query: " + statement);
             bucketQueryResults.put(
                     bucket, client.getQueryApi().query(statement, organization.getId()));
         }
 
-        InfluxDBHistoryQueryRowStream rowStream =
+        RowStream rowStream =
                 new InfluxDBHistoryQueryRowStream(bucketQueryResults, project.getPatterns());
+        if (pushDown.v != null) {
+            rowStream = new FilterRowStreamWrapper(rowStream, pushDown.v);
+        }
         return new TaskExecuteResult(rowStream);
     }
 
@@ -366,17 +433,44 @@ public class InfluxDBStorage implements IStorage {
         client.close();
     }
 
+    @Override
+    public boolean isSupportPushDown(Operator operator) {
+        switch (operator.getType()) {
+            case Downsample:
+            case SetTransform:
+                return AGGREGATE_FUNCTIONS.containsKey(PushDownUtils.getFunctionName(operator));
+            default:
+                return false;
+        }
+    }
+
     private TaskExecuteResult executeProjectTask(
             TimeInterval timeInterval,
             TimeSeriesRange tsInterval,
             String storageUnit,
-            Project project) {
+            Project project,
+            Filter filter,
+            Operator aggregate) {
 
         if (client.getBucketsApi().findBucketByName(storageUnit) == null) {
             logger.warn("storage engine {} doesn't exist", storageUnit);
-            return new TaskExecuteResult(new InfluxDBQueryRowStream(Collections.emptyList()));
+            return wrapAggregate(new InfluxDBQueryRowStream(Collections.emptyList()), aggregate);
         }
 
+        timeInterval = FilterPushDownUtils.intersect(timeInterval, filter);
+        if (aggregate != null && aggregate.getType() == OperatorType.Downsample) {
+            TimeRange range = ((Downsample) aggregate).getTimeRange();
+            long end = range.getActualEndTime();
+            timeInterval =
+                    new TimeInterval(
+                            Math.max(timeInterval.getStartTime(), range.getActualBeginTime()),
+                            end == Long.MAX_VALUE
+                                    ? timeInterval.getEndTime()
+                                    : Math.min(timeInterval.getEndTime(), end + 1));
+        }
+        if (timeInterval.getStartTime() >= timeInterval.getEndTime()) {
+            return wrapAggregate(new InfluxDBQueryRowStream(Collections.emptyList()), aggregate);
+        }
         String statement =
                 generateQueryStatement(
                         storageUnit,
@@ -384,11 +478,89 @@ public class InfluxDBStorage implements IStorage {
                         project.getTagFilter(),
                         timeInterval.getStartTime(),
                         timeInterval.getEndTime());
-        List<FluxTable> tables = client.getQueryApi().query(statement, organization.getId());
-        InfluxDBQueryRowStream rowStream = new InfluxDBQueryRowStream(tables);
+        Pair<String, Filter> pushDown = FilterTransformer.toFlux(filter, true);
+        if (aggregate != null) {
+            // 聚合之后无法再对原始数据进行过滤，过滤条件不能完全下推时回退到内存中计算
+            if (pushDown.v != null) {
+                return new TaskExecuteResult(
+                        new NonExecutablePhysicalTaskException(
+                                "filter can't be fully pushed down with aggregation"));
+            }
+            try {
+                List<FluxTable> tables =
+                        client.getQueryApi()
+                                .query(
+                                        appendAggregate(
+                                                appendFilter(statement, pushDown.k), aggregate),
+                                        organization.getId());
+                return wrapAggregate(new InfluxDBQueryRowStream(tables), aggregate);
+            } catch (Exception e) {
+                logger.error(e.getMessage());
+                return new TaskExecuteResult(
+                        new PhysicalTaskExecuteFailureException(
+                                "execute aggregation in influxdb failure", e));
+            }
+        }
+        List<FluxTable> tables;
+        if (pushDown.k == null) {
+            tables = client.getQueryApi().query(statement, organization.getId());
+        } else {
+            try {
+                tables =
+                        client.getQueryApi()
+                                .query(appendFilter(statement, pushDown.k), organization.getId());
+            } catch (Exception e) {
+                // 值条件的预先过滤可能与序列的实际类型不兼容，此时只下推与 key 有关的条件
+                logger.warn("fail to push down value filter, retry without it: {}", e.getMessage());
+                pushDown = FilterTransformer.toFlux(filter, false);
+                tables =
+                        client.getQueryApi()
+                                .query(appendFilter(statement, pushDown.k), organization.getId());
+            }
+        }
+        RowStream rowStream = new InfluxDBQueryRowStream(tables);
+        if (pushDown.v != null) {
+            rowStream = new FilterRowStreamWrapper(rowStream, pushDown.v);
+        }
         return new TaskExecuteResult(rowStream);
     }
 
+    private static TaskExecuteResult wrapAggregate(RowStream rowStream, Operator aggregate) {
+        if (aggregate == null) {
+            return new TaskExecuteResult(rowStream);
+        }
+        try {
+            return new TaskExecuteResult(new AggregatedRowStreamWrapper(rowStream, aggregate));
+        } catch (PhysicalException e) {
+            return new TaskExecuteResult(e);
+        }
+    }
+
+    /** 聚合下推为 Flux 的聚合函数，降采样的窗口按查询范围的起点对齐，结果以窗口起点作为时间 */
+    private static String appendAggregate(String statement, Operator aggregate) {
+        String function = AGGREGATE_FUNCTIONS.get(PushDownUtils.getFunctionName(aggregate));
+        if (aggregate.getType() == OperatorType.Downsample) {
+            Downsample downsample = (Downsample) aggregate;
+            long precision = downsample.getPrecision();
+            long offset = Math.floorMod(downsample.getTimeRange().getActualBeginTime(), precision);
+            statement += String.format(AGGREGATE_WINDOW, precision, offset, function);
+        } else {
+            // 聚合结果不再有 _time 列，或保留各序列中被选中的点的时间，统一以查询范围的起点作为时间，使各序列的结果合并为一行
+            statement += String.format(AGGREGATE, function);
+        }
+        logger.info("generate query: " + statement);
+        return statement;
+    }
+
+    private static String appendFilter(String statement, String expression) {
+        if (expression == null) {
+            return statement;
+        }
+        statement += String.format(" |> filter(fn: (r) => %s)", expression);
+        logger.info("generate query: " + statement);
+        return statement;
+    }
+
     private static String generateQueryStatement(
             String bucketName,
             List<String> paths,
@@ -0,0 +1,162 @@
+package cn.edu.tsinghua.iginx.influxdb.tools;
+
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.FilterPushDownUtils;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.BoolFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.NotFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.OrFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.ValueFilter;
+import cn.edu.tsinghua.iginx.influxdb.query.entity.InfluxDBSchema;
+import cn.edu.tsinghua.iginx.utils.Pair;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/** 将过滤条件转换为 Flux 的 filter(fn:) 表达式，并返回无法下推、需要在内存中执行的剩余条件 */
+public class FilterTransformer {
+
+    /**
+     * 只与 key 有关的条件转换为 r._time 上的比较，由 InfluxDB 精确执行；单条序列上的数值条件转换为 r._value 上的预先过滤，
+     * 但仍保留在剩余条件中，以保证行级语义
+     */
+    public static Pair<String, Filter> toFlux(Filter filter, boolean narrowValues) {
+        List<String> expressions = new ArrayList<>();
+        List<Filter> residual = new ArrayList<>();
+        for (Filter conjunct : FilterPushDownUtils.splitConjuncts(filter)) {
+            if (FilterPushDownUtils.isKeyOnly(conjunct)) {
+                String expression = toKeyExpression(conjunct);
+                if (expression != null) {
+                    expressions.add(expression);
+                    continue;
+                }
+            } else if (narrowValues && FilterPushDownUtils.isSeriesLocal(conjunct)) {
+                String expression = toValueExpression((ValueFilter) conjunct);
+                if (expression != null) {
+                    expressions.add(expression);
+                }
+            }
+            residual.add(conjunct);
+        }
+        String expression = expressions.isEmpty() ? null : join(expressions, " and ");
+        return new Pair<>(expression, FilterPushDownUtils.combineConjuncts(residual));
+    }
+
+    private static String toKeyExpression(Filter filter) {
+        switch (filter.getType()) {
+            case Key:
+                KeyFilter keyFilter = (KeyFilter) filter;
+                String op = toFluxOp(keyFilter.getOp());
+                if (op == null) {
+                    return null;
+                }
+                return String.format("r._time %s time(v: %d)", op, keyFilter.getValue());
+            case Bool:
+                return ((BoolFilter) filter).isTrue() ? "true" : "false";
+            case Not:
+                String child = toKeyExpression(((NotFilter) filter).getChild());
+                return child == null ? null : "not (" + child + ")";
+            case And:
+                return toKeyExpression(((AndFilter) filter).getChildren(), " and ");
+            case Or:
+                return toKeyExpression(((OrFilter) filter).getChildren(), " or ");
+            default:
+                return null;
+        }
+    }
+
+    private static String toKeyExpression(List<Filter> children, String delimiter) {
+        List<String> expressions = new ArrayList<>();
+        for (Filter child : children) {
+            String expression = toKeyExpression(child);
+            if (expression == null) {
+                return null;
+            }
+            expressions.add(expression);
+        }
+        return join(expressions, delimiter);
+    }
+
+    /** 不属于该路径的序列不受影响，属于该路径的序列只保留满足条件的点 */
+    private static String toValueExpression(ValueFilter filter) {
+        Op op = FilterPushDownUtils.relaxForNarrowing(filter.getOp());
+        if (op == null) {
+            return null;
+        }
+        String path = filter.getPath();
+        int index = path.indexOf(".");
+        if (index <= 0 || index == path.length() - 1) {
+            return null;
+        }
+        String measurement = path.substring(0, index);
+        String rest = path.substring(index + 1);
+
+        // 查询结果中的路径为 measurement.[t.]field，tag 与 field 的分界无法从路径中确定，因此列出所有可能的划分
+        List<String> matches = new ArrayList<>();
+        matches.add(
+                String.format(
+                        "(not exists r.%s and r._field == %s)", InfluxDBSchema.TAG, quote(rest)));
+        for (int i = rest.indexOf('.');
+                i > 0 && i < rest.length() - 1;
+                i = rest.indexOf('.', i + 1)) {
+            matches.add(
+                    String.format(
+                            "(r.%s == %s and r._field == %s)",
+                            InfluxDBSchema.TAG,
+                            quote(rest.substring(0, i)),
+                            quote(rest.substring(i + 1))));
+        }
+        String series =
+                String.format(
+                        "r._measurement == %s and (%s)", quote(measurement), join(matches, " or "));
+        double value = ((Number) filter.getValue().getValue()).doubleValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return null;
+        }
+        String literal = BigDecimal.valueOf(value).toPlainString();
+        if (!literal.contains(".")) {
+            literal += ".0";
+        }
+        return String.format(
+                "(not (%s) or float(v: r._value) %s %s)", series, toFluxOp(op), literal);
+    }
+
+    private static String toFluxOp(Op op) {
+        switch (op) {
+            case E:
+                return "==";
+            case NE:
+                return "!=";
+            case G:
+                return ">";
+            case GE:
+                return ">=";
+            case L:
+                return "<";
+            case LE:
+                return "<=";
+            default:
+                return null;
+        }
+    }
+
+    private static String quote(String str) {
+        return "\"" + str.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+
+    private static String join(List<String> expressions, String delimiter) {
+        if (expressions.size() == 1) {
+            return expressions.get(0);
+        }
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < expressions.size(); i++) {
+            if (i != 0) {
+                builder.append(delimiter);
+            }
+            builder.append('(').append(expressions.get(i)).append(')');
+        }
+        return builder.toString();
+    }
+}
@@ -27,17 +27,29 @@ import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalTaskExecuteFailur
 import cn.edu.tsinghua.iginx.engine.physical.exception.StorageInitializationException;
 import cn.edu.tsinghua.iginx.engine.physical.storage.IStorage;
 import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.PushDownUtils;
 import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.AggregatedRowStreamWrapper;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.ClearEmptyRowStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.BitmapView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.ColumnDataView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.RowDataView;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Count;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.FirstValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.LastValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Max;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Min;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Sum;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Delete;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Insert;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Limit;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Select;
@@ -48,6 +60,7 @@ import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
 import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
 import cn.edu.tsinghua.iginx.iotdb.query.entity.IoTDBQueryRowStream;
+import cn.edu.tsinghua.iginx.iotdb.tools.DataTypeTransformer;
 import cn.edu.tsinghua.iginx.iotdb.tools.DataViewWrapper;
 import cn.edu.tsinghua.iginx.iotdb.tools.FilterTransformer;
 import cn.edu.tsinghua.iginx.iotdb.tools.TagKVUtils;
@@ -93,12 +106,34 @@ public class IoTDBStorage implements IStorage {
 
     private static final String DEFAULT_SESSION_POOL_SIZE = "100";
 
+    // IoTDB 的 timestamp_precision，降采样窗口长度以该单位写入 GROUP BY 子句
+    private static final String TIMESTAMP_PRECISION = "timestampPrecision";
+
+    private static final String DEFAULT_TIMESTAMP_PRECISION = "ms";
+
     private static final String PREFIX = "root.";
 
     private static final String QUERY_DATA = "SELECT %s FROM " + PREFIX + "%s WHERE %s";
 
     private static final String QUERY_HISTORY_DATA = "SELECT %s FROM root WHERE %s";
 
+    private static final String LIMIT_CLAUSE = " LIMIT %d OFFSET %d";
+
+    private static final String GROUP_BY_CLAUSE = " GROUP BY ([%d, %d), %d%s)";
+
+    /** IGinX 系统函数到 IoTDB 聚合函数的映射，IoTDB 的 sum 总是返回 DOUBLE，整数序列的结果按原始类型还原 */
+    private static final Map<String, String> AGGREGATE_FUNCTIONS = new HashMap<>();
+
+    static {
+        AGGREGATE_FUNCTIONS.put(Avg.AVG, "avg");
+        AGGREGATE_FUNCTIONS.put(Count.COUNT, "count");
+        AGGREGATE_FUNCTIONS.put(Sum.SUM, "sum");
+        AGGREGATE_FUNCTIONS.put(Max.MAX, "max_value");
+        AGGREGATE_FUNCTIONS.put(Min.MIN, "min_value");
+        AGGREGATE_FUNCTIONS.put(FirstValue.FIRST_VALUE, "first_value");
+        AGGREGATE_FUNCTIONS.put(LastValue.LAST_VALUE, "last_value");
+    }
+
     private static final String DELETE_STORAGE_GROUP_CLAUSE =
             "DELETE STORAGE GROUP " + PREFIX + "%s";
 
@@ -114,6 +149,8 @@ public class IoTDBStorage implements IStorage {
 
     private final StorageEngineMeta meta;
 
+    private final String timestampPrecision;
+
     private static final Logger logger = LoggerFactory.getLogger(IoTDBStorage.class);
 
     public IoTDBStorage(StorageEngineMeta meta) throws StorageInitializationException {
@@ -126,6 +163,15 @@ public class IoTDBStorage implements IStorage {
             throw new StorageInitializationException("cannot connect to " + meta.toString());
         }
         sessionPool = createSessionPool();
+        timestampPrecision =
+                meta.getExtraParams()
+                        .getOrDefault(TIMESTAMP_PRECISION, DEFAULT_TIMESTAMP_PRECISION);
+        if (!timestampPrecision.equals("ms")
+                && !timestampPrecision.equals("us")
+                && !timestampPrecision.equals("ns")) {
+            throw new StorageInitializationException(
+                    "unexpected timestamp precision: " + timestampPrecision);
+        }
     }
 
     private boolean testConnection() {
@@ -167,10 +213,16 @@ public class IoTDBStorage implements IStorage {
         boolean isDummyStorageUnit = task.isDummyStorageUnit();
         if (op.getType() == OperatorType.Project) {
             Project project = (Project) op;
-            Filter filter;
-            if (operators.size() == 2) {
-                filter = ((Select) operators.get(1)).getFilter();
-            } else {
+            Filter filter = null;
+            Operator pushDown = null;
+            for (int i = 1; i < operators.size(); i++) {
+                if (operators.get(i).getType() == OperatorType.Select) {
+                    filter = ((Select) operators.get(i)).getFilter();
+                } else {
+                    pushDown = operators.get(i);
+                }
+            }
+            if (filter == null) {
                 FragmentMeta fragment = task.getTargetFragment();
                 filter =
                         new AndFilter(
@@ -183,7 +235,7 @@ public class IoTDBStorage implements IStorage {
             return isDummyStorageUnit
                     ? executeQueryHistoryTask(
                             task.getTargetFragment().getTsInterval(), project, filter)
-                    : executeQueryTask(storageUnit, project, filter);
+                    : executeQueryTask(storageUnit, project, filter, pushDown);
         } else if (op.getType() == OperatorType.Insert) {
             Insert insert = (Insert) op;
             return executeInsertTask(storageUnit, insert);
@@ -305,12 +357,37 @@ public class IoTDBStorage implements IStorage {
         return timeseries;
     }
 
+    @Override
+    public boolean isSupportPushDown(Operator operator) {
+        switch (operator.getType()) {
+            case Limit:
+                return true;
+            case Downsample:
+                // IoTDB 会为范围内的每个窗口返回一行，范围没有上界时不下推
+                if (((Downsample) operator).getTimeRange().getActualEndTime() == Long.MAX_VALUE) {
+                    return false;
+                }
+                return AGGREGATE_FUNCTIONS.containsKey(PushDownUtils.getFunctionName(operator));
+            case SetTransform:
+                return AGGREGATE_FUNCTIONS.containsKey(PushDownUtils.getFunctionName(operator));
+            default:
+                return false;
+        }
+    }
+
     private TaskExecuteResult executeQueryTask(
-            String storageUnit, Project project, Filter filter) { // 未来可能要用 tsInterval 对查询出来的数据进行过滤
+            String storageUnit,
+            Project project,
+            Filter filter,
+            Operator pushDown) { // 未来可能要用 tsInterval 对查询出来的数据进行过滤
         try {
             StringBuilder builder = new StringBuilder();
+            String function =
+                    pushDown == null || pushDown.getType() == OperatorType.Limit
+                            ? null
+                            : AGGREGATE_FUNCTIONS.get(PushDownUtils.getFunctionName(pushDown));
             for (String path : project.getPatterns()) {
-                builder.append(path);
+                builder.append(function == null ? path : function + "(" + path + ")");
                 builder.append(',');
             }
             String statement =
@@ -319,13 +396,35 @@ public class IoTDBStorage implements IStorage {
                             builder.deleteCharAt(builder.length() - 1).toString(),
                             storageUnit,
                             FilterTransformer.toString(filter));
+            if (pushDown != null && pushDown.getType() == OperatorType.Limit) {
+                Limit limit = (Limit) pushDown;
+                statement += String.format(LIMIT_CLAUSE, limit.getLimit(), limit.getOffset());
+            } else if (pushDown != null && pushDown.getType() == OperatorType.Downsample) {
+                Downsample downsample = (Downsample) pushDown;
+                statement +=
+                        String.format(
+                                GROUP_BY_CLAUSE,
+                                downsample.getTimeRange().getActualBeginTime(),
+                                downsample.getTimeRange().getActualEndTime() + 1,
+                                downsample.getPrecision(),
+                                timestampPrecision);
+            }
             logger.info("[Query] execute query: " + statement);
-            RowStream rowStream =
-                    new ClearEmptyRowStreamWrapper(
-                            new IoTDBQueryRowStream(
-                                    sessionPool.executeQueryStatement(statement), true, project));
+            IoTDBQueryRowStream queryRowStream =
+                    new IoTDBQueryRowStream(
+                            sessionPool.executeQueryStatement(statement), true, project);
+            RowStream rowStream;
+            if (function == null) {
+                rowStream = new ClearEmptyRowStreamWrapper(queryRowStream);
+            } else if (function.equals(AGGREGATE_FUNCTIONS.get(Sum.SUM))) {
+                rowStream =
+                        new AggregatedRowStreamWrapper(
+                                queryRowStream, pushDown, getSeriesTypes(storageUnit, project));
+            } else {
+                rowStream = new AggregatedRowStreamWrapper(queryRowStream, pushDown);
+            }
             return new TaskExecuteResult(rowStream);
-        } catch (IoTDBConnectionException | StatementExecutionException e) {
+        } catch (IoTDBConnectionException | StatementExecutionException | PhysicalException e) {
             logger.error(e.getMessage());
             return new TaskExecuteResult(
                     new PhysicalTaskExecuteFailureException(
@@ -333,6 +432,32 @@ public class IoTDBStorage implements IStorage {
         }
     }
 
+    /** 查询所投影序列的原始类型，IoTDB 对整数序列求和的结果为 DOUBLE，在 2^53 以内可以无损还原为 LONG */
+    private Map<String, DataType> getSeriesTypes(String storageUnit, Project project)
+            throws IoTDBConnectionException, StatementExecutionException {
+        Map<String, DataType> types = new HashMap<>();
+        String prefix = PREFIX + storageUnit + ".";
+        for (String pattern : project.getPatterns()) {
+            SessionDataSetWrapper dataSet =
+                    sessionPool.executeQueryStatement(SHOW_TIMESERIES + " " + prefix + pattern);
+            while (dataSet.hasNext()) {
+                RowRecord record = dataSet.next();
+                if (record == null || record.getFields().size() < 4) {
+                    continue;
+                }
+                String path = record.getFields().get(0).getStringValue();
+                Pair<String, Map<String, String>> pair =
+                        TagKVUtils.splitFullName(path.substring(prefix.length()));
+                DataType type =
+                        DataTypeTransformer.strFromIoTDB(
+                                record.getFields().get(3).getStringValue());
+                types.put(new Field(pair.k, type, pair.v).getFullName(), type);
+            }
+            dataSet.close();
+        }
+        return types;
+    }
+
     private String getRealPathWithoutPrefix(String oriPath, String prefix) {
         if (prefix != null && !prefix.isEmpty() && oriPath.contains(prefix)) {
             return oriPath.substring(oriPath.indexOf(prefix) + prefix.length() + 1);
@@ -10,10 +10,13 @@ import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalTaskExecuteFailur
 import cn.edu.tsinghua.iginx.engine.physical.exception.StorageInitializationException;
 import cn.edu.tsinghua.iginx.engine.physical.storage.IStorage;
 import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.FilterPushDownUtils;
 import cn.edu.tsinghua.iginx.engine.physical.storage.utils.TagKVUtils;
 import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.FilterRowStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.BitmapView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.ColumnDataView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
@@ -22,6 +25,8 @@ import cn.edu.tsinghua.iginx.engine.shared.operator.Delete;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Insert;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Select;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.tag.*;
 import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
 import cn.edu.tsinghua.iginx.metadata.entity.FragmentMeta;
@@ -31,6 +36,7 @@ import cn.edu.tsinghua.iginx.metadata.entity.TimeSeriesRange;
 import cn.edu.tsinghua.iginx.mongodb.query.entity.MongoDBQueryRowStream;
 import cn.edu.tsinghua.iginx.mongodb.query.entity.MongoDBSchema;
 import cn.edu.tsinghua.iginx.mongodb.tools.DataUtils;
+import cn.edu.tsinghua.iginx.mongodb.tools.FilterTransformer;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import cn.edu.tsinghua.iginx.utils.StringUtils;
@@ -127,7 +133,12 @@ public class MongoDBStorage implements IStorage {
     @Override
     public TaskExecuteResult execute(StoragePhysicalTask task) {
         List<Operator> operators = task.getOperators();
-        if (operators.size() != 1) {
+        Filter filter = null;
+        if (operators.size() == 2
+                && operators.get(0).getType() == OperatorType.Project
+                && operators.get(1).getType() == OperatorType.Select) {
+            filter = ((Select) operators.get(1)).getFilter();
+        } else if (operators.size() != 1) {
             return new TaskExecuteResult(
                     new NonExecutablePhysicalTaskException("unsupported physical task"));
         }
@@ -136,7 +147,7 @@ public class MongoDBStorage implements IStorage {
         String storageUnit = task.getStorageUnit();
         if (op.getType() == OperatorType.Project) { // 目前只实现 project 操作符，同时不支持历史数据
             Project project = (Project) op;
-            return executeProjectTask(fragment.getTimeInterval(), storageUnit, project);
+            return executeProjectTask(fragment.getTimeInterval(), storageUnit, project, filter);
         } else if (op.getType() == OperatorType.Insert) {
             Insert insert = (Insert) op;
             return executeInsertTask(storageUnit, insert);
@@ -242,7 +253,7 @@ public class MongoDBStorage implements IStorage {
     }
 
     private TaskExecuteResult executeProjectTask(
-            TimeInterval timeInterval, String storageUnit, Project project) {
+            TimeInterval timeInterval, String storageUnit, Project project, Filter filter) {
         MongoCollection<Document> collection = getCollection(storageUnit);
         if (collection == null) {
             return new TaskExecuteResult(
@@ -256,6 +267,9 @@ public class MongoDBStorage implements IStorage {
             }
         }
 
+        timeInterval = FilterPushDownUtils.intersect(timeInterval, filter);
+        Pair<Bson, Filter> pushDown = FilterTransformer.toBson(timeInterval, filter);
+
         try (MongoCursor<Document> cursor =
                 collection
                         .aggregate(
@@ -282,10 +296,14 @@ public class MongoDBStorage implements IStorage {
                                         unwind(
                                                 "$" + VALUES,
                                                 new UnwindOptions()
-                                                        .preserveNullAndEmptyArrays(true))))
+                                                        .preserveNullAndEmptyArrays(true)),
+                                        match(pushDown.k)))
                         .cursor()) {
-            MongoDBQueryRowStream rowStream =
+            RowStream rowStream =
                     new MongoDBQueryRowStream(cursor, timeInterval, project.getTagFilter());
+            if (pushDown.v != null) {
+                rowStream = new FilterRowStreamWrapper(rowStream, pushDown.v);
+            }
             return new TaskExecuteResult(rowStream);
         }
     }
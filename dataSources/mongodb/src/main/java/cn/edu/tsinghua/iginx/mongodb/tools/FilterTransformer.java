@@ -0,0 +1,117 @@
+package cn.edu.tsinghua.iginx.mongodb.tools;
+
+import static com.mongodb.client.model.Filters.*;
+
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.FilterPushDownUtils;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.NotFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.OrFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.ValueFilter;
+import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
+import cn.edu.tsinghua.iginx.mongodb.MongoDBStorage;
+import cn.edu.tsinghua.iginx.utils.Pair;
+import java.util.ArrayList;
+import java.util.List;
+import org.bson.conversions.Bson;
+
+/** 将过滤条件转换为展开后的数据点上的 $match 条件，并返回无法下推、需要在内存中执行的剩余条件 */
+public class FilterTransformer {
+
+    private static final String TIMESTAMP =
+            MongoDBStorage.VALUES + "." + MongoDBStorage.INNER_TIMESTAMP;
+
+    private static final String VALUE = MongoDBStorage.VALUES + "." + MongoDBStorage.INNER_VALUE;
+
+    /**
+     * 只与 key 有关的条件转换为数据点时间戳上的比较，由 MongoDB 精确执行；单条序列上的数值条件转换为数据点值上的预先过滤， 但仍保留在剩余条件中，以保证行级语义。空序列始终保留
+     */
+    public static Pair<Bson, Filter> toBson(TimeInterval timeInterval, Filter filter) {
+        List<Bson> conditions = new ArrayList<>();
+        conditions.add(gte(TIMESTAMP, timeInterval.getStartTime()));
+        conditions.add(lt(TIMESTAMP, timeInterval.getEndTime()));
+        List<Filter> residual = new ArrayList<>();
+        for (Filter conjunct : FilterPushDownUtils.splitConjuncts(filter)) {
+            if (FilterPushDownUtils.isKeyOnly(conjunct)) {
+                Bson condition = toKeyBson(conjunct);
+                if (condition != null) {
+                    conditions.add(condition);
+                    continue;
+                }
+            } else if (FilterPushDownUtils.isSeriesLocal(conjunct)) {
+                Bson condition = toValueBson((ValueFilter) conjunct);
+                if (condition != null) {
+                    conditions.add(condition);
+                }
+            }
+            residual.add(conjunct);
+        }
+        Bson match = or(exists(TIMESTAMP, false), and(conditions));
+        return new Pair<>(match, FilterPushDownUtils.combineConjuncts(residual));
+    }
+
+    private static Bson toKeyBson(Filter filter) {
+        switch (filter.getType()) {
+            case Key:
+                KeyFilter keyFilter = (KeyFilter) filter;
+                return compare(TIMESTAMP, keyFilter.getOp(), keyFilter.getValue());
+            case Not:
+                Bson child = toKeyBson(((NotFilter) filter).getChild());
+                return child == null ? null : nor(child);
+            case And:
+                List<Bson> andChildren = toKeyBson(((AndFilter) filter).getChildren());
+                return andChildren == null ? null : and(andChildren);
+            case Or:
+                List<Bson> orChildren = toKeyBson(((OrFilter) filter).getChildren());
+                return orChildren == null ? null : or(orChildren);
+            default:
+                return null;
+        }
+    }
+
+    private static List<Bson> toKeyBson(List<Filter> children) {
+        List<Bson> conditions = new ArrayList<>();
+        for (Filter child : children) {
+            Bson condition = toKeyBson(child);
+            if (condition == null) {
+                return null;
+            }
+            conditions.add(condition);
+        }
+        return conditions;
+    }
+
+    /** 不属于该路径的序列不受影响，属于该路径的序列只保留满足条件的数据点。MongoDB 跨数值类型的比较是精确的，因此比较符不需要放宽 */
+    private static Bson toValueBson(ValueFilter filter) {
+        Object value = filter.getValue().getValue();
+        if (value instanceof Float) { // float 类型的值以 double 的形式写入
+            value = ((Float) value).doubleValue();
+        }
+        Bson condition = compare(VALUE, filter.getOp(), value);
+        if (condition == null) {
+            return null;
+        }
+        return or(ne(MongoDBStorage.FULLNAME, filter.getPath()), condition);
+    }
+
+    private static <T> Bson compare(String field, Op op, T value) {
+        switch (op) {
+            case E:
+                return eq(field, value);
+            case NE:
+                return ne(field, value);
+            case G:
+                return gt(field, value);
+            case GE:
+                return gte(field, value);
+            case L:
+                return lt(field, value);
+            case LE:
+                return lte(field, value);
+            default:
+                return null;
+        }
+    }
+}
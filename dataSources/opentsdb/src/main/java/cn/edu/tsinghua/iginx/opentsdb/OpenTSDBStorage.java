@@ -13,18 +13,21 @@ import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.ClearEmptyRowStreamWrapper;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.FilterRowStreamWrapper;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.BitmapView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.ColumnDataView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.RowDataView;
 import cn.edu.tsinghua.iginx.engine.shared.operator.*;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.type.OperatorType;
 import cn.edu.tsinghua.iginx.metadata.entity.*;
 import cn.edu.tsinghua.iginx.opentsdb.query.entity.OpenTSDBRowStream;
 import cn.edu.tsinghua.iginx.opentsdb.query.entity.OpenTSDBSchema;
 import cn.edu.tsinghua.iginx.opentsdb.tools.DataViewWrapper;
+import cn.edu.tsinghua.iginx.opentsdb.tools.FilterTransformer;
 import cn.edu.tsinghua.iginx.opentsdb.tools.TagKVUtils;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Pair;
@@ -104,7 +107,12 @@ public class OpenTSDBStorage implements IStorage {
     @Override
     public TaskExecuteResult execute(StoragePhysicalTask task) {
         List<Operator> operators = task.getOperators();
-        if (operators.size() != 1) {
+        Filter filter = null;
+        if (operators.size() == 2
+                && operators.get(0).getType() == OperatorType.Project
+                && operators.get(1).getType() == OperatorType.Select) {
+            filter = ((Select) operators.get(1)).getFilter();
+        } else if (operators.size() != 1) {
             return new TaskExecuteResult(
                     new NonExecutablePhysicalTaskException("unsupported physical task"));
         }
@@ -116,8 +124,9 @@ public class OpenTSDBStorage implements IStorage {
         if (op.getType() == OperatorType.Project) {
             Project project = (Project) op;
             return isDummyStorageUnit
-                    ? executeProjectHistoryTask(fragment.getTimeInterval(), storageUnit, project)
-                    : executeProjectTask(fragment.getTimeInterval(), storageUnit, project);
+                    ? executeProjectHistoryTask(
+                            fragment.getTimeInterval(), storageUnit, project, filter)
+                    : executeProjectTask(fragment.getTimeInterval(), storageUnit, project, filter);
         } else if (op.getType() == OperatorType.Insert) {
             Insert insert = (Insert) op;
             return executeInsertTask(storageUnit, insert);
@@ -394,7 +403,7 @@ public class OpenTSDBStorage implements IStorage {
     }
 
     private TaskExecuteResult executeProjectTask(
-            TimeInterval timeInterval, String storageUnit, Project project) {
+            TimeInterval timeInterval, String storageUnit, Project project, Filter filter) {
         List<String> wholePathList;
         try {
             wholePathList = getPathList();
@@ -403,6 +412,13 @@ public class OpenTSDBStorage implements IStorage {
                     new PhysicalException("encounter error when query data in opentsdb: ", e));
         }
 
+        Pair<TimeInterval, Filter> pushDown =
+                FilterTransformer.toTimeInterval(timeInterval, filter);
+        timeInterval = pushDown.k;
+        if (timeInterval.getStartTime() >= timeInterval.getEndTime()) {
+            return new TaskExecuteResult(new OpenTSDBRowStream(new ArrayList<>(), true));
+        }
+
         Query.Builder builder =
                 Query.begin(timeInterval.getStartTime())
                         .end(timeInterval.getEndTime())
@@ -432,8 +448,12 @@ public class OpenTSDBStorage implements IStorage {
         Query query = builder.build();
         try {
             List<QueryResult> resultList = client.query(query);
+            FilterTransformer.narrowValues(resultList, true, filter);
             RowStream rowStream =
                     new ClearEmptyRowStreamWrapper(new OpenTSDBRowStream(resultList, true));
+            if (pushDown.v != null) {
+                rowStream = new FilterRowStreamWrapper(rowStream, pushDown.v);
+            }
             return new TaskExecuteResult(rowStream);
         } catch (Exception e) {
             return new TaskExecuteResult(
@@ -442,7 +462,7 @@ public class OpenTSDBStorage implements IStorage {
     }
 
     private TaskExecuteResult executeProjectHistoryTask(
-            TimeInterval timeInterval, String storageUnit, Project project) {
+            TimeInterval timeInterval, String storageUnit, Project project, Filter filter) {
         List<String> wholePathList;
         try {
             wholePathList = getPathList();
@@ -451,6 +471,13 @@ public class OpenTSDBStorage implements IStorage {
                     new PhysicalException("encounter error when query data in opentsdb: ", e));
         }
 
+        Pair<TimeInterval, Filter> pushDown =
+                FilterTransformer.toTimeInterval(timeInterval, filter);
+        timeInterval = pushDown.k;
+        if (timeInterval.getStartTime() >= timeInterval.getEndTime()) {
+            return new TaskExecuteResult(new OpenTSDBRowStream(new ArrayList<>(), false));
+        }
+
         Query.Builder builder =
                 Query.begin(timeInterval.getStartTime())
                         .end(timeInterval.getEndTime())
@@ -478,8 +505,12 @@ public class OpenTSDBStorage implements IStorage {
         Query query = builder.build();
         try {
             List<QueryResult> resultList = client.query(query);
+            FilterTransformer.narrowValues(resultList, false, filter);
             RowStream rowStream =
                     new ClearEmptyRowStreamWrapper(new OpenTSDBRowStream(resultList, false));
+            if (pushDown.v != null) {
+                rowStream = new FilterRowStreamWrapper(rowStream, pushDown.v);
+            }
             return new TaskExecuteResult(rowStream);
         } catch (Exception e) {
             return new TaskExecuteResult(
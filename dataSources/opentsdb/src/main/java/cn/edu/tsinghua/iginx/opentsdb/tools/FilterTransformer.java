@@ -0,0 +1,87 @@
+package cn.edu.tsinghua.iginx.opentsdb.tools;
+
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.FilterPushDownUtils;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.FilterType;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.ValueFilter;
+import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
+import cn.edu.tsinghua.iginx.opentsdb.query.entity.OpenTSDBRowStream;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.Pair;
+import java.util.ArrayList;
+import java.util.List;
+import org.opentsdb.client.bean.response.QueryResult;
+
+/** OpenTSDB 的查询接口只支持时间范围，因此过滤条件只能用于收窄查询的时间范围，以及在组装行之前按单条序列裁剪数据点。返回的剩余条件需要在内存中执行 */
+public class FilterTransformer {
+
+    /** 返回收窄后的时间范围与剩余条件，单个的 key 比较条件可以由时间范围精确表示，不再保留在剩余条件中 */
+    public static Pair<TimeInterval, Filter> toTimeInterval(
+            TimeInterval timeInterval, Filter filter) {
+        List<Filter> residual = new ArrayList<>();
+        for (Filter conjunct : FilterPushDownUtils.splitConjuncts(filter)) {
+            if (conjunct.getType() == FilterType.Key) {
+                Op op = ((KeyFilter) conjunct).getOp();
+                if (op != Op.NE && op != Op.LIKE) {
+                    continue;
+                }
+            }
+            residual.add(conjunct);
+        }
+        return new Pair<>(
+                FilterPushDownUtils.intersect(timeInterval, filter),
+                FilterPushDownUtils.combineConjuncts(residual));
+    }
+
+    /** 按过滤条件中单条序列上的数值条件裁剪查询结果中的数据点，被裁剪的数据点所在的行一定不满足过滤条件 */
+    public static void narrowValues(
+            List<QueryResult> resultList, boolean trimStorageUnit, Filter filter) {
+        List<ValueFilter> valueFilters = new ArrayList<>();
+        for (Filter conjunct : FilterPushDownUtils.splitConjuncts(filter)) {
+            if (FilterPushDownUtils.isSeriesLocal(conjunct)
+                    && FilterPushDownUtils.relaxForNarrowing(((ValueFilter) conjunct).getOp())
+                            != null) {
+                valueFilters.add((ValueFilter) conjunct);
+            }
+        }
+        if (valueFilters.isEmpty()) {
+            return;
+        }
+        Header header = new OpenTSDBRowStream(resultList, trimStorageUnit).getHeader();
+        for (int i = 0; i < resultList.size(); i++) {
+            DataType dataType = header.getField(i).getType();
+            if (dataType == DataType.BOOLEAN || dataType == DataType.BINARY) {
+                continue;
+            }
+            String path = header.getField(i).getFullName();
+            for (ValueFilter valueFilter : valueFilters) {
+                if (!valueFilter.getPath().equals(path)) {
+                    continue;
+                }
+                Op op = FilterPushDownUtils.relaxForNarrowing(valueFilter.getOp());
+                double target = ((Number) valueFilter.getValue().getValue()).doubleValue();
+                resultList
+                        .get(i)
+                        .getDps()
+                        .values()
+                        .removeIf(value -> !compare(op, value.doubleValue(), target));
+            }
+        }
+    }
+
+    private static boolean compare(Op op, double value, double target) {
+        switch (op) {
+            case GE:
+                return value >= target;
+            case LE:
+                return value <= target;
+            case E:
+                return value == target;
+            default:
+                return true;
+        }
+    }
+}
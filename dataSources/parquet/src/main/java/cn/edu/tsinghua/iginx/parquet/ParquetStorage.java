@@ -1,5 +1,7 @@
 package cn.edu.tsinghua.iginx.parquet;
 
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.MAX_MEM_SIZE;
+
 import cn.edu.tsinghua.iginx.conf.Config;
 import cn.edu.tsinghua.iginx.conf.ConfigDescriptor;
 import cn.edu.tsinghua.iginx.engine.physical.exception.NonExecutablePhysicalTaskException;
@@ -24,7 +26,6 @@ import cn.edu.tsinghua.iginx.parquet.exec.Executor;
 import cn.edu.tsinghua.iginx.parquet.exec.NewExecutor;
 import cn.edu.tsinghua.iginx.parquet.exec.RemoteExecutor;
 import cn.edu.tsinghua.iginx.parquet.server.ParquetServer;
-import cn.edu.tsinghua.iginx.parquet.tools.FilterTransformer;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -49,6 +50,26 @@ public class ParquetStorage implements IStorage {
 
     private static final String CONN_URL = "jdbc:duckdb:";
 
+    private static final String MEM_TABLE_SIZE = "memTableSize";
+
+    private static final String FLUSH_THREAD_NUM = "flushThreadNum";
+
+    private static final String DEFAULT_MEM_TABLE_SIZE = String.valueOf(MAX_MEM_SIZE);
+
+    private static final String DEFAULT_FLUSH_THREAD_NUM = "2";
+
+    private static final String CLIENT_POOL_SIZE = "clientPoolSize";
+
+    private static final String FETCH_SIZE = "fetchSize";
+
+    private static final String COMPRESS_RESULT = "compressResult";
+
+    private static final String DEFAULT_CLIENT_POOL_SIZE = "10";
+
+    private static final String DEFAULT_FETCH_SIZE = "10000";
+
+    private static final String DEFAULT_COMPRESS_RESULT = "false";
+
     private Executor executor;
 
     public ParquetStorage(StorageEngineMeta meta) throws StorageInitializationException {
@@ -82,14 +103,33 @@ public class ParquetStorage implements IStorage {
             throw new StorageInitializationException("cannot connect to " + meta.toString());
         }
 
-        this.executor = new NewExecutor(connection, dataDir);
+        long memTableSize =
+                Long.parseLong(extraParams.getOrDefault(MEM_TABLE_SIZE, DEFAULT_MEM_TABLE_SIZE));
+        int flushThreadNum =
+                Integer.parseInt(
+                        extraParams.getOrDefault(FLUSH_THREAD_NUM, DEFAULT_FLUSH_THREAD_NUM));
+        this.executor = new NewExecutor(connection, dataDir, memTableSize, flushThreadNum);
 
         new Thread(new ParquetServer(meta.getPort(), executor)).start();
     }
 
     private void initRemoteStorage(StorageEngineMeta meta) throws StorageInitializationException {
+        Map<String, String> extraParams = meta.getExtraParams();
+        int clientPoolSize =
+                Integer.parseInt(
+                        extraParams.getOrDefault(CLIENT_POOL_SIZE, DEFAULT_CLIENT_POOL_SIZE));
+        int fetchSize = Integer.parseInt(extraParams.getOrDefault(FETCH_SIZE, DEFAULT_FETCH_SIZE));
+        boolean compressResult =
+                Boolean.parseBoolean(
+                        extraParams.getOrDefault(COMPRESS_RESULT, DEFAULT_COMPRESS_RESULT));
         try {
-            this.executor = new RemoteExecutor(meta.getIp(), meta.getPort());
+            this.executor =
+                    new RemoteExecutor(
+                            meta.getIp(),
+                            meta.getPort(),
+                            clientPoolSize,
+                            fetchSize,
+                            compressResult);
         } catch (TTransportException e) {
             throw new StorageInitializationException(
                     "encounter error when init RemoteStorage " + e.getMessage());
@@ -110,7 +150,8 @@ public class ParquetStorage implements IStorage {
     @Override
     public TaskExecuteResult execute(StoragePhysicalTask task) {
         List<Operator> operators = task.getOperators();
-        if (operators.size() != 1) {
+        if (operators.isEmpty()
+                || (operators.get(0).getType() != OperatorType.Project && operators.size() != 1)) {
             return new TaskExecuteResult(
                     new NonExecutablePhysicalTaskException("unsupported physical task"));
         }
@@ -136,7 +177,7 @@ public class ParquetStorage implements IStorage {
             return executor.executeProjectTask(
                     project.getPatterns(),
                     project.getTagFilter(),
-                    FilterTransformer.toString(filter),
+                    filter,
                     storageUnit,
                     isDummyStorageUnit);
         } else if (op.getType() == OperatorType.Insert) {
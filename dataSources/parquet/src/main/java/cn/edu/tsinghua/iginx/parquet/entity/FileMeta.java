@@ -4,6 +4,7 @@ import static cn.edu.tsinghua.iginx.parquet.tools.Constant.CMD_DELETE;
 
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
 import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.Pair;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -28,11 +29,15 @@ public class FileMeta {
 
     private final Map<String, List<TimeRange>> deleteRanges;
 
+    // 数值列的最小值与最大值，用于在查询时跳过不可能满足过滤条件的文件
+    private final Map<String, Pair<Number, Number>> statistics;
+
     public FileMeta(long startTime, long endTime, Map<String, DataType> pathMap) {
         this.startTime = startTime;
         this.endTime = endTime;
         this.pathMap = pathMap;
         this.deleteRanges = new HashMap<>();
+        this.statistics = new HashMap<>();
     }
 
     public FileMeta(
@@ -41,13 +46,15 @@ public class FileMeta {
             long startTime,
             long endTime,
             Map<String, DataType> pathMap,
-            Map<String, List<TimeRange>> deleteRanges) {
+            Map<String, List<TimeRange>> deleteRanges,
+            Map<String, Pair<Number, Number>> statistics) {
         this.extraPath = extraPath;
         this.dataPath = dataPath;
         this.startTime = startTime;
         this.endTime = endTime;
         this.pathMap = pathMap;
         this.deleteRanges = deleteRanges;
+        this.statistics = statistics;
     }
 
     public void deleteData(List<String> paths, List<TimeRange> timeRanges) throws IOException {
@@ -125,4 +132,8 @@ public class FileMeta {
     public Map<String, List<TimeRange>> getDeleteRanges() {
         return deleteRanges;
     }
+
+    public Map<String, Pair<Number, Number>> getStatistics() {
+        return statistics;
+    }
 }
@@ -0,0 +1,105 @@
+package cn.edu.tsinghua.iginx.parquet.entity;
+
+import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.Pair;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/** DuckDB 中的一张内存表，写满后转为只读，由后台线程刷写为 parquet 文件 */
+public class MemTable {
+
+    private final String name;
+
+    // 写时复制，顺序与表中列的顺序一致，查询可以直接使用读到的快照
+    private volatile Map<String, DataType> pathMap;
+
+    private volatile long memSize = 0;
+
+    private volatile long startTime = Long.MAX_VALUE;
+
+    private volatile long endTime = Long.MIN_VALUE;
+
+    // 查询持有读锁，删除列和删除表持有写锁
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // 只读期间发生的删除，刷写完成后补记到文件元数据中
+    private final List<Pair<List<String>, List<TimeRange>>> pendingDeletes = new ArrayList<>();
+
+    private volatile boolean discarded = false;
+
+    public MemTable(String name, Map<String, DataType> pathMap) {
+        this.name = name;
+        this.pathMap = Collections.unmodifiableMap(new LinkedHashMap<>(pathMap));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Map<String, DataType> getPathMap() {
+        return pathMap;
+    }
+
+    public synchronized void addPaths(Map<String, DataType> paths) {
+        Map<String, DataType> newPathMap = new LinkedHashMap<>(pathMap);
+        newPathMap.putAll(paths);
+        pathMap = Collections.unmodifiableMap(newPathMap);
+    }
+
+    public synchronized void removePaths(Collection<String> paths) {
+        Map<String, DataType> newPathMap = new LinkedHashMap<>(pathMap);
+        paths.forEach(newPathMap::remove);
+        pathMap = Collections.unmodifiableMap(newPathMap);
+    }
+
+    public long getMemSize() {
+        return memSize;
+    }
+
+    public synchronized void addMemSize(long size) {
+        memSize += size;
+    }
+
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public long getEndTime() {
+        return endTime;
+    }
+
+    public synchronized void updateTime(long minTime, long maxTime) {
+        if (minTime < startTime) {
+            startTime = minTime;
+        }
+        if (maxTime > endTime) {
+            endTime = maxTime;
+        }
+    }
+
+    public ReentrantReadWriteLock getLock() {
+        return lock;
+    }
+
+    public synchronized void addPendingDelete(List<String> paths, List<TimeRange> timeRanges) {
+        pendingDeletes.add(new Pair<>(paths, timeRanges));
+    }
+
+    public synchronized List<Pair<List<String>, List<TimeRange>>> getPendingDeletes() {
+        return new ArrayList<>(pendingDeletes);
+    }
+
+    public boolean isDiscarded() {
+        return discarded;
+    }
+
+    public void discard() {
+        this.discarded = true;
+    }
+}
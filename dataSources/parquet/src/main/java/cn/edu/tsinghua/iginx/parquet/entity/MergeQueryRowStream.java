@@ -0,0 +1,153 @@
+package cn.edu.tsinghua.iginx.parquet.entity;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.parquet.tools.TagKVUtils;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.Pair;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * 按时间多路归并多个 parquet 文件与内存表的查询结果，逐行读取而不在内存中物化整个结果。同一时间戳上靠后的数据源覆盖靠前的数据源，数据源需按从旧到新的顺序给出。
+ * 所有列都为空的行不返回，这类行来自只有其他序列有数据的时间戳或被删除的数据
+ */
+public class MergeQueryRowStream implements RowStream {
+
+    private final List<ResultSetCursor> cursors;
+
+    private final Header header;
+
+    // 按 (时间, 数据源下标) 排序的游标下标
+    private final PriorityQueue<Integer> queue;
+
+    private boolean closed = false;
+
+    // 预读的下一个非空行
+    private Row nextRow;
+
+    public MergeQueryRowStream(List<ResultSetCursor> cursors) throws PhysicalException {
+        this.cursors = cursors;
+
+        Map<String, Integer> pathIndices = new LinkedHashMap<>();
+        List<Field> fields = new ArrayList<>();
+        for (ResultSetCursor cursor : cursors) {
+            List<String> pathNames = cursor.getPathNames();
+            List<DataType> types = cursor.getTypes();
+            int[] fieldIndices = new int[pathNames.size()];
+            for (int i = 0; i < pathNames.size(); i++) {
+                String pathName = pathNames.get(i);
+                Integer index = pathIndices.get(pathName);
+                if (index == null) {
+                    index = fields.size();
+                    pathIndices.put(pathName, index);
+                    Pair<String, Map<String, String>> pair = TagKVUtils.splitFullName(pathName);
+                    fields.add(new Field(pair.getK(), types.get(i), pair.getV()));
+                }
+                fieldIndices[i] = index;
+            }
+            cursor.setFieldIndices(fieldIndices);
+        }
+        this.header = new Header(Field.KEY, fields);
+
+        this.queue =
+                new PriorityQueue<>(
+                        Math.max(cursors.size(), 1),
+                        (a, b) -> {
+                            int cmp =
+                                    Long.compare(
+                                            cursors.get(a).getTime(), cursors.get(b).getTime());
+                            return cmp != 0 ? cmp : Integer.compare(a, b);
+                        });
+        try {
+            for (int i = 0; i < cursors.size(); i++) {
+                if (cursors.get(i).advance()) {
+                    queue.add(i);
+                }
+            }
+        } catch (SQLException e) {
+            throw new PhysicalException("fail to read query result", e);
+        }
+    }
+
+    @Override
+    public Header getHeader() throws PhysicalException {
+        return header;
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        queue.clear();
+        SQLException exception = null;
+        for (ResultSetCursor cursor : cursors) {
+            try {
+                cursor.close();
+            } catch (SQLException e) {
+                exception = e;
+            }
+        }
+        if (exception != null) {
+            throw new PhysicalException("fail to close query result", exception);
+        }
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        while (nextRow == null && !queue.isEmpty()) {
+            nextRow = mergeRow();
+        }
+        return nextRow != null;
+    }
+
+    @Override
+    public Row next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new PhysicalException("no more data");
+        }
+        Row row = nextRow;
+        nextRow = null;
+        return row;
+    }
+
+    /** 合并下一个时间戳上的所有数据源，所有列都为空时返回 null */
+    private Row mergeRow() throws PhysicalException {
+        long time = cursors.get(queue.peek()).getTime();
+        // 先取出所有位于该时间戳的数据源，保证按数据源顺序覆盖
+        List<Integer> sources = new ArrayList<>();
+        while (!queue.isEmpty() && cursors.get(queue.peek()).getTime() == time) {
+            sources.add(queue.poll());
+        }
+
+        Object[] values = new Object[header.getFieldSize()];
+        try {
+            for (int index : sources) {
+                ResultSetCursor cursor = cursors.get(index);
+                do {
+                    cursor.fill(values);
+                } while (cursor.advance() && cursor.getTime() == time);
+                if (cursor.hasCurrent()) {
+                    queue.add(index);
+                }
+            }
+        } catch (SQLException e) {
+            throw new PhysicalException("fail to read query result", e);
+        }
+        for (Object value : values) {
+            if (value != null) {
+                return new Row(header, time, values);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,116 @@
+package cn.edu.tsinghua.iginx.parquet.entity;
+
+import cn.edu.tsinghua.iginx.parquet.thrift.ParquetService;
+import cn.edu.tsinghua.iginx.parquet.thrift.ParquetService.Client;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import org.apache.thrift.protocol.TBinaryProtocol;
+import org.apache.thrift.transport.TSocket;
+import org.apache.thrift.transport.TTransport;
+import org.apache.thrift.transport.TTransportException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/** 远程 parquet 节点的 thrift 客户端池，并发的存储任务各自使用一个连接 */
+public class ParquetClientPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParquetClientPool.class);
+
+    private final ConcurrentLinkedDeque<Client> queue = new ConcurrentLinkedDeque<>();
+
+    private final String ip;
+
+    private final int port;
+
+    private int size;
+
+    private final int maxSize;
+
+    private static final long WAIT_TIME = 1000;
+
+    private static final long MAX_WAIT_TIME = 30_000;
+
+    private volatile boolean closed = false;
+
+    public ParquetClientPool(String ip, int port, int maxSize) {
+        this.ip = ip;
+        this.port = port;
+        this.size = 0;
+        this.maxSize = maxSize;
+    }
+
+    public Client getClient() throws TTransportException {
+        long startTime = System.currentTimeMillis();
+        while (true) {
+            if (closed) {
+                throw new TTransportException("parquet client pool is closed.");
+            }
+            Client client = queue.poll();
+            if (client != null) {
+                return client;
+            }
+            synchronized (this) {
+                if (size < maxSize) {
+                    size++;
+                    break;
+                }
+                try {
+                    this.wait(WAIT_TIME);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new TTransportException("interrupted while waiting for a client");
+                }
+                if (System.currentTimeMillis() - startTime > MAX_WAIT_TIME) {
+                    throw new TTransportException("timeout to get a parquet client");
+                }
+            }
+        }
+
+        try {
+            return constructNewClient();
+        } catch (TTransportException e) {
+            logger.error("create new parquet client failed", e);
+            discard(null);
+            throw e;
+        }
+    }
+
+    private Client constructNewClient() throws TTransportException {
+        TTransport transport = new TSocket(ip, port);
+        transport.open();
+        return new ParquetService.Client(new TBinaryProtocol(transport));
+    }
+
+    /** 归还一个可以继续使用的客户端 */
+    public void pushBack(Client client) {
+        if (closed) {
+            client.getInputProtocol().getTransport().close();
+            return;
+        }
+        queue.offer(client);
+        synchronized (this) {
+            this.notify();
+        }
+    }
+
+    /** 丢弃一个出错的客户端，其传输状态未知，不能再放回池中 */
+    public void discard(Client client) {
+        if (client != null) {
+            client.getInputProtocol().getTransport().close();
+        }
+        synchronized (this) {
+            size--;
+            this.notify();
+        }
+    }
+
+    public void close() {
+        closed = true;
+        Client client;
+        while ((client = queue.poll()) != null) {
+            client.getInputProtocol().getTransport().close();
+        }
+        synchronized (this) {
+            this.notifyAll();
+        }
+    }
+}
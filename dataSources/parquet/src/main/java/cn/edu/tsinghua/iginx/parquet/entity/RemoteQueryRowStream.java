@@ -0,0 +1,182 @@
+package cn.edu.tsinghua.iginx.parquet.entity;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
+import cn.edu.tsinghua.iginx.parquet.thrift.FetchReq;
+import cn.edu.tsinghua.iginx.parquet.thrift.FetchResp;
+import cn.edu.tsinghua.iginx.parquet.thrift.ParquetColumnarPage;
+import cn.edu.tsinghua.iginx.parquet.thrift.ParquetService.Client;
+import cn.edu.tsinghua.iginx.parquet.tools.ColumnarPageUtils;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.Bitmap;
+import cn.edu.tsinghua.iginx.utils.ByteUtils;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import org.apache.thrift.TException;
+
+/** 分页读取远程 parquet 节点上的查询结果，每次取回并按列解码一页，读完或关闭时释放服务端游标 */
+public class RemoteQueryRowStream implements RowStream {
+
+    private static final int SUCCESS_CODE = 200;
+
+    private final ParquetClientPool pool;
+
+    private final Header header;
+
+    private final List<DataType> dataTypes;
+
+    private final long queryId;
+
+    private final int fetchSize;
+
+    private boolean hasMoreResults;
+
+    private boolean closed = false;
+
+    private int rowCount;
+
+    private int rowIndex;
+
+    private long[] times;
+
+    private Object[] columns;
+
+    private Bitmap[] bitmaps;
+
+    // 每一列下一个非空值在列缓冲区中的下标
+    private int[] valueIndices;
+
+    public RemoteQueryRowStream(
+            ParquetClientPool pool,
+            Header header,
+            List<DataType> dataTypes,
+            long queryId,
+            int fetchSize,
+            ParquetColumnarPage firstPage,
+            boolean hasMoreResults)
+            throws PhysicalException {
+        this.pool = pool;
+        this.header = header;
+        this.dataTypes = dataTypes;
+        this.queryId = queryId;
+        this.fetchSize = fetchSize;
+        this.hasMoreResults = hasMoreResults;
+        loadPage(firstPage);
+    }
+
+    private void loadPage(ParquetColumnarPage page) throws PhysicalException {
+        rowCount = page.getRowCount();
+        rowIndex = 0;
+        boolean compressed = page.isCompressed();
+        try {
+            if (page.isSetTimestamps()) {
+                times =
+                        ByteUtils.getLongArrayFromByteArray(
+                                ColumnarPageUtils.unwrap(page.bufferForTimestamps(), compressed));
+            }
+            List<ByteBuffer> valuesList = new ArrayList<>();
+            List<ByteBuffer> bitmapList = new ArrayList<>();
+            bitmaps = new Bitmap[dataTypes.size()];
+            for (int i = 0; i < dataTypes.size(); i++) {
+                valuesList.add(
+                        ByteBuffer.wrap(
+                                ColumnarPageUtils.unwrap(page.getValuesList().get(i), compressed)));
+                byte[] bitmap = ColumnarPageUtils.unwrap(page.getBitmapList().get(i), compressed);
+                bitmapList.add(ByteBuffer.wrap(bitmap));
+                bitmaps[i] = new Bitmap(rowCount, bitmap);
+            }
+            columns =
+                    ByteUtils.getColumnValuesByDataType(
+                            valuesList, dataTypes, bitmapList, rowCount);
+        } catch (DataFormatException e) {
+            throw new PhysicalException("fail to decode remote query result", e);
+        }
+        valueIndices = new int[dataTypes.size()];
+    }
+
+    private void fetchNextPage() throws PhysicalException {
+        Client client;
+        try {
+            client = pool.getClient();
+        } catch (TException e) {
+            throw new PhysicalException("fail to get parquet client", e);
+        }
+        FetchResp resp;
+        try {
+            resp = client.fetchProjectResults(new FetchReq(queryId, fetchSize));
+        } catch (TException e) {
+            pool.discard(client);
+            hasMoreResults = false;
+            throw new PhysicalException("fail to fetch remote query result", e);
+        }
+        pool.pushBack(client);
+        if (resp.getStatus().getCode() != SUCCESS_CODE) {
+            hasMoreResults = false;
+            throw new PhysicalException(
+                    "fail to fetch remote query result: " + resp.getStatus().getMessage());
+        }
+        hasMoreResults = resp.isHasMoreResults();
+        loadPage(resp.getPage());
+    }
+
+    @Override
+    public Header getHeader() throws PhysicalException {
+        return header;
+    }
+
+    @Override
+    public void close() throws PhysicalException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (!hasMoreResults) {
+            return;
+        }
+        hasMoreResults = false;
+        Client client;
+        try {
+            client = pool.getClient();
+        } catch (TException e) {
+            throw new PhysicalException("fail to get parquet client", e);
+        }
+        try {
+            client.closeProject(queryId);
+        } catch (TException e) {
+            pool.discard(client);
+            throw new PhysicalException("fail to close remote query result", e);
+        }
+        pool.pushBack(client);
+    }
+
+    @Override
+    public boolean hasNext() throws PhysicalException {
+        while (rowIndex >= rowCount && hasMoreResults && !closed) {
+            fetchNextPage();
+        }
+        return rowIndex < rowCount;
+    }
+
+    @Override
+    public Row next() throws PhysicalException {
+        if (!hasNext()) {
+            throw new PhysicalException("no more data");
+        }
+        Object[] values = new Object[dataTypes.size()];
+        for (int i = 0; i < dataTypes.size(); i++) {
+            if (bitmaps[i].get(rowIndex)) {
+                values[i] = ((Object[]) columns[i])[valueIndices[i]++];
+            }
+        }
+        Row row =
+                header.hasKey()
+                        ? new Row(header, times[rowIndex], values)
+                        : new Row(header, values);
+        rowIndex++;
+        return row;
+    }
+}
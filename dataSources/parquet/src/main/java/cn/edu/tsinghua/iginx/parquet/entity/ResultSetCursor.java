@@ -0,0 +1,114 @@
+package cn.edu.tsinghua.iginx.parquet.entity;
+
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.COLUMN_TIME;
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.IGINX_SEPARATOR;
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.PARQUET_SEPARATOR;
+import static cn.edu.tsinghua.iginx.parquet.tools.DataTypeTransformer.fromParquetDataType;
+
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/** 按时间顺序逐行读取一个 DuckDB 查询结果，关闭时释放对应的连接 */
+public class ResultSetCursor implements AutoCloseable {
+
+    private final Connection conn;
+
+    private final Statement stmt;
+
+    private final ResultSet rs;
+
+    private final List<String> pathNames = new ArrayList<>();
+
+    private final List<DataType> types = new ArrayList<>();
+
+    // 结果集中第 i 个数据列在合并后表头中的下标
+    private int[] fieldIndices;
+
+    private long time;
+
+    private boolean hasCurrent;
+
+    public ResultSetCursor(Connection conn, String sql) throws SQLException {
+        this.conn = conn;
+        Statement stmt = null;
+        try {
+            stmt = conn.createStatement();
+            this.rs = stmt.executeQuery(sql);
+            ResultSetMetaData rsMetaData = rs.getMetaData();
+            for (int i = 2; i <= rsMetaData.getColumnCount(); i++) { // skip time column
+                String physicalPath = rsMetaData.getColumnName(i);
+                pathNames.add(physicalPath.replaceAll(PARQUET_SEPARATOR, IGINX_SEPARATOR));
+                types.add(fromParquetDataType(rsMetaData.getColumnTypeName(i)));
+            }
+        } catch (SQLException | RuntimeException e) {
+            try {
+                if (stmt != null) {
+                    // 关闭语句时一并关闭其结果集
+                    stmt.close();
+                }
+            } finally {
+                conn.close();
+            }
+            throw e;
+        }
+        this.stmt = stmt;
+    }
+
+    public List<String> getPathNames() {
+        return pathNames;
+    }
+
+    public List<DataType> getTypes() {
+        return types;
+    }
+
+    public void setFieldIndices(int[] fieldIndices) {
+        this.fieldIndices = fieldIndices;
+    }
+
+    public boolean advance() throws SQLException {
+        hasCurrent = rs.next();
+        if (hasCurrent) {
+            time = rs.getLong(COLUMN_TIME);
+        }
+        return hasCurrent;
+    }
+
+    public boolean hasCurrent() {
+        return hasCurrent;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /** 将当前行的非空值写入 values，已有的值会被覆盖 */
+    public void fill(Object[] values) throws SQLException {
+        for (int i = 0; i < fieldIndices.length; i++) {
+            Object value = rs.getObject(i + 2);
+            if (value != null) {
+                if (types.get(i) == DataType.BINARY) {
+                    values[fieldIndices[i]] = ((String) value).getBytes();
+                } else {
+                    values[fieldIndices[i]] = value;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            rs.close();
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+    }
+}
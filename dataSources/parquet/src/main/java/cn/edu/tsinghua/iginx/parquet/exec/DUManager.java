@@ -3,37 +3,44 @@ package cn.edu.tsinghua.iginx.parquet.exec;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.ADD_COLUMNS_STMT;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.CMD_DELETE;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.CMD_PATHS;
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.CMD_STATS;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.CMD_TIME;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.COLUMN_TIME;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.CREATE_TABLE_STMT;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.DATATYPE_BIGINT;
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.DELETED_RANGE_CONDITION;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.DELETE_DATA_STMT;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.DROP_COLUMN_STMT;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.DROP_TABLE_STMT;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.DUCKDB_SCHEMA;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.IGINX_SEPARATOR;
-import static cn.edu.tsinghua.iginx.parquet.tools.Constant.INSERT_STMT_PREFIX;
-import static cn.edu.tsinghua.iginx.parquet.tools.Constant.MAX_MEM_SIZE;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.NAME;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.PARQUET_SEPARATOR;
-import static cn.edu.tsinghua.iginx.parquet.tools.Constant.SAVE_TO_PARQUET_STMT;
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.ROW_GROUP_SIZE;
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.SAVE_SORTED_TO_PARQUET_STMT;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.SELECT_MEM_STMT;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.SELECT_PARQUET_SCHEMA;
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.SELECT_STATS_STMT;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.SELECT_STMT;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.SUFFIX_EXTRA_FILE;
 import static cn.edu.tsinghua.iginx.parquet.tools.Constant.SUFFIX_PARQUET_FILE;
-import static cn.edu.tsinghua.iginx.parquet.tools.DataTypeTransformer.fromParquetDataType;
 import static cn.edu.tsinghua.iginx.parquet.tools.DataTypeTransformer.toParquetDataType;
 
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
-import cn.edu.tsinghua.iginx.engine.shared.data.write.BitmapView;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
-import cn.edu.tsinghua.iginx.parquet.entity.Column;
 import cn.edu.tsinghua.iginx.parquet.entity.FileMeta;
+import cn.edu.tsinghua.iginx.parquet.entity.MemTable;
+import cn.edu.tsinghua.iginx.parquet.entity.MergeQueryRowStream;
+import cn.edu.tsinghua.iginx.parquet.entity.ResultSetCursor;
 import cn.edu.tsinghua.iginx.parquet.tools.DataTypeTransformer;
+import cn.edu.tsinghua.iginx.parquet.tools.DataViewAppender;
 import cn.edu.tsinghua.iginx.parquet.tools.DataViewWrapper;
+import cn.edu.tsinghua.iginx.parquet.tools.FilePruner;
 import cn.edu.tsinghua.iginx.parquet.tools.FileUtils;
 import cn.edu.tsinghua.iginx.parquet.tools.TagKVUtils;
 import cn.edu.tsinghua.iginx.thrift.DataType;
@@ -51,19 +58,23 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.sql.Connection;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 import org.duckdb.DuckDBConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -80,30 +91,39 @@ public class DUManager {
 
     private final boolean isDummyStorageUnit;
 
-    private final ReentrantReadWriteLock memTableLock = new ReentrantReadWriteLock();
+    // 串行化写入与删除，查询不需要获取
+    private final ReentrantLock writeLock = new ReentrantLock();
 
-    private String curMemTable = "";
+    // 保护内存表切换与文件注册，只在获取快照和切换状态时短暂持有
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
 
-    private Map<String, DataType> curMemTablePathMap = new HashMap<>();
+    private volatile MemTable activeMemTable = null;
 
-    private int curMemSize = 0;
+    // 正在刷写的只读内存表，按创建顺序排列
+    private final List<MemTable> immutableMemTables = new CopyOnWriteArrayList<>();
 
-    private long curStartTime = Long.MAX_VALUE;
+    private final Map<String, FileMeta> fileMetaMap = new ConcurrentHashMap<>();
 
-    private long curEndTime = Long.MIN_VALUE;
+    private final long memTableSize;
 
-    private final Map<String, FileMeta> fileMetaMap = new HashMap<>();
+    private final ExecutorService flushPool;
 
-    private boolean isFlushing = false;
+    private long lastMemTableTime = 0;
 
-    private final ExecutorService flushPool = Executors.newSingleThreadExecutor();
-
-    public DUManager(String id, String dataDir, Connection connection, boolean isDummyStorageUnit)
+    public DUManager(
+            String id,
+            String dataDir,
+            Connection connection,
+            boolean isDummyStorageUnit,
+            long memTableSize,
+            ExecutorService flushPool)
             throws IOException {
         this.id = id;
         this.dataDir = dataDir;
         this.connection = connection;
         this.isDummyStorageUnit = isDummyStorageUnit;
+        this.memTableSize = memTableSize;
+        this.flushPool = flushPool;
 
         if (!isDummyStorageUnit) {
             if (Files.exists(Paths.get(dataDir, id))) {
@@ -133,6 +153,7 @@ public class DUManager {
                 long startTime = 0, endTime = Long.MAX_VALUE;
                 Map<String, DataType> pathMap = new HashMap<>();
                 Map<String, List<TimeRange>> deleteRanges = new HashMap<>();
+                Map<String, Pair<Number, Number>> statistics = new HashMap<>();
 
                 String str = null;
                 while ((str = br.readLine()) != null) {
@@ -152,6 +173,24 @@ public class DUManager {
                         }
                         startTime = Long.parseLong(times[0]);
                         endTime = Long.parseLong(times[1]);
+                    } else if (str.startsWith(CMD_STATS)) {
+                        String[] stats = details.split(",");
+                        for (int i = 0; i + 2 < stats.length; i += 3) {
+                            DataType type = pathMap.get(stats[i]);
+                            if (type == DataType.FLOAT || type == DataType.DOUBLE) {
+                                statistics.put(
+                                        stats[i],
+                                        new Pair<>(
+                                                Double.parseDouble(stats[i + 1]),
+                                                Double.parseDouble(stats[i + 2])));
+                            } else if (type == DataType.INTEGER || type == DataType.LONG) {
+                                statistics.put(
+                                        stats[i],
+                                        new Pair<>(
+                                                Long.parseLong(stats[i + 1]),
+                                                Long.parseLong(stats[i + 2])));
+                            }
+                        }
                     } else if (str.startsWith(CMD_DELETE)) {
                         String[] deleteInfo = details.split("#");
                         if (deleteInfo.length == 1) {
@@ -181,384 +220,382 @@ public class DUManager {
 
                 FileMeta meta =
                         new FileMeta(
-                                extraPath, dataPath, startTime, endTime, pathMap, deleteRanges);
+                                extraPath,
+                                dataPath,
+                                startTime,
+                                endTime,
+                                pathMap,
+                                deleteRanges,
+                                statistics);
                 fileMetaMap.put(fileId, meta);
+                // 新的内存表排在所有已有文件之后
+                lastMemTableTime = Math.max(lastMemTableTime, getFlushSequence(fileId));
             }
         }
     }
 
-    public List<Column> project(List<String> paths, TagFilter tagFilter, String filter)
-            throws SQLException {
+    /** 文件名中内存表的创建时间，文件按其从旧到新排列 */
+    private static long getFlushSequence(String fileId) {
+        try {
+            return Long.parseLong(fileId.substring(fileId.lastIndexOf('_') + 1));
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    /** 返回按时间归并后的查询结果，结果集在关闭时释放连接。pruningFilter 为 filter 对应的过滤条件，用于跳过不可能满足条件的文件，可以为空 */
+    public RowStream project(
+            List<String> paths, TagFilter tagFilter, String filter, Filter pruningFilter)
+            throws SQLException, PhysicalException {
         if (isDummyStorageUnit) {
             return projectDummy(paths, tagFilter, filter);
         }
 
-        Map<String, Column> dataMap = new HashMap<>();
-        for (Map.Entry<String, FileMeta> entry : fileMetaMap.entrySet()) {
-            FileMeta fileMeta = entry.getValue();
-            List<String> filePaths =
-                    determinePathList(fileMeta.getPathMap().keySet(), paths, tagFilter);
-            if (!filePaths.isEmpty()) {
-                List<Column> columns =
-                        projectInParquet(
-                                filePaths,
-                                filter,
-                                fileMeta.getDataPath(),
-                                fileMeta.getDeleteRanges(),
-                                fileMeta.getEndTime());
-                mergeData(dataMap, columns);
-            }
+        List<FileMeta> fileMetas;
+        List<MemTable> memTables;
+        stateLock.readLock().lock();
+        try {
+            // ConcurrentHashMap 的遍历顺序与刷写顺序无关，归并前按刷写顺序排列，保证新文件覆盖旧文件
+            fileMetas =
+                    fileMetaMap
+                            .entrySet()
+                            .stream()
+                            .sorted(
+                                    Comparator.comparingLong(
+                                                    (Map.Entry<String, FileMeta> entry) ->
+                                                            getFlushSequence(entry.getKey()))
+                                            .thenComparing(Map.Entry::getKey))
+                            .map(Map.Entry::getValue)
+                            .collect(Collectors.toList());
+            memTables = getMemTables();
+            memTables.forEach(memTable -> memTable.getLock().readLock().lock());
+        } finally {
+            stateLock.readLock().unlock();
         }
 
-        List<String> memPaths = determinePathList(curMemTablePathMap.keySet(), paths, tagFilter);
-        if (!memPaths.isEmpty()) {
-            List<Column> columns = projectInMemTable(memPaths, filter);
-            mergeData(dataMap, columns);
-        }
-        return new ArrayList<>(dataMap.values());
-    }
+        // 数据源按从旧到新的顺序排列，归并时新数据覆盖旧数据
+        List<ResultSetCursor> cursors = new ArrayList<>();
+        try {
+            try {
+                // 查询结果在执行时即已生成，内存表只需在打开游标期间保持可读
+                for (MemTable memTable : memTables) {
+                    List<String> memPaths =
+                            determinePathList(memTable.getPathMap().keySet(), paths, tagFilter);
+                    if (!memPaths.isEmpty()) {
+                        cursors.add(openMemTableCursor(memTable, memPaths, filter));
+                    }
+                }
+            } finally {
+                memTables.forEach(memTable -> memTable.getLock().readLock().unlock());
+            }
 
-    private List<Column> projectDummy(List<String> paths, TagFilter tagFilter, String filter)
-            throws SQLException {
-        Map<String, Column> dataMap = new HashMap<>();
-        File file = new File(dataDir);
-        File[] dataFiles = file.listFiles();
-        if (dataFiles != null) {
-            for (File dataFile : dataFiles) {
-                if (!dataFile.getName().endsWith(SUFFIX_PARQUET_FILE)) {
+            List<ResultSetCursor> fileCursors = new ArrayList<>();
+            for (FileMeta fileMeta : fileMetas) {
+                if (!FilePruner.mayMatch(pruningFilter, fileMeta)) {
                     continue;
                 }
-
-                Set<String> pathsInFile = getPathsFromFile(dataFile.getPath());
-                List<String> filePaths = determinePathList(pathsInFile, paths, tagFilter);
+                List<String> filePaths =
+                        determinePathList(fileMeta.getPathMap().keySet(), paths, tagFilter);
                 if (!filePaths.isEmpty()) {
-                    List<Column> columns =
-                            projectInParquet(
-                                    filePaths, filter, dataFile.getPath(), null, Long.MAX_VALUE);
-                    mergeData(dataMap, columns);
+                    fileCursors.add(
+                            openParquetCursor(
+                                    filePaths,
+                                    filter,
+                                    fileMeta.getDataPath(),
+                                    fileMeta.getDeleteRanges()));
                 }
             }
+            cursors.addAll(0, fileCursors);
+            return new MergeQueryRowStream(cursors);
+        } catch (SQLException | PhysicalException | RuntimeException e) {
+            closeCursors(cursors);
+            throw e;
         }
-        return new ArrayList<>(dataMap.values());
     }
 
-    private List<Column> projectInMemTable(List<String> paths, String filter) throws SQLException {
-        try {
-            memTableLock.readLock().lock();
+    /** 需要在持有 stateLock 时调用，返回全部只读内存表与当前内存表，按从旧到新排列 */
+    private List<MemTable> getMemTables() {
+        List<MemTable> memTables = new ArrayList<>(immutableMemTables);
+        MemTable memTable = activeMemTable;
+        if (memTable != null) {
+            memTables.add(memTable);
+        }
+        return memTables;
+    }
 
-            Connection conn = ((DuckDBConnection) connection).duplicate();
-            Statement stmt = conn.createStatement();
+    private RowStream projectDummy(List<String> paths, TagFilter tagFilter, String filter)
+            throws SQLException, PhysicalException {
+        List<ResultSetCursor> cursors = new ArrayList<>();
+        try {
+            File file = new File(dataDir);
+            File[] dataFiles = file.listFiles();
+            if (dataFiles != null) {
+                for (File dataFile : dataFiles) {
+                    if (!dataFile.getName().endsWith(SUFFIX_PARQUET_FILE)) {
+                        continue;
+                    }
 
-            StringBuilder builder = new StringBuilder();
-            paths.forEach(
-                    path ->
-                            builder.append(path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR))
-                                    .append(", "));
-            ResultSet rs =
-                    stmt.executeQuery(
-                            String.format(
-                                    SELECT_MEM_STMT, builder.toString(), curMemTable, filter));
-            stmt.close();
-            conn.close();
+                    Set<String> pathsInFile = getPathsFromFile(dataFile.getPath());
+                    List<String> filePaths = determinePathList(pathsInFile, paths, tagFilter);
+                    if (!filePaths.isEmpty()) {
+                        cursors.add(openParquetCursor(filePaths, filter, dataFile.getPath(), null));
+                    }
+                }
+            }
+            return new MergeQueryRowStream(cursors);
+        } catch (SQLException | PhysicalException | RuntimeException e) {
+            closeCursors(cursors);
+            throw e;
+        }
+    }
 
-            List<Column> data = initColumns(rs);
-            rs.close();
-            return data;
-        } finally {
-            memTableLock.readLock().unlock();
+    private void closeCursors(List<ResultSetCursor> cursors) {
+        for (ResultSetCursor cursor : cursors) {
+            try {
+                cursor.close();
+            } catch (SQLException e) {
+                logger.error("close cursor failure", e);
+            }
         }
     }
 
-    private List<Column> projectInParquet(
-            List<String> paths,
-            String filter,
-            String dataPath,
-            Map<String, List<TimeRange>> deleteRanges,
-            long endTime)
+    private ResultSetCursor openMemTableCursor(MemTable memTable, List<String> paths, String filter)
             throws SQLException {
-        Connection conn = ((DuckDBConnection) connection).duplicate();
-        Statement stmt = conn.createStatement();
-
         StringBuilder builder = new StringBuilder();
         paths.forEach(
                 path ->
                         builder.append(path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR))
                                 .append(", "));
-        ResultSet rs =
-                stmt.executeQuery(String.format(SELECT_STMT, builder.toString(), dataPath, filter));
-        stmt.close();
-        conn.close();
-
-        List<Column> data = initColumns(rs);
-        rs.close();
-
-        // deal with deleted data
-        if (deleteRanges != null && !deleteRanges.isEmpty()) {
-            for (Column column : data) {
-                if (!deleteRanges.containsKey(column.getPathName())) {
-                    continue;
-                }
-
-                List<TimeRange> ranges = deleteRanges.get(column.getPathName());
-                if (ranges != null) {
-                    ranges.forEach(
-                            timeRange -> {
-                                long start = timeRange.getActualBeginTime();
-                                long end =
-                                        Math.min(
-                                                timeRange.getActualEndTime(),
-                                                endTime); // optimize time > xxx case
-                                for (long i = start; i <= end; i++) {
-                                    column.removeData(i);
-                                }
-                            });
-                }
-            }
-        }
-        return data;
+        return new ResultSetCursor(
+                ((DuckDBConnection) connection).duplicate(),
+                String.format(SELECT_MEM_STMT, builder.toString(), memTable.getName(), filter));
     }
 
-    private List<Column> initColumns(ResultSet rs) throws SQLException {
-        ResultSetMetaData rsMetaData = rs.getMetaData();
-        List<Column> columns = new ArrayList<>();
-        for (int i = 1; i <= rsMetaData.getColumnCount(); i++) { // start from index 1
-            String physicalPath = rsMetaData.getColumnName(i);
-            String pathName = physicalPath.replaceAll(PARQUET_SEPARATOR, IGINX_SEPARATOR);
-            if (i == 1 && pathName.equals(COLUMN_TIME)) {
-                continue;
-            }
-            DataType type = fromParquetDataType(rsMetaData.getColumnTypeName(i));
-            columns.add(new Column(pathName, physicalPath, type));
-        }
-
-        while (rs.next()) {
-            long time = (long) rs.getObject(COLUMN_TIME);
-            for (Column column : columns) {
-                Object value = rs.getObject(column.getPhysicalPath());
-                if (value != null) {
-                    if (column.getType() == DataType.BINARY) {
-                        column.putData(time, ((String) value).getBytes());
+    private ResultSetCursor openParquetCursor(
+            List<String> paths,
+            String filter,
+            String dataPath,
+            Map<String, List<TimeRange>> deleteRanges)
+            throws SQLException {
+        StringBuilder builder = new StringBuilder();
+        paths.forEach(
+                path -> {
+                    String column = path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR);
+                    List<TimeRange> ranges = deleteRanges == null ? null : deleteRanges.get(path);
+                    if (ranges == null || ranges.isEmpty()) {
+                        builder.append(column).append(", ");
                     } else {
-                        column.putData(time, value);
+                        // deal with deleted data, 被删除的数据在查询时置为空值
+                        builder.append("CASE WHEN ")
+                                .append(
+                                        ranges.stream()
+                                                .map(
+                                                        range ->
+                                                                String.format(
+                                                                        DELETED_RANGE_CONDITION,
+                                                                        range.getActualBeginTime(),
+                                                                        range.getActualEndTime()))
+                                                .collect(Collectors.joining(" OR ")))
+                                .append(" THEN NULL ELSE ")
+                                .append(column)
+                                .append(" END AS ")
+                                .append(column)
+                                .append(", ");
                     }
-                }
-            }
-        }
-        return columns;
-    }
-
-    private void mergeData(Map<String, Column> dataMap, List<Column> columns) {
-        for (Column column : columns) {
-            if (dataMap.containsKey(column.getPathName())) {
-                dataMap.get(column.getPathName()).putBatchData(column.getData());
-            } else {
-                dataMap.put(column.getPathName(), column);
-            }
-        }
+                });
+        return new ResultSetCursor(
+                ((DuckDBConnection) connection).duplicate(),
+                String.format(SELECT_STMT, builder.toString(), dataPath, filter));
     }
 
     public void insert(DataView dataView) throws SQLException {
-        try {
-            memTableLock.writeLock().lock();
-
-            DataViewWrapper data = new DataViewWrapper(dataView);
+        DataViewWrapper data = new DataViewWrapper(dataView);
 
+        writeLock.lock();
+        try {
             Connection conn = ((DuckDBConnection) connection).duplicate();
             Statement stmt = conn.createStatement();
 
-            if (curMemTable.equals("")) { // init mem table
-                curMemTable = id + "_" + System.currentTimeMillis();
-
-                StringBuilder builder = new StringBuilder();
-                builder.append(COLUMN_TIME).append(" ").append(DATATYPE_BIGINT).append(", ");
-                for (int i = 0; i < data.getPathNum(); i++) {
-                    String path = data.getPath(i);
-                    builder.append(path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR))
-                            .append(" ")
-                            .append(toParquetDataType(data.getDataType(i)))
-                            .append(", ");
-                    curMemTablePathMap.put(path, data.getDataType(i));
+            MemTable memTable = activeMemTable;
+            if (memTable == null) { // init mem table
+                memTable = createMemTable(stmt, data);
+                stateLock.writeLock().lock();
+                try {
+                    activeMemTable = memTable;
+                } finally {
+                    stateLock.writeLock().unlock();
                 }
-                builder.deleteCharAt(builder.length() - 2);
-                String columns = builder.toString();
-
-                String createTableStmt = String.format(CREATE_TABLE_STMT, curMemTable, columns);
-                stmt.execute(createTableStmt);
             } else { // add columns if needed
+                Map<String, DataType> newPaths = new LinkedHashMap<>();
                 for (int i = 0; i < data.getPathNum(); i++) {
                     String path = data.getPath(i);
-                    if (!curMemTablePathMap.containsKey(path)) {
-                        String type = toParquetDataType(data.getDataType(i));
-                        stmt.execute(
-                                String.format(
-                                        ADD_COLUMNS_STMT,
-                                        curMemTable,
-                                        path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR),
-                                        type));
-                        curMemTablePathMap.put(path, data.getDataType(i));
-                        logger.info("add columns: ({}, {})", path, type);
+                    if (!memTable.getPathMap().containsKey(path)) {
+                        newPaths.put(path, data.getDataType(i));
                     }
                 }
+                if (!newPaths.isEmpty()) {
+                    addColumns(conn, stmt, memTable, newPaths);
+                }
             }
 
             // write data
-            String insertPrefix = generateInsertStmtPrefix(data, curMemTable);
-            String insertBody;
-            switch (data.getRawDataType()) {
-                case Column:
-                case NonAlignedColumn:
-                    insertBody = generateColInsertStmtBody(data);
-                    break;
-                case Row:
-                case NonAlignedRow:
-                default:
-                    insertBody = generateRowInsertStmtBody(data);
-                    break;
-            }
-            stmt.execute(insertPrefix + insertBody);
-
-            if (data.getMaxTime() > curEndTime) {
-                curEndTime = data.getMaxTime();
-            }
-            if (data.getMinTime() < curStartTime) {
-                curStartTime = data.getMinTime();
-            }
+            memTable.addMemSize(
+                    new DataViewAppender(data, new ArrayList<>(memTable.getPathMap().keySet()))
+                            .appendTo((DuckDBConnection) conn, memTable.getName()));
+            memTable.updateTime(data.getMinTime(), data.getMaxTime());
 
-            if (curMemSize > MAX_MEM_SIZE) {
+            if (memTable.getMemSize() > memTableSize) {
                 flush();
             }
 
             stmt.close();
             conn.close();
         } finally {
-            memTableLock.writeLock().unlock();
+            writeLock.unlock();
         }
     }
 
-    private String generateInsertStmtPrefix(DataViewWrapper data, String tableName) {
+    private MemTable createMemTable(Statement stmt, DataViewWrapper data) throws SQLException {
+        // 保证同一个 du 中内存表名不重复
+        long time = Math.max(System.currentTimeMillis(), lastMemTableTime + 1);
+        lastMemTableTime = time;
+        String tableName = id + "_" + time;
+
+        Map<String, DataType> pathMap = new LinkedHashMap<>();
         StringBuilder builder = new StringBuilder();
-        builder.append("time, ");
+        builder.append(COLUMN_TIME).append(" ").append(DATATYPE_BIGINT).append(", ");
         for (int i = 0; i < data.getPathNum(); i++) {
             String path = data.getPath(i);
-            builder.append(path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR)).append(", ");
+            builder.append(path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR))
+                    .append(" ")
+                    .append(toParquetDataType(data.getDataType(i)))
+                    .append(", ");
+            pathMap.put(path, data.getDataType(i));
         }
         builder.deleteCharAt(builder.length() - 2);
         String columns = builder.toString();
-        String insertStmtPrefix = String.format(INSERT_STMT_PREFIX, tableName, columns);
-        logger.info("InsertStmtPrefix: {}", insertStmtPrefix);
-        return insertStmtPrefix;
-    }
 
-    private String generateRowInsertStmtBody(DataViewWrapper data) {
-        StringBuilder builder = new StringBuilder();
+        String createTableStmt = String.format(CREATE_TABLE_STMT, tableName, columns);
+        stmt.execute(createTableStmt);
+        return new MemTable(tableName, pathMap);
+    }
 
-        for (int i = 0; i < data.getTimeSize(); i++) {
-            BitmapView bitmapView = data.getBitmapView(i);
-            builder.append("(").append(data.getTimestamp(i)).append(", ");
-
-            int index = 0;
-            for (int j = 0; j < data.getPathNum(); j++) {
-                if (bitmapView.get(j)) {
-                    DataType type = data.getDataType(j);
-                    if (type == DataType.BINARY) {
-                        byte[] bytes = (byte[]) data.getValue(i, index);
-                        builder.append("'").append(new String(bytes)).append("', ");
-                        curMemSize += bytes.length;
-                    } else {
-                        builder.append(data.getValue(i, index)).append(", ");
-                        curMemSize += DataTypeTransformer.getDataSize(type);
-                    }
-                    index++;
-                } else {
-                    builder.append("NULL, ");
-                }
+    private void addColumns(
+            Connection conn, Statement stmt, MemTable memTable, Map<String, DataType> newPaths)
+            throws SQLException {
+        // 在同一个事务中完成全部列的添加
+        conn.setAutoCommit(false);
+        try {
+            for (Map.Entry<String, DataType> entry : newPaths.entrySet()) {
+                stmt.execute(
+                        String.format(
+                                ADD_COLUMNS_STMT,
+                                memTable.getName(),
+                                entry.getKey().replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR),
+                                toParquetDataType(entry.getValue())));
             }
-            builder.append("), ");
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(true);
         }
-        return builder.toString();
+        memTable.addPaths(newPaths);
+        logger.debug("add columns: {}", newPaths);
     }
 
-    private String generateColInsertStmtBody(DataViewWrapper data) {
-        String[] rowValueArray = new String[data.getTimeSize()];
-        for (int i = 0; i < data.getTimeSize(); i++) {
-            rowValueArray[i] = "(" + data.getTimestamp(i) + ", ";
+    /** 需要在持有 writeLock 时调用，将当前内存表转为只读并交给后台线程刷写 */
+    private void flush() {
+        MemTable memTable = switchMemTable();
+        if (memTable != null) {
+            flushPool.submit(() -> flushMemTable(memTable));
         }
-        for (int i = 0; i < data.getPathNum(); i++) {
-            BitmapView bitmapView = data.getBitmapView(i);
-
-            int index = 0;
-            for (int j = 0; j < data.getTimeSize(); j++) {
-                if (bitmapView.get(j)) {
-                    DataType type = data.getDataType(i);
-                    if (type == DataType.BINARY) {
-                        byte[] bytes = (byte[]) data.getValue(i, index);
-                        rowValueArray[j] += "'" + new String(bytes) + "', ";
-                        curMemSize += bytes.length;
-                    } else {
-                        rowValueArray[j] += data.getValue(i, index) + ", ";
-                        curMemSize += DataTypeTransformer.getDataSize(type);
-                    }
-                    index++;
-                } else {
-                    rowValueArray[j] += "NULL, ";
-                }
+    }
+
+    private MemTable switchMemTable() {
+        stateLock.writeLock().lock();
+        try {
+            MemTable memTable = activeMemTable;
+            if (memTable != null) {
+                immutableMemTables.add(memTable);
+                activeMemTable = null;
             }
+            return memTable;
+        } finally {
+            stateLock.writeLock().unlock();
         }
-        for (int i = 0; i < data.getTimeSize(); i++) {
-            rowValueArray[i] += "), ";
-        }
+    }
 
-        StringBuilder builder = new StringBuilder();
-        for (String row : rowValueArray) {
-            builder.append(row);
+    private void flushMemTable(MemTable memTable) {
+        FileMeta fileMeta = null;
+        try {
+            fileMeta = flushToDisk(memTable);
+        } catch (Exception e) {
+            if (!memTable.isDiscarded()) {
+                // 刷写失败的内存表继续保留在只读列表中，数据仍然可以被查询
+                logger.error("flush mem table {} error", memTable.getName(), e);
+                return;
+            }
         }
-        return builder.toString();
-    }
 
-    private void flush() {
-        FileMeta meta = new FileMeta(curStartTime, curEndTime, curMemTablePathMap);
-
-        flushPool.submit(
-                () -> {
-                    try {
-                        flushToDisk(
-                                curMemTable, curMemTablePathMap, curStartTime, curEndTime, meta);
-                    } catch (Exception e) {
-                        logger.info("flush error, details: {}", e.getMessage());
-                    }
-                });
+        stateLock.writeLock().lock();
+        try {
+            if (memTable.isDiscarded()) {
+                if (fileMeta != null) {
+                    new File(fileMeta.getDataPath()).delete();
+                    new File(fileMeta.getExtraPath()).delete();
+                }
+            } else {
+                fileMetaMap.put(memTable.getName(), fileMeta);
+                immutableMemTables.remove(memTable);
+                for (Pair<List<String>, List<TimeRange>> delete : memTable.getPendingDeletes()) {
+                    fileMeta.deleteData(delete.k, delete.v);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("replay deletion on {} error", memTable.getName(), e);
+        } finally {
+            stateLock.writeLock().unlock();
+        }
 
-        curMemTablePathMap = new HashMap<>();
-        curMemTable = "";
-        curMemSize = 0;
-        curStartTime = Long.MAX_VALUE;
-        curEndTime = Long.MIN_VALUE;
+        try {
+            dropMemTable(memTable);
+        } catch (SQLException e) {
+            logger.error("drop mem table {} error", memTable.getName(), e);
+        }
     }
 
     public void flushBeforeExist() throws IOException, SQLException {
-        if (!curMemTable.equals("")) {
-            FileMeta meta = new FileMeta(curStartTime, curEndTime, curMemTablePathMap);
-            flushToDisk(curMemTable, curMemTablePathMap, curStartTime, curEndTime, meta);
+        writeLock.lock();
+        try {
+            MemTable memTable = switchMemTable();
+            if (memTable != null) {
+                flushMemTable(memTable);
+            }
+        } finally {
+            writeLock.unlock();
         }
     }
 
-    private void flushToDisk(
-            String table,
-            Map<String, DataType> paths,
-            long startTime,
-            long endTime,
-            FileMeta fileMeta)
-            throws SQLException, IOException {
-        isFlushing = true;
+    private FileMeta flushToDisk(MemTable memTable) throws SQLException, IOException {
+        String table = memTable.getName();
+        Map<String, DataType> paths = memTable.getPathMap();
+        long startTime = memTable.getStartTime();
+        long endTime = memTable.getEndTime();
+        FileMeta fileMeta = new FileMeta(startTime, endTime, new HashMap<>(paths));
 
         Connection conn = ((DuckDBConnection) connection).duplicate();
         Statement stmt = conn.createStatement();
 
-        // flush data
+        // flush data, 按时间排序后写出，使每个 row group 的时间范围尽量不重叠
+        Files.createDirectories(Paths.get(dataDir, id));
         Path dataPath = Paths.get(dataDir, id, String.format("%s.parquet", table));
-        stmt.execute(String.format(SAVE_TO_PARQUET_STMT, table, dataPath.toString()));
-        stmt.execute(String.format(DROP_TABLE_STMT, table));
+        stmt.execute(
+                String.format(
+                        SAVE_SORTED_TO_PARQUET_STMT, table, dataPath.toString(), ROW_GROUP_SIZE));
         fileMeta.setDataPath(dataPath.toString());
+        collectStatistics(stmt, table, paths, fileMeta.getStatistics());
 
         // flush meta
         Path extraPath = Paths.get(dataDir, id, String.format("%s.extra", table));
@@ -572,6 +609,19 @@ public class DUManager {
                 .append(",")
                 .append(endTime)
                 .append("\n");
+        if (!fileMeta.getStatistics().isEmpty()) {
+            builder.append(CMD_STATS).append(" ");
+            fileMeta.getStatistics()
+                    .forEach(
+                            (k, v) ->
+                                    builder.append(k)
+                                            .append(",")
+                                            .append(v.k)
+                                            .append(",")
+                                            .append(v.v)
+                                            .append(","));
+            builder.deleteCharAt(builder.length() - 1).append("\n");
+        }
 
         FileWriter fw = new FileWriter(extraPath.toString());
         BufferedWriter bw = new BufferedWriter(fw);
@@ -582,11 +632,73 @@ public class DUManager {
         fw.close();
 
         fileMeta.setExtraPath(extraPath.toString());
-        fileMetaMap.put(table, fileMeta);
 
         stmt.close();
         conn.close();
-        isFlushing = false;
+        return fileMeta;
+    }
+
+    private void collectStatistics(
+            Statement stmt,
+            String table,
+            Map<String, DataType> paths,
+            Map<String, Pair<Number, Number>> statistics)
+            throws SQLException {
+        List<String> numericPaths = new ArrayList<>();
+        StringBuilder builder = new StringBuilder();
+        paths.forEach(
+                (path, type) -> {
+                    if (isNumeric(type)) {
+                        String column = path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR);
+                        builder.append("min(")
+                                .append(column)
+                                .append("), max(")
+                                .append(column)
+                                .append("), ");
+                        numericPaths.add(path);
+                    }
+                });
+        if (numericPaths.isEmpty()) {
+            return;
+        }
+
+        ResultSet rs = stmt.executeQuery(String.format(SELECT_STATS_STMT, builder, table));
+        if (rs.next()) {
+            for (int i = 0; i < numericPaths.size(); i++) {
+                Object min = rs.getObject(2 * i + 1);
+                Object max = rs.getObject(2 * i + 2);
+                if (min instanceof Number && max instanceof Number) {
+                    statistics.put(numericPaths.get(i), new Pair<>((Number) min, (Number) max));
+                }
+            }
+        }
+        rs.close();
+    }
+
+    private static boolean isNumeric(DataType type) {
+        switch (type) {
+            case INTEGER:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /** 等待正在读取该内存表的查询结束后删除内存表 */
+    private void dropMemTable(MemTable memTable) throws SQLException {
+        memTable.getLock().writeLock().lock();
+        try {
+            Connection conn = ((DuckDBConnection) connection).duplicate();
+            Statement stmt = conn.createStatement();
+            stmt.execute(String.format(DROP_TABLE_STMT, memTable.getName()));
+            stmt.close();
+            conn.close();
+        } finally {
+            memTable.getLock().writeLock().unlock();
+        }
     }
 
     public void delete(List<String> paths, List<TimeRange> timeRanges, TagFilter tagFilter)
@@ -598,55 +710,76 @@ public class DUManager {
             clearData();
         }
 
-        List<String> memPaths = determinePathList(curMemTablePathMap.keySet(), paths, tagFilter);
-        if (!memPaths.isEmpty()) {
-            deleteDataInMemTable(memPaths, timeRanges);
-        }
+        writeLock.lock();
+        stateLock.readLock().lock();
+        try {
+            MemTable active = activeMemTable;
+            for (MemTable memTable : getMemTables()) {
+                List<String> memPaths =
+                        determinePathList(memTable.getPathMap().keySet(), paths, tagFilter);
+                if (!memPaths.isEmpty()) {
+                    deleteDataInMemTable(memTable, memPaths, timeRanges, memTable != active);
+                }
+            }
 
-        for (Map.Entry<String, FileMeta> entry : fileMetaMap.entrySet()) {
-            List<String> filePaths =
-                    determinePathList(entry.getValue().getPathMap().keySet(), paths, tagFilter);
-            if (!filePaths.isEmpty()) {
-                deleteDataInFile(entry.getKey(), filePaths, timeRanges);
+            for (Map.Entry<String, FileMeta> entry : fileMetaMap.entrySet()) {
+                List<String> filePaths =
+                        determinePathList(entry.getValue().getPathMap().keySet(), paths, tagFilter);
+                if (!filePaths.isEmpty()) {
+                    deleteDataInFile(entry.getKey(), filePaths, timeRanges);
+                }
             }
+        } finally {
+            stateLock.readLock().unlock();
+            writeLock.unlock();
         }
     }
 
-    private void deleteDataInMemTable(List<String> paths, List<TimeRange> timeRanges)
+    private void deleteDataInMemTable(
+            MemTable memTable, List<String> paths, List<TimeRange> timeRanges, boolean immutable)
             throws SQLException {
-        try {
-            memTableLock.writeLock().lock();
-            Connection conn = ((DuckDBConnection) connection).duplicate();
-            Statement stmt = conn.createStatement();
+        if (immutable) {
+            // 只读内存表可能正在被刷写，删除在刷写完成后补记到文件元数据中
+            memTable.addPendingDelete(paths, timeRanges);
+        }
 
-            if (timeRanges == null || timeRanges.size() == 0) {
-                for (String path : paths) {
-                    stmt.execute(
-                            String.format(
-                                    DROP_COLUMN_STMT,
-                                    curMemTable,
-                                    path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR)));
-                    curMemTablePathMap.remove(path);
-                }
+        Connection conn = ((DuckDBConnection) connection).duplicate();
+        Statement stmt = conn.createStatement();
+
+        if (timeRanges == null || timeRanges.size() == 0) {
+            if (immutable) {
+                memTable.removePaths(paths);
             } else {
-                for (String path : paths) {
-                    for (TimeRange timeRange : timeRanges) {
+                memTable.getLock().writeLock().lock();
+                try {
+                    for (String path : paths) {
                         stmt.execute(
                                 String.format(
-                                        DELETE_DATA_STMT,
-                                        curMemTable,
-                                        path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR),
-                                        timeRange.getActualBeginTime(),
-                                        timeRange.getActualEndTime()));
+                                        DROP_COLUMN_STMT,
+                                        memTable.getName(),
+                                        path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR)));
                     }
+                    memTable.removePaths(paths);
+                } finally {
+                    memTable.getLock().writeLock().unlock();
+                }
+            }
+        } else {
+            for (String path : paths) {
+                for (TimeRange timeRange : timeRanges) {
+                    stmt.execute(
+                            String.format(
+                                    DELETE_DATA_STMT,
+                                    memTable.getName(),
+                                    path.replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR),
+                                    timeRange.getActualBeginTime(),
+                                    timeRange.getActualEndTime()));
                 }
             }
-
-            stmt.close();
-            conn.close();
-        } finally {
-            memTableLock.writeLock().unlock();
         }
+
+        stmt.close();
+        conn.close();
     }
 
     private void deleteDataInFile(String fileName, List<String> paths, List<TimeRange> timeRanges)
@@ -656,33 +789,32 @@ public class DUManager {
     }
 
     private void clearData() throws SQLException {
-        // drop mem table
-        if (!curMemTable.equals("")) {
+        writeLock.lock();
+        try {
+            stateLock.writeLock().lock();
             try {
-                memTableLock.writeLock().lock();
-                Connection conn = ((DuckDBConnection) connection).duplicate();
-                Statement stmt = conn.createStatement();
-
-                stmt.execute(String.format(DROP_TABLE_STMT, curMemTable));
-
-                curMemTablePathMap = new HashMap<>();
-                curMemTable = "";
-                curMemSize = 0;
-                curStartTime = Long.MAX_VALUE;
-                curEndTime = Long.MIN_VALUE;
+                // 正在刷写的内存表由刷写线程负责删除
+                immutableMemTables.forEach(MemTable::discard);
+                immutableMemTables.clear();
+
+                // drop mem table
+                MemTable memTable = activeMemTable;
+                if (memTable != null) {
+                    activeMemTable = null;
+                    dropMemTable(memTable);
+                }
 
-                stmt.close();
-                conn.close();
+                // delete parquet files
+                Path path = Paths.get(dataDir, id);
+                File duDir = new File(path.toString());
+                FileUtils.deleteFile(duDir);
+                fileMetaMap.clear();
             } finally {
-                memTableLock.writeLock().unlock();
+                stateLock.writeLock().unlock();
             }
+        } finally {
+            writeLock.unlock();
         }
-
-        // delete parquet files
-        Path path = Paths.get(dataDir, id);
-        File duDir = new File(path.toString());
-        FileUtils.deleteFile(duDir);
-        fileMetaMap.clear();
     }
 
     private List<String> determinePathList(
@@ -732,26 +864,45 @@ public class DUManager {
     }
 
     public Map<String, DataType> getPaths() {
-        Map<String, DataType> ret = new HashMap<>(curMemTablePathMap);
-        fileMetaMap.forEach((k, v) -> ret.putAll(v.getPathMap()));
-        return ret;
+        stateLock.readLock().lock();
+        try {
+            Map<String, DataType> ret = new HashMap<>();
+            fileMetaMap.forEach((k, v) -> ret.putAll(v.getPathMap()));
+            getMemTables().forEach(memTable -> ret.putAll(memTable.getPathMap()));
+            return ret;
+        } finally {
+            stateLock.readLock().unlock();
+        }
     }
 
     public TimeInterval getTimeInterval() {
-        long start = curStartTime;
-        long end = curEndTime;
-        for (FileMeta fileMeta : fileMetaMap.values()) {
-            if (fileMeta.getStartTime() < start) {
-                start = fileMeta.getStartTime();
+        stateLock.readLock().lock();
+        try {
+            long start = Long.MAX_VALUE;
+            long end = Long.MIN_VALUE;
+            for (FileMeta fileMeta : fileMetaMap.values()) {
+                if (fileMeta.getStartTime() < start) {
+                    start = fileMeta.getStartTime();
+                }
+                if (fileMeta.getEndTime() > end) {
+                    end = fileMeta.getEndTime();
+                }
             }
-            if (fileMeta.getEndTime() > end) {
-                end = fileMeta.getEndTime();
+            for (MemTable memTable : getMemTables()) {
+                if (memTable.getStartTime() < start) {
+                    start = memTable.getStartTime();
+                }
+                if (memTable.getEndTime() > end) {
+                    end = memTable.getEndTime();
+                }
             }
+            return new TimeInterval(start, end + 1);
+        } finally {
+            stateLock.readLock().unlock();
         }
-        return new TimeInterval(start, end + 1);
     }
 
     public boolean isFlushing() {
-        return isFlushing;
+        return !immutableMemTables.isEmpty();
     }
 }
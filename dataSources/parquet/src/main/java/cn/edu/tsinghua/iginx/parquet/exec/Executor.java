@@ -5,9 +5,11 @@ import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeSeriesRange;
+import cn.edu.tsinghua.iginx.parquet.tools.FilterTransformer;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import java.util.List;
 
@@ -20,6 +22,21 @@ public interface Executor {
             String storageUnit,
             boolean isDummyStorageUnit);
 
+    /** 默认将 filter 转换为 SQL 条件后执行，本地执行器可以利用 filter 的结构裁剪文件 */
+    default TaskExecuteResult executeProjectTask(
+            List<String> paths,
+            TagFilter tagFilter,
+            Filter filter,
+            String storageUnit,
+            boolean isDummyStorageUnit) {
+        return executeProjectTask(
+                paths,
+                tagFilter,
+                FilterTransformer.toString(filter),
+                storageUnit,
+                isDummyStorageUnit);
+    }
+
     TaskExecuteResult executeInsertTask(DataView dataView, String storageUnit);
 
     TaskExecuteResult executeDeleteTask(
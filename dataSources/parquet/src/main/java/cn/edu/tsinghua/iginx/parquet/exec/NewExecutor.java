@@ -8,12 +8,12 @@ import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.ClearEmptyRowStreamWrapper;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
 import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeSeriesInterval;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeSeriesRange;
-import cn.edu.tsinghua.iginx.parquet.entity.Column;
-import cn.edu.tsinghua.iginx.parquet.entity.NewQueryRowStream;
+import cn.edu.tsinghua.iginx.parquet.tools.FilterTransformer;
 import cn.edu.tsinghua.iginx.parquet.tools.TagKVUtils;
 import cn.edu.tsinghua.iginx.utils.Pair;
 import cn.edu.tsinghua.iginx.utils.StringUtils;
@@ -28,6 +28,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,11 +44,19 @@ public class NewExecutor implements Executor {
 
     private final Map<String, DUManager> duManagerMap = new ConcurrentHashMap<>();
 
+    private final long memTableSize;
+
+    // 同一个存储引擎中的全部 du 共享刷写线程池
+    private final ExecutorService flushPool;
+
     private boolean isClosed = false;
 
-    public NewExecutor(Connection connection, String dataDir) {
+    public NewExecutor(
+            Connection connection, String dataDir, long memTableSize, int flushThreadNum) {
         this.connection = connection;
         this.dataDir = dataDir;
+        this.memTableSize = memTableSize;
+        this.flushPool = Executors.newFixedThreadPool(flushThreadNum);
 
         Path path = Paths.get(dataDir);
         try {
@@ -77,7 +88,14 @@ public class NewExecutor implements Executor {
         File[] duDirs = file.listFiles();
         if (duDirs != null) {
             for (File duDir : duDirs) {
-                DUManager duManager = new DUManager(duDir.getName(), dataDir, connection, false);
+                DUManager duManager =
+                        new DUManager(
+                                duDir.getName(),
+                                dataDir,
+                                connection,
+                                false,
+                                memTableSize,
+                                flushPool);
                 duManagerMap.put(duDir.getName(), duManager);
             }
         }
@@ -87,7 +105,14 @@ public class NewExecutor implements Executor {
             throws IOException {
         DUManager duManager = duManagerMap.get(storageUnit);
         if (duManager == null) {
-            duManager = new DUManager(storageUnit, dataDir, connection, isDummyStorageUnit);
+            duManager =
+                    new DUManager(
+                            storageUnit,
+                            dataDir,
+                            connection,
+                            isDummyStorageUnit,
+                            memTableSize,
+                            flushPool);
             duManagerMap.putIfAbsent(storageUnit, duManager);
             duManager = duManagerMap.get(storageUnit);
         }
@@ -101,6 +126,32 @@ public class NewExecutor implements Executor {
             String filter,
             String storageUnit,
             boolean isDummyStorageUnit) {
+        return executeProjectTask(paths, tagFilter, filter, null, storageUnit, isDummyStorageUnit);
+    }
+
+    @Override
+    public TaskExecuteResult executeProjectTask(
+            List<String> paths,
+            TagFilter tagFilter,
+            Filter filter,
+            String storageUnit,
+            boolean isDummyStorageUnit) {
+        return executeProjectTask(
+                paths,
+                tagFilter,
+                FilterTransformer.toString(filter),
+                filter,
+                storageUnit,
+                isDummyStorageUnit);
+    }
+
+    private TaskExecuteResult executeProjectTask(
+            List<String> paths,
+            TagFilter tagFilter,
+            String filter,
+            Filter pruningFilter,
+            String storageUnit,
+            boolean isDummyStorageUnit) {
         DUManager duManager;
         try {
             duManager = getDUManager(storageUnit, isDummyStorageUnit);
@@ -109,10 +160,11 @@ public class NewExecutor implements Executor {
         }
 
         try {
-            List<Column> columns = duManager.project(paths, tagFilter, filter);
-            RowStream rowStream = new ClearEmptyRowStreamWrapper(new NewQueryRowStream(columns));
+            RowStream rowStream =
+                    new ClearEmptyRowStreamWrapper(
+                            duManager.project(paths, tagFilter, filter, pruningFilter));
             return new TaskExecuteResult(rowStream, null);
-        } catch (SQLException e) {
+        } catch (SQLException | PhysicalException e) {
             return new TaskExecuteResult(null, new PhysicalException("Fail to project data ", e));
         }
     }
@@ -242,6 +294,13 @@ public class NewExecutor implements Executor {
             }
         }
 
+        flushPool.shutdown();
+        try {
+            flushPool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw new PhysicalException("Wait for flush error", e);
+        }
+
         try {
             connection.close();
         } catch (SQLException e) {
@@ -1,13 +1,11 @@
 package cn.edu.tsinghua.iginx.parquet.exec;
 
 import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
-import cn.edu.tsinghua.iginx.engine.physical.memory.execute.Table;
 import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Header;
-import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.BitmapView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
@@ -21,13 +19,14 @@ import cn.edu.tsinghua.iginx.engine.shared.operator.tag.TagFilter;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeSeriesInterval;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeSeriesRange;
+import cn.edu.tsinghua.iginx.parquet.entity.ParquetClientPool;
+import cn.edu.tsinghua.iginx.parquet.entity.RemoteQueryRowStream;
 import cn.edu.tsinghua.iginx.parquet.thrift.DeleteReq;
 import cn.edu.tsinghua.iginx.parquet.thrift.GetStorageBoundryResp;
 import cn.edu.tsinghua.iginx.parquet.thrift.GetTimeSeriesOfStorageUnitResp;
 import cn.edu.tsinghua.iginx.parquet.thrift.InsertReq;
 import cn.edu.tsinghua.iginx.parquet.thrift.ParquetHeader;
 import cn.edu.tsinghua.iginx.parquet.thrift.ParquetRawData;
-import cn.edu.tsinghua.iginx.parquet.thrift.ParquetService;
 import cn.edu.tsinghua.iginx.parquet.thrift.ParquetService.Client;
 import cn.edu.tsinghua.iginx.parquet.thrift.ParquetTimeRange;
 import cn.edu.tsinghua.iginx.parquet.thrift.ProjectReq;
@@ -36,7 +35,6 @@ import cn.edu.tsinghua.iginx.parquet.thrift.RawTagFilter;
 import cn.edu.tsinghua.iginx.parquet.thrift.Status;
 import cn.edu.tsinghua.iginx.parquet.thrift.TagFilterType;
 import cn.edu.tsinghua.iginx.thrift.DataType;
-import cn.edu.tsinghua.iginx.utils.Bitmap;
 import cn.edu.tsinghua.iginx.utils.ByteUtils;
 import cn.edu.tsinghua.iginx.utils.DataTypeUtils;
 import cn.edu.tsinghua.iginx.utils.Pair;
@@ -46,9 +44,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import org.apache.thrift.TException;
-import org.apache.thrift.protocol.TBinaryProtocol;
-import org.apache.thrift.transport.TSocket;
-import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,17 +54,39 @@ public class RemoteExecutor implements Executor {
 
     private static final int SUCCESS_CODE = 200;
 
-    private final TTransport transport;
+    private final ParquetClientPool pool;
 
-    private final ParquetService.Iface client;
+    private final int fetchSize;
 
-    public RemoteExecutor(String ip, int port) throws TTransportException {
-        this.transport = new TSocket(ip, port);
-        if (!transport.isOpen()) {
-            transport.open();
-        }
+    private final boolean compressed;
+
+    @FunctionalInterface
+    private interface RemoteCall<T> {
+
+        T call(Client client) throws TException;
+    }
 
-        this.client = new Client(new TBinaryProtocol(transport));
+    public RemoteExecutor(String ip, int port, int poolSize, int fetchSize, boolean compressed)
+            throws TTransportException {
+        this.pool = new ParquetClientPool(ip, port, poolSize);
+        this.fetchSize = fetchSize;
+        this.compressed = compressed;
+        // 建立第一个连接，保证远程节点不可用时初始化失败
+        pool.pushBack(pool.getClient());
+    }
+
+    /** 从连接池中取一个客户端执行调用，出错的连接直接丢弃 */
+    private <T> T call(RemoteCall<T> remoteCall) throws TException {
+        Client client = pool.getClient();
+        T result;
+        try {
+            result = remoteCall.call(client);
+        } catch (TException | RuntimeException e) {
+            pool.discard(client);
+            throw e;
+        }
+        pool.pushBack(client);
+        return result;
     }
 
     @Override
@@ -87,59 +104,44 @@ public class RemoteExecutor implements Executor {
             req.setFilter(filter);
         }
 
+        req.setFetchSize(fetchSize);
+        req.setCompressed(compressed);
+
         try {
-            ProjectResp resp = client.executeProject(req);
-            if (resp.getStatus().code == SUCCESS_CODE) {
-                ParquetHeader parquetHeader = resp.getHeader();
-                List<DataType> dataTypes = new ArrayList<>();
-                List<Field> fields = new ArrayList<>();
-                for (int i = 0; i < parquetHeader.getNamesSize(); i++) {
-                    DataType dataType =
-                            DataTypeUtils.strToDataType(parquetHeader.getTypes().get(i));
-                    dataTypes.add(dataType);
-                    fields.add(
-                            new Field(
-                                    parquetHeader.getNames().get(i),
-                                    dataType,
-                                    parquetHeader.getTagsList().get(i)));
-                }
-                Header header =
-                        parquetHeader.hasTime ? new Header(Field.KEY, fields) : new Header(fields);
-
-                List<Row> rowList = new ArrayList<>();
-                resp.getRows()
-                        .forEach(
-                                parquetRow -> {
-                                    Object[] values = new Object[dataTypes.size()];
-                                    Bitmap bitmap =
-                                            new Bitmap(dataTypes.size(), parquetRow.getBitmap());
-                                    ByteBuffer valuesBuffer =
-                                            ByteBuffer.wrap(parquetRow.getRowValues());
-                                    for (int i = 0; i < dataTypes.size(); i++) {
-                                        if (bitmap.get(i)) {
-                                            values[i] =
-                                                    ByteUtils.getValueFromByteBufferByDataType(
-                                                            valuesBuffer, dataTypes.get(i));
-                                        } else {
-                                            values[i] = null;
-                                        }
-                                    }
-
-                                    if (parquetRow.isSetTimestamp()) {
-                                        rowList.add(
-                                                new Row(header, parquetRow.getTimestamp(), values));
-                                    } else {
-                                        rowList.add(new Row(header, values));
-                                    }
-                                });
-                RowStream rowStream = new Table(header, rowList);
-                return new TaskExecuteResult(rowStream, null);
-            } else {
+            ProjectResp resp = call(client -> client.executeProject(req));
+            if (resp.getStatus().code != SUCCESS_CODE) {
                 return new TaskExecuteResult(
                         null, new PhysicalException("execute remote project task error"));
             }
+            ParquetHeader parquetHeader = resp.getHeader();
+            List<DataType> dataTypes = new ArrayList<>();
+            List<Field> fields = new ArrayList<>();
+            for (int i = 0; i < parquetHeader.getNamesSize(); i++) {
+                DataType dataType = DataTypeUtils.strToDataType(parquetHeader.getTypes().get(i));
+                dataTypes.add(dataType);
+                fields.add(
+                        new Field(
+                                parquetHeader.getNames().get(i),
+                                dataType,
+                                parquetHeader.getTagsList().get(i)));
+            }
+            Header header =
+                    parquetHeader.hasTime ? new Header(Field.KEY, fields) : new Header(fields);
+
+            RowStream rowStream =
+                    new RemoteQueryRowStream(
+                            pool,
+                            header,
+                            dataTypes,
+                            resp.getQueryId(),
+                            fetchSize,
+                            resp.getPage(),
+                            resp.isHasMoreResults());
+            return new TaskExecuteResult(rowStream, null);
         } catch (TException e) {
             return new TaskExecuteResult(null, new PhysicalException(e));
+        } catch (PhysicalException e) {
+            return new TaskExecuteResult(null, e);
         }
     }
 
@@ -179,7 +181,7 @@ public class RemoteExecutor implements Executor {
 
         InsertReq req = new InsertReq(storageUnit, parquetRawData);
         try {
-            Status status = client.executeInsert(req);
+            Status status = call(client -> client.executeInsert(req));
             if (status.code == SUCCESS_CODE) {
                 return new TaskExecuteResult(null, null);
             } else {
@@ -267,7 +269,7 @@ public class RemoteExecutor implements Executor {
         }
 
         try {
-            Status status = client.executeDelete(req);
+            Status status = call(client -> client.executeDelete(req));
             if (status.code == SUCCESS_CODE) {
                 return new TaskExecuteResult(null, null);
             } else {
@@ -345,7 +347,8 @@ public class RemoteExecutor implements Executor {
     public List<Timeseries> getTimeSeriesOfStorageUnit(String storageUnit)
             throws PhysicalException {
         try {
-            GetTimeSeriesOfStorageUnitResp resp = client.getTimeSeriesOfStorageUnit(storageUnit);
+            GetTimeSeriesOfStorageUnitResp resp =
+                    call(client -> client.getTimeSeriesOfStorageUnit(storageUnit));
             List<Timeseries> timeSeriesList = new ArrayList<>();
             resp.getTsList()
                     .forEach(
@@ -364,7 +367,7 @@ public class RemoteExecutor implements Executor {
     @Override
     public Pair<TimeSeriesRange, TimeInterval> getBoundaryOfStorage() throws PhysicalException {
         try {
-            GetStorageBoundryResp resp = client.getBoundaryOfStorage();
+            GetStorageBoundryResp resp = call(Client::getBoundaryOfStorage);
             return new Pair<>(
                     new TimeSeriesInterval(resp.getStartTimeSeries(), resp.getEndTimeSeries()),
                     new TimeInterval(resp.getStartTime(), resp.getEndTime()));
@@ -375,8 +378,6 @@ public class RemoteExecutor implements Executor {
 
     @Override
     public void close() throws PhysicalException {
-        if (transport != null && transport.isOpen()) {
-            transport.close();
-        }
+        pool.close();
     }
 }
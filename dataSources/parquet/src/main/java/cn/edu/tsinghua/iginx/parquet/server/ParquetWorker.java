@@ -22,9 +22,12 @@ import cn.edu.tsinghua.iginx.metadata.entity.TimeInterval;
 import cn.edu.tsinghua.iginx.metadata.entity.TimeSeriesRange;
 import cn.edu.tsinghua.iginx.parquet.exec.Executor;
 import cn.edu.tsinghua.iginx.parquet.thrift.DeleteReq;
+import cn.edu.tsinghua.iginx.parquet.thrift.FetchReq;
+import cn.edu.tsinghua.iginx.parquet.thrift.FetchResp;
 import cn.edu.tsinghua.iginx.parquet.thrift.GetStorageBoundryResp;
 import cn.edu.tsinghua.iginx.parquet.thrift.GetTimeSeriesOfStorageUnitResp;
 import cn.edu.tsinghua.iginx.parquet.thrift.InsertReq;
+import cn.edu.tsinghua.iginx.parquet.thrift.ParquetColumnarPage;
 import cn.edu.tsinghua.iginx.parquet.thrift.ParquetHeader;
 import cn.edu.tsinghua.iginx.parquet.thrift.ParquetRawData;
 import cn.edu.tsinghua.iginx.parquet.thrift.ParquetRow;
@@ -35,6 +38,7 @@ import cn.edu.tsinghua.iginx.parquet.thrift.ProjectResp;
 import cn.edu.tsinghua.iginx.parquet.thrift.RawTagFilter;
 import cn.edu.tsinghua.iginx.parquet.thrift.Status;
 import cn.edu.tsinghua.iginx.parquet.thrift.TS;
+import cn.edu.tsinghua.iginx.parquet.tools.ColumnarPageUtils;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.utils.Bitmap;
 import cn.edu.tsinghua.iginx.utils.ByteUtils;
@@ -46,6 +50,11 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import org.apache.thrift.TException;
 import org.slf4j.Logger;
@@ -67,10 +76,32 @@ public class ParquetWorker implements ParquetService.Iface {
 
     private static final Status GET_BOUNDARY_FAIL = new Status(405, "get boundary of storage fail");
 
+    private static final Status QUERY_NOT_EXIST = new Status(406, "remote query not exist");
+
+    private static final long CURSOR_IDLE_TIMEOUT = 10 * 60 * 1000L;
+
+    private static final long CURSOR_CLEAN_INTERVAL = 60 * 1000L;
+
     private final Executor executor;
 
+    private final AtomicLong queryIdGenerator = new AtomicLong(0);
+
+    private final Map<Long, QueryCursor> cursors = new ConcurrentHashMap<>();
+
     public ParquetWorker(Executor executor) {
         this.executor = executor;
+        ScheduledExecutorService cleaner =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "parquet-cursor-cleaner");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        cleaner.scheduleWithFixedDelay(
+                this::cleanIdleCursors,
+                CURSOR_CLEAN_INTERVAL,
+                CURSOR_CLEAN_INTERVAL,
+                TimeUnit.MILLISECONDS);
     }
 
     @Override
@@ -112,10 +143,34 @@ public class ParquetWorker implements ParquetService.Iface {
                             });
         } catch (PhysicalException e) {
             logger.error("encounter error when get header from RowStream ", e);
+            closeRowStream(rowStream);
             return new ProjectResp(EXEC_PROJECT_FAIL);
         }
         ParquetHeader parquetHeader = new ParquetHeader(names, types, tagsList, hasTime);
 
+        if (req.isSetFetchSize()) {
+            QueryCursor cursor = new QueryCursor(rowStream, dataTypes, hasTime, req.isCompressed());
+            ProjectResp resp = new ProjectResp(SUCCESS);
+            resp.setHeader(parquetHeader);
+            try {
+                resp.setPage(cursor.fetch(req.getFetchSize()));
+            } catch (PhysicalException e) {
+                logger.error("encounter error when get result from RowStream ", e);
+                cursor.close();
+                return new ProjectResp(EXEC_PROJECT_FAIL);
+            }
+            resp.setHasMoreResults(cursor.hasMoreResults());
+            if (cursor.hasMoreResults()) {
+                long queryId = queryIdGenerator.incrementAndGet();
+                cursors.put(queryId, cursor);
+                resp.setQueryId(queryId);
+            } else {
+                cursor.close();
+            }
+            return resp;
+        }
+
+        // 未指定分页大小时按旧协议一次性按行返回全部结果
         List<ParquetRow> parquetRows = new ArrayList<>();
         try {
             while (rowStream.hasNext()) {
@@ -139,6 +194,8 @@ public class ParquetWorker implements ParquetService.Iface {
         } catch (PhysicalException e) {
             logger.error("encounter error when get result from RowStream ", e);
             return new ProjectResp(EXEC_PROJECT_FAIL);
+        } finally {
+            closeRowStream(rowStream);
         }
 
         ProjectResp resp = new ProjectResp(SUCCESS);
@@ -147,6 +204,140 @@ public class ParquetWorker implements ParquetService.Iface {
         return resp;
     }
 
+    @Override
+    public FetchResp fetchProjectResults(FetchReq req) throws TException {
+        QueryCursor cursor = cursors.get(req.getQueryId());
+        // 游标已被关闭时返回错误，而不是让客户端以为结果已读完
+        if (cursor == null || !cursor.acquire()) {
+            return new FetchResp(QUERY_NOT_EXIST);
+        }
+        FetchResp resp = new FetchResp(SUCCESS);
+        try {
+            resp.setPage(cursor.fetch(req.getFetchSize()));
+        } catch (PhysicalException e) {
+            logger.error("encounter error when get result from RowStream ", e);
+            cursor.release();
+            closeCursor(req.getQueryId());
+            return new FetchResp(EXEC_PROJECT_FAIL);
+        }
+        cursor.release();
+        resp.setHasMoreResults(cursor.hasMoreResults());
+        if (!cursor.hasMoreResults()) {
+            closeCursor(req.getQueryId());
+        }
+        return resp;
+    }
+
+    @Override
+    public Status closeProject(long queryId) throws TException {
+        closeCursor(queryId);
+        return SUCCESS;
+    }
+
+    private void closeCursor(long queryId) {
+        QueryCursor cursor = cursors.remove(queryId);
+        if (cursor != null) {
+            cursor.close();
+        }
+    }
+
+    /** 关闭长时间未被读取的游标，避免客户端异常退出后一直占用 DuckDB 连接，正在读取的游标被跳过 */
+    private void cleanIdleCursors() {
+        long now = System.currentTimeMillis();
+        cursors.forEach(
+                (queryId, cursor) -> {
+                    if (cursor.closeIfIdle(now - CURSOR_IDLE_TIMEOUT)) {
+                        logger.warn("close idle remote query cursor {}", queryId);
+                        cursors.remove(queryId, cursor);
+                    }
+                });
+    }
+
+    private static void closeRowStream(RowStream rowStream) {
+        try {
+            rowStream.close();
+        } catch (PhysicalException e) {
+            logger.error("encounter error when close RowStream ", e);
+        }
+    }
+
+    /** 服务端保存的一个未读完的查询结果 */
+    private static class QueryCursor {
+
+        private final RowStream rowStream;
+
+        private final List<DataType> dataTypes;
+
+        private final boolean hasTime;
+
+        private final boolean compressed;
+
+        private long lastAccessTime = System.currentTimeMillis();
+
+        private boolean hasMoreResults = true;
+
+        // 正在被读取的游标不会被空闲清理关闭
+        private boolean busy = false;
+
+        private boolean closed = false;
+
+        QueryCursor(
+                RowStream rowStream,
+                List<DataType> dataTypes,
+                boolean hasTime,
+                boolean compressed) {
+            this.rowStream = rowStream;
+            this.dataTypes = dataTypes;
+            this.hasTime = hasTime;
+            this.compressed = compressed;
+        }
+
+        /** 开始一次读取，游标已关闭时返回 false，读取结束后需调用 release */
+        synchronized boolean acquire() {
+            if (closed) {
+                return false;
+            }
+            busy = true;
+            lastAccessTime = System.currentTimeMillis();
+            return true;
+        }
+
+        synchronized void release() {
+            busy = false;
+            lastAccessTime = System.currentTimeMillis();
+        }
+
+        synchronized ParquetColumnarPage fetch(int fetchSize) throws PhysicalException {
+            lastAccessTime = System.currentTimeMillis();
+            List<Row> rows = new ArrayList<>();
+            while (rows.size() < Math.max(fetchSize, 1) && rowStream.hasNext()) {
+                rows.add(rowStream.next());
+            }
+            hasMoreResults = rowStream.hasNext();
+            return ColumnarPageUtils.encode(rows, dataTypes, hasTime, compressed);
+        }
+
+        boolean hasMoreResults() {
+            return hasMoreResults;
+        }
+
+        /** 游标未在读取且在 deadline 之后没有被访问时关闭游标 */
+        synchronized boolean closeIfIdle(long deadline) {
+            if (busy || closed || lastAccessTime >= deadline) {
+                return false;
+            }
+            close();
+            return true;
+        }
+
+        synchronized void close() {
+            if (!closed) {
+                closed = true;
+                closeRowStream(rowStream);
+            }
+        }
+    }
+
     @Override
     public Status executeInsert(InsertReq req) throws TException {
         ParquetRawData parquetRawData = req.getRawData();
@@ -0,0 +1,98 @@
+package cn.edu.tsinghua.iginx.parquet.tools;
+
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import cn.edu.tsinghua.iginx.parquet.thrift.ParquetColumnarPage;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.utils.Bitmap;
+import cn.edu.tsinghua.iginx.utils.ByteUtils;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/** 远程查询结果页的按列编码，每列一个值缓冲区与一个位图，可选地对每个缓冲区做 Deflate 压缩 */
+public class ColumnarPageUtils {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    public static ParquetColumnarPage encode(
+            List<Row> rows, List<DataType> dataTypes, boolean hasTime, boolean compressed) {
+        List<ByteBuffer> valuesList = new ArrayList<>();
+        List<ByteBuffer> bitmapList = new ArrayList<>();
+        for (int i = 0; i < dataTypes.size(); i++) {
+            Object[] values = new Object[rows.size()];
+            Bitmap bitmap = new Bitmap(rows.size());
+            for (int j = 0; j < rows.size(); j++) {
+                values[j] = rows.get(j).getValue(i);
+                if (values[j] != null) {
+                    bitmap.mark(j);
+                }
+            }
+            valuesList.add(
+                    wrap(
+                            ByteUtils.getColumnByteBuffer(values, dataTypes.get(i)).array(),
+                            compressed));
+            bitmapList.add(wrap(bitmap.getBytes(), compressed));
+        }
+
+        ParquetColumnarPage page =
+                new ParquetColumnarPage(rows.size(), valuesList, bitmapList, compressed);
+        if (hasTime) {
+            long[] times = new long[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                times[i] = rows.get(i).getKey();
+            }
+            page.setTimestamps(wrap(ByteUtils.getByteArrayFromLongArray(times), compressed));
+        }
+        return page;
+    }
+
+    /** 读出缓冲区的内容，必要时解压，返回的数组不与 thrift 的接收缓冲区共享 */
+    public static byte[] unwrap(ByteBuffer buffer, boolean compressed) throws DataFormatException {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return compressed ? decompress(bytes) : bytes;
+    }
+
+    private static ByteBuffer wrap(byte[] bytes, boolean compressed) {
+        return ByteBuffer.wrap(compressed ? compress(bytes) : bytes);
+    }
+
+    private static byte[] compress(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 16);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] decompress(byte[] bytes) throws DataFormatException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 2);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            while (!inflater.finished()) {
+                int size = inflater.inflate(buffer);
+                if (size == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("truncated compressed buffer");
+                }
+                out.write(buffer, 0, size);
+            }
+            return out.toByteArray();
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -14,6 +14,8 @@ public class Constant {
 
     public static final String DUCKDB_SCHEMA = "duckdb_schema";
 
+    public static final String MEM_TABLE_SCHEMA = "main";
+
     public static final String IGINX_SEPARATOR = "\\.";
 
     public static final String PARQUET_SEPARATOR = "\\$";
@@ -28,6 +30,10 @@ public class Constant {
 
     public static final String CMD_DELETE = "DELETE";
 
+    public static final String CMD_STATS = "STATS";
+
+    public static final int ROW_GROUP_SIZE = 100000;
+
     public static final int MAX_MEM_SIZE = 100 * 1024 * 1024 /* BYTE */;
 
     public static final String CREATE_TABLE_STMT = "CREATE TABLE %s (%s)";
@@ -43,6 +49,11 @@ public class Constant {
 
     public static final String SAVE_TO_PARQUET_STMT = "COPY %s TO '%s' (FORMAT 'parquet')";
 
+    public static final String SAVE_SORTED_TO_PARQUET_STMT =
+            "COPY (SELECT * FROM %s ORDER BY time) TO '%s' (FORMAT 'parquet', ROW_GROUP_SIZE %d)";
+
+    public static final String SELECT_STATS_STMT = "SELECT %s FROM %s";
+
     public static final String DROP_TABLE_STMT = "DROP TABLE %s";
 
     public static final String SELECT_STMT = "SELECT time, %s FROM '%s' WHERE %s ORDER BY time";
@@ -62,5 +73,7 @@ public class Constant {
     public static final String DELETE_DATA_STMT =
             "UPDATE %s SET %s=NULL WHERE time >= %s AND time <= %s";
 
+    public static final String DELETED_RANGE_CONDITION = "(time >= %s AND time <= %s)";
+
     public static final String DROP_COLUMN_STMT = "ALTER TABLE %s DROP %s";
 }
@@ -0,0 +1,169 @@
+package cn.edu.tsinghua.iginx.parquet.tools;
+
+import static cn.edu.tsinghua.iginx.parquet.tools.Constant.MEM_TABLE_SCHEMA;
+
+import cn.edu.tsinghua.iginx.engine.shared.data.write.BitmapView;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.duckdb.DuckDBAppender;
+import org.duckdb.DuckDBConnection;
+
+/** 通过 DuckDB Appender 将 DataView 按行追加到内存表中，不再拼接 INSERT 语句 */
+public class DataViewAppender {
+
+    @FunctionalInterface
+    private interface ColumnWriter {
+
+        /** 追加一个非空值，返回其占用的内存大小 */
+        int write(DuckDBAppender appender, Object value) throws SQLException;
+    }
+
+    private static final ColumnWriter BOOLEAN_WRITER =
+            (appender, value) -> {
+                appender.append((boolean) value);
+                return DataTypeTransformer.getDataSize(DataType.BOOLEAN);
+            };
+
+    private static final ColumnWriter INTEGER_WRITER =
+            (appender, value) -> {
+                appender.append((int) value);
+                return DataTypeTransformer.getDataSize(DataType.INTEGER);
+            };
+
+    private static final ColumnWriter LONG_WRITER =
+            (appender, value) -> {
+                appender.append((long) value);
+                return DataTypeTransformer.getDataSize(DataType.LONG);
+            };
+
+    private static final ColumnWriter FLOAT_WRITER =
+            (appender, value) -> {
+                appender.append((float) value);
+                return DataTypeTransformer.getDataSize(DataType.FLOAT);
+            };
+
+    private static final ColumnWriter DOUBLE_WRITER =
+            (appender, value) -> {
+                appender.append((double) value);
+                return DataTypeTransformer.getDataSize(DataType.DOUBLE);
+            };
+
+    private static final ColumnWriter BINARY_WRITER =
+            (appender, value) -> {
+                byte[] bytes = (byte[]) value;
+                appender.append(new String(bytes, StandardCharsets.UTF_8));
+                return bytes.length;
+            };
+
+    private final DataViewWrapper data;
+
+    // 内存表中第 i 个数据列（不含 time 列）对应的 DataView 列下标，-1 表示本次写入不包含该列
+    private final int[] pathIndices;
+
+    private final ColumnWriter[] writers;
+
+    public DataViewAppender(DataViewWrapper data, List<String> tableColumns) {
+        this.data = data;
+        Map<String, Integer> dataIndices = new HashMap<>();
+        for (int i = 0; i < data.getPathNum(); i++) {
+            dataIndices.put(data.getPath(i), i);
+        }
+        this.pathIndices = new int[tableColumns.size()];
+        for (int i = 0; i < tableColumns.size(); i++) {
+            pathIndices[i] = dataIndices.getOrDefault(tableColumns.get(i), -1);
+        }
+        this.writers = new ColumnWriter[data.getPathNum()];
+        for (int i = 0; i < data.getPathNum(); i++) {
+            writers[i] = getColumnWriter(data.getDataType(i));
+        }
+    }
+
+    private static ColumnWriter getColumnWriter(DataType type) {
+        switch (type) {
+            case BOOLEAN:
+                return BOOLEAN_WRITER;
+            case INTEGER:
+                return INTEGER_WRITER;
+            case LONG:
+                return LONG_WRITER;
+            case FLOAT:
+                return FLOAT_WRITER;
+            case DOUBLE:
+                return DOUBLE_WRITER;
+            case BINARY:
+            default:
+                return BINARY_WRITER;
+        }
+    }
+
+    /** 将全部数据写入 table，返回写入数据的内存大小 */
+    public int appendTo(DuckDBConnection conn, String table) throws SQLException {
+        DuckDBAppender appender = conn.createAppender(MEM_TABLE_SCHEMA, table);
+        try {
+            switch (data.getRawDataType()) {
+                case Column:
+                case NonAlignedColumn:
+                    return appendColumns(appender);
+                case Row:
+                case NonAlignedRow:
+                default:
+                    return appendRows(appender);
+            }
+        } finally {
+            appender.close();
+        }
+    }
+
+    private int appendRows(DuckDBAppender appender) throws SQLException {
+        int size = 0;
+        int[] valueIndices = new int[data.getPathNum()];
+        for (int i = 0; i < data.getTimeSize(); i++) {
+            BitmapView bitmapView = data.getBitmapView(i);
+            int index = 0;
+            for (int j = 0; j < data.getPathNum(); j++) {
+                valueIndices[j] = bitmapView.get(j) ? index++ : -1;
+            }
+
+            appender.beginRow();
+            appender.append(data.getTimestamp(i).longValue());
+            for (int pathIndex : pathIndices) {
+                if (pathIndex == -1 || valueIndices[pathIndex] == -1) {
+                    appender.append((String) null);
+                } else {
+                    Object value = data.getValue(i, valueIndices[pathIndex]);
+                    size += writers[pathIndex].write(appender, value);
+                }
+            }
+            appender.endRow();
+        }
+        return size;
+    }
+
+    private int appendColumns(DuckDBAppender appender) throws SQLException {
+        int size = 0;
+        BitmapView[] bitmapViews = new BitmapView[data.getPathNum()];
+        for (int i = 0; i < data.getPathNum(); i++) {
+            bitmapViews[i] = data.getBitmapView(i);
+        }
+        // 每一列下一个非空值在 DataView 中的下标
+        int[] cursors = new int[data.getPathNum()];
+        for (int i = 0; i < data.getTimeSize(); i++) {
+            appender.beginRow();
+            appender.append(data.getTimestamp(i).longValue());
+            for (int pathIndex : pathIndices) {
+                if (pathIndex == -1 || !bitmapViews[pathIndex].get(i)) {
+                    appender.append((String) null);
+                } else {
+                    Object value = data.getValue(pathIndex, cursors[pathIndex]++);
+                    size += writers[pathIndex].write(appender, value);
+                }
+            }
+            appender.endRow();
+        }
+        return size;
+    }
+}
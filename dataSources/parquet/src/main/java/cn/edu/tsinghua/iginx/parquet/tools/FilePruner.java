@@ -0,0 +1,111 @@
+package cn.edu.tsinghua.iginx.parquet.tools;
+
+import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.AndFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.BoolFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Filter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.KeyFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.Op;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.OrFilter;
+import cn.edu.tsinghua.iginx.engine.shared.operator.filter.ValueFilter;
+import cn.edu.tsinghua.iginx.parquet.entity.FileMeta;
+import cn.edu.tsinghua.iginx.utils.Pair;
+import java.math.BigDecimal;
+
+/** 根据文件的时间范围与列统计信息判断文件中是否可能存在满足过滤条件的数据 */
+public class FilePruner {
+
+    public static boolean mayMatch(Filter filter, FileMeta meta) {
+        if (filter == null) {
+            return true;
+        }
+        switch (filter.getType()) {
+            case And:
+                return ((AndFilter) filter)
+                        .getChildren()
+                        .stream()
+                        .allMatch(child -> mayMatch(child, meta));
+            case Or:
+                return ((OrFilter) filter)
+                        .getChildren()
+                        .stream()
+                        .anyMatch(child -> mayMatch(child, meta));
+            case Bool:
+                return ((BoolFilter) filter).isTrue();
+            case Key:
+                KeyFilter keyFilter = (KeyFilter) filter;
+                return mayMatch(
+                        keyFilter.getOp(),
+                        BigDecimal.valueOf(meta.getStartTime()),
+                        BigDecimal.valueOf(meta.getEndTime()),
+                        BigDecimal.valueOf(keyFilter.getValue()));
+            case Value:
+                return mayMatch((ValueFilter) filter, meta);
+            case Not:
+            case Path:
+            default:
+                return true;
+        }
+    }
+
+    private static boolean mayMatch(ValueFilter filter, FileMeta meta) {
+        Pair<Number, Number> range = meta.getStatistics().get(filter.getPath());
+        BigDecimal value = toBigDecimal(filter.getValue());
+        if (range == null || value == null) {
+            return true;
+        }
+        BigDecimal min = toBigDecimal(range.k);
+        BigDecimal max = toBigDecimal(range.v);
+        if (min == null || max == null) {
+            return true;
+        }
+        return mayMatch(filter.getOp(), min, max, value);
+    }
+
+    private static boolean mayMatch(Op op, BigDecimal min, BigDecimal max, BigDecimal value) {
+        switch (op) {
+            case GE:
+                return max.compareTo(value) >= 0;
+            case G:
+                return max.compareTo(value) > 0;
+            case LE:
+                return min.compareTo(value) <= 0;
+            case L:
+                return min.compareTo(value) < 0;
+            case E:
+                return min.compareTo(value) <= 0 && max.compareTo(value) >= 0;
+            case NE:
+                return min.compareTo(value) != 0 || max.compareTo(value) != 0;
+            case LIKE:
+            default:
+                return true;
+        }
+    }
+
+    private static BigDecimal toBigDecimal(Value value) {
+        switch (value.getDataType()) {
+            case INTEGER:
+                return BigDecimal.valueOf(value.getIntV());
+            case LONG:
+                return BigDecimal.valueOf(value.getLongV());
+            case FLOAT:
+                return toBigDecimal(value.getFloatV());
+            case DOUBLE:
+                return toBigDecimal(value.getDoubleV());
+            default:
+                return null;
+        }
+    }
+
+    private static BigDecimal toBigDecimal(Number number) {
+        if (number instanceof Integer || number instanceof Long) {
+            return BigDecimal.valueOf(number.longValue());
+        }
+        double value = number.doubleValue();
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            return null;
+        }
+        // 使用精确值比较，避免浮点数与长整数之间的精度损失导致误裁剪
+        return new BigDecimal(value);
+    }
+}
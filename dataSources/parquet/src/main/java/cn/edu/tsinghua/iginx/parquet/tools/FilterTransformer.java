@@ -52,12 +52,12 @@ public class FilterTransformer {
 
     private static String toString(ValueFilter filter) {
         if (filter.getOp().equals(Op.LIKE)) {
-            return filter.getPath().replace(IGINX_SEPARATOR, PARQUET_SEPARATOR)
+            return filter.getPath().replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR)
                     + " regexp '"
                     + filter.getValue().getBinaryVAsString()
                     + "'";
         }
-        return filter.getPath().replace(IGINX_SEPARATOR, PARQUET_SEPARATOR)
+        return filter.getPath().replaceAll(IGINX_SEPARATOR, PARQUET_SEPARATOR)
                 + " "
                 + Op.op2Str(filter.getOp())
                 + " "
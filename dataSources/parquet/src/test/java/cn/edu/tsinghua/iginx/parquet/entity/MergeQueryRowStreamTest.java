@@ -0,0 +1,65 @@
+package cn.edu.tsinghua.iginx.parquet.entity;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalException;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.Row;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.duckdb.DuckDBConnection;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MergeQueryRowStreamTest {
+
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        connection = DriverManager.getConnection("jdbc:duckdb:");
+        try (Statement stmt = connection.createStatement()) {
+            // 已刷写的文件，其中 a.a 在 [2, 3] 上被删除
+            stmt.execute("CREATE TABLE file (time BIGINT, a$a BIGINT)");
+            stmt.execute("INSERT INTO file VALUES (1, 10), (2, 20), (3, 30), (4, 40)");
+            // 内存表中 a.a 只在部分时间戳上有数据，其余时间戳属于其他序列
+            stmt.execute("CREATE TABLE mem (time BIGINT, a$a BIGINT, a$b BIGINT)");
+            stmt.execute(
+                    "INSERT INTO mem VALUES (5, NULL, 1), (6, 60, 2), (7, NULL, 3), (4, 41, NULL)");
+        }
+    }
+
+    @After
+    public void tearDown() throws SQLException {
+        connection.close();
+    }
+
+    private ResultSetCursor cursor(String sql) throws SQLException {
+        return new ResultSetCursor(((DuckDBConnection) connection).duplicate(), sql);
+    }
+
+    @Test
+    public void testSkipEmptyRows() throws PhysicalException, SQLException {
+        List<ResultSetCursor> cursors =
+                Arrays.asList(
+                        cursor(
+                                "SELECT time, CASE WHEN time >= 2 AND time <= 3 THEN NULL ELSE a$a END AS a$a"
+                                        + " FROM file ORDER BY time"),
+                        cursor("SELECT time, a$a FROM mem ORDER BY time"));
+        MergeQueryRowStream stream = new MergeQueryRowStream(cursors);
+        List<String> rows = new ArrayList<>();
+        while (stream.hasNext()) {
+            Row row = stream.next();
+            rows.add(row.getKey() + "=" + row.getValue(0));
+        }
+        stream.close();
+
+        // 被删除的时间戳与只有 a.b 有数据的时间戳都不返回，较新的数据源覆盖旧值
+        assertEquals(Arrays.asList("1=10", "4=41", "6=60"), rows);
+    }
+}
@@ -24,16 +24,26 @@ import cn.edu.tsinghua.iginx.engine.physical.exception.PhysicalTaskExecuteFailur
 import cn.edu.tsinghua.iginx.engine.physical.exception.StorageInitializationException;
 import cn.edu.tsinghua.iginx.engine.physical.storage.IStorage;
 import cn.edu.tsinghua.iginx.engine.physical.storage.domain.Timeseries;
+import cn.edu.tsinghua.iginx.engine.physical.storage.utils.PushDownUtils;
 import cn.edu.tsinghua.iginx.engine.physical.task.StoragePhysicalTask;
 import cn.edu.tsinghua.iginx.engine.physical.task.TaskExecuteResult;
 import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.engine.shared.data.read.AggregatedRowStreamWrapper;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.Field;
 import cn.edu.tsinghua.iginx.engine.shared.data.read.RowStream;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.BitmapView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.ColumnDataView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.DataView;
 import cn.edu.tsinghua.iginx.engine.shared.data.write.RowDataView;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Count;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.FirstValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.LastValue;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Max;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Min;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Sum;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Delete;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Insert;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Operator;
 import cn.edu.tsinghua.iginx.engine.shared.operator.Project;
@@ -59,6 +69,7 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -93,6 +104,27 @@ public class PostgreSQLStorage implements IStorage {
 
     private static final String QUERY_DATA = "SELECT time, %s FROM %s WHERE %s and %s";
 
+    private static final String QUERY_AGGREGATE =
+            "SELECT to_timestamp(0), %s FROM %s WHERE %s and %s";
+
+    // time 列以秒存储，而窗口的起点与长度为毫秒的 key，先将 time 换算为毫秒再分窗
+    private static final String QUERY_DOWNSAMPLE =
+            "SELECT to_timestamp((%d + floor((extract(epoch from time) * 1000 - %d) / %d) * %d) / 1000.0)"
+                    + " AS window_time, %s FROM %s WHERE %s and %s GROUP BY window_time ORDER BY window_time";
+
+    /** 可下推的系统函数与 PostgreSQL（TimescaleDB）聚合表达式的对应关系 */
+    private static final Map<String, String> AGGREGATE_FUNCTIONS = new HashMap<>();
+
+    static {
+        AGGREGATE_FUNCTIONS.put(Avg.AVG, "avg(%s)");
+        AGGREGATE_FUNCTIONS.put(Sum.SUM, "sum(%s)");
+        AGGREGATE_FUNCTIONS.put(Count.COUNT, "count(%s)");
+        AGGREGATE_FUNCTIONS.put(Max.MAX, "max(%s)");
+        AGGREGATE_FUNCTIONS.put(Min.MIN, "min(%s)");
+        AGGREGATE_FUNCTIONS.put(FirstValue.FIRST_VALUE, "first(%s, time)");
+        AGGREGATE_FUNCTIONS.put(LastValue.LAST_VALUE, "last(%s, time)");
+    }
+
     private static final String DELETE_DATA =
             "DELETE FROM %s WHERE time >= to_timestamp(%d) and time < to_timestamp(%d)";
 
@@ -147,7 +179,8 @@ public class PostgreSQLStorage implements IStorage {
     @Override
     public TaskExecuteResult execute(StoragePhysicalTask task) {
         List<Operator> operators = task.getOperators();
-        if (operators.size() != 1) {
+        if (operators.isEmpty()
+                || (operators.get(0).getType() != OperatorType.Project && operators.size() != 1)) {
             return new TaskExecuteResult(
                     new NonExecutablePhysicalTaskException("unsupported physical task"));
         }
@@ -159,10 +192,16 @@ public class PostgreSQLStorage implements IStorage {
 
         if (op.getType() == OperatorType.Project) { // 目前只实现 project 操作符
             Project project = (Project) op;
-            Filter filter;
-            if (operators.size() == 2) {
-                filter = ((Select) operators.get(1)).getFilter();
-            } else {
+            Filter filter = null;
+            Operator pushDown = null;
+            for (Operator operator : operators.subList(1, operators.size())) {
+                if (operator.getType() == OperatorType.Select) {
+                    filter = ((Select) operator).getFilter();
+                } else {
+                    pushDown = operator;
+                }
+            }
+            if (filter == null) {
                 filter =
                         new AndFilter(
                                 Arrays.asList(
@@ -171,6 +210,9 @@ public class PostgreSQLStorage implements IStorage {
                                         new KeyFilter(
                                                 Op.L, fragment.getTimeInterval().getEndTime())));
             }
+            if (pushDown != null) {
+                return executeAggregateTask(project, filter, pushDown);
+            }
             return executeProjectTask(project, filter);
         } else if (op.getType() == OperatorType.Insert) {
             Insert insert = (Insert) op;
@@ -183,6 +225,15 @@ public class PostgreSQLStorage implements IStorage {
                 new NonExecutablePhysicalTaskException("unsupported physical task"));
     }
 
+    @Override
+    public boolean isSupportPushDown(Operator operator) {
+        if (operator.getType() != OperatorType.Downsample
+                && operator.getType() != OperatorType.SetTransform) {
+            return false;
+        }
+        return AGGREGATE_FUNCTIONS.containsKey(PushDownUtils.getFunctionName(operator));
+    }
+
     @Override
     public List<Timeseries> getTimeSeries() throws PhysicalException {
         List<Timeseries> timeseries = new ArrayList<>();
@@ -314,6 +365,84 @@ public class PostgreSQLStorage implements IStorage {
         }
     }
 
+    private TaskExecuteResult executeAggregateTask(
+            Project project, Filter filter, Operator operator) {
+        try {
+            String function = AGGREGATE_FUNCTIONS.get(PushDownUtils.getFunctionName(operator));
+            List<ResultSet> resultSets = new ArrayList<>();
+            List<Field> fields = new ArrayList<>();
+            for (String path : project.getPatterns()) {
+                String table = path.substring(0, path.lastIndexOf('.'));
+                table = table.replace(IGINX_SEPARATOR, POSTGRESQL_SEPARATOR);
+                String field = path.substring(path.lastIndexOf('.') + 1);
+                field = field.replace(IGINX_SEPARATOR, POSTGRESQL_SEPARATOR);
+                DatabaseMetaData databaseMetaData = connection.getMetaData();
+                ResultSet columnSet = databaseMetaData.getColumns(null, "%", table, field);
+                if (!columnSet.next()) {
+                    continue;
+                }
+                String typeName = columnSet.getString("TYPE_NAME");
+                fields.add(
+                        new Field(
+                                table.replace(POSTGRESQL_SEPARATOR, IGINX_SEPARATOR)
+                                        + IGINX_SEPARATOR
+                                        + field.replace(POSTGRESQL_SEPARATOR, IGINX_SEPARATOR),
+                                DataTypeTransformer.fromPostgreSQL(typeName)));
+                String expression = String.format(function, field);
+                String tagFilter = TagFilterUtils.transformToFilterStr(project.getTagFilter());
+                String statement;
+                if (operator.getType() == OperatorType.Downsample) {
+                    statement =
+                            getDownsampleStatement(
+                                    (Downsample) operator,
+                                    expression,
+                                    table,
+                                    tagFilter,
+                                    FilterTransformer.toString(filter));
+                } else {
+                    statement =
+                            String.format(
+                                    QUERY_AGGREGATE,
+                                    expression,
+                                    table,
+                                    tagFilter,
+                                    FilterTransformer.toString(filter));
+                }
+                Statement stmt = connection.createStatement();
+                resultSets.add(stmt.executeQuery(statement));
+            }
+            RowStream rowStream =
+                    new AggregatedRowStreamWrapper(
+                            new PostgreSQLQueryRowStream(resultSets, fields), operator);
+            return new TaskExecuteResult(rowStream);
+        } catch (SQLException | PhysicalException e) {
+            return new TaskExecuteResult(
+                    new PhysicalTaskExecuteFailureException(
+                            "execute aggregate task in timescaledb failure", e));
+        }
+    }
+
+    /** 生成按窗口聚合的查询，窗口的 key 与 IGinX 的 key 一样以毫秒为单位 */
+    static String getDownsampleStatement(
+            Downsample downsample,
+            String expression,
+            String table,
+            String tagFilter,
+            String filter) {
+        long bias = downsample.getTimeRange().getActualBeginTime();
+        long precision = downsample.getPrecision();
+        return String.format(
+                QUERY_DOWNSAMPLE,
+                bias,
+                bias,
+                precision,
+                precision,
+                expression,
+                table,
+                tagFilter,
+                filter);
+    }
+
     private TaskExecuteResult executeInsertTask(Insert insert) {
         DataView dataView = insert.getData();
         Exception e = null;
@@ -32,6 +32,8 @@ public class PostgreSQLQueryRowStream implements RowStream {
                 if (resultSet.next()) {
                     this.currTimestamps[i] = resultSet.getTimestamp(1).getTime();
                     this.currValues[i] = resultSet.getObject(2);
+                } else {
+                    this.currTimestamps[i] = Long.MIN_VALUE;
                 }
             }
         } catch (SQLException e) {
@@ -0,0 +1,37 @@
+package cn.edu.tsinghua.iginx.postgresql;
+
+import static org.junit.Assert.assertEquals;
+
+import cn.edu.tsinghua.iginx.engine.shared.Constants;
+import cn.edu.tsinghua.iginx.engine.shared.TimeRange;
+import cn.edu.tsinghua.iginx.engine.shared.data.Value;
+import cn.edu.tsinghua.iginx.engine.shared.function.FunctionCall;
+import cn.edu.tsinghua.iginx.engine.shared.function.system.Avg;
+import cn.edu.tsinghua.iginx.engine.shared.operator.Downsample;
+import cn.edu.tsinghua.iginx.engine.shared.source.GlobalSource;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class PostgreSQLStorageTest {
+
+    @Test
+    public void testDownsampleStatement() {
+        Map<String, Value> params = new HashMap<>();
+        params.put(Constants.PARAM_PATHS, new Value("a.b"));
+        Downsample downsample =
+                new Downsample(
+                        new GlobalSource(),
+                        60000,
+                        60000,
+                        new FunctionCall(Avg.getInstance(), params),
+                        new TimeRange(1500, 3600000));
+        // time 列以秒存储，窗口按毫秒的 key 计算，结果再换算回秒
+        assertEquals(
+                "SELECT to_timestamp((1500 + floor((extract(epoch from time) * 1000 - 1500) / 60000) * 60000) / 1000.0)"
+                        + " AS window_time, avg(b) FROM a WHERE true and key > 0"
+                        + " GROUP BY window_time ORDER BY window_time",
+                PostgreSQLStorage.getDownsampleStatement(
+                        downsample, "avg(b)", "a", "true", "key > 0"));
+    }
+}
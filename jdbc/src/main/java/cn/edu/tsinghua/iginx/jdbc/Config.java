@@ -13,5 +13,13 @@ public class Config {
     public static final String PASSWORD = "password";
     public static final String DEFAULT_PASSWORD = "root";
 
+    public static final String COLUMNAR_RESULT = "columnarResult";
+    public static final boolean DEFAULT_COLUMNAR_RESULT = false;
+
+    public static final String COMPRESSION = "compression";
+
+    public static final String FRAMED_TRANSPORT = "framedTransport";
+    public static final boolean DEFAULT_FRAMED_TRANSPORT = false;
+
     public static final int DEFAULT_CONNECTION_TIMEOUT_MS = 0;
 }
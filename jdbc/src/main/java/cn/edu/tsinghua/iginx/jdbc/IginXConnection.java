@@ -28,6 +28,12 @@ public class IginXConnection implements Connection {
                         params.getPort(),
                         params.getUsername(),
                         params.getPassword());
+        if (params.isFramedTransport()) {
+            this.session.enableFramedTransport();
+        }
+        if (params.isColumnarResult()) {
+            this.session.enableColumnarResult(params.getCompressionType());
+        }
         this.session.openSession();
 
         this.isClosed = false;
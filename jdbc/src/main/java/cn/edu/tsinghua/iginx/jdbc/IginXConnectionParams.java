@@ -1,5 +1,7 @@
 package cn.edu.tsinghua.iginx.jdbc;
 
+import cn.edu.tsinghua.iginx.thrift.CompressionType;
+
 public class IginXConnectionParams {
 
     private String host = Config.IGINX_DEFAULT_HOST;
@@ -8,6 +10,11 @@ public class IginXConnectionParams {
     private String username = Config.DEFAULT_USER;
     private String password = Config.DEFAULT_PASSWORD;
 
+    private boolean columnarResult = Config.DEFAULT_COLUMNAR_RESULT;
+    private CompressionType compressionType = CompressionType.NONE;
+
+    private boolean framedTransport = Config.DEFAULT_FRAMED_TRANSPORT;
+
     public IginXConnectionParams() {}
 
     public String getHost() {
@@ -41,4 +48,28 @@ public class IginXConnectionParams {
     public void setPassword(String password) {
         this.password = password;
     }
+
+    public boolean isColumnarResult() {
+        return columnarResult;
+    }
+
+    public void setColumnarResult(boolean columnarResult) {
+        this.columnarResult = columnarResult;
+    }
+
+    public CompressionType getCompressionType() {
+        return compressionType;
+    }
+
+    public void setCompressionType(CompressionType compressionType) {
+        this.compressionType = compressionType;
+    }
+
+    public boolean isFramedTransport() {
+        return framedTransport;
+    }
+
+    public void setFramedTransport(boolean framedTransport) {
+        this.framedTransport = framedTransport;
+    }
 }
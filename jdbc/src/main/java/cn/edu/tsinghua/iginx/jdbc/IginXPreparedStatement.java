@@ -1,6 +1,10 @@
 package cn.edu.tsinghua.iginx.jdbc;
 
+import cn.edu.tsinghua.iginx.exceptions.ExecutionException;
+import cn.edu.tsinghua.iginx.exceptions.SessionException;
 import cn.edu.tsinghua.iginx.session.Session;
+import cn.edu.tsinghua.iginx.session.SessionExecuteSqlResult;
+import cn.edu.tsinghua.iginx.thrift.DataType;
 import java.io.InputStream;
 import java.io.Reader;
 import java.math.BigDecimal;
@@ -9,10 +13,13 @@ import java.sql.*;
 import java.sql.Date;
 import java.util.*;
 
+/** 语句在第一次执行时于服务端预编译，之后每次执行只传输带类型的参数，由服务端绑定到预编译的语法树上 */
 public class IginXPreparedStatement extends IginXStatement implements PreparedStatement {
 
-    private final Map<Integer, String> params = new LinkedHashMap<>();
+    private final Map<Integer, Object> params = new HashMap<>();
+    private final Map<Integer, DataType> paramTypes = new HashMap<>();
     private String sql;
+    private Long statementId;
 
     public IginXPreparedStatement(IginXConnection connection, Session session, String sql) {
         super(connection, session);
@@ -21,44 +28,86 @@ public class IginXPreparedStatement extends IginXStatement implements PreparedSt
 
     @Override
     public ResultSet executeQuery() throws SQLException {
-        return super.executeQuery(createCompleteSql(sql, params));
+        checkConnection("executeQuery");
+        executePrepared();
+        return resultSet;
     }
 
     @Override
     public int executeUpdate() throws SQLException {
-        return super.executeUpdate(createCompleteSql(sql, params));
+        checkConnection("executeUpdate");
+        executePrepared();
+        return SUCCESS_NO_INFO;
     }
 
     @Override
     public boolean execute() throws SQLException {
-        return super.execute(createCompleteSql(sql, params));
+        checkConnection("execute");
+        executePrepared();
+        return sql.trim().toLowerCase().startsWith(Constant.SELECT_CLAUSE_PREFIX)
+                || sql.trim().toLowerCase().startsWith(Constant.SHOW_CLAUSE_PREFIX);
     }
 
-    // Only for tests.
-    public String getCompleteSql() {
+    private void executePrepared() throws SQLException {
+        List<Object> values = getParameters();
+        List<DataType> types = getParameterTypes();
         try {
-            return createCompleteSql(sql, params);
-        } catch (SQLException e) {
-            e.printStackTrace();
-            return "";
+            if (statementId == null) {
+                statementId = session.prepareStatement(sql);
+            }
+            SessionExecuteSqlResult res =
+                    session.executePreparedStatement(statementId, values, types);
+            this.resultSet = new IginXResultSet(this, res);
+        } catch (SessionException | ExecutionException e) {
+            throw new SQLException(String.format("Fail to execute %s", sql), e);
         }
     }
 
-    private String createCompleteSql(final String sql, Map<Integer, String> parameters)
-            throws SQLException {
-        List<String> parts = splitSqlStatement(sql);
+    // Only for tests.
+    public List<Object> getParameters() throws SQLException {
+        List<Object> values = new ArrayList<>();
+        for (int i = 1; i <= getPlaceholderCount(); i++) {
+            if (!paramTypes.containsKey(i)) {
+                throw new SQLException("Parameter #" + i + " is unset");
+            }
+            values.add(params.get(i));
+        }
+        return values;
+    }
+
+    // Only for tests.
+    public List<DataType> getParameterTypes() throws SQLException {
+        List<DataType> types = new ArrayList<>();
+        for (int i = 1; i <= getPlaceholderCount(); i++) {
+            if (!paramTypes.containsKey(i)) {
+                throw new SQLException("Parameter #" + i + " is unset");
+            }
+            types.add(paramTypes.get(i));
+        }
+        return types;
+    }
 
+    /** @deprecated 参数由服务端绑定到预编译的语句上，执行时不再拼接，该方法只用于查看参数拼接后的语句 */
+    @Deprecated
+    public String getCompleteSql() {
+        List<String> parts = splitSqlStatement(sql);
         StringBuilder newSql = new StringBuilder(parts.get(0));
         for (int i = 1; i < parts.size(); i++) {
-            if (!parameters.containsKey(i)) {
-                throw new SQLException("Parameter #" + i + " is unset");
+            if (!paramTypes.containsKey(i)) {
+                new SQLException("Parameter #" + i + " is unset").printStackTrace();
+                return "";
             }
-            newSql.append(parameters.get(i));
+            newSql.append(getParameterText(i));
             newSql.append(parts.get(i));
         }
         return newSql.toString();
     }
 
+    /** 语句中引号之外的 ? 的数量 */
+    private int getPlaceholderCount() {
+        return splitSqlStatement(sql).size() - 1;
+    }
+
     private List<String> splitSqlStatement(final String sql) {
         List<String> parts = new ArrayList<>();
         int apCount = 0;
@@ -96,9 +145,33 @@ public class IginXPreparedStatement extends IginXStatement implements PreparedSt
         return parts;
     }
 
+    private void setParameter(int parameterIndex, Object x, DataType type) {
+        params.put(parameterIndex, x);
+        paramTypes.put(parameterIndex, type);
+    }
+
+    private String getParameterText(int param) {
+        Object value = params.get(param);
+        return value instanceof byte[] ? new String((byte[]) value) : String.valueOf(value);
+    }
+
+    @Override
+    public void close() {
+        if (statementId != null && !isClosed()) {
+            try {
+                session.closePreparedStatement(statementId);
+            } catch (SessionException | ExecutionException e) {
+                // 关闭失败时服务端在会话关闭时释放该语句
+            }
+            statementId = null;
+        }
+        super.close();
+    }
+
     @Override
     public void clearParameters() {
         params.clear();
+        paramTypes.clear();
     }
 
     @Override
@@ -106,7 +179,7 @@ public class IginXPreparedStatement extends IginXStatement implements PreparedSt
         return new ParameterMetaData() {
             @Override
             public int getParameterCount() {
-                return params.size();
+                return getPlaceholderCount();
             }
 
             @Override
@@ -117,7 +190,7 @@ public class IginXPreparedStatement extends IginXStatement implements PreparedSt
             @Override
             public boolean isSigned(int param) {
                 try {
-                    return Integer.parseInt(params.get(param)) < 0;
+                    return Integer.parseInt(getParameterText(param)) < 0;
                 } catch (Exception e) {
                     return false;
                 }
@@ -125,13 +198,13 @@ public class IginXPreparedStatement extends IginXStatement implements PreparedSt
 
             @Override
             public int getPrecision(int param) {
-                return params.get(param).length();
+                return getParameterText(param).length();
             }
 
             @Override
             public int getScale(int param) {
                 try {
-                    double d = Double.parseDouble(params.get(param));
+                    double d = Double.parseDouble(getParameterText(param));
                     if (d >= 1) { // we only need the fraction digits
                         d = d - (long) d;
                     }
@@ -189,32 +262,32 @@ public class IginXPreparedStatement extends IginXStatement implements PreparedSt
 
     @Override
     public void setBoolean(int parameterIndex, boolean x) {
-        params.put(parameterIndex, Boolean.toString(x));
+        setParameter(parameterIndex, x, DataType.BOOLEAN);
     }
 
     @Override
     public void setInt(int parameterIndex, int x) {
-        params.put(parameterIndex, Integer.toString(x));
+        setParameter(parameterIndex, x, DataType.INTEGER);
     }
 
     @Override
     public void setLong(int parameterIndex, long x) {
-        params.put(parameterIndex, Long.toString(x));
+        setParameter(parameterIndex, x, DataType.LONG);
     }
 
     @Override
     public void setFloat(int parameterIndex, float x) {
-        params.put(parameterIndex, Float.toString(x));
+        setParameter(parameterIndex, x, DataType.FLOAT);
     }
 
     @Override
     public void setDouble(int parameterIndex, double x) {
-        params.put(parameterIndex, Double.toString(x));
+        setParameter(parameterIndex, x, DataType.DOUBLE);
     }
 
     @Override
     public void setString(int parameterIndex, String x) {
-        params.put(parameterIndex, x);
+        setParameter(parameterIndex, x == null ? null : x.getBytes(), DataType.BINARY);
     }
 
     @Override
@@ -231,6 +304,10 @@ public class IginXPreparedStatement extends IginXStatement implements PreparedSt
             setDouble(parameterIndex, (Double) x);
         } else if (x instanceof Boolean) {
             setBoolean(parameterIndex, (Boolean) x);
+        } else if (x instanceof byte[]) {
+            setBytes(parameterIndex, (byte[]) x);
+        } else if (x == null) {
+            setNull(parameterIndex, Types.NULL);
         } else {
             throw new SQLException(
                     String.format(
@@ -246,8 +323,8 @@ public class IginXPreparedStatement extends IginXStatement implements PreparedSt
     }
 
     @Override
-    public void setNull(int parameterIndex, int sqlType) throws SQLException {
-        throw new SQLException(Constant.METHOD_NOT_SUPPORTED);
+    public void setNull(int parameterIndex, int sqlType) {
+        setParameter(parameterIndex, null, DataType.BINARY);
     }
 
     @Override
@@ -261,8 +338,8 @@ public class IginXPreparedStatement extends IginXStatement implements PreparedSt
     }
 
     @Override
-    public void setBytes(int parameterIndex, byte[] x) throws SQLException {
-        throw new SQLException(Constant.METHOD_NOT_SUPPORTED);
+    public void setBytes(int parameterIndex, byte[] x) {
+        setParameter(parameterIndex, x, DataType.BINARY);
     }
 
     @Override
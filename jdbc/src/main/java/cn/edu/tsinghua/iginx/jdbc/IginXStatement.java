@@ -11,12 +11,12 @@ import java.util.List;
 public class IginXStatement implements Statement {
 
     private IginXConnection connection;
-    private Session session;
+    protected Session session;
     private boolean isClosed;
     private SQLWarning warningChain; // Not used for now.
 
     private List<String> batchSQLList;
-    private ResultSet resultSet;
+    protected ResultSet resultSet;
 
     public IginXStatement(IginXConnection connection, Session session) {
         this.connection = connection;
@@ -137,7 +137,7 @@ public class IginXStatement implements Statement {
         return batchSQLList;
     }
 
-    private void checkConnection(String action) throws SQLException {
+    protected void checkConnection(String action) throws SQLException {
         if (connection == null || connection.isClosed()) {
             throw new SQLException(
                     String.format("Cannot %s after connection has been closed!", action));
@@ -1,5 +1,6 @@
 package cn.edu.tsinghua.iginx.jdbc;
 
+import cn.edu.tsinghua.iginx.thrift.CompressionType;
 import java.sql.Date;
 import java.sql.Time;
 import java.sql.Timestamp;
@@ -61,6 +62,26 @@ public class Utils {
         if (info.containsKey(Config.PASSWORD)) {
             params.setPassword(info.getProperty(Config.PASSWORD));
         }
+        if (info.containsKey(Config.COLUMNAR_RESULT)) {
+            params.setColumnarResult(
+                    Boolean.parseBoolean(info.getProperty(Config.COLUMNAR_RESULT)));
+        }
+        if (info.containsKey(Config.FRAMED_TRANSPORT)) {
+            params.setFramedTransport(
+                    Boolean.parseBoolean(info.getProperty(Config.FRAMED_TRANSPORT)));
+        }
+        if (info.containsKey(Config.COMPRESSION)) {
+            try {
+                params.setCompressionType(
+                        CompressionType.valueOf(
+                                info.getProperty(Config.COMPRESSION).trim().toUpperCase()));
+            } catch (IllegalArgumentException e) {
+                throw new IginxUrlException(
+                        "Unsupported compression "
+                                + info.getProperty(Config.COMPRESSION)
+                                + ", should be one of none, lz4 and zstd");
+            }
+        }
 
         return params;
     }
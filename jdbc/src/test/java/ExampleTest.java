@@ -1,4 +1,3 @@
-import cn.edu.tsinghua.iginx.jdbc.IginXPreparedStatement;
 import java.sql.*;
 import org.apache.commons.lang3.RandomStringUtils;
 
@@ -141,7 +140,6 @@ public class ExampleTest {
         preparedStatement.setLong(2, 25); // end time
         preparedStatement.setLong(3, 20); // S3 < 20
         resultSet = preparedStatement.executeQuery();
-        System.out.println("sql: " + ((IginXPreparedStatement) preparedStatement).getCompleteSql());
         outputResult(resultSet);
 
         // Clear and query.
@@ -150,7 +148,6 @@ public class ExampleTest {
         preparedStatement.setLong(2, 99); // end time
         preparedStatement.setLong(3, 86); // S3 < 86
         resultSet = preparedStatement.executeQuery();
-        System.out.println("sql: " + ((IginXPreparedStatement) preparedStatement).getCompleteSql());
         outputResult(resultSet);
 
         // Close prepareStatement
@@ -1,11 +1,15 @@
 import cn.edu.tsinghua.iginx.jdbc.IginXPreparedStatement;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
 import org.junit.Assert;
 import org.junit.Test;
 
 public class PreparedStatementTest {
 
     @Test
-    public void testSetParams() {
+    public void testSetParams() throws SQLException {
         String preSQL =
                 "SELECT a, b, c, d FROM root.sg WHERE TIME > ? AND TIME < ? AND a > ? OR b < ? AND c = ? AND d = ?;";
         IginXPreparedStatement ps = new IginXPreparedStatement(null, null, preSQL);
@@ -16,15 +20,27 @@ public class PreparedStatementTest {
         ps.setString(5, "abc");
         ps.setBoolean(6, true);
 
-        String expectedSQL =
-                "SELECT a, b, c, d FROM root.sg WHERE TIME > 10 AND TIME < 15 AND a > 66.8 OR b < 99.9 AND c = abc AND d = true;";
-        String completeSQL = ps.getCompleteSql();
-        Assert.assertEquals(expectedSQL, completeSQL);
+        Assert.assertEquals(
+                Arrays.asList(
+                        DataType.LONG,
+                        DataType.LONG,
+                        DataType.FLOAT,
+                        DataType.DOUBLE,
+                        DataType.BINARY,
+                        DataType.BOOLEAN),
+                ps.getParameterTypes());
+        Object[] values = ps.getParameters().toArray();
+        Assert.assertEquals(10L, values[0]);
+        Assert.assertEquals(15L, values[1]);
+        Assert.assertEquals(66.8f, values[2]);
+        Assert.assertEquals(99.9, values[3]);
+        Assert.assertArrayEquals("abc".getBytes(), (byte[]) values[4]);
+        Assert.assertEquals(true, values[5]);
         ps.close();
     }
 
     @Test
-    public void testSetParamsWithSkipDoubleQuotes() {
+    public void testSetParamsWithSkipDoubleQuotes() throws SQLException {
         String preSQL =
                 "SELECT a, b FROM root.sg WHERE TIME > 10 AND TIME < 25 AND a > ? AND b = \"asda?asd\";";
         IginXPreparedStatement ps = new IginXPreparedStatement(null, null, preSQL);
@@ -32,13 +48,14 @@ public class PreparedStatementTest {
 
         String expectedSQL =
                 "SELECT a, b FROM root.sg WHERE TIME > 10 AND TIME < 25 AND a > 10 AND b = \"asda?asd\";";
-        String completeSQL = ps.getCompleteSql();
-        Assert.assertEquals(expectedSQL, completeSQL);
+        Assert.assertEquals(expectedSQL, ps.getCompleteSql());
+        Assert.assertEquals(1, ps.getParameterMetaData().getParameterCount());
+        Assert.assertEquals(Collections.singletonList(10L), ps.getParameters());
         ps.close();
     }
 
     @Test
-    public void testSetParamsWithSkipSingleQuote() {
+    public void testSetParamsWithSkipSingleQuote() throws SQLException {
         String preSQL =
                 "SELECT a, b FROM root.sg WHERE TIME > 10 AND < 25 AND a > ? AND b = \'asda?asd\';";
         IginXPreparedStatement ps = new IginXPreparedStatement(null, null, preSQL);
@@ -46,8 +63,38 @@ public class PreparedStatementTest {
 
         String expectedSQL =
                 "SELECT a, b FROM root.sg WHERE TIME > 10 AND < 25 AND a > 10 AND b = \'asda?asd\';";
-        String completeSQL = ps.getCompleteSql();
-        Assert.assertEquals(expectedSQL, completeSQL);
+        Assert.assertEquals(expectedSQL, ps.getCompleteSql());
+        Assert.assertEquals(1, ps.getParameterMetaData().getParameterCount());
+        Assert.assertEquals(Collections.singletonList(10L), ps.getParameters());
+        ps.close();
+    }
+
+    @Test
+    public void testParameterCountBeforeSet() throws SQLException {
+        IginXPreparedStatement ps =
+                new IginXPreparedStatement(
+                        null, null, "SELECT a FROM root.sg WHERE b = ? AND c = \"?\" AND d = ?;");
+        // 参数个数为语句中占位符的个数，与已设置的参数无关
+        Assert.assertEquals(2, ps.getParameterMetaData().getParameterCount());
+        ps.close();
+    }
+
+    @Test
+    public void testStringParamIsNotSpliced() throws SQLException {
+        String preSQL = "SELECT a FROM root.sg WHERE b = ?;";
+        IginXPreparedStatement ps = new IginXPreparedStatement(null, null, preSQL);
+        // 参数作为一个字符串值发送，其中的引号不会改变语句结构
+        ps.setString(1, "x\" OR b != \"x");
+        Assert.assertArrayEquals("x\" OR b != \"x".getBytes(), (byte[]) ps.getParameters().get(0));
         ps.close();
     }
+
+    @Test(expected = SQLException.class)
+    public void testUnsetParam() throws SQLException {
+        IginXPreparedStatement ps =
+                new IginXPreparedStatement(
+                        null, null, "SELECT a FROM root.sg WHERE b = ? AND c = ?;");
+        ps.setLong(2, 10);
+        ps.getParameters();
+    }
 }
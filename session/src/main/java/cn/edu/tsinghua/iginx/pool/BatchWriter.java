@@ -0,0 +1,434 @@
+package cn.edu.tsinghua.iginx.pool;
+
+import cn.edu.tsinghua.iginx.exceptions.ExecutionException;
+import cn.edu.tsinghua.iginx.exceptions.SessionException;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.thrift.TimePrecision;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 客户端批量写入器：按序列缓存写入的数据点，缓存的点数达到批大小或等待超过 linger 时间后合并为按列的 insertNonAlignedColumnRecords 请求，多个请求通过
+ * SessionPool 并发发送。缓存与在途的点数达到上限时写入阻塞，关闭时写出所有缓存的数据
+ */
+public class BatchWriter implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchWriter.class);
+
+    private static final int DEFAULT_BATCH_SIZE = 10000;
+
+    private static final long DEFAULT_LINGER_TIME = 100;
+
+    private static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+    private static final long DEFAULT_MAX_PENDING_POINTS = 1_000_000;
+
+    private final SessionPool pool;
+
+    private final int batchSize;
+
+    private final long maxPendingPoints;
+
+    private final TimePrecision precision;
+
+    private final ExecutorService senders;
+
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+
+    private Map<Series, TreeMap<Long, Object>> buffers = new LinkedHashMap<>();
+
+    private int bufferedPoints = 0;
+
+    // 已缓存与正在发送的点数，用于反压
+    private long pendingPoints = 0;
+
+    private int inFlightBatches = 0;
+
+    private boolean closed = false;
+
+    private final AtomicLong batchCount = new AtomicLong();
+
+    private final AtomicLong pointCount = new AtomicLong();
+
+    private final AtomicLong failedBatchCount = new AtomicLong();
+
+    private final AtomicLong failedPointCount = new AtomicLong();
+
+    private final AtomicLong sendTime = new AtomicLong();
+
+    private volatile Exception lastException;
+
+    // 上次 flush 之后第一个失败的请求的异常及失败的点数，由下一次 flush 或 close 抛出
+    private Exception unreportedException;
+
+    private long unreportedPoints = 0;
+
+    public BatchWriter(SessionPool pool) {
+        this(
+                pool,
+                DEFAULT_BATCH_SIZE,
+                DEFAULT_LINGER_TIME,
+                DEFAULT_MAX_IN_FLIGHT,
+                DEFAULT_MAX_PENDING_POINTS,
+                TimePrecision.NS);
+    }
+
+    /**
+     * @param batchSize 单个请求包含的最大点数
+     * @param lingerTime 数据点在缓存中等待的最长时间，单位为毫秒
+     * @param maxInFlight 同时发送的请求数，SessionPool 的大小应不小于该值
+     * @param maxPendingPoints 缓存与在途点数的上限，达到后写入阻塞
+     */
+    public BatchWriter(
+            SessionPool pool,
+            int batchSize,
+            long lingerTime,
+            int maxInFlight,
+            long maxPendingPoints,
+            TimePrecision precision) {
+        this.pool = pool;
+        this.batchSize = Math.max(1, batchSize);
+        this.maxPendingPoints = Math.max(this.batchSize, maxPendingPoints);
+        this.precision = precision;
+        this.senders = Executors.newFixedThreadPool(Math.max(1, maxInFlight));
+        this.timer =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "batch-writer-linger");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        long period = Math.max(1, lingerTime);
+        timer.scheduleWithFixedDelay(this::flushBuffered, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public void write(String path, long timestamp, Object value, DataType dataType)
+            throws InterruptedException {
+        write(path, null, timestamp, value, dataType);
+    }
+
+    /** 缓存一个数据点，同一序列上相同时间戳的点以后写入的为准 */
+    public void write(
+            String path, Map<String, String> tags, long timestamp, Object value, DataType dataType)
+            throws InterruptedException {
+        if (value == null) {
+            return;
+        }
+        List<Batch> batches = null;
+        synchronized (lock) {
+            if (closed) {
+                throw new IllegalStateException("batch writer is closed");
+            }
+            while (pendingPoints >= maxPendingPoints) {
+                lock.wait();
+                if (closed) {
+                    throw new IllegalStateException("batch writer is closed");
+                }
+            }
+            Series series = new Series(path, tags, dataType);
+            TreeMap<Long, Object> buffer = buffers.computeIfAbsent(series, k -> new TreeMap<>());
+            if (buffer.put(timestamp, value) == null) {
+                bufferedPoints++;
+                pendingPoints++;
+            }
+            if (bufferedPoints >= batchSize) {
+                batches = drain();
+            }
+        }
+        if (batches != null) {
+            submit(batches);
+        }
+    }
+
+    /** 缓存一行数据，values 中为 null 的列被跳过 */
+    public void writeRow(
+            List<String> paths, long timestamp, Object[] values, List<DataType> dataTypes)
+            throws InterruptedException {
+        for (int i = 0; i < paths.size(); i++) {
+            write(paths.get(i), null, timestamp, values[i], dataTypes.get(i));
+        }
+    }
+
+    /** 发送当前缓存的数据并等待在途的请求完成，上次 flush 之后有请求写入失败时抛出 SessionException */
+    public void flush() throws InterruptedException, SessionException {
+        flushBuffered();
+        Exception failure;
+        long failedPoints;
+        synchronized (lock) {
+            while (inFlightBatches > 0) {
+                lock.wait();
+            }
+            failure = unreportedException;
+            failedPoints = unreportedPoints;
+            unreportedException = null;
+            unreportedPoints = 0;
+        }
+        if (failure != null) {
+            throw new SessionException("fail to write " + failedPoints + " points", failure);
+        }
+    }
+
+    /** 先拒绝新的写入再写出缓存的数据，关闭后 write 抛出 IllegalStateException，未报告的写入失败以 SessionException 抛出 */
+    @Override
+    public void close() throws InterruptedException, SessionException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        timer.shutdownNow();
+        try {
+            // 等待正在执行的定时写出提交完成，之后不再向 senders 提交请求
+            timer.awaitTermination(1, TimeUnit.MINUTES);
+            flush();
+        } finally {
+            senders.shutdown();
+            senders.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+
+    private void flushBuffered() {
+        List<Batch> batches;
+        synchronized (lock) {
+            if (bufferedPoints == 0) {
+                return;
+            }
+            batches = drain();
+        }
+        submit(batches);
+    }
+
+    /** 取出所有缓存的数据组成按列的批，需持有 lock */
+    private List<Batch> drain() {
+        Map<Series, TreeMap<Long, Object>> drained = buffers;
+        buffers = new LinkedHashMap<>();
+        bufferedPoints = 0;
+        List<Batch> batches = Batch.of(drained);
+        inFlightBatches += batches.size();
+        return batches;
+    }
+
+    private void submit(List<Batch> batches) {
+        for (Batch batch : batches) {
+            senders.execute(() -> send(batch));
+        }
+    }
+
+    private void send(Batch batch) {
+        long startTime = System.currentTimeMillis();
+        try {
+            pool.insertNonAlignedColumnRecords(
+                    batch.paths,
+                    batch.timestamps,
+                    batch.valuesList,
+                    batch.dataTypes,
+                    batch.tagsList,
+                    precision);
+            batchCount.incrementAndGet();
+            pointCount.addAndGet(batch.pointCount);
+        } catch (SessionException | ExecutionException | RuntimeException e) {
+            logger.error("fail to write a batch of {} points", batch.pointCount, e);
+            lastException = e;
+            failedBatchCount.incrementAndGet();
+            failedPointCount.addAndGet(batch.pointCount);
+            synchronized (lock) {
+                if (unreportedException == null) {
+                    unreportedException = e;
+                }
+                unreportedPoints += batch.pointCount;
+            }
+        } finally {
+            sendTime.addAndGet(System.currentTimeMillis() - startTime);
+            synchronized (lock) {
+                pendingPoints -= batch.pointCount;
+                inFlightBatches--;
+                lock.notifyAll();
+            }
+        }
+    }
+
+    /** 成功写入的请求数 */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /** 成功写入的点数 */
+    public long getPointCount() {
+        return pointCount.get();
+    }
+
+    public long getFailedBatchCount() {
+        return failedBatchCount.get();
+    }
+
+    public long getFailedPointCount() {
+        return failedPointCount.get();
+    }
+
+    public double getAverageBatchSize() {
+        long batches = batchCount.get();
+        return batches == 0 ? 0 : (double) pointCount.get() / batches;
+    }
+
+    /** 每个请求的平均耗时，单位为毫秒 */
+    public double getAverageSendTime() {
+        long batches = batchCount.get() + failedBatchCount.get();
+        return batches == 0 ? 0 : (double) sendTime.get() / batches;
+    }
+
+    public long getPendingPoints() {
+        synchronized (lock) {
+            return pendingPoints;
+        }
+    }
+
+    public int getInFlightBatches() {
+        synchronized (lock) {
+            return inFlightBatches;
+        }
+    }
+
+    /** 最近一次写入失败的异常，没有失败时为 null */
+    public Exception getLastException() {
+        return lastException;
+    }
+
+    private static class Series {
+
+        private final String path;
+
+        private final Map<String, String> tags;
+
+        private final DataType dataType;
+
+        Series(String path, Map<String, String> tags, DataType dataType) {
+            this.path = path;
+            this.tags = tags == null || tags.isEmpty() ? null : tags;
+            this.dataType = dataType;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            Series series = (Series) o;
+            return path.equals(series.path)
+                    && Objects.equals(tags, series.tags)
+                    && dataType == series.dataType;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, tags, dataType);
+        }
+    }
+
+    /**
+     * 一次 insertNonAlignedColumnRecords 请求：所有序列的时间戳取并集，各列在没有数据的时间戳上为 null。补齐后的单元格数超过点数的
+     * MAX_CELLS_PER_POINT 倍时拆分为多个批，避免稀疏的序列按所有时间戳的并集补齐
+     */
+    static class Batch {
+
+        static final int MAX_CELLS_PER_POINT = 2;
+
+        final List<String> paths = new ArrayList<>();
+
+        // 批中所有序列都没有标签时为 null
+        List<Map<String, String>> tagsList = new ArrayList<>();
+
+        final List<DataType> dataTypes = new ArrayList<>();
+
+        final long[] timestamps;
+
+        final Object[] valuesList;
+
+        final int pointCount;
+
+        private Batch(long[] timestamps, int seriesCount, int pointCount) {
+            this.timestamps = timestamps;
+            this.valuesList = new Object[seriesCount];
+            this.pointCount = pointCount;
+        }
+
+        static List<Batch> of(Map<Series, TreeMap<Long, Object>> buffers) {
+            List<Batch> batches = new ArrayList<>();
+            Map<Series, TreeMap<Long, Object>> group = new LinkedHashMap<>();
+            TreeSet<Long> timeSet = new TreeSet<>();
+            int pointCount = 0;
+            for (Map.Entry<Series, TreeMap<Long, Object>> entry : buffers.entrySet()) {
+                TreeMap<Long, Object> buffer = entry.getValue();
+                int timeCount = timeSet.size();
+                for (Long timestamp : buffer.keySet()) {
+                    if (!timeSet.contains(timestamp)) {
+                        timeCount++;
+                    }
+                }
+                long cells = (long) timeCount * (group.size() + 1);
+                if (!group.isEmpty()
+                        && cells > (long) MAX_CELLS_PER_POINT * (pointCount + buffer.size())) {
+                    batches.add(of(group, timeSet, pointCount));
+                    group = new LinkedHashMap<>();
+                    timeSet = new TreeSet<>();
+                    pointCount = 0;
+                }
+                group.put(entry.getKey(), buffer);
+                timeSet.addAll(buffer.keySet());
+                pointCount += buffer.size();
+            }
+            if (!group.isEmpty()) {
+                batches.add(of(group, timeSet, pointCount));
+            }
+            return batches;
+        }
+
+        private static Batch of(
+                Map<Series, TreeMap<Long, Object>> buffers, TreeSet<Long> timeSet, int pointCount) {
+            long[] timestamps = timeSet.stream().mapToLong(Long::longValue).toArray();
+            Map<Long, Integer> timeIndices = new HashMap<>();
+            for (int i = 0; i < timestamps.length; i++) {
+                timeIndices.put(timestamps[i], i);
+            }
+
+            Batch batch = new Batch(timestamps, buffers.size(), pointCount);
+            boolean hasTags = false;
+            int column = 0;
+            for (Map.Entry<Series, TreeMap<Long, Object>> entry : buffers.entrySet()) {
+                Series series = entry.getKey();
+                batch.paths.add(series.path);
+                batch.dataTypes.add(series.dataType);
+                batch.tagsList.add(series.tags == null ? new HashMap<>() : series.tags);
+                hasTags |= series.tags != null;
+                Object[] values = new Object[timestamps.length];
+                for (Map.Entry<Long, Object> point : entry.getValue().entrySet()) {
+                    values[timeIndices.get(point.getKey())] = point.getValue();
+                }
+                batch.valuesList[column++] = values;
+            }
+            if (!hasTags) {
+                batch.tagsList = null;
+            }
+            return batch;
+        }
+    }
+}
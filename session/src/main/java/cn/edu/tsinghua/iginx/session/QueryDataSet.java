@@ -22,10 +22,11 @@ import static cn.edu.tsinghua.iginx.utils.ByteUtils.getValueFromByteBufferByData
 
 import cn.edu.tsinghua.iginx.exceptions.ExecutionException;
 import cn.edu.tsinghua.iginx.exceptions.SessionException;
+import cn.edu.tsinghua.iginx.thrift.ColumnarDataSet;
 import cn.edu.tsinghua.iginx.thrift.DataType;
-import cn.edu.tsinghua.iginx.thrift.QueryDataSetV2;
+import cn.edu.tsinghua.iginx.thrift.FetchResultsResp;
 import cn.edu.tsinghua.iginx.utils.Bitmap;
-import cn.edu.tsinghua.iginx.utils.Pair;
+import cn.edu.tsinghua.iginx.utils.ColumnarDataSetUtils;
 import java.nio.ByteBuffer;
 import java.util.List;
 
@@ -51,6 +52,9 @@ public class QueryDataSet {
 
     private List<ByteBuffer> bitmapList;
 
+    // 按列编码返回的一批结果，解码为按行排列的值
+    private List<Object[]> rows;
+
     private State state;
 
     private int index;
@@ -74,37 +78,78 @@ public class QueryDataSet {
         this.index = 0;
     }
 
-    public void close() throws SessionException, ExecutionException {
-        session.closeQuery(queryId);
+    public QueryDataSet(
+            Session session,
+            long queryId,
+            List<String> columnList,
+            List<DataType> dataTypeList,
+            int fetchSize,
+            ColumnarDataSet columnarDataSet) {
+        this(session, queryId, columnList, dataTypeList, fetchSize, null, null);
+        this.rows = decodeColumnarDataSet(columnarDataSet);
     }
 
-    private void fetch() throws SessionException, ExecutionException {
-        if (bitmapList != null && index != bitmapList.size()) { // 只有之前的被消费完才有可能继续取数据
-            return;
+    /** 按列编码时 key 单独传输，还原为结果的第一列 */
+    private List<Object[]> decodeColumnarDataSet(ColumnarDataSet dataSet) {
+        long[] keys = ColumnarDataSetUtils.decodeKeys(dataSet);
+        if (keys == null) {
+            return ColumnarDataSetUtils.decodeRows(dataSet, dataTypeList);
+        }
+        List<Object[]> rows =
+                ColumnarDataSetUtils.decodeRows(
+                        dataSet, dataTypeList.subList(1, dataTypeList.size()));
+        for (int i = 0; i < rows.size(); i++) {
+            Object[] values = new Object[dataTypeList.size()];
+            values[0] = keys[i];
+            System.arraycopy(rows.get(i), 0, values, 1, rows.get(i).length);
+            rows.set(i, values);
+        }
+        return rows;
+    }
+
+    private int batchSize() {
+        if (rows != null) {
+            return rows.size();
         }
+        return valuesList == null ? -1 : valuesList.size();
+    }
+
+    private void clearBatch() {
         bitmapList = null;
         valuesList = null;
+        rows = null;
         index = 0;
+    }
+
+    public void close() throws SessionException, ExecutionException {
+        session.closeQuery(queryId);
+    }
 
-        Pair<QueryDataSetV2, Boolean> pair = session.fetchResult(queryId, fetchSize);
-        if (pair.k != null) {
-            bitmapList = pair.k.bitmapList;
-            valuesList = pair.k.valuesList;
+    private void fetch() throws SessionException, ExecutionException {
+        if (batchSize() != -1 && index != batchSize()) { // 只有之前的被消费完才有可能继续取数据
+            return;
         }
-        state = pair.v ? State.HAS_MORE : State.NO_MORE;
+        clearBatch();
+
+        FetchResultsResp resp = session.fetchResult(queryId, fetchSize);
+        if (resp.isSetColumnarDataSet()) {
+            rows = decodeColumnarDataSet(resp.getColumnarDataSet());
+        } else if (resp.isSetQueryDataSet()) {
+            bitmapList = resp.getQueryDataSet().bitmapList;
+            valuesList = resp.getQueryDataSet().valuesList;
+        }
+        state = resp.isHasMoreResults() ? State.HAS_MORE : State.NO_MORE;
     }
 
     public boolean hasMore() throws SessionException, ExecutionException {
-        if (valuesList != null && index < valuesList.size()) {
+        if (index < batchSize()) {
             return true;
         }
-        bitmapList = null;
-        valuesList = null;
-        index = 0;
+        clearBatch();
         if (state == State.HAS_MORE || state == State.UNKNOWN) {
             fetch();
         }
-        return valuesList != null;
+        return index < batchSize();
     }
 
     public Object[] nextRow() throws SessionException, ExecutionException {
@@ -112,6 +157,9 @@ public class QueryDataSet {
             return null;
         }
         // nextRow 只会返回本地的 row，如果本地没有，在进行 hasMore 操作时候，就一定也已经取回来了
+        if (rows != null) {
+            return rows.get(index++);
+        }
         ByteBuffer valuesBuffer = valuesList.get(index);
         ByteBuffer bitmapBuffer = bitmapList.get(index);
         index++;
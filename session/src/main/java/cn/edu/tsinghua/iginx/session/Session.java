@@ -25,7 +25,6 @@ import cn.edu.tsinghua.iginx.exceptions.SessionException;
 import cn.edu.tsinghua.iginx.thrift.*;
 import cn.edu.tsinghua.iginx.utils.Bitmap;
 import cn.edu.tsinghua.iginx.utils.ByteUtils;
-import cn.edu.tsinghua.iginx.utils.Pair;
 import cn.edu.tsinghua.iginx.utils.RpcUtils;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
@@ -39,11 +38,13 @@ import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.stream.Collectors;
 import org.apache.commons.lang3.ArrayUtils;
+import org.apache.thrift.TConfiguration;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
+import org.apache.thrift.transport.layered.TFramedTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +68,9 @@ public class Session {
     private TTransport transport;
     private boolean isClosed;
     private int redirectTimes;
+    private boolean columnarResult = false;
+    private CompressionType compressionType = CompressionType.NONE;
+    private boolean framedTransport = false;
 
     private static final TimePrecision timeUnit = TimePrecision.NS;
 
@@ -92,6 +96,17 @@ public class Session {
         this.lock = new ReentrantReadWriteLock();
     }
 
+    /** 请求服务端按列编码返回查询结果，需在 openSession 之前调用，服务端不支持时仍按行返回 */
+    public void enableColumnarResult(CompressionType compressionType) {
+        this.columnarResult = true;
+        this.compressionType = compressionType;
+    }
+
+    /** 使用 TFramedTransport 连接服务端，服务端以 threadedSelector 模式运行时需在 openSession 之前调用 */
+    public void enableFramedTransport() {
+        this.framedTransport = true;
+    }
+
     private synchronized boolean checkRedirect(Status status) throws SessionException, TException {
         if (RpcUtils.verifyNoRedirect(status)) {
             redirectTimes = 0;
@@ -143,6 +158,9 @@ public class Session {
 
     private OpenSessionResp tryOpenSession() throws SessionException, TException {
         transport = new TSocket(host, port);
+        if (framedTransport) {
+            transport = new TFramedTransport(transport, TConfiguration.DEFAULT_MAX_MESSAGE_SIZE);
+        }
         if (!transport.isOpen()) {
             try {
                 transport.open();
@@ -156,6 +174,10 @@ public class Session {
         OpenSessionReq req = new OpenSessionReq();
         req.setUsername(username);
         req.setPassword(password);
+        if (columnarResult) {
+            req.setColumnarResult(true);
+            req.setCompressionType(compressionType);
+        }
 
         return client.openSession(req);
     }
@@ -929,6 +951,46 @@ public class Session {
         return new SessionExecuteSqlResult(ref.resp);
     }
 
+    /** 在服务端预编译语句，语句中的 ? 为参数占位符，返回语句 id */
+    public long prepareStatement(String statement) throws SessionException, ExecutionException {
+        PrepareStatementReq req = new PrepareStatementReq(sessionId, statement);
+        Reference<PrepareStatementResp> ref = new Reference<>();
+        executeWithCheck(() -> (ref.resp = client.prepareStatement(req)).status);
+        return ref.resp.getStatementId();
+    }
+
+    /** 按位置绑定参数执行预编译的语句，参数以 dataTypeList 中的类型编码传输，字符串参数使用 byte[]，null 表示空值 */
+    public SessionExecuteSqlResult executePreparedStatement(
+            long statementId, List<Object> parameters, List<DataType> dataTypeList)
+            throws SessionException, ExecutionException {
+        if (parameters.size() != dataTypeList.size()) {
+            throw new SessionException("The sizes of parameters and dataTypeList should be equal.");
+        }
+        Object[] values = parameters.toArray();
+        Bitmap bitmap = new Bitmap(values.length);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                bitmap.mark(i);
+            }
+        }
+        ExecutePreparedStatementReq req =
+                new ExecutePreparedStatementReq(
+                        sessionId,
+                        statementId,
+                        ByteUtils.getRowByteBuffer(values, dataTypeList),
+                        ByteBuffer.wrap(bitmap.getBytes()),
+                        dataTypeList);
+        Reference<ExecuteSqlResp> ref = new Reference<>();
+        executeWithCheck(() -> (ref.resp = client.executePreparedStatement(req)).status);
+        return new SessionExecuteSqlResult(ref.resp);
+    }
+
+    public void closePreparedStatement(long statementId)
+            throws SessionException, ExecutionException {
+        ClosePreparedStatementReq req = new ClosePreparedStatementReq(sessionId, statementId);
+        executeWithCheck(() -> client.closePreparedStatement(req));
+    }
+
     public SessionQueryDataSet queryLast(
             List<String> paths, long startTime, TimePrecision timePrecision)
             throws SessionException, ExecutionException {
@@ -1051,6 +1113,10 @@ public class Session {
         long queryId = ref.resp.getQueryId();
         List<String> columns = ref.resp.getColumns();
         List<DataType> dataTypes = ref.resp.getDataTypeList();
+        if (ref.resp.isSetColumnarDataSet()) {
+            return new QueryDataSet(
+                    this, queryId, columns, dataTypes, fetchSize, ref.resp.getColumnarDataSet());
+        }
         QueryDataSetV2 dataSetV2 = ref.resp.getQueryDataSet();
 
         return new QueryDataSet(
@@ -1063,14 +1129,14 @@ public class Session {
                 dataSetV2.bitmapList);
     }
 
-    Pair<QueryDataSetV2, Boolean> fetchResult(long queryId, int fetchSize)
+    FetchResultsResp fetchResult(long queryId, int fetchSize)
             throws SessionException, ExecutionException {
         FetchResultsReq req = new FetchResultsReq(sessionId, queryId);
         req.setFetchSize(fetchSize);
         Reference<FetchResultsResp> ref = new Reference<>();
         executeWithCheck(() -> (ref.resp = client.fetchResults(req)).status);
 
-        return new Pair<>(ref.resp.getQueryDataSet(), ref.resp.isHasMoreResults());
+        return ref.resp;
     }
 
     void closeQuery(long queryId) throws SessionException, ExecutionException {
@@ -22,6 +22,7 @@ import static cn.edu.tsinghua.iginx.utils.ByteUtils.*;
 
 import cn.edu.tsinghua.iginx.constant.GlobalConstant;
 import cn.edu.tsinghua.iginx.thrift.*;
+import cn.edu.tsinghua.iginx.utils.ColumnarDataSetUtils;
 import cn.edu.tsinghua.iginx.utils.FormatUtils;
 import java.util.*;
 
@@ -105,6 +106,16 @@ public class SessionExecuteSqlResult {
         this.paths = resp.getPaths();
         this.dataTypeList = resp.getDataTypeList();
 
+        if (resp.isSetColumnarDataSet()) {
+            this.keys = ColumnarDataSetUtils.decodeKeys(resp.columnarDataSet);
+            this.values = new ArrayList<>();
+            for (Object[] row :
+                    ColumnarDataSetUtils.decodeRows(resp.columnarDataSet, resp.dataTypeList)) {
+                this.values.add(Arrays.asList(row));
+            }
+            return;
+        }
+
         if (resp.timestamps != null) {
             this.keys = getLongArrayFromByteBuffer(resp.timestamps);
         }
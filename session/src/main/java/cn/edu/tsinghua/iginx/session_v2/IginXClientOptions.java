@@ -32,11 +32,14 @@ public final class IginXClientOptions {
 
     private final String password;
 
+    private final boolean framedTransport;
+
     private IginXClientOptions(IginXClientOptions.Builder builder) {
         this.host = builder.host;
         this.port = builder.port;
         this.username = builder.username;
         this.password = builder.password;
+        this.framedTransport = builder.framedTransport;
     }
 
     public static IginXClientOptions.Builder builder() {
@@ -59,6 +62,10 @@ public final class IginXClientOptions {
         return password;
     }
 
+    public boolean isFramedTransport() {
+        return framedTransport;
+    }
+
     public static class Builder {
 
         private String host;
@@ -69,6 +76,8 @@ public final class IginXClientOptions {
 
         private String password;
 
+        private boolean framedTransport = false;
+
         private Builder() {}
 
         public IginXClientOptions.Builder url(String url) {
@@ -108,6 +117,12 @@ public final class IginXClientOptions {
             return this;
         }
 
+        /** 使用 TFramedTransport 连接服务端，服务端以 threadedSelector 模式运行时需开启 */
+        public IginXClientOptions.Builder framedTransport(boolean framedTransport) {
+            this.framedTransport = framedTransport;
+            return this;
+        }
+
         public IginXClientOptions build() {
             if (this.host == null || this.port == 0) {
                 throw new IllegalStateException(
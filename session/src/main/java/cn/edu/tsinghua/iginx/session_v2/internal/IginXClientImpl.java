@@ -28,11 +28,13 @@ import java.util.Objects;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
+import org.apache.thrift.TConfiguration;
 import org.apache.thrift.TException;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.transport.TSocket;
 import org.apache.thrift.transport.TTransport;
 import org.apache.thrift.transport.TTransportException;
+import org.apache.thrift.transport.layered.TFramedTransport;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -64,7 +66,11 @@ public class IginXClientImpl implements IginXClient {
         resultMapper = new ResultMapper();
 
         try {
-            transport = new TSocket(options.getHost(), options.getPort());
+            TTransport socket = new TSocket(options.getHost(), options.getPort());
+            transport =
+                    options.isFramedTransport()
+                            ? new TFramedTransport(socket, TConfiguration.DEFAULT_MAX_MESSAGE_SIZE)
+                            : socket;
             transport.open();
             client = new IService.Client(new TBinaryProtocol(transport));
         } catch (TTransportException e) {
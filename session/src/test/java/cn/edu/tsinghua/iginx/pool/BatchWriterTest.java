@@ -0,0 +1,211 @@
+package cn.edu.tsinghua.iginx.pool;
+
+import static org.junit.Assert.*;
+
+import cn.edu.tsinghua.iginx.exceptions.SessionException;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import cn.edu.tsinghua.iginx.thrift.TimePrecision;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import org.junit.Test;
+
+public class BatchWriterTest {
+
+    private static final long LONG_LINGER = 3_600_000;
+
+    /** 记录每个请求的内容，不连接服务端 */
+    private static class RecordingPool extends SessionPool {
+
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+        private final CountDownLatch release;
+
+        // 非空时所有请求以该异常失败
+        private volatile SessionException failure;
+
+        RecordingPool(CountDownLatch release) {
+            super("127.0.0.1", 6888);
+            this.release = release;
+        }
+
+        @Override
+        public void insertNonAlignedColumnRecords(
+                List<String> paths,
+                long[] timestamps,
+                Object[] valuesList,
+                List<DataType> dataTypeList,
+                List<Map<String, String>> tagsList,
+                TimePrecision precision)
+                throws SessionException {
+            if (failure != null) {
+                throw failure;
+            }
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            StringBuilder builder = new StringBuilder(Arrays.toString(timestamps));
+            for (int i = 0; i < paths.size(); i++) {
+                builder.append(' ')
+                        .append(paths.get(i))
+                        .append('=')
+                        .append(Arrays.toString((Object[]) valuesList[i]));
+            }
+            requests.add(builder.toString());
+        }
+    }
+
+    private static RecordingPool pool() {
+        return new RecordingPool(new CountDownLatch(0));
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        RecordingPool pool = pool();
+        BatchWriter writer = new BatchWriter(pool, 4, LONG_LINGER, 1, 100, TimePrecision.NS);
+        List<String> paths = Arrays.asList("a.a", "a.b");
+        List<DataType> types = Arrays.asList(DataType.LONG, DataType.LONG);
+        writer.writeRow(paths, 1, new Object[] {1L, 10L}, types);
+        writer.writeRow(paths, 2, new Object[] {2L, 20L}, types);
+        writer.flush();
+
+        // 达到批大小后合并为一个请求
+        assertEquals(Collections.singletonList("[1, 2] a.a=[1, 2] a.b=[10, 20]"), pool.requests);
+        assertEquals(1, writer.getBatchCount());
+        assertEquals(4, writer.getPointCount());
+        writer.close();
+    }
+
+    @Test
+    public void testDensify() throws Exception {
+        RecordingPool pool = pool();
+        BatchWriter writer = new BatchWriter(pool, 100, LONG_LINGER, 1, 100, TimePrecision.NS);
+        writer.write("a.a", 1, 1L, DataType.LONG);
+        writer.write("a.b", 1, 10L, DataType.LONG);
+        writer.write("a.a", 2, 2L, DataType.LONG);
+        writer.write("a.b", 2, 20L, DataType.LONG);
+        writer.write("a.c", 3, 300L, DataType.LONG);
+        writer.flush();
+
+        // 时间戳取并集，没有数据的时间戳上为 null
+        assertEquals(
+                Collections.singletonList(
+                        "[1, 2, 3] a.a=[1, 2, null] a.b=[10, 20, null] a.c=[null, null, 300]"),
+                pool.requests);
+        assertEquals(5, writer.getPointCount());
+        writer.close();
+    }
+
+    @Test
+    public void testSplitSparseSeries() throws Exception {
+        RecordingPool pool = pool();
+        BatchWriter writer = new BatchWriter(pool, 100, LONG_LINGER, 1, 100, TimePrecision.NS);
+        writer.write("a.a", 1, 1L, DataType.LONG);
+        writer.write("a.b", 2, 2L, DataType.LONG);
+        writer.write("a.c", 3, 3L, DataType.LONG);
+        writer.write("a.d", 4, 4L, DataType.LONG);
+        writer.flush();
+
+        // 补齐后的单元格数超过点数的两倍时拆分
+        assertEquals(
+                Arrays.asList(
+                        "[1, 2] a.a=[1, null] a.b=[null, 2]", "[3, 4] a.c=[3, null] a.d=[null, 4]"),
+                pool.requests);
+        assertEquals(2, writer.getBatchCount());
+        assertEquals(4, writer.getPointCount());
+        writer.close();
+    }
+
+    @Test
+    public void testFailureIsThrown() throws Exception {
+        RecordingPool pool = pool();
+        pool.failure = new SessionException("unavailable");
+        BatchWriter writer = new BatchWriter(pool, 100, LONG_LINGER, 1, 100, TimePrecision.NS);
+        writer.write("a.a", 1, 1L, DataType.LONG);
+        try {
+            writer.flush();
+            fail();
+        } catch (SessionException e) {
+            assertEquals("unavailable", e.getCause().getMessage());
+        }
+        assertEquals(1, writer.getFailedPointCount());
+
+        // 失败只报告一次
+        writer.flush();
+        writer.write("a.a", 2, 2L, DataType.LONG);
+        try {
+            writer.close();
+            fail();
+        } catch (SessionException ignored) {
+        }
+        assertEquals(2, writer.getFailedPointCount());
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        RecordingPool pool = pool();
+        BatchWriter writer = new BatchWriter(pool, 100, LONG_LINGER, 1, 100, TimePrecision.NS);
+        writer.write("a.a", 1, 1L, DataType.LONG);
+        writer.write("a.a", 1, 2L, DataType.LONG);
+        assertEquals(1, writer.getPendingPoints());
+        writer.flush();
+
+        assertEquals(Collections.singletonList("[1] a.a=[2]"), pool.requests);
+        assertEquals(1, writer.getPointCount());
+        writer.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testBackpressure() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingPool pool = new RecordingPool(release);
+        BatchWriter writer = new BatchWriter(pool, 1, LONG_LINGER, 1, 1, TimePrecision.NS);
+        writer.write("a.a", 1, 1L, DataType.LONG);
+        assertEquals(1, writer.getPendingPoints());
+
+        // 在途的点数达到上限，写入阻塞直到请求完成
+        Thread blocked =
+                new Thread(
+                        () -> {
+                            try {
+                                writer.write("a.a", 2, 2L, DataType.LONG);
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        });
+        blocked.start();
+        while (blocked.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        assertTrue(blocked.isAlive());
+        assertTrue(pool.requests.isEmpty());
+
+        release.countDown();
+        blocked.join();
+        writer.close();
+        assertEquals(Arrays.asList("[1] a.a=[1]", "[2] a.a=[2]"), pool.requests);
+    }
+
+    @Test
+    public void testFlushOnClose() throws Exception {
+        RecordingPool pool = pool();
+        BatchWriter writer = new BatchWriter(pool, 100, LONG_LINGER, 2, 100, TimePrecision.NS);
+        writer.write("a.a", 1, 1L, DataType.LONG);
+        writer.write("a.a", 2, 2L, DataType.LONG);
+        assertTrue(pool.requests.isEmpty());
+
+        writer.close();
+        assertEquals(Collections.singletonList("[1, 2] a.a=[1, 2]"), pool.requests);
+        assertEquals(0, writer.getPendingPoints());
+        try {
+            writer.write("a.a", 3, 3L, DataType.LONG);
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+    }
+}
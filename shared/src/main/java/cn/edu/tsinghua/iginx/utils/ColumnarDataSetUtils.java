@@ -0,0 +1,408 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.utils;
+
+import cn.edu.tsinghua.iginx.exceptions.UnsupportedDataTypeException;
+import cn.edu.tsinghua.iginx.thrift.ColumnarDataSet;
+import cn.edu.tsinghua.iginx.thrift.CompressionType;
+import cn.edu.tsinghua.iginx.thrift.DataType;
+import com.github.luben.zstd.Zstd;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4FastDecompressor;
+
+/**
+ * 查询结果的按列编码：每列一个只含非空值的向量与一个空值位图，整数与 key 差分后以 zigzag 变长整数存储，浮点数使用 Gorilla 异或编码，布尔值按位打包，
+ * 各个缓冲区可选地使用 LZ4 或 ZSTD 压缩
+ */
+public class ColumnarDataSetUtils {
+
+    private static final LZ4Compressor LZ4_COMPRESSOR =
+            LZ4Factory.fastestInstance().fastCompressor();
+
+    private static final LZ4FastDecompressor LZ4_DECOMPRESSOR =
+            LZ4Factory.fastestInstance().fastDecompressor();
+
+    private static final int ZSTD_LEVEL = 3;
+
+    public static ColumnarDataSet encode(
+            List<Object[]> rows,
+            long[] keys,
+            List<DataType> dataTypes,
+            CompressionType compressionType) {
+        List<ByteBuffer> columns = new ArrayList<>();
+        List<ByteBuffer> bitmaps = new ArrayList<>();
+        for (int i = 0; i < dataTypes.size(); i++) {
+            Bitmap bitmap = new Bitmap(rows.size());
+            List<Object> values = new ArrayList<>();
+            for (int j = 0; j < rows.size(); j++) {
+                Object value = rows.get(j)[i];
+                if (value != null) {
+                    bitmap.mark(j);
+                    values.add(value);
+                }
+            }
+            columns.add(compress(encodeColumn(values, dataTypes.get(i)), compressionType));
+            bitmaps.add(compress(bitmap.getBytes(), compressionType));
+        }
+        ColumnarDataSet dataSet =
+                new ColumnarDataSet(rows.size(), columns, bitmaps, compressionType);
+        if (keys != null) {
+            VarIntWriter writer = new VarIntWriter();
+            long prev = 0;
+            for (int i = 0; i < rows.size(); i++) {
+                writer.writeZigZag(keys[i] - prev);
+                prev = keys[i];
+            }
+            dataSet.setKeys(compress(writer.toByteArray(), compressionType));
+        }
+        return dataSet;
+    }
+
+    public static long[] decodeKeys(ColumnarDataSet dataSet) {
+        if (!dataSet.isSetKeys()) {
+            return null;
+        }
+        ByteBuffer buffer =
+                ByteBuffer.wrap(decompress(dataSet.bufferForKeys(), dataSet.getCompressionType()));
+        long[] keys = new long[dataSet.getRowCount()];
+        long prev = 0;
+        for (int i = 0; i < keys.length; i++) {
+            prev += readZigZag(buffer);
+            keys[i] = prev;
+        }
+        return keys;
+    }
+
+    /** 将按列编码的结果还原为按行排列的值，空值位置为 null */
+    public static List<Object[]> decodeRows(ColumnarDataSet dataSet, List<DataType> dataTypes) {
+        int rowCount = dataSet.getRowCount();
+        CompressionType compressionType = dataSet.getCompressionType();
+        List<Object[]> rows = new ArrayList<>(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            rows.add(new Object[dataTypes.size()]);
+        }
+        for (int i = 0; i < dataTypes.size(); i++) {
+            Bitmap bitmap =
+                    new Bitmap(rowCount, decompress(dataSet.getBitmaps().get(i), compressionType));
+            int valueCount = 0;
+            for (int j = 0; j < rowCount; j++) {
+                if (bitmap.get(j)) {
+                    valueCount++;
+                }
+            }
+            Object[] values =
+                    decodeColumn(
+                            ByteBuffer.wrap(
+                                    decompress(dataSet.getColumns().get(i), compressionType)),
+                            dataTypes.get(i),
+                            valueCount);
+            int index = 0;
+            for (int j = 0; j < rowCount; j++) {
+                if (bitmap.get(j)) {
+                    rows.get(j)[i] = values[index++];
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static byte[] encodeColumn(List<Object> values, DataType dataType) {
+        switch (dataType) {
+            case BOOLEAN:
+                Bitmap bitmap = new Bitmap(values.size());
+                for (int i = 0; i < values.size(); i++) {
+                    if ((Boolean) values.get(i)) {
+                        bitmap.mark(i);
+                    }
+                }
+                return bitmap.getBytes();
+            case INTEGER:
+            case LONG:
+                VarIntWriter deltaWriter = new VarIntWriter();
+                long prev = 0;
+                for (Object value : values) {
+                    long current = ((Number) value).longValue();
+                    deltaWriter.writeZigZag(current - prev);
+                    prev = current;
+                }
+                return deltaWriter.toByteArray();
+            case FLOAT:
+                GorillaWriter floatWriter = new GorillaWriter();
+                for (Object value : values) {
+                    floatWriter.write(Float.floatToRawIntBits((Float) value) & 0xFFFFFFFFL);
+                }
+                return floatWriter.toByteArray();
+            case DOUBLE:
+                GorillaWriter doubleWriter = new GorillaWriter();
+                for (Object value : values) {
+                    doubleWriter.write(Double.doubleToRawLongBits((Double) value));
+                }
+                return doubleWriter.toByteArray();
+            case BINARY:
+                VarIntWriter binaryWriter = new VarIntWriter();
+                for (Object value : values) {
+                    byte[] bytes = (byte[]) value;
+                    binaryWriter.writeUnsigned(bytes.length);
+                    binaryWriter.write(bytes, 0, bytes.length);
+                }
+                return binaryWriter.toByteArray();
+            default:
+                throw new UnsupportedDataTypeException(dataType.toString());
+        }
+    }
+
+    private static Object[] decodeColumn(ByteBuffer buffer, DataType dataType, int count) {
+        Object[] values = new Object[count];
+        switch (dataType) {
+            case BOOLEAN:
+                byte[] bytes = new byte[buffer.remaining()];
+                buffer.get(bytes);
+                Bitmap bitmap = new Bitmap(count, bytes);
+                for (int i = 0; i < count; i++) {
+                    values[i] = bitmap.get(i);
+                }
+                break;
+            case INTEGER:
+            case LONG:
+                long prev = 0;
+                for (int i = 0; i < count; i++) {
+                    prev += readZigZag(buffer);
+                    values[i] = dataType == DataType.INTEGER ? (Object) (int) prev : prev;
+                }
+                break;
+            case FLOAT:
+                GorillaReader floatReader = new GorillaReader(buffer);
+                for (int i = 0; i < count; i++) {
+                    values[i] = Float.intBitsToFloat((int) floatReader.read());
+                }
+                break;
+            case DOUBLE:
+                GorillaReader doubleReader = new GorillaReader(buffer);
+                for (int i = 0; i < count; i++) {
+                    values[i] = Double.longBitsToDouble(doubleReader.read());
+                }
+                break;
+            case BINARY:
+                for (int i = 0; i < count; i++) {
+                    byte[] value = new byte[(int) readUnsigned(buffer)];
+                    buffer.get(value);
+                    values[i] = value;
+                }
+                break;
+            default:
+                throw new UnsupportedDataTypeException(dataType.toString());
+        }
+        return values;
+    }
+
+    private static ByteBuffer compress(byte[] bytes, CompressionType compressionType) {
+        switch (compressionType) {
+            case LZ4:
+                // LZ4 的块格式不记录原始长度，需要写在压缩数据之前
+                byte[] compressed = new byte[4 + LZ4_COMPRESSOR.maxCompressedLength(bytes.length)];
+                ByteBuffer.wrap(compressed).putInt(bytes.length);
+                int length =
+                        LZ4_COMPRESSOR.compress(
+                                bytes, 0, bytes.length, compressed, 4, compressed.length - 4);
+                return ByteBuffer.wrap(compressed, 0, 4 + length).slice();
+            case ZSTD:
+                return ByteBuffer.wrap(Zstd.compress(bytes, ZSTD_LEVEL));
+            default:
+                return ByteBuffer.wrap(bytes);
+        }
+    }
+
+    private static byte[] decompress(ByteBuffer buffer, CompressionType compressionType) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        switch (compressionType) {
+            case LZ4:
+                int length = ByteBuffer.wrap(bytes).getInt();
+                byte[] restored = new byte[length];
+                LZ4_DECOMPRESSOR.decompress(bytes, 4, restored, 0, length);
+                return restored;
+            case ZSTD:
+                return Zstd.decompress(bytes, (int) Zstd.decompressedSize(bytes));
+            default:
+                return bytes;
+        }
+    }
+
+    private static long readUnsigned(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static long readZigZag(ByteBuffer buffer) {
+        long value = readUnsigned(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static class VarIntWriter extends ByteArrayOutputStream {
+
+        void writeUnsigned(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeZigZag(long value) {
+            writeUnsigned((value << 1) ^ (value >> 63));
+        }
+    }
+
+    /** Gorilla 异或编码：与前一个值相同记 1 位，否则只记录异或结果中有效的比特 */
+    private static class GorillaWriter {
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private long prev;
+
+        private boolean first = true;
+
+        private int prevLeading = -1;
+
+        private int prevTrailing;
+
+        private int current;
+
+        private int bitCount;
+
+        void write(long value) {
+            if (first) {
+                first = false;
+                writeBits(value, 64);
+                prev = value;
+                return;
+            }
+            long xor = value ^ prev;
+            prev = value;
+            if (xor == 0) {
+                writeBits(0, 1);
+                return;
+            }
+            writeBits(1, 1);
+            int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+            int trailing = Long.numberOfTrailingZeros(xor);
+            if (prevLeading != -1 && leading >= prevLeading && trailing >= prevTrailing) {
+                writeBits(0, 1);
+                writeBits(xor >>> prevTrailing, 64 - prevLeading - prevTrailing);
+                return;
+            }
+            int significant = 64 - leading - trailing;
+            writeBits(1, 1);
+            writeBits(leading, 5);
+            // 有效位数为 1 到 64，64 记为 0
+            writeBits(significant & 0x3F, 6);
+            writeBits(xor >>> trailing, significant);
+            prevLeading = leading;
+            prevTrailing = trailing;
+        }
+
+        private void writeBits(long value, int bits) {
+            for (int i = bits - 1; i >= 0; i--) {
+                current = (current << 1) | (int) ((value >>> i) & 1);
+                if (++bitCount == 8) {
+                    out.write(current);
+                    current = 0;
+                    bitCount = 0;
+                }
+            }
+        }
+
+        byte[] toByteArray() {
+            if (bitCount > 0) {
+                out.write(current << (8 - bitCount));
+                current = 0;
+                bitCount = 0;
+            }
+            return out.toByteArray();
+        }
+    }
+
+    private static class GorillaReader {
+
+        private final ByteBuffer buffer;
+
+        private long prev;
+
+        private boolean first = true;
+
+        private int prevLeading;
+
+        private int prevTrailing;
+
+        private int current;
+
+        private int bitCount;
+
+        GorillaReader(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        long read() {
+            if (first) {
+                first = false;
+                prev = readBits(64);
+                return prev;
+            }
+            if (readBits(1) == 0) {
+                return prev;
+            }
+            if (readBits(1) == 1) {
+                prevLeading = (int) readBits(5);
+                int significant = (int) readBits(6);
+                if (significant == 0) {
+                    significant = 64;
+                }
+                prevTrailing = 64 - prevLeading - significant;
+            }
+            long xor = readBits(64 - prevLeading - prevTrailing) << prevTrailing;
+            prev ^= xor;
+            return prev;
+        }
+
+        private long readBits(int bits) {
+            long value = 0;
+            for (int i = 0; i < bits; i++) {
+                if (bitCount == 0) {
+                    current = buffer.get() & 0xFF;
+                    bitCount = 8;
+                }
+                bitCount--;
+                value = (value << 1) | ((current >>> bitCount) & 1);
+            }
+            return value;
+        }
+    }
+}
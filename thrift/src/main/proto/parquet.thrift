@@ -28,6 +28,8 @@ struct ProjectReq {
     3: required list<string> paths
     4: optional RawTagFilter tagFilter
     5: optional string filter
+    6: optional i32 fetchSize
+    7: optional bool compressed
 }
 
 struct ParquetHeader {
@@ -43,10 +45,32 @@ struct ParquetRow {
     3: required binary bitmap
 }
 
+struct ParquetColumnarPage {
+    1: required i32 rowCount
+    2: optional binary timestamps
+    3: required list<binary> valuesList
+    4: required list<binary> bitmapList
+    5: required bool compressed
+}
+
 struct ProjectResp {
     1: required Status status
     2: optional ParquetHeader header
     3: optional list<ParquetRow> rows
+    4: optional i64 queryId
+    5: optional ParquetColumnarPage page
+    6: optional bool hasMoreResults
+}
+
+struct FetchReq {
+    1: required i64 queryId
+    2: required i32 fetchSize
+}
+
+struct FetchResp {
+    1: required Status status
+    2: optional ParquetColumnarPage page
+    3: optional bool hasMoreResults
 }
 
 struct ParquetRawData {
@@ -101,6 +125,10 @@ service ParquetService {
 
     ProjectResp executeProject(1: ProjectReq req);
 
+    FetchResp fetchProjectResults(1: FetchReq req);
+
+    Status closeProject(1: i64 queryId);
+
     Status executeInsert(1: InsertReq req);
 
     Status executeDelete(1: DeleteReq req);
@@ -122,6 +122,12 @@ enum TimePrecision {
     NS
 }
 
+enum CompressionType {
+    NONE,
+    LZ4,
+    ZSTD
+}
+
 struct Status {
     1: required i32 code
     2: optional string message
@@ -131,11 +137,15 @@ struct Status {
 struct OpenSessionReq {
     1: optional string username
     2: optional string password
+    3: optional bool columnarResult
+    4: optional CompressionType compressionType
 }
 
 struct OpenSessionResp {
     1: required Status status
     2: optional i64 sessionId
+    3: optional bool columnarResult
+    4: optional CompressionType compressionType
 }
 
 struct CloseSessionReq {
@@ -206,6 +216,14 @@ struct QueryDataSet {
     3: required list<binary> bitmapList
 }
 
+struct ColumnarDataSet {
+    1: required i32 rowCount
+    2: required list<binary> columns
+    3: required list<binary> bitmaps
+    4: required CompressionType compressionType
+    5: optional binary keys
+}
+
 struct QueryDataReq {
     1: required i64 sessionId
     2: required list<string> paths
@@ -340,6 +358,7 @@ struct ExecuteSqlResp {
     22: optional i64 jobId
     23: optional JobState jobState
     24: optional list<i64> jobIdList
+    25: optional ColumnarDataSet columnarDataSet
 }
 
 struct UpdateUserReq {
@@ -425,6 +444,7 @@ struct ExecuteStatementResp {
     5: optional list<map<string, string>> tagsList
     6: optional list<DataType> dataTypeList
     7: optional QueryDataSetV2 queryDataSet
+    8: optional ColumnarDataSet columnarDataSet
 }
 
 struct QueryDataSetV2 {
@@ -448,6 +468,31 @@ struct FetchResultsResp {
     1: required Status status
     2: required bool hasMoreResults
     3: optional QueryDataSetV2 queryDataSet
+    4: optional ColumnarDataSet columnarDataSet
+}
+
+struct PrepareStatementReq {
+    1: required i64 sessionId
+    2: required string statement
+}
+
+struct PrepareStatementResp {
+    1: required Status status
+    2: optional i64 statementId
+    3: optional i32 parameterCount
+}
+
+struct ExecutePreparedStatementReq {
+    1: required i64 sessionId
+    2: required i64 statementId
+    3: required binary values
+    4: required binary bitmap
+    5: required list<DataType> dataTypeList
+}
+
+struct ClosePreparedStatementReq {
+    1: required i64 sessionId
+    2: required i64 statementId
 }
 
 struct TaskInfo {
@@ -649,6 +694,12 @@ service IService {
 
     Status closeStatement(1: CloseStatementReq req);
 
+    PrepareStatementResp prepareStatement(1: PrepareStatementReq req);
+
+    ExecuteSqlResp executePreparedStatement(1: ExecutePreparedStatementReq req);
+
+    Status closePreparedStatement(1: ClosePreparedStatementReq req);
+
     CommitTransformJobResp commitTransformJob(1: CommitTransformJobReq req);
 
     QueryTransformJobStatusResp queryTransformJobStatus(1: QueryTransformJobStatusReq req);
@@ -18,7 +18,10 @@
  */
 package cn.edu.tsinghua.iginx.tools.csv;
 
+import cn.edu.tsinghua.iginx.exceptions.SessionException;
 import cn.edu.tsinghua.iginx.session.Session;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.CommandLineParser;
 import org.apache.commons.cli.DefaultParser;
@@ -43,6 +46,9 @@ public abstract class AbstractCsvTool {
     private static final String TIME_FORMAT_ARGS = "tf";
     private static final String TIME_FORMAT_NAME = "format";
 
+    private static final String THREAD_ARGS = "t";
+    private static final String THREAD_NAME = "threads";
+
     protected static final String HELP_ARGS = "help";
 
     protected static final String HINT_STRING =
@@ -54,6 +60,8 @@ public abstract class AbstractCsvTool {
     protected static CommandLineParser parser = new DefaultParser();
     protected static HelpFormatter hf = new HelpFormatter();
     protected static Session session;
+    // 并发导入导出时每个工作线程各自借用一个 session
+    protected static BlockingQueue<Session> sessions;
 
     protected static String host = "127.0.0.1";
     protected static String port = "6888";
@@ -61,6 +69,7 @@ public abstract class AbstractCsvTool {
     protected static String password = "root";
     protected static boolean needToParseTime = false;
     protected static String timeFormat = "";
+    protected static int threadNum = 1;
 
     protected static String SCRIPT_HINT;
     protected static String HELP_HINT;
@@ -80,6 +89,11 @@ public abstract class AbstractCsvTool {
                 TIME_FORMAT_NAME,
                 true,
                 "Time format (optional, default \"timestamp\")");
+        options.addOption(
+                THREAD_ARGS,
+                THREAD_NAME,
+                true,
+                "Number of concurrent sessions (optional, default 1)");
 
         return options;
     }
@@ -90,10 +104,37 @@ public abstract class AbstractCsvTool {
         username = parseArg(USERNAME_ARGS, USERNAME_NAME, false, "root");
         password = parseArg(PASSWORD_ARGS, PASSWORD_NAME, false, "root");
         timeFormat = parseArg(TIME_FORMAT_ARGS, TIME_FORMAT_NAME, false, "");
+        threadNum = Math.max(1, Integer.parseInt(parseArg(THREAD_ARGS, THREAD_NAME, false, "1")));
 
         needToParseTime = !timeFormat.equals("");
     }
 
+    /** 打开 threadNum 个 session，第一个同时作为 session 使用 */
+    protected static void openSessions() throws SessionException {
+        sessions = new ArrayBlockingQueue<>(threadNum);
+        for (int i = 0; i < threadNum; i++) {
+            Session newSession = new Session(host, port, username, password);
+            newSession.openSession();
+            sessions.add(newSession);
+        }
+        session = sessions.peek();
+    }
+
+    protected static void closeSessions() {
+        if (sessions == null) {
+            return;
+        }
+        for (Session openedSession : sessions) {
+            try {
+                openedSession.closeSession();
+            } catch (SessionException e) {
+                System.out.printf(
+                        "[ERROR] Encounter an error when closing session, because %s%n",
+                        e.getMessage());
+            }
+        }
+    }
+
     protected static String parseArg(
             String arg, String name, boolean isRequired, String defaultValue) {
         String str = commandLine.getOptionValue(arg);
@@ -18,15 +18,23 @@
  */
 package cn.edu.tsinghua.iginx.tools.csv;
 
+import cn.edu.tsinghua.iginx.constant.GlobalConstant;
 import cn.edu.tsinghua.iginx.exceptions.ExecutionException;
 import cn.edu.tsinghua.iginx.exceptions.SessionException;
+import cn.edu.tsinghua.iginx.session.QueryDataSet;
 import cn.edu.tsinghua.iginx.session.Session;
-import cn.edu.tsinghua.iginx.session.SessionExecuteSqlResult;
+import cn.edu.tsinghua.iginx.tools.utils.ProgressReporter;
+import cn.edu.tsinghua.iginx.utils.FormatUtils;
 import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.apache.commons.cli.Options;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
@@ -43,6 +51,21 @@ public class ExportCsv extends AbstractCsvTool {
     private static final String SQL_FILE_ARGS = "s";
     private static final String SQL_FILE_NAME = "sql";
 
+    private static final String PATH_PREFIX_ARGS = "pp";
+    private static final String PATH_PREFIX_NAME = "prefix";
+
+    private static final String START_KEY_ARGS = "st";
+    private static final String START_KEY_NAME = "start";
+
+    private static final String END_KEY_ARGS = "et";
+    private static final String END_KEY_NAME = "end";
+
+    private static final String SPLIT_NUM_ARGS = "n";
+    private static final String SPLIT_NUM_NAME = "split";
+
+    private static final String FETCH_SIZE_ARGS = "fs";
+    private static final String FETCH_SIZE_NAME = "fetch";
+
     private static final String TIME_PRECISION_ARGS = "tp";
     private static final String TIME_PRECISION_NAME = "precision";
 
@@ -53,8 +76,21 @@ public class ExportCsv extends AbstractCsvTool {
     private static String queryStatements = "";
 
     private static String sqlFile = "";
+
+    private static String pathPrefixes = "";
+
+    private static String startKey = "";
+
+    private static String endKey = "";
+
+    private static int splitNum = 1;
+
+    private static int fetchSize = 1000;
+
     private static String timePrecision = "";
 
+    private static ProgressReporter progress;
+
     public static void main(String[] args) {
         Options options = createOptions();
 
@@ -65,7 +101,9 @@ public class ExportCsv extends AbstractCsvTool {
                         "Require more params input, e.g. %n"
                                 + " ./export_csv.sh(export_csv.bat if Windows) [-h xxx.xxx.xxx.xxx] [-p xxxx] [-u xxx] [-pw xxx] [-d xxx] -q xxx %n"
                                 + " or %n"
-                                + " ./export_csv.sh(export_csv.bat if Windows) [-h xxx.xxx.xxx.xxx] [-p xxxx] [-u xxx] [-pw xxx] [-d xxx] -s xxx");
+                                + " ./export_csv.sh(export_csv.bat if Windows) [-h xxx.xxx.xxx.xxx] [-p xxxx] [-u xxx] [-pw xxx] [-d xxx] -s xxx %n"
+                                + " or %n"
+                                + " ./export_csv.sh(export_csv.bat if Windows) [-h xxx.xxx.xxx.xxx] [-p xxxx] [-u xxx] [-pw xxx] [-d xxx] [-t xxx] [-st xxx -et xxx -n xxx] -pp xxx");
 
         if (args == null || args.length == 0) {
             System.out.println(HELP_HINT);
@@ -94,6 +132,31 @@ public class ExportCsv extends AbstractCsvTool {
                 true,
                 "Query statement to export (optional)");
         options.addOption(SQL_FILE_ARGS, SQL_FILE_NAME, true, "SQL file to export (optional)");
+        options.addOption(
+                PATH_PREFIX_ARGS,
+                PATH_PREFIX_NAME,
+                true,
+                "Path prefixes to export, separated by commas (optional)");
+        options.addOption(
+                START_KEY_ARGS,
+                START_KEY_NAME,
+                true,
+                "Start key (inclusive) of the exported prefixes (optional)");
+        options.addOption(
+                END_KEY_ARGS,
+                END_KEY_NAME,
+                true,
+                "End key (exclusive) of the exported prefixes (optional)");
+        options.addOption(
+                SPLIT_NUM_ARGS,
+                SPLIT_NUM_NAME,
+                true,
+                "Number of key ranges each prefix is split into (optional, default 1)");
+        options.addOption(
+                FETCH_SIZE_ARGS,
+                FETCH_SIZE_NAME,
+                true,
+                "Number of rows fetched per request (optional, default 1000)");
         options.addOption(
                 TIME_PRECISION_ARGS,
                 TIME_PRECISION_NAME,
@@ -107,40 +170,79 @@ public class ExportCsv extends AbstractCsvTool {
         parseCommonArgs();
         parseArgs();
 
-        // 查询语句和查询文件均未指定
-        if (queryStatements.equals("") && sqlFile.equals("")) {
+        int specified = 0;
+        specified += queryStatements.equals("") ? 0 : 1;
+        specified += sqlFile.equals("") ? 0 : 1;
+        specified += pathPrefixes.equals("") ? 0 : 1;
+
+        // 查询语句、查询文件和路径前缀均未指定
+        if (specified == 0) {
             System.out.println(
-                    "[ERROR] Either -q(query statement to export) or -s(sql file to export) must be specified!");
+                    "[ERROR] One of -q(query statement to export), -s(sql file to export) and -pp(path prefixes to export) must be specified!");
             return;
         }
 
-        // 查询语句和查询文件均指定
-        if (!queryStatements.equals("") && !sqlFile.equals("")) {
+        // 指定了多个
+        if (specified > 1) {
             System.out.println(
-                    "[ERROR] Only one of -q(query statement to export) and -s(sql file to export) can be specified!");
+                    "[ERROR] Only one of -q(query statement to export), -s(sql file to export) and -pp(path prefixes to export) can be specified!");
             return;
         }
 
-        try {
-            session = new Session(host, port, username, password);
-            session.openSession();
+        if (splitNum > 1 && (startKey.equals("") || endKey.equals(""))) {
+            System.out.println(
+                    "[ERROR] -st(start key) and -et(end key) must be specified when -n(split number) is larger than 1!");
+            return;
+        }
 
+        List<ExportTask> tasks = new ArrayList<>();
+        try {
             if (!queryStatements.equals("")) { // 指定查询语句
                 String[] statements = queryStatements.trim().split(";");
                 for (int i = 0; i < statements.length; i++) {
-                    processSql(statements[i], i);
+                    tasks.add(new ExportTask(statements[i], getFilePath(i)));
                 }
-            } else { // 指定查询文件
-                processSqlFile();
+            } else if (!sqlFile.equals("")) { // 指定查询文件
+                tasks.addAll(readSqlFile());
+            } else { // 指定路径前缀，按前缀与 key 的范围拆分
+                tasks.addAll(splitPathPrefixes());
+            }
+        } catch (IOException e) {
+            System.out.printf(
+                    "[ERROR] Encounter an error when opening sql file [%s], because %s%n",
+                    sqlFile, e.getMessage());
+            return;
+        }
+
+        ExecutorService executor = null;
+        try {
+            openSessions();
+            executor = Executors.newFixedThreadPool(threadNum);
+            progress = new ProgressReporter("Exported", tasks.size());
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (ExportTask task : tasks) {
+                futures.add(executor.submit(() -> processSql(task.sql, task.filePath)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
             }
         } catch (SessionException e) {
             System.out.printf(
                     "[ERROR] Encounter an error when opening session, because %s%n",
                     e.getMessage());
-        } catch (IOException e) {
+        } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
             System.out.printf(
-                    "[ERROR] Encounter an error when opening sql file [%s], because %s%n",
-                    sqlFile, e.getMessage());
+                    "[ERROR] Encounter an error when exporting files, because %s%n",
+                    e.getMessage());
+        } finally {
+            if (progress != null) {
+                progress.close();
+            }
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+            closeSessions();
         }
     }
 
@@ -148,6 +250,16 @@ public class ExportCsv extends AbstractCsvTool {
         directory = parseArg(DIRECTORY_ARGS, DIRECTORY_NAME, false, "");
         queryStatements = parseArg(QUERY_STATEMENT_ARGS, QUERY_STATEMENT_NAME, false, "");
         sqlFile = parseArg(SQL_FILE_ARGS, SQL_FILE_NAME, false, "");
+        pathPrefixes = parseArg(PATH_PREFIX_ARGS, PATH_PREFIX_NAME, false, "");
+        startKey = parseArg(START_KEY_ARGS, START_KEY_NAME, false, "");
+        endKey = parseArg(END_KEY_ARGS, END_KEY_NAME, false, "");
+        splitNum =
+                Math.max(1, Integer.parseInt(parseArg(SPLIT_NUM_ARGS, SPLIT_NUM_NAME, false, "1")));
+        fetchSize =
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                parseArg(FETCH_SIZE_ARGS, FETCH_SIZE_NAME, false, "1000")));
         timePrecision = parseArg(TIME_PRECISION_ARGS, TIME_PRECISION_NAME, false, "ns");
 
         if (!directory.equals("") && !directory.endsWith("/") && !directory.endsWith("\\")) {
@@ -155,60 +267,140 @@ public class ExportCsv extends AbstractCsvTool {
         }
     }
 
-    private static void processSqlFile() throws IOException {
+    private static String getFilePath(int index) {
+        return directory + EXPORT_FILE_NAME_PREFIX + index + ".csv";
+    }
+
+    private static List<ExportTask> readSqlFile() throws IOException {
+        List<ExportTask> tasks = new ArrayList<>();
         try (BufferedReader reader = new BufferedReader(new FileReader(sqlFile))) {
             String sql;
             int index = 0;
             while ((sql = reader.readLine()) != null) {
-                processSql(sql, index);
+                tasks.add(new ExportTask(sql, getFilePath(index)));
                 index++;
             }
         }
+        return tasks;
     }
 
-    private static void processSql(String sql, int index) {
-        try {
-            SessionExecuteSqlResult res = session.executeSql(sql);
-            String filePath = directory + EXPORT_FILE_NAME_PREFIX + index + ".csv";
-            String parseErrorMsg = res.getParseErrorMsg();
-            if (parseErrorMsg != null && !parseErrorMsg.equals("")) {
-                System.out.println(res.getParseErrorMsg());
-                return;
+    /** 每个路径前缀的 [start, end) 被等分为 splitNum 段，每段由一个游标导出到单独的文件 */
+    private static List<ExportTask> splitPathPrefixes() {
+        List<ExportTask> tasks = new ArrayList<>();
+        String[] prefixes = pathPrefixes.trim().split(",");
+        for (int i = 0; i < prefixes.length; i++) {
+            String prefix = prefixes[i].trim();
+            if (startKey.equals("") && endKey.equals("")) {
+                tasks.add(
+                        new ExportTask(String.format("SELECT * FROM %s", prefix), getFilePath(i)));
+                continue;
+            }
+            long start = startKey.equals("") ? Long.MIN_VALUE : Long.parseLong(startKey);
+            long end = endKey.equals("") ? Long.MAX_VALUE : Long.parseLong(endKey);
+            long step = Math.max(1, (end - start + splitNum - 1) / splitNum);
+            for (int j = 0; j < splitNum && start + j * step < end; j++) {
+                long rangeStart = start + j * step;
+                long rangeEnd = j == splitNum - 1 ? end : Math.min(end, rangeStart + step);
+                String sql =
+                        String.format(
+                                "SELECT * FROM %s WHERE key >= %d AND key < %d",
+                                prefix, rangeStart, rangeEnd);
+                String filePath =
+                        splitNum == 1
+                                ? getFilePath(i)
+                                : directory + EXPORT_FILE_NAME_PREFIX + i + "_part" + j + ".csv";
+                tasks.add(new ExportTask(sql, filePath));
             }
+        }
+        return tasks;
+    }
 
-            if (res.isQuery()) {
-                System.out.printf("Processing sql statement [%s].%n", sql);
-                writeCsvFile(res, filePath);
-                System.out.printf("Finish to export file [%s].%n", filePath);
-            } else {
-                System.out.printf("[ERROR] Non-query sql statement [%s] is not supported.%n", sql);
+    /** 通过游标分批取回查询结果并逐行写入文件，不在内存中缓存整个结果集 */
+    private static void processSql(String sql, String filePath) {
+        Session querySession;
+        try {
+            querySession = sessions.take();
+        } catch (InterruptedException e) {
+            return;
+        }
+        try {
+            System.out.printf("Processing sql statement [%s].%n", sql);
+            QueryDataSet dataSet = querySession.executeQuery(sql, fetchSize);
+            try {
+                writeCsvFile(dataSet, filePath);
+            } finally {
+                dataSet.close();
             }
+            progress.finishTask();
+            System.out.printf("Finish to export file [%s].%n", filePath);
         } catch (SessionException | ExecutionException e) {
             System.out.printf(
                     "[ERROR] Encounter an error when executing sql statement [%s], because %s%n",
                     sql, e.getMessage());
-        }
-    }
-
-    private static void writeCsvFile(SessionExecuteSqlResult res, String filePath) {
-        try {
-            CSVPrinter printer =
-                    CSVFormat.Builder.create(CSVFormat.DEFAULT)
-                            .setHeader()
-                            .setSkipHeaderRecord(true)
-                            .setEscape('\\')
-                            .setQuoteMode(QuoteMode.NONE)
-                            .build()
-                            .print(new PrintWriter(filePath));
-
-            printer.printRecords(res.getResultInList(needToParseTime, timeFormat, timePrecision));
-
-            printer.flush();
-            printer.close();
         } catch (IOException e) {
             System.out.printf(
                     "[ERROR] Encounter an error when writing csv file [%s], because %s%n",
                     filePath, e.getMessage());
+        } finally {
+            sessions.add(querySession);
+        }
+    }
+
+    private static void writeCsvFile(QueryDataSet dataSet, String filePath)
+            throws IOException, SessionException, ExecutionException {
+        try (CSVPrinter printer =
+                CSVFormat.Builder.create(CSVFormat.DEFAULT)
+                        .setHeader()
+                        .setSkipHeaderRecord(true)
+                        .setEscape('\\')
+                        .setQuoteMode(QuoteMode.NONE)
+                        .build()
+                        .print(new PrintWriter(filePath))) {
+            List<String> columns = dataSet.getColumnList();
+            boolean hasKey = !columns.isEmpty() && columns.get(0).equals(GlobalConstant.KEY_NAME);
+            printer.printRecord(columns);
+
+            long count = 0;
+            Object[] row;
+            List<String> record = new ArrayList<>(columns.size());
+            while ((row = dataSet.nextRow()) != null) {
+                record.clear();
+                boolean isNull = true;
+                for (int i = 0; i < row.length; i++) {
+                    if (i == 0 && hasKey) {
+                        record.add(
+                                needToParseTime
+                                        ? FormatUtils.formatTime(
+                                                (long) row[0], timeFormat, timePrecision)
+                                        : String.valueOf(row[0]));
+                        continue;
+                    }
+                    String value = FormatUtils.valueToString(row[i]);
+                    record.add(value);
+                    if (row[i] != null) {
+                        isNull = false;
+                    }
+                }
+                if (!isNull) {
+                    printer.printRecord(record);
+                }
+                if (++count % fetchSize == 0) {
+                    progress.addRows(fetchSize);
+                }
+            }
+            progress.addRows(count % fetchSize);
+        }
+    }
+
+    private static class ExportTask {
+
+        private final String sql;
+
+        private final String filePath;
+
+        ExportTask(String sql, String filePath) {
+            this.sql = sql;
+            this.filePath = filePath;
         }
     }
 }
@@ -23,6 +23,7 @@ import cn.edu.tsinghua.iginx.exceptions.SessionException;
 import cn.edu.tsinghua.iginx.session.Session;
 import cn.edu.tsinghua.iginx.thrift.DataType;
 import cn.edu.tsinghua.iginx.tools.utils.DataTypeInferenceUtils;
+import cn.edu.tsinghua.iginx.tools.utils.ProgressReporter;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
@@ -30,9 +31,14 @@ import java.nio.file.Files;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.cli.Options;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
@@ -46,12 +52,26 @@ public class ImportCsv extends AbstractCsvTool {
     private static final String DIRECTORY_ARGS = "d";
     private static final String DIRECTORY_NAME = "directory";
 
-    private static final ThreadLocal<SimpleDateFormat> format = new ThreadLocal<>();
+    private static final String BATCH_SIZE_ARGS = "bs";
+    private static final String BATCH_SIZE_NAME = "batch";
+
+    private static final ThreadLocal<SimpleDateFormat> format =
+            ThreadLocal.withInitial(() -> new SimpleDateFormat(timeFormat));
 
     private static String filePaths = "";
 
     private static String directory = "";
 
+    private static int batchSize = 10000;
+
+    // 逐个读取文件的线程
+    private static ExecutorService readers;
+
+    // 转换数据并写入的线程，队列满时由读取线程自己写入以限制内存占用
+    private static ExecutorService writers;
+
+    private static ProgressReporter progress;
+
     public static void main(String[] args) {
         Options options = createOptions();
 
@@ -60,7 +80,7 @@ public class ImportCsv extends AbstractCsvTool {
         HELP_HINT =
                 String.format(
                         "Require more params input, e.g. %n"
-                                + " ./import_csv.sh(import-csv.bat if Windows) [-h xxx.xxx.xxx.xxx] [-p xxxx] [-u xxx] [-pw xxx] -f xxx");
+                                + " ./import_csv.sh(import-csv.bat if Windows) [-h xxx.xxx.xxx.xxx] [-p xxxx] [-u xxx] [-pw xxx] [-t xxx] [-bs xxx] -f xxx");
 
         if (args == null || args.length == 0) {
             System.out.println(HELP_HINT);
@@ -80,6 +100,11 @@ public class ImportCsv extends AbstractCsvTool {
 
         options.addOption(FILE_ARGS, FILE_NAME, true, "Import file (optional)");
         options.addOption(DIRECTORY_ARGS, DIRECTORY_NAME, true, "Import directory (optional)");
+        options.addOption(
+                BATCH_SIZE_ARGS,
+                BATCH_SIZE_NAME,
+                true,
+                "Number of rows per insert request (optional, default 10000)");
 
         return options;
     }
@@ -88,71 +113,106 @@ public class ImportCsv extends AbstractCsvTool {
         parseCommonArgs();
         parseArgs();
 
-        try {
-            session = new Session(host, port, username, password);
-            session.openSession();
+        // 导入文件和导入目录均未指定
+        if (filePaths.equals("") && directory.equals("")) {
+            System.out.println(
+                    "[ERROR] Either -f(file to import) or -d(directory to import) must be specified!");
+            return;
+        }
 
-            // 导入文件和导入目录均未指定
-            if (filePaths.equals("") && directory.equals("")) {
-                System.out.println(
-                        "[ERROR] Either -f(file to import) or -d(directory to import) must be specified!");
-                return;
-            }
+        // 导入文件和导入目录均指定
+        if (!filePaths.equals("") && !directory.equals("")) {
+            System.out.println(
+                    "[ERROR] Only one of -f(file to import) and -d(directory to import) can be specified!");
+            return;
+        }
 
-            // 导入文件和导入目录均指定
-            if (!filePaths.equals("") && !directory.equals("")) {
-                System.out.println(
-                        "[ERROR] Only one of -f(file to import) and -d(directory to import) can be specified!");
+        List<String> files;
+        if (!filePaths.equals("")) { // 指定导入文件
+            files = Arrays.asList(filePaths.trim().split(";"));
+        } else { // 指定导入目录
+            files = listDirectory();
+            if (files == null) {
                 return;
             }
+        }
 
-            if (!filePaths.equals("")) { // 指定导入文件
-                String[] files = filePaths.trim().split(";");
-                for (String file : files) {
-                    processSingleFile(file);
-                }
-            } else { // 指定导入目录
-                processDirectory();
+        try {
+            openSessions();
+            readers = Executors.newFixedThreadPool(threadNum);
+            writers =
+                    new ThreadPoolExecutor(
+                            threadNum,
+                            threadNum,
+                            0L,
+                            TimeUnit.MILLISECONDS,
+                            new ArrayBlockingQueue<>(threadNum * 2),
+                            new ThreadPoolExecutor.CallerRunsPolicy());
+            progress = new ProgressReporter("Imported", files.size());
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (String file : files) {
+                futures.add(readers.submit(() -> processSingleFile(file)));
+            }
+            for (Future<?> future : futures) {
+                future.get();
             }
         } catch (SessionException e) {
             System.out.printf(
                     "[ERROR] Encounter an error when opening session, because %s%n",
                     e.getMessage());
+        } catch (InterruptedException | java.util.concurrent.ExecutionException e) {
+            System.out.printf(
+                    "[ERROR] Encounter an error when importing files, because %s%n",
+                    e.getMessage());
+        } finally {
+            if (progress != null) {
+                progress.close();
+            }
+            if (readers != null) {
+                readers.shutdownNow();
+                writers.shutdownNow();
+            }
+            closeSessions();
         }
     }
 
     private static void parseArgs() {
         filePaths = parseArg(FILE_ARGS, FILE_NAME, false, "");
         directory = parseArg(DIRECTORY_ARGS, DIRECTORY_NAME, false, "");
+        batchSize =
+                Math.max(
+                        1,
+                        Integer.parseInt(
+                                parseArg(BATCH_SIZE_ARGS, BATCH_SIZE_NAME, false, "10000")));
 
         if (!directory.equals("") && !directory.endsWith("/") && !directory.endsWith("\\")) {
             directory += File.separator;
         }
-
-        if (needToParseTime) {
-            format.set(new SimpleDateFormat(timeFormat));
-        }
     }
 
-    private static void processDirectory() {
+    private static List<String> listDirectory() {
         File file = new File(directory);
         if (!file.isDirectory()) {
             System.out.printf("[ERROR] [%s] is not a directory!%n", directory);
-            return;
+            return null;
         }
 
         File[] files = file.listFiles();
         if (files == null) {
-            return;
+            return null;
         }
 
+        List<String> fileNames = new ArrayList<>();
         for (File subFile : files) {
             if (subFile.isFile()) {
-                processSingleFile(subFile.getAbsolutePath());
+                fileNames.add(subFile.getAbsolutePath());
             }
         }
+        return fileNames;
     }
 
+    /** 流式读取一个文件，每 batchSize 行交给写入线程转换并插入 */
     private static void processSingleFile(String fileName) {
         File file = new File(fileName);
         if (!file.isFile()) {
@@ -166,113 +226,157 @@ public class ImportCsv extends AbstractCsvTool {
             return;
         }
 
-        try {
+        List<Future<?>> futures = new ArrayList<>();
+        try (CSVParser csvParser =
+                CSVFormat.Builder.create(CSVFormat.DEFAULT)
+                        .setHeader()
+                        .setSkipHeaderRecord(true)
+                        .setEscape('\\')
+                        .setQuote('`')
+                        .setIgnoreEmptyLines(true)
+                        .build()
+                        .parse(new InputStreamReader(Files.newInputStream(file.toPath())))) {
             System.out.printf("Processing file [%s].%n", fileName);
-            CSVParser csvParser =
-                    CSVFormat.Builder.create(CSVFormat.DEFAULT)
-                            .setHeader()
-                            .setSkipHeaderRecord(true)
-                            .setEscape('\\')
-                            .setQuote('`')
-                            .setIgnoreEmptyLines(true)
-                            .build()
-                            .parse(new InputStreamReader(Files.newInputStream(file.toPath())));
 
             List<String> headerNames = csvParser.getHeaderNames();
-            List<CSVRecord> records = csvParser.getRecords();
-
-            if (!headerNames.get(0).equalsIgnoreCase("time")) {
+            // 导出工具写出的第一列名为 key
+            if (!headerNames.get(0).equalsIgnoreCase("time")
+                    && !headerNames.get(0).equalsIgnoreCase("key")) {
                 System.out.printf(
                         "[ERROR] The first column must be named as [Time]! [%s] doesn't satisfy the requirement!%n",
                         fileName);
                 return;
             }
 
-            List<String> paths = new ArrayList<>();
-            long[] timestamps = new long[records.size()];
-            Object[] valuesList = new Object[records.size()];
-            List<DataType> dataTypeList = new ArrayList<>();
+            List<String> paths = new ArrayList<>(headerNames.subList(1, headerNames.size()));
+            // 每一列由第一个不为 null 的值推断类型，尚未推断出类型的列在当前批中全为 null
+            DataType[] dataTypes = new DataType[paths.size()];
 
-            // 填充 paths
-            for (int i = 1; i < headerNames.size(); i++) {
-                paths.add(headerNames.get(i));
+            List<CSVRecord> records = new ArrayList<>(batchSize);
+            for (CSVRecord record : csvParser) {
+                records.add(record);
+                if (records.size() == batchSize) {
+                    futures.add(submitBatch(paths, dataTypes, records));
+                    records = new ArrayList<>(batchSize);
+                }
             }
-
-            // 填充 dataTypeList
-            Set<Integer> dataTypeIndex = new HashSet<>();
-            for (int i = 0; i < paths.size(); i++) {
-                dataTypeList.add(null);
+            if (!records.isEmpty()) {
+                futures.add(submitBatch(paths, dataTypes, records));
             }
-            for (int i = 0; i < dataTypeList.size(); i++) {
-                dataTypeIndex.add(i);
+
+            for (Future<?> future : futures) {
+                future.get();
             }
-            for (CSVRecord record : records) {
-                for (int j = 1; j < record.size(); j++) {
-                    if (!dataTypeIndex.contains(j - 1)) {
-                        continue;
-                    }
-                    DataType inferredDataType =
-                            DataTypeInferenceUtils.getInferredDataType(record.get(j));
-                    if (inferredDataType != null) { // 找到每一列第一个不为 null 的值进行类型推断
-                        dataTypeList.set(j - 1, inferredDataType);
-                        dataTypeIndex.remove(j - 1);
-                    }
-                }
-                if (dataTypeIndex.isEmpty()) {
-                    break;
+            progress.finishTask();
+            System.out.printf("Finish to import file [%s].%n", fileName);
+        } catch (IOException | InterruptedException e) {
+            System.out.printf(
+                    "[ERROR] Encounter an error when processing file [%s], because %s%n",
+                    fileName, e.getMessage());
+        } catch (java.util.concurrent.ExecutionException e) {
+            System.out.printf(
+                    "[ERROR] Encounter an error when processing file [%s], because %s%n",
+                    fileName, e.getCause().getMessage());
+        } finally {
+            futures.forEach(future -> future.cancel(false));
+        }
+    }
+
+    private static Future<?> submitBatch(
+            List<String> paths, DataType[] dataTypes, List<CSVRecord> records) {
+        inferDataTypes(dataTypes, records);
+        List<DataType> batchDataTypes = Arrays.asList(dataTypes.clone());
+        return writers.submit(
+                () -> {
+                    insertBatch(paths, batchDataTypes, records);
+                    return null;
+                });
+    }
+
+    private static void inferDataTypes(DataType[] dataTypes, List<CSVRecord> records) {
+        for (CSVRecord record : records) {
+            boolean allInferred = true;
+            for (int j = 1; j < record.size() && j <= dataTypes.length; j++) {
+                if (dataTypes[j - 1] == null) {
+                    dataTypes[j - 1] = DataTypeInferenceUtils.getInferredDataType(record.get(j));
                 }
             }
-            if (!dataTypeIndex.isEmpty()) {
-                for (Integer index : dataTypeIndex) {
-                    dataTypeList.set(index, DataType.BINARY);
-                }
+            for (DataType dataType : dataTypes) {
+                allInferred &= dataType != null;
+            }
+            if (allInferred) {
+                return;
             }
+        }
+    }
 
-            // 填充 timestamps 和 valuesList
-            for (int i = 0; i < records.size(); i++) {
-                CSVRecord record = records.get(i);
-                if (needToParseTime) {
-                    timestamps[i] = format.get().parse(record.get(0)).getTime();
-                } else {
-                    timestamps[i] = Long.parseLong(record.get(0));
-                }
-                Object[] values = new Object[record.size() - 1];
-                for (int j = 1; j < record.size(); j++) {
-                    if (record.get(j).equalsIgnoreCase("null")) {
-                        values[j - 1] = null;
-                    } else {
-                        switch (dataTypeList.get(j - 1)) {
-                            case BOOLEAN:
-                                values[j - 1] = Boolean.parseBoolean(record.get(j));
-                                break;
-                            case INTEGER:
-                                values[j - 1] = Integer.parseInt(record.get(j));
-                                break;
-                            case LONG:
-                                values[j - 1] = Long.parseLong(record.get(j));
-                                break;
-                            case FLOAT:
-                                values[j - 1] = Float.parseFloat(record.get(j));
-                                break;
-                            case DOUBLE:
-                                values[j - 1] = Double.parseDouble(record.get(j));
-                                break;
-                            case BINARY:
-                                values[j - 1] = record.get(j).getBytes();
-                                break;
-                            default:
-                        }
-                    }
+    private static void insertBatch(
+            List<String> allPaths, List<DataType> allDataTypes, List<CSVRecord> records)
+            throws SessionException, ExecutionException, ParseException, InterruptedException {
+        List<Integer> columns = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        List<DataType> dataTypeList = new ArrayList<>();
+        for (int i = 0; i < allPaths.size(); i++) {
+            if (allDataTypes.get(i) != null) {
+                columns.add(i + 1);
+                paths.add(allPaths.get(i));
+                dataTypeList.add(allDataTypes.get(i));
+            }
+        }
+        if (paths.isEmpty()) {
+            progress.addRows(records.size());
+            return;
+        }
+
+        // 填充 timestamps 和 valuesList
+        long[] timestamps = new long[records.size()];
+        Object[] valuesList = new Object[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            CSVRecord record = records.get(i);
+            if (needToParseTime) {
+                timestamps[i] = format.get().parse(record.get(0)).getTime();
+            } else {
+                timestamps[i] = Long.parseLong(record.get(0));
+            }
+            Object[] values = new Object[columns.size()];
+            for (int j = 0; j < columns.size(); j++) {
+                int column = columns.get(j);
+                if (column < record.size()) {
+                    values[j] = parseValue(record.get(column), dataTypeList.get(j));
                 }
-                valuesList[i] = values;
             }
+            valuesList[i] = values;
+        }
 
-            session.insertNonAlignedRowRecords(paths, timestamps, valuesList, dataTypeList, null);
-            System.out.printf("Finish to import file [%s].%n", fileName);
-        } catch (IOException | SessionException | ExecutionException | ParseException e) {
-            System.out.printf(
-                    "[ERROR] Encounter an error when processing file [%s], because %s%n",
-                    fileName, e.getMessage());
+        Session writeSession = sessions.take();
+        try {
+            writeSession.insertNonAlignedRowRecords(
+                    paths, timestamps, valuesList, dataTypeList, null);
+        } finally {
+            sessions.put(writeSession);
+        }
+        progress.addRows(records.size());
+    }
+
+    private static Object parseValue(String value, DataType dataType) {
+        if (value.equalsIgnoreCase("null")) {
+            return null;
+        }
+        switch (dataType) {
+            case BOOLEAN:
+                return Boolean.parseBoolean(value);
+            case INTEGER:
+                return Integer.parseInt(value);
+            case LONG:
+                return Long.parseLong(value);
+            case FLOAT:
+                return Float.parseFloat(value);
+            case DOUBLE:
+                return Double.parseDouble(value);
+            case BINARY:
+                return value.getBytes();
+            default:
+                return null;
         }
     }
 }
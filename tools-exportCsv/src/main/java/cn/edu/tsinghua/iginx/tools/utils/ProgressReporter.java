@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.tools.utils;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** 定期在控制台打印导入导出的进度与吞吐 */
+public class ProgressReporter implements AutoCloseable {
+
+    private static final long REPORT_INTERVAL = 5;
+
+    private final String action;
+
+    private final int totalTasks;
+
+    private final AtomicLong rows = new AtomicLong();
+
+    private final AtomicInteger finishedTasks = new AtomicInteger();
+
+    private final long startTime = System.currentTimeMillis();
+
+    private final ScheduledExecutorService timer;
+
+    private long lastRows = 0;
+
+    private long lastTime = startTime;
+
+    /**
+     * @param action 打印时使用的动词，如 Imported、Exported
+     * @param totalTasks 文件总数，未知时为 -1
+     */
+    public ProgressReporter(String action, int totalTasks) {
+        this.action = action;
+        this.totalTasks = totalTasks;
+        this.timer =
+                Executors.newSingleThreadScheduledExecutor(
+                        r -> {
+                            Thread thread = new Thread(r, "csv-progress-reporter");
+                            thread.setDaemon(true);
+                            return thread;
+                        });
+        timer.scheduleAtFixedRate(this::report, REPORT_INTERVAL, REPORT_INTERVAL, TimeUnit.SECONDS);
+    }
+
+    public void addRows(long count) {
+        rows.addAndGet(count);
+    }
+
+    public void finishTask() {
+        finishedTasks.incrementAndGet();
+    }
+
+    private synchronized void report() {
+        long now = System.currentTimeMillis();
+        long currentRows = rows.get();
+        double throughput = (currentRows - lastRows) * 1000.0 / Math.max(1, now - lastTime);
+        lastRows = currentRows;
+        lastTime = now;
+        System.out.printf(
+                "[PROGRESS] %s %d rows (%.0f rows/s), %s files finished.%n",
+                action, currentRows, throughput, tasksToString());
+    }
+
+    private String tasksToString() {
+        return totalTasks < 0
+                ? String.valueOf(finishedTasks.get())
+                : finishedTasks.get() + "/" + totalTasks;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        long costTime = Math.max(1, System.currentTimeMillis() - startTime);
+        System.out.printf(
+                "[PROGRESS] %s %d rows in %.1f s (%.0f rows/s), %s files finished.%n",
+                action,
+                rows.get(),
+                costTime / 1000.0,
+                rows.get() * 1000.0 / costTime,
+                tasksToString());
+    }
+}